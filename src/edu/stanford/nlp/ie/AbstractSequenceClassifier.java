@@ -28,6 +28,7 @@ package edu.stanford.nlp.ie;
 
 import edu.stanford.nlp.fsm.DFSA;
 import edu.stanford.nlp.io.IOUtils;
+import edu.stanford.nlp.io.MappedObjectStreams;
 import edu.stanford.nlp.io.RegExFileFilter;
 import edu.stanford.nlp.io.RuntimeIOException;
 import edu.stanford.nlp.ling.CoreAnnotation;
@@ -295,12 +296,47 @@ public abstract class AbstractSequenceClassifier<IN extends CoreMap> implements
    *         field.
    */
   public List<IN> classifySentence(List<? extends HasWord> tokenSequence) {
-    List<IN> document = preprocessTokens(tokenSequence);
+    List<IN> document = preprocessTokens(tokenSequence, null);
     classify(document);
     return document;
   }
 
-  private List<IN> preprocessTokens(List<? extends HasWord> tokenSequence) {
+  /**
+   * Classify a batch of sentences, as {@link #classifySentence} does for each of them.
+   * Values computed for each word while preparing the tokens, such as word shapes and
+   * distributional similarity classes, are computed once for the batch.
+   *
+   * @param sentences The sentences to be classified
+   * @return A new List of IN for each sentence, in the same order, labeled as by classifySentence
+   */
+  public List<List<IN>> classifySentences(List<? extends List<? extends HasWord>> sentences) {
+    return classifySentences(sentences, new TokenFeatureCache());
+  }
+
+  /**
+   * Classify a batch of sentences, sharing the values computed for each word with
+   * any other classifier given the same cache.
+   *
+   * @param sentences The sentences to be classified
+   * @param cache Values computed for each word, possibly shared with other classifiers
+   * @return A new List of IN for each sentence, in the same order, labeled as by classifySentence
+   */
+  public List<List<IN>> classifySentences(List<? extends List<? extends HasWord>> sentences, TokenFeatureCache cache) {
+    List<List<IN>> documents = new ArrayList<>(sentences.size());
+    for (List<? extends HasWord> sentence : sentences) {
+      List<IN> document = preprocessTokens(sentence, cache);
+      classify(document);
+      documents.add(document);
+    }
+    return documents;
+  }
+
+  /**
+   * Copies the tokens into new tokens of this classifier's type and runs them through ObjectBankWrapper.
+   *
+   * @param cache If not null, the cache of values computed for each word, shared with other classifiers
+   */
+  protected List<IN> preprocessTokens(List<? extends HasWord> tokenSequence, TokenFeatureCache cache) {
     // log.info("knownLCWords.size is " + knownLCWords.size() + "; knownLCWords.maxSize is " + knownLCWords.getMaxSize() +
     //                   ", prior to NER for " + getClass().toString());
     List<IN> document = new ArrayList<>();
@@ -324,9 +360,14 @@ public abstract class AbstractSequenceClassifier<IN extends CoreMap> implements
     }
 
     // TODO get rid of ObjectBankWrapper
-    ObjectBankWrapper<IN> wrapper = new ObjectBankWrapper<>(flags, null, knownLCWords);
+    ObjectBankWrapper<IN> wrapper = new ObjectBankWrapper<>(flags, null, knownLCWords, cache);
     wrapper.processDocument(document);
     // log.info("Size of knownLCWords is " + knownLCWords.size() + ", after NER for " + getClass().toString());
+    if (cache != null && featureFactories != null) {
+      for (FeatureFactory<IN> featureFactory : featureFactories) {
+        featureFactory.annotateTokens(document, cache);
+      }
+    }
     return document;
   }
 
@@ -339,11 +380,32 @@ public abstract class AbstractSequenceClassifier<IN extends CoreMap> implements
    *         each token is stored in its "answer" field.
    */
   public List<IN> classifySentenceWithGlobalInformation(List<? extends HasWord> tokenSequence, final CoreMap doc, final CoreMap sentence) {
-    List<IN> document = preprocessTokens(tokenSequence);
+    List<IN> document = preprocessTokens(tokenSequence, null);
     classifyWithGlobalInformation(document, doc, sentence);
     return document;
   }
 
+  /**
+   * Classify the tokens of a batch of sentences of a document, as
+   * {@link #classifySentenceWithGlobalInformation} does for each of them,
+   * sharing the values computed for each word with any other classifier given the same cache.
+   *
+   * @param sentences The sentences, whose TokensAnnotation will be classified
+   * @param doc The document the sentences come from
+   * @param cache Values computed for each word, possibly shared with other classifiers
+   * @return A new List of IN for each sentence, in the same order
+   */
+  public List<List<IN>> classifySentencesWithGlobalInformation(List<? extends CoreMap> sentences, final CoreMap doc,
+                                                               TokenFeatureCache cache) {
+    List<List<IN>> documents = new ArrayList<>(sentences.size());
+    for (CoreMap sentence : sentences) {
+      List<IN> document = preprocessTokens(sentence.get(CoreAnnotations.TokensAnnotation.class), cache);
+      classifyWithGlobalInformation(document, doc, sentence);
+      documents.add(document);
+    }
+    return documents;
+  }
+
   public SequenceModel getSequenceModel(List<IN> doc) {
     throw new UnsupportedOperationException();
   }
@@ -390,29 +452,52 @@ public abstract class AbstractSequenceClassifier<IN extends CoreMap> implements
 
     SequenceModel model = getSequenceModel(doc);
 
-    KBestSequenceFinder tagInference = new KBestSequenceFinder();
-    Counter<int[]> bestSequences = tagInference.kBestSequences(model, k);
+    KBestSequenceFinder.ScoredSequences bestSequences = new KBestSequenceFinder().kBest(model, k);
 
     Counter<List<IN>> kBest = new ClassicCounter<>();
 
-    for (int[] seq : bestSequences.keySet()) {
+    for (int i = 0; i < bestSequences.size(); i++) {
       List<IN> kth = new ArrayList<>();
-      int pos = model.leftWindow();
+      int pos = 0;
       for (IN fi : doc) {
         IN newFL = tokenFactory.makeToken(fi);
-        String guess = classIndex.get(seq[pos]);
+        String guess = classIndex.get(bestSequences.label(i, pos));
         fi.remove(CoreAnnotations.AnswerAnnotation.class); // because fake answers will get
                                            // added during testing
         newFL.set(answerField, guess);
         pos++;
         kth.add(newFL);
       }
-      kBest.setCount(kth, bestSequences.getCount(seq));
+      kBest.setCount(kth, bestSequences.score(i));
     }
 
     return kBest;
   }
 
+  /**
+   * Finds the k best labelings of a document, like {@link #classifyKBest}, but returns them
+   * as indices into {@link #classIndex} with their scores, best first, rather than as
+   * copies of the document.  This is the cheaper call when many documents are scored.
+   *
+   * @param doc The document to label
+   * @param k The number of labelings to find
+   * @return Up to k labelings, with the label of token {@code j} in the {@code i}-th best
+   *     labeling given by {@code label(i, j)}
+   */
+  public KBestSequenceFinder.ScoredSequences classifyKBestLabels(List<IN> doc, int k) {
+    if (doc.isEmpty()) {
+      return new KBestSequenceFinder.ScoredSequences(0, 0, 0, new int[0], new double[0]);
+    }
+
+    ObjectBankWrapper<IN> obw = new ObjectBankWrapper<>(flags, null, knownLCWords);
+    doc = obw.processDocument(doc);
+    KBestSequenceFinder.ScoredSequences bestSequences = new KBestSequenceFinder().kBest(getSequenceModel(doc), k);
+    for (IN fi : doc) {
+      fi.remove(CoreAnnotations.AnswerAnnotation.class); // because fake answers will get added during testing
+    }
+    return bestSequences;
+  }
+
   private DFSA<String, Integer> getViterbiSearchGraph(List<IN> doc, Class<? extends CoreAnnotation<String>> answerField) {
     if (doc.isEmpty()) {
       return new DFSA<>(null);
@@ -1427,6 +1512,22 @@ public abstract class AbstractSequenceClassifier<IN extends CoreMap> implements
   /** Serialize a sequence classifier to an object output stream **/
   public abstract void serializeClassifier(ObjectOutputStream oos);
 
+  /**
+   * Serialize a sequence classifier in the {@link MappedObjectStreams} format, in which its
+   * large arrays (e.g., the weights) are laid out flat so that loading it maps them instead
+   * of deserializing them.  The classifier is loaded from this file by the usual loadClassifier methods.
+   *
+   * @param serializePath The path/filename to write the classifier to.  It is not compressed.
+   */
+  public void serializeClassifierMapped(String serializePath) {
+    try {
+      MappedObjectStreams.write(new File(serializePath), this::serializeClassifier);
+      log.info("Serializing mapped classifier to " + serializePath + "... done.");
+    } catch (IOException e) {
+      throw new RuntimeIOException("Serializing mapped classifier to " + serializePath + "... FAILED", e);
+    }
+  }
+
   /**
    * Loads a classifier from the given input stream.
    * Any exceptions are rethrown as unchecked exceptions.
@@ -1502,6 +1603,10 @@ public abstract class AbstractSequenceClassifier<IN extends CoreMap> implements
    * .gz, uses a GZIPInputStream.
    */
   public void loadClassifier(String loadPath, Properties props) throws ClassCastException, IOException, ClassNotFoundException {
+    if (MappedObjectStreams.isMappedFile(loadPath)) {
+      loadMappedClassifier(new File(loadPath), props);
+      return;
+    }
     try (InputStream is = IOUtils.getInputStreamFromURLOrClasspathOrFileSystem(loadPath)) {
       Timing t = new Timing();
       loadClassifier(is, props);
@@ -1509,6 +1614,15 @@ public abstract class AbstractSequenceClassifier<IN extends CoreMap> implements
     }
   }
 
+  private void loadMappedClassifier(File file, Properties props) throws ClassCastException, IOException,
+      ClassNotFoundException {
+    Timing t = new Timing();
+    try (ObjectInputStream ois = MappedObjectStreams.open(file)) {
+      loadClassifier(ois, props);
+    }
+    t.done(log, "Loading mapped classifier from " + file);
+  }
+
   public void loadClassifierNoExceptions(String loadPath) {
     loadClassifierNoExceptions(loadPath, null);
   }
@@ -1542,6 +1656,10 @@ public abstract class AbstractSequenceClassifier<IN extends CoreMap> implements
    */
   public void loadClassifier(File file, Properties props) throws ClassCastException, IOException,
       ClassNotFoundException {
+    if (MappedObjectStreams.isMappedFile(file)) {
+      loadMappedClassifier(file, props);
+      return;
+    }
     Timing t = new Timing();
     BufferedInputStream bis;
     if (file.getName().endsWith(".gz")) {
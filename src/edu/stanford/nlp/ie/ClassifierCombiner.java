@@ -8,10 +8,15 @@ import java.io.ObjectOutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 import edu.stanford.nlp.io.IOUtils;
@@ -24,11 +29,13 @@ import edu.stanford.nlp.ling.HasWord;
 import edu.stanford.nlp.pipeline.DefaultPaths;
 import edu.stanford.nlp.sequences.DocumentReaderAndWriter;
 import edu.stanford.nlp.sequences.SeqClassifierFlags;
+import edu.stanford.nlp.sequences.TokenFeatureCache;
 import edu.stanford.nlp.util.CoreMap;
 import edu.stanford.nlp.util.ErasureUtils;
 import edu.stanford.nlp.util.Generics;
 import edu.stanford.nlp.util.StringUtils;
 import edu.stanford.nlp.util.PropertiesUtils;
+import edu.stanford.nlp.util.RuntimeInterruptedException;
 import edu.stanford.nlp.util.logging.Redwood;
 
 
@@ -266,11 +273,34 @@ public class ClassifierCombiner<IN extends CoreMap & HasWord> extends AbstractSe
       AbstractSequenceClassifier<IN> presetASC = new PresetSequenceClassifier(props);
       baseClassifiers.add(presetASC);
     }
-    for(String path: paths){
-      AbstractSequenceClassifier<IN> cls = loadClassifierFromPath(props, path);
-      baseClassifiers.add(cls);
-      if(DEBUG){
-        System.err.printf("Successfully loaded classifier #%d from %s.%n", baseClassifiers.size(), path);
+    if (flags.nerLoadThreads > 1 && paths.size() > 1) {
+      // the models are independent, so load them at the same time
+      ExecutorService loader = Executors.newFixedThreadPool(Math.min(flags.nerLoadThreads, paths.size()));
+      try {
+        List<Future<AbstractSequenceClassifier<IN>>> futures = new ArrayList<>();
+        for (String path : paths) {
+          futures.add(loader.submit(() -> loadClassifierFromPath(props, path)));
+        }
+        for (Future<AbstractSequenceClassifier<IN>> future : futures) {
+          baseClassifiers.add(future.get());
+        }
+      } catch (InterruptedException e) {
+        throw new RuntimeInterruptedException(e);
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof IOException) {
+          throw (IOException) e.getCause();
+        }
+        throw new RuntimeException(e.getCause());
+      } finally {
+        loader.shutdownNow();
+      }
+    } else {
+      for(String path: paths){
+        AbstractSequenceClassifier<IN> cls = loadClassifierFromPath(props, path);
+        baseClassifiers.add(cls);
+        if(DEBUG){
+          System.err.printf("Successfully loaded classifier #%d from %s.%n", baseClassifiers.size(), path);
+        }
       }
     }
     if (baseClassifiers.size() > 0) {
@@ -306,6 +336,25 @@ public class ClassifierCombiner<IN extends CoreMap & HasWord> extends AbstractSe
   }
 
 
+  /** baseLabels().get(i) are the labels taken from baseClassifiers.get(i) when merging. */
+  private List<Set<String>> baseLabels() {
+    String background = baseClassifiers.get(0).flags.backgroundSymbol;
+    List<Set<String>> baseLabels = new ArrayList<>();
+    Set<String> seenLabels = Generics.newHashSet();
+    for (AbstractSequenceClassifier<? extends CoreMap> baseClassifier : baseClassifiers) {
+      Set<String> labs = baseClassifier.labels();
+      if (combinationMode != CombinationMode.HIGH_RECALL) {
+        labs.removeAll(seenLabels);
+      } else {
+        labs.remove(baseClassifier.flags.backgroundSymbol);
+        labs.remove(background);
+      }
+      seenLabels.addAll(labs);
+      baseLabels.add(labs);
+    }
+    return baseLabels;
+  }
+
   /**
    * Reads the Answer annotations in the given labellings (produced by the base models)
    *   and combines them using a priority ordering, i.e., for a given baseDocument all
@@ -314,10 +363,11 @@ public class ClassifierCombiner<IN extends CoreMap & HasWord> extends AbstractSe
    *   (considered to be the main document).
    *
    *  @param baseDocuments Results of all base AbstractSequenceClassifier models
+   *  @param baseLabels The labels taken from each base model, as returned by baseLabels()
    *  @return A List of IN with the combined annotations.  (This is an
    *     updating of baseDocuments.get(0), not a new List.)
    */
-  private List<IN> mergeDocuments(List<List<IN>> baseDocuments){
+  private List<IN> mergeDocuments(List<List<IN>> baseDocuments, List<Set<String>> baseLabels) {
     // we should only get here if there is something to merge
     assert(! baseClassifiers.isEmpty() && ! baseDocuments.isEmpty());
     // all base outputs MUST have the same length (we generated them internally!)
@@ -326,21 +376,6 @@ public class ClassifierCombiner<IN extends CoreMap & HasWord> extends AbstractSe
 
     String background = baseClassifiers.get(0).flags.backgroundSymbol;
 
-    // baseLabels.get(i) points to the labels assigned by baseClassifiers.get(i)
-    List<Set<String>> baseLabels = new ArrayList<>();
-    Set<String> seenLabels = Generics.newHashSet();
-    for (AbstractSequenceClassifier<? extends CoreMap> baseClassifier : baseClassifiers) {
-      Set<String> labs = baseClassifier.labels();
-      if (combinationMode != CombinationMode.HIGH_RECALL) {
-        labs.removeAll(seenLabels);
-      } else {
-        labs.remove(baseClassifier.flags.backgroundSymbol);
-        labs.remove(background);
-      }
-      seenLabels.addAll(labs);
-      baseLabels.add(labs);
-    }
-
     if (DEBUG) {
       for(int i = 0; i < baseLabels.size(); i ++)
         log.info("mergeDocuments: Using classifier #" + i + " for " + baseLabels.get(i));
@@ -458,28 +493,84 @@ public class ClassifierCombiner<IN extends CoreMap & HasWord> extends AbstractSe
     if (baseClassifiers.isEmpty()) {
       return tokens;
     }
-    List<List<IN>> baseOutputs = new ArrayList<>();
+    classifyDocuments(Collections.singletonList(tokens), null);
+    return tokens;
+  }
+
+  /**
+   * Classifies a batch of sentences, running each base classifier over the whole batch
+   * in turn, with the values the base classifiers compute for each word shared through the cache.
+   */
+  @Override
+  public List<List<IN>> classifySentences(List<? extends List<? extends HasWord>> sentences, TokenFeatureCache cache) {
+    return classifyBatch(sentences, cache);
+  }
+
+  /**
+   * Classifies a batch of sentences with the combined model alone.  Unlike
+   * {@link #classifySentences(List, TokenFeatureCache)}, subclasses cannot override this,
+   * so any work they add after the combined model runs only once for each batch.
+   */
+  private List<List<IN>> classifyBatch(List<? extends List<? extends HasWord>> sentences, TokenFeatureCache cache) {
+    List<List<IN>> documents = new ArrayList<>(sentences.size());
+    for (List<? extends HasWord> sentence : sentences) {
+      documents.add(preprocessTokens(sentence, cache));
+    }
+    if ( ! baseClassifiers.isEmpty()) {
+      classifyDocuments(documents, cache);
+    }
+    return documents;
+  }
+
+  /** Classifies a batch of sentences as {@link #classifySentences(List, TokenFeatureCache)} does; the combined model has no use for the document. */
+  @Override
+  public List<List<IN>> classifySentencesWithGlobalInformation(List<? extends CoreMap> sentences, CoreMap doc,
+                                                               TokenFeatureCache cache) {
+    List<List<? extends HasWord>> tokens = new ArrayList<>(sentences.size());
+    for (CoreMap sentence : sentences) {
+      tokens.add(sentence.get(CoreAnnotations.TokensAnnotation.class));
+    }
+    return classifyBatch(tokens, cache);
+  }
+
+  /**
+   * Generates the AnswerAnnotation labels of the combined model for each of the documents,
+   * storing them in place in their tokens.  Each base classifier labels all the documents
+   * before the next one starts.
+   *
+   * @param documents The documents to label
+   * @param cache If not null, values computed for each word which the base classifiers share
+   */
+  protected void classifyDocuments(List<List<IN>> documents, TokenFeatureCache cache) {
+    List<List<List<IN>>> baseOutputs = new ArrayList<>();
 
     // the first base model works in place, modifying the original tokens
-    List<IN> output = baseClassifiers.get(0).classifySentence(tokens);
-    // classify(List<IN>) is supposed to work in place, so add AnswerAnnotation to tokens!
-    for (int i = 0, sz = output.size(); i < sz; i++) {
-      tokens.get(i).set(CoreAnnotations.AnswerAnnotation.class, output.get(i).get(CoreAnnotations.AnswerAnnotation.class));
-      tokens.get(i).set(CoreAnnotations.AnswerProbAnnotation.class, output.get(i).get(CoreAnnotations.AnswerProbAnnotation.class));
+    List<List<IN>> outputs = baseClassifiers.get(0).classifySentences(documents, cache);
+    for (int d = 0; d < documents.size(); d++) {
+      List<IN> tokens = documents.get(d);
+      List<IN> output = outputs.get(d);
+      // classify(List<IN>) is supposed to work in place, so add AnswerAnnotation to tokens!
+      for (int i = 0, sz = output.size(); i < sz; i++) {
+        tokens.get(i).set(CoreAnnotations.AnswerAnnotation.class, output.get(i).get(CoreAnnotations.AnswerAnnotation.class));
+        tokens.get(i).set(CoreAnnotations.AnswerProbAnnotation.class, output.get(i).get(CoreAnnotations.AnswerProbAnnotation.class));
+      }
     }
-    baseOutputs.add(tokens);
+    baseOutputs.add(documents);
 
     for (int i = 1, sz = baseClassifiers.size(); i < sz; i ++) {
-      //List<CoreLabel> copy = deepCopy(tokens);
-      // no need for deep copy: classifySentence creates a copy of the input anyway
-      // List<CoreLabel> copy = tokens;
-      output = baseClassifiers.get(i).classifySentence(tokens);
-      baseOutputs.add(output);
+      // no need for deep copy: classifySentences creates a copy of the input anyway
+      baseOutputs.add(baseClassifiers.get(i).classifySentences(documents, cache));
     }
     assert(baseOutputs.size() == baseClassifiers.size());
-    List<IN> finalAnswer = mergeDocuments(baseOutputs);
 
-    return finalAnswer;
+    List<Set<String>> baseLabels = baseLabels();
+    for (int d = 0; d < documents.size(); d++) {
+      List<List<IN>> baseDocuments = new ArrayList<>(baseOutputs.size());
+      for (List<List<IN>> output : baseOutputs) {
+        baseDocuments.add(output.get(d));
+      }
+      mergeDocuments(baseDocuments, baseLabels);
+    }
   }
 
 
@@ -9,11 +9,13 @@ import edu.stanford.nlp.ie.regexp.NumberSequenceClassifier;
 import edu.stanford.nlp.io.IOUtils;
 import edu.stanford.nlp.io.RuntimeIOException;
 import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.ling.HasWord;
 import edu.stanford.nlp.ling.CoreAnnotations;
 import edu.stanford.nlp.pipeline.Annotation;
 import edu.stanford.nlp.pipeline.DefaultPaths;
 import edu.stanford.nlp.sequences.DocumentReaderAndWriter;
 import edu.stanford.nlp.sequences.SeqClassifierFlags;
+import edu.stanford.nlp.sequences.TokenFeatureCache;
 import edu.stanford.nlp.util.*;
 import edu.stanford.nlp.util.logging.Redwood;
 
@@ -161,7 +163,8 @@ public class NERClassifierCombiner extends ClassifierCombiner<CoreLabel>  {
 
   public static final Set<String> DEFAULT_PASS_DOWN_PROPERTIES =
           CollectionUtils.asSet("encoding", "inputEncoding", "outputEncoding", "maxAdditionalKnownLCWords","map",
-                  "ner.combinationMode", "ner.usePresetNERTags");
+                  "ner.combinationMode", "ner.usePresetNERTags", "ner.loadThreads", "ner.featureIdInference",
+                  "ner.packedWeights");
 
   /** This factory method is used to create the NERClassifierCombiner used in NERCombinerAnnotator
    *  (and, thence, in StanfordCoreNLP).
@@ -271,6 +274,40 @@ public class NERClassifierCombiner extends ClassifierCombiner<CoreLabel>  {
   @Override
   public List<CoreLabel> classifyWithGlobalInformation(List<CoreLabel> tokens, final CoreMap document, final CoreMap sentence) {
     List<CoreLabel> output = super.classify(tokens);
+    return postProcess(output, document, sentence);
+  }
+
+  /**
+   * Classifies a batch of sentences.  Each of the statistical models labels all the sentences
+   * before the next one starts, sharing word shapes and distsim classes through the cache,
+   * and then the numeric classifiers run on each sentence.
+   */
+  @Override
+  public List<List<CoreLabel>> classifySentences(List<? extends List<? extends HasWord>> sentences, TokenFeatureCache cache) {
+    List<List<CoreLabel>> outputs = super.classifySentences(sentences, cache);
+    for (List<CoreLabel> output : outputs) {
+      postProcess(output, null, null);
+    }
+    return outputs;
+  }
+
+  /**
+   * Classifies the tokens of a batch of sentences of a document, as
+   * {@link #classifySentences(List, TokenFeatureCache)} does, giving the numeric
+   * classifiers the document and each sentence.
+   */
+  @Override
+  public List<List<CoreLabel>> classifySentencesWithGlobalInformation(List<? extends CoreMap> sentences, final CoreMap document,
+                                                                      TokenFeatureCache cache) {
+    List<List<CoreLabel>> outputs = super.classifySentencesWithGlobalInformation(sentences, document, cache);
+    for (int i = 0; i < outputs.size(); i++) {
+      postProcess(outputs.get(i), document, sentences.get(i));
+    }
+    return outputs;
+  }
+
+  /** Runs the numeric classifiers, if used, on the output of the statistical models, and sets the NER tags. */
+  private List<CoreLabel> postProcess(List<CoreLabel> output, final CoreMap document, final CoreMap sentence) {
     if (applyNumericClassifiers) {
       try {
         // recognizes additional MONEY, TIME, DATE, and NUMBER using a set of deterministic rules
@@ -283,7 +320,7 @@ public class NERClassifierCombiner extends ClassifierCombiner<CoreLabel>  {
         throw e;
       } catch (Exception e) {
         log.info("Ignored an exception in NumberSequenceClassifier: (result is that some numbers were not classified)");
-        log.info("Tokens: " + StringUtils.joinWords(tokens, " "));
+        log.info("Tokens: " + StringUtils.joinWords(output, " "));
         e.printStackTrace(System.err);
       }
 
@@ -303,11 +340,11 @@ public class NERClassifierCombiner extends ClassifierCombiner<CoreLabel>  {
         }
       } catch (Exception e) {
         log.info("Ignored an exception in QuantifiableEntityNormalizer: (result is that entities were not normalized)");
-        log.info("Tokens: " + StringUtils.joinWords(tokens, " "));
+        log.info("Tokens: " + StringUtils.joinWords(output, " "));
         e.printStackTrace(System.err);
       } catch(AssertionError e) {
         log.info("Ignored an assertion in QuantifiableEntityNormalizer: (result is that entities were not normalized)");
-        log.info("Tokens: " + StringUtils.joinWords(tokens, " "));
+        log.info("Tokens: " + StringUtils.joinWords(output, " "));
         e.printStackTrace(System.err);
       }
     } else {
@@ -31,6 +31,7 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
@@ -49,12 +50,15 @@ import edu.stanford.nlp.process.WordShapeClassifier;
 import edu.stanford.nlp.sequences.Clique;
 import edu.stanford.nlp.sequences.CoNLLDocumentReaderAndWriter;
 import edu.stanford.nlp.sequences.FeatureFactory;
+import edu.stanford.nlp.sequences.FeatureIdLookup;
 import edu.stanford.nlp.sequences.SeqClassifierFlags;
+import edu.stanford.nlp.sequences.TokenFeatureCache;
 import edu.stanford.nlp.trees.international.pennchinese.RadicalMap;
 import edu.stanford.nlp.util.Generics;
 import edu.stanford.nlp.util.Interner;
 import edu.stanford.nlp.util.PaddedList;
 import edu.stanford.nlp.util.Timing;
+import edu.stanford.nlp.util.concurrent.ConcurrentLookupCache;
 import edu.stanford.nlp.util.logging.Redwood;
 
 
@@ -384,6 +388,7 @@ public class NERFeatureFactory<IN extends CoreLabel> extends FeatureFactory<IN>
   @Override
   public void init(SeqClassifierFlags flags) {
     super.init(flags);
+    distSimCache = null;
     initGazette();
     if (flags.useDistSim) {
       initLexicon(flags);
@@ -399,7 +404,23 @@ public class NERFeatureFactory<IN extends CoreLabel> extends FeatureFactory<IN>
   @Override
   public Collection<String> getCliqueFeatures(PaddedList<IN> cInfo, int loc, Clique clique) {
     Set<String> features = Generics.newHashSet(100);
-    FeatureCollector c = new FeatureCollector(features);
+    collectCliqueFeatures(cInfo, loc, clique, new FeatureCollector(features));
+    // log.info(StringUtils.join(features,"\n")+"\n");
+    return features;
+  }
+
+  /**
+   * Extracts the ids of the features at a certain index, looking up each feature
+   * name while it is being built, so that no feature Strings are made.
+   */
+  @Override
+  public int[] getCliqueFeatureIds(PaddedList<IN> cInfo, int loc, Clique clique, FeatureIdLookup featureIds) {
+    FeatureCollector c = new FeatureCollector(featureIds);
+    collectCliqueFeatures(cInfo, loc, clique, c);
+    return c.ids();
+  }
+
+  private void collectCliqueFeatures(PaddedList<IN> cInfo, int loc, Clique clique, FeatureCollector c) {
     String domain = cInfo.get(0).get(CoreAnnotations.DomainAnnotation.class);
 
 //    log.info(doFE+"\t"+domain);
@@ -430,9 +451,6 @@ public class NERFeatureFactory<IN extends CoreLabel> extends FeatureFactory<IN>
     } else {
       throw new IllegalArgumentException("Unknown clique: " + clique);
     }
-
-    // log.info(StringUtils.join(features,"\n")+"\n");
-    return features;
   }
 
   /**
@@ -456,9 +474,17 @@ public class NERFeatureFactory<IN extends CoreLabel> extends FeatureFactory<IN>
     /** String builder */
     private StringBuilder buf = new StringBuilder(100);
 
-    /** Output collection */
+    /** Output collection, or null if collecting feature ids */
     Set<String> collection;
 
+    /** The feature index lookup, if collecting feature ids rather than Strings */
+    private final FeatureIdLookup featureIds;
+
+    /** The ids of the features found so far */
+    private int[] ids;
+
+    private int numIds; // = 0
+
     /**
      * Constructor
      *
@@ -466,6 +492,19 @@ public class NERFeatureFactory<IN extends CoreLabel> extends FeatureFactory<IN>
      */
     public FeatureCollector(Set<String> output) {
       this.collection = output;
+      this.featureIds = null;
+    }
+
+    /**
+     * Constructor for collecting the ids of the features in an index
+     * rather than the features themselves.  Features not in the index are dropped.
+     *
+     * @param featureIds Lookup of the feature index
+     */
+    public FeatureCollector(FeatureIdLookup featureIds) {
+      this.collection = null;
+      this.featureIds = featureIds;
+      this.ids = new int[64];
     }
 
     /**
@@ -544,14 +583,44 @@ public class NERFeatureFactory<IN extends CoreLabel> extends FeatureFactory<IN>
      */
     public void add() {
       final int l = buf.append('|').length();
-      collection.add(intern(buf.append(suffix).toString()));
+      emit(buf.append(suffix));
       if (domain != null) {
         buf.setLength(l);
-        collection.add(intern(buf.append(domain).append('-').append(suffix).toString()));
+        emit(buf.append(domain).append('-').append(suffix));
       }
       buf.setLength(0);
     }
 
+    /** Output a complete feature name. */
+    private void emit(StringBuilder feature) {
+      if (featureIds == null) {
+        collection.add(intern(feature.toString()));
+      } else {
+        int id = featureIds.indexOf(feature);
+        if (id >= 0) {
+          if (numIds == ids.length) {
+            ids = Arrays.copyOf(ids, numIds * 2);
+          }
+          ids[numIds++] = id;
+        }
+      }
+    }
+
+    /**
+     * The ids of the features collected, in increasing order and without duplicates,
+     * just as the feature Strings are a set.
+     */
+    public int[] ids() {
+      Arrays.sort(ids, 0, numIds);
+      int unique = 0;
+      for (int i = 0; i < numIds; i++) {
+        if (unique == 0 || ids[i] != ids[unique - 1]) {
+          ids[unique++] = ids[i];
+        }
+      }
+      return Arrays.copyOf(ids, unique);
+    }
+
     /**
      * Add a feature (+ suffix).
      *
@@ -621,20 +690,65 @@ public class NERFeatureFactory<IN extends CoreLabel> extends FeatureFactory<IN>
     }
   }
 
+  /** Recent distsim classes of words; made when first used, and dropped when the lexicon or flags change. */
+  private transient volatile ConcurrentLookupCache<String,String> distSimCache; // = null
+
+  /**
+   * The cache of the distsim classes of words, which is shared by all the threads
+   * using this feature factory.  Its hit rate says how well it works.
+   */
+  public ConcurrentLookupCache<String,String> distSimCache() {
+    ConcurrentLookupCache<String,String> cache = distSimCache;
+    if (cache == null) {
+      // racing threads may each make one, which is harmless
+      cache = new ConcurrentLookupCache<>(this::distSimClass, 1 << 16);
+      distSimCache = cache;
+    }
+    return cache;
+  }
+
   private void distSimAnnotate(PaddedList<IN> info) {
+    ConcurrentLookupCache<String,String> cache = distSimCache();
     for (CoreLabel fl : info) {
       if (fl.containsKey(CoreAnnotations.DistSimAnnotation.class)) { return; }
-      String word = getWord(fl);
-      if ( ! flags.casedDistSim) {
-        word = word.toLowerCase();
-      }
-      if (flags.numberEquivalenceDistSim) {
-        word = WordShapeClassifier.wordShape(word, WordShapeClassifier.WORDSHAPEDIGITS);
-      }
-      String distSim = lexicon.get(word);
-      if (distSim == null) {
-        distSim = flags.unknownWordDistSimClass;
-      }
+      fl.set(CoreAnnotations.DistSimAnnotation.class, cache.get(getWord(fl)));
+    }
+  }
+
+  private String distSimClass(String word) {
+    if ( ! flags.casedDistSim) {
+      word = word.toLowerCase();
+    }
+    if (flags.numberEquivalenceDistSim) {
+      word = WordShapeClassifier.wordShape(word, WordShapeClassifier.WORDSHAPEDIGITS);
+    }
+    String distSim = lexicon.get(word);
+    if (distSim == null) {
+      distSim = flags.unknownWordDistSimClass;
+    }
+    return distSim;
+  }
+
+  /** The name of the table of distsim classes in a TokenFeatureCache: the lexicon and all the flags used to look words up. */
+  private String distSimTable() {
+    return "distsim-" + flags.distSimLexicon + '-' + flags.distSimFileFormat + '-' + flags.distSimMaxBits + '-' +
+        flags.casedDistSim + '-' + flags.numberEquivalenceDistSim + '-' + flags.unknownWordDistSimClass;
+  }
+
+  /**
+   * Sets the distsim class of each token, unless they already have one, sharing the
+   * classes with other classifiers which use the same distsim lexicon in the same way.
+   */
+  @Override
+  public void annotateTokens(List<IN> tokens, TokenFeatureCache cache) {
+    if ( ! flags.useDistSim || lexicon == null || tokens.isEmpty() ||
+        tokens.get(0).containsKey(CoreAnnotations.DistSimAnnotation.class)) {
+      return;
+    }
+    String table = distSimTable();
+    ConcurrentLookupCache<String,String> classes = distSimCache();
+    for (IN fl : tokens) {
+      String distSim = cache.get(table, getWord(fl), classes::get);
       fl.set(CoreAnnotations.DistSimAnnotation.class, distSim);
     }
   }
@@ -645,6 +759,7 @@ public class NERFeatureFactory<IN extends CoreLabel> extends FeatureFactory<IN>
   public void clearMemory() {
     wordToSubstrings = Generics.newHashMap();
     lexicon = null;
+    distSimCache = null;
   }
 
   private static String dehyphenate(String str) {
@@ -56,6 +56,12 @@ public class CRFBiasedClassifier<IN extends CoreMap> extends CRFClassifier<IN>
 
   public CRFBiasedClassifier(SeqClassifierFlags flags) {super(flags); }
 
+  /** The bias feature is added in {@link #makeDatum}, so features have to go through it. */
+  @Override
+  protected boolean useFeatureIds() {
+    return false;
+  }
+
   @Override
   public CRFDatum<Collection<String>, CRFLabel> makeDatum(List<IN> info, int loc, List<FeatureFactory<IN>> featureFactories) {
 
@@ -88,6 +94,7 @@ public class CRFBiasedClassifier<IN extends CoreMap> extends CRFClassifier<IN>
   }
 
   private void addBiasFeature() {
+    unpackWeights();
     if ( ! featureIndex.contains(BIAS)) {
       featureIndex.add(BIAS);
       float[][] newWeights = new float[weights.length+1][];
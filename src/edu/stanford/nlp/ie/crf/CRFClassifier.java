@@ -28,6 +28,7 @@ package edu.stanford.nlp.ie.crf;
 
 import edu.stanford.nlp.ie.*;
 import edu.stanford.nlp.io.IOUtils;
+import edu.stanford.nlp.io.MappedObjectStreams;
 import edu.stanford.nlp.io.RuntimeIOException;
 import edu.stanford.nlp.ling.CoreAnnotations;
 import edu.stanford.nlp.ling.CoreLabel;
@@ -140,11 +141,15 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
 
   /** Parameter weights of the classifier.  weights[featureIndex][labelIndex] */
   float[][] weights;
+  /** The weights packed into one flat, possibly quantized, array by {@link #packWeights}, in which case weights is null. */
+  PackedCRFWeights packedWeights; // = null;
 
   /** index the features of CRF */
   Index<String> featureIndex;
   /** caches the featureIndex */
   int[] map;
+  /** Looks up features without making their Strings, when flags.featureIdInference is set.  Built on first use. */
+  private volatile FeatureIdLookup featureIdLookup; // = null;
   Random random = new Random(2147483647L);
   Index<Integer> nodeFeatureIndicesMap;
   Index<Integer> edgeFeatureIndicesMap;
@@ -214,6 +219,7 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
    * @return number of weights
    */
   public int getNumWeights() {
+    if (packedWeights != null) return packedWeights.numWeights();
     if (weights == null) return 0;
     int numWeights = 0;
     for (float[] wts : weights) {
@@ -264,6 +270,7 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
    * @param scale The scale to multiply by
    */
   public void scaleWeights(double scale) {
+    unpackWeights();
     for (int i = 0; i < weights.length; i++) {
       for (int j = 0; j < weights[i].length; j++) {
         weights[i][j] *= scale;
@@ -280,6 +287,8 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
    * @param weight Amount to scale the other CRF's weights by
    */
   private void combineWeights(CRFClassifier<IN> crf, double weight) {
+    unpackWeights();
+    crf.unpackWeights();
     int numFeatures = featureIndex.size();
     int oldNumFeatures = weights.length;
 
@@ -391,6 +400,7 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
   }
 
   public void dropFeaturesBelowThreshold(double threshold) {
+    unpackWeights();
     Index<String> newFeatureIndex = new HashIndex<>();
     for (int i = 0; i < weights.length; i++) {
       double smallest = weights[i][0];
@@ -447,10 +457,22 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
       Collections.reverse(document);
     }
 
+    FeatureIdLookup featureIds = useFeatureIds() ? featureIdLookup() : null;
+    PaddedList<IN> pInfo = featureIds == null ? null : new PaddedList<>(document, pad);
+
     // log.info("docSize:"+docSize);
     for (int j = 0; j < docSize; j++) {
       int[][] data_j = data[j];
       double[][] featureVals_j = featureVals[j];
+      IN wi = document.get(j);
+      labels[j] = classIndex.indexOf(wi.get(CoreAnnotations.AnswerAnnotation.class));
+      if (featureIds != null) {
+        for (int k = 0; k < windowSize; k++) {
+          data_j[k] = cliqueFeatureIds(pInfo, j, k, featureIds);
+        }
+        continue;
+      }
+
       CRFDatum<Collection<String>, CRFLabel> d = makeDatum(document, j, featureFactories);
 
       List<Collection<String>> features = d.asFeatures();
@@ -479,9 +501,6 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
           }
         }
       }
-
-      IN wi = document.get(j);
-      labels[j] = classIndex.indexOf(wi.get(CoreAnnotations.AnswerAnnotation.class));
     }
 
     if (flags.useReverse) {
@@ -491,6 +510,52 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
     return new Triple<>(data, labels, featureVals);
   }
 
+  /**
+   * Whether {@link #documentToDataAndLabels} gets feature ids straight from the feature factories
+   * (see {@link FeatureFactory#getCliqueFeatureIds}) rather than looking up feature Strings.
+   * Subclasses which change the features made by {@link #makeDatum} should return false.
+   */
+  protected boolean useFeatureIds() {
+    return flags.featureIdInference && ! flags.useEmbedding && flags.printFeatures == null;
+  }
+
+  /**
+   * The lookup of featureIndex, rebuilt if features were added since it was last built,
+   * or featureIndex was replaced, as by loading or training, even by one of the same size.
+   */
+  private FeatureIdLookup featureIdLookup() {
+    FeatureIdLookup lookup = featureIdLookup;
+    if (lookup == null || ! lookup.isLookupOf(featureIndex)) {
+      lookup = new FeatureIdLookup(featureIndex);
+      featureIdLookup = lookup;
+    }
+    return lookup;
+  }
+
+  /**
+   * The ids of the features of the cliques of size window+1 ending at loc, from all the feature
+   * factories: the same features as {@code makeDatum(document, loc, featureFactories).asFeatures().get(window)},
+   * less those which are not in the feature index.
+   */
+  private int[] cliqueFeatureIds(PaddedList<IN> pInfo, int loc, int window, FeatureIdLookup featureIds) {
+    List<int[]> parts = new ArrayList<>(2);
+    FeatureFactory.eachClique(window, 0, c -> {
+      for (FeatureFactory<IN> featureFactory : featureFactories) {
+        parts.add(featureFactory.getCliqueFeatureIds(pInfo, loc, c, featureIds));
+      }
+    });
+    if (parts.size() == 1) {
+      return parts.get(0);
+    }
+    int[] ids = new int[parts.stream().mapToInt(part -> part.length).sum()];
+    int numIds = 0;
+    for (int[] part : parts) {
+      System.arraycopy(part, 0, ids, numIds, part.length);
+      numIds += part.length;
+    }
+    return ids;
+  }
+
   public void printLabelInformation(String testFile, DocumentReaderAndWriter<IN> readerAndWriter) throws Exception {
     ObjectBank<List<IN>> documents = makeObjectBankFromFile(testFile, readerAndWriter);
     for (List<IN> document : documents) {
@@ -499,6 +564,7 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
   }
 
   public void printLabelValue(List<IN> document) {
+    float[][] unpacked = weightsForReading();
     if (flags.useReverse) {
       Collections.reverse(document);
     }
@@ -537,7 +603,7 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
               double[] values = new double[labelIndices.get(0).size()];
               for (CRFLabel label : labelIndices.get(k)) {
                 int[] l = label.getLabel();
-                double v = weights[index][labelIndices.get(k).indexOf(label)];
+                double v = unpacked[index][labelIndices.get(k).indexOf(label)];
                 values[l[l.length - 1 - p]] += v;
               }
               for (double value : values) {
@@ -1133,11 +1199,54 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
 
   protected CliquePotentialFunction getCliquePotentialFunctionForTest() {
     if (cliquePotentialFunction == null) {
-      cliquePotentialFunction = new LinearCliquePotentialFunction(weights);
+      cliquePotentialFunction = packedWeights != null ? new LinearCliquePotentialFunction(packedWeights) :
+          new LinearCliquePotentialFunction(weights);
     }
     return cliquePotentialFunction;
   }
 
+  /**
+   * Replaces the weights of this classifier by a copy of them in one flat array, quantized
+   * to 16 or 8 bits for those formats, which takes less memory and is faster to look up.
+   * Methods which change the weights unpack them again first, with the precision they
+   * were packed with; methods which only print or save them read an unpacked copy.
+   *
+   * @param format How to store the weights
+   */
+  public void packWeights(PackedCRFWeights.Format format) {
+    if (packedWeights != null) {
+      if (packedWeights.format() == format) {
+        return;
+      }
+      unpackWeights();
+    }
+    if (weights == null) {
+      throw new IllegalStateException("CRFClassifier has no weights to pack");
+    }
+    packedWeights = PackedCRFWeights.pack(weights, format);
+    weights = null;
+    cliquePotentialFunction = null;
+  }
+
+  /**
+   * The weights as a {@code weights[featureIndex][labelIndex]} array, for methods which only read them:
+   * a copy unpacked from the packed weights, if they are packed, so that they stay packed for other
+   * threads classifying with them; otherwise the weights array itself.
+   */
+  private float[][] weightsForReading() {
+    PackedCRFWeights packed = packedWeights;
+    return packed != null ? packed.unpack() : weights;
+  }
+
+  /** Makes sure the weights are in the weights array, if they were packed by {@link #packWeights}. */
+  protected void unpackWeights() {
+    if (packedWeights != null) {
+      weights = packedWeights.unpack();
+      packedWeights = null;
+      cliquePotentialFunction = null;
+    }
+  }
+
   public void updateWeightsForTest(double[] x) {
     cliquePotentialFunction = cliquePotentialFunctionHelper.getCliquePotentialFunction(x);
   }
@@ -1178,7 +1287,8 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
 
     BestSequenceFinder tagInference;
     if (flags.inferenceType.equalsIgnoreCase("Viterbi")) {
-      tagInference = new ExactBestSequenceFinder();
+      tagInference = model instanceof TestSequenceModel ?
+          sequenceModel -> ((TestSequenceModel) sequenceModel).bestSequence() : new ExactBestSequenceFinder();
     } else if (flags.inferenceType.equalsIgnoreCase("Beam")) {
       tagInference = new BeamBestSequenceFinder(flags.beamSize);
     } else {
@@ -1556,7 +1666,27 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
 
     Collection<List<IN>> totalDocs = loadAuxiliaryData(docs, readerAndWriter);
 
-    makeAnswerArraysAndTagIndex(totalDocs);
+    // the featurized data, if it is in the feature cache
+    Pair<int[][][][], int[][]> cachedDataAndLabels = null;
+    File featureCacheFile = null;
+    String featureCacheKey = null;
+    if (flags.featureCacheDir != null) {
+      if (totalDocs == docs && CRFFeatureCache.supports(flags)) {
+        featureCacheKey = CRFFeatureCache.key(flags, docs);
+        featureCacheFile = CRFFeatureCache.file(flags.featureCacheDir, featureCacheKey);
+        try {
+          cachedDataAndLabels = CRFFeatureCache.read(featureCacheFile, featureCacheKey, this);
+        } catch (IOException e) {
+          log.warn("Could not read feature cache " + featureCacheFile + ": " + e);
+        }
+      } else {
+        log.info("Not using the feature cache, which does not support these flags or auxiliary data");
+      }
+    }
+
+    if (cachedDataAndLabels == null) {
+      makeAnswerArraysAndTagIndex(totalDocs);
+    }
 
     long elapsedMs = timer.stop();
     log.info("Time to convert docs to feature indices: " + Timing.toSecondsString(elapsedMs) + " seconds");
@@ -1575,7 +1705,19 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
 
     for (int i = 0; i <= flags.numTimesPruneFeatures; i++) {
       timer.start();
-      Triple<int[][][][], int[][], double[][][][]> dataAndLabelsAndFeatureVals = documentsToDataAndLabels(docs);
+      Triple<int[][][][], int[][], double[][][][]> dataAndLabelsAndFeatureVals;
+      if (cachedDataAndLabels != null) {
+        dataAndLabelsAndFeatureVals = new Triple<>(cachedDataAndLabels.first(), cachedDataAndLabels.second(), null);
+      } else {
+        dataAndLabelsAndFeatureVals = documentsToDataAndLabels(docs);
+        if (featureCacheFile != null) {
+          try {
+            CRFFeatureCache.write(featureCacheFile, featureCacheKey, this, dataAndLabelsAndFeatureVals.first(), dataAndLabelsAndFeatureVals.second());
+          } catch (IOException e) {
+            log.warn("Could not write feature cache " + featureCacheFile + ": " + e);
+          }
+        }
+      }
       elapsedMs = timer.stop();
       log.info("Time to convert docs to data/labels: " + Timing.toSecondsString(elapsedMs) + " seconds");
       log.info("Current memory used: " + MemoryMonitor.getUsedMemoryString());
@@ -1684,6 +1826,7 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
       double[] oneDimWeights = trainWeights(data, labels, evaluators, i, featureVals);
       if (oneDimWeights != null) {
         this.weights = to2D(oneDimWeights, labelIndices, map);
+        this.packedWeights = null;
       }
 
       // if (flags.useFloat) {
@@ -1769,6 +1912,7 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
   protected double[] trainWeights(int[][][][] data, int[][] labels, Evaluator[] evaluators, int pruneFeatureItr, double[][][][] featureVals) {
 
     CRFLogConditionalObjectiveFunction func = getObjectiveFunction(data, labels);
+    func.setGradientShardSize(flags.gradientShardSize);
     cliquePotentialFunctionHelper = func;
 
     // create feature grouping
@@ -1876,7 +2020,11 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
         throw new RuntimeException("gradient check failed");
       }
     }
-    return minimizer.minimize(func, flags.tolerance, initialWeights);
+    try {
+      return minimizer.minimize(func, flags.tolerance, initialWeights);
+    } finally {
+      func.shutdownGradientPool();
+    }
   }
 
   public Minimizer<DiffFunction> getMinimizer() {
@@ -2260,6 +2408,7 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
     }
     int weightsLength = Integer.parseInt(toks[1]);
     weights = new float[weightsLength][];
+    packedWeights = null;
     count = 0;
     while (count < weightsLength) {
       line = br.readLine();
@@ -2298,6 +2447,7 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
   }
 
   protected void serializeTextClassifier(PrintWriter pw) throws Exception {
+    float[][] unpacked = weightsForReading();
     pw.printf("labelIndices.length=\t%d%n", labelIndices.size());
     for (int i = 0; i < labelIndices.size(); i++) {
       pw.printf("labelIndices[%d].size()=\t%d%n", i, labelIndices.get(i).size());
@@ -2346,8 +2496,8 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
 
     pw.printf("<windowSize> %d </windowSize>%n", windowSize);
 
-    pw.printf("weights.length=\t%d%n", weights.length);
-    for (float[] ws : weights) {
+    pw.printf("weights.length=\t%d%n", unpacked.length);
+    for (float[] ws : unpacked) {
       ArrayList<Float> list = new ArrayList<>();
       for (float w : ws) {
         list.add(w);
@@ -2406,10 +2556,11 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
   }
 
   public void serializeWeights(String serializePath) {
+    float[][] unpacked = weightsForReading();
     ObjectOutputStream oos = null;
     try {
       oos = IOUtils.writeStreamFromString(serializePath);
-      oos.writeObject(weights);
+      oos.writeObject(unpacked);
       log.info("Serializing weights to " + serializePath + "... done.");
     } catch (Exception e) {
       log.info("Serializing weights to " + serializePath + "... FAILED.", e);
@@ -2508,7 +2659,12 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
         oos.writeObject(ff);
       }
       oos.writeInt(windowSize);
-      oos.writeObject(weights);
+      if (packedWeights == null && MappedObjectStreams.isMappedStream(oos)) {
+        // packed floats are read in place from a mapped file, rather than copied into the heap
+        oos.writeObject(PackedCRFWeights.pack(weights, PackedCRFWeights.Format.FLOAT));
+      } else {
+        oos.writeObject(packedWeights != null ? packedWeights : weights);
+      }
       // oos.writeObject(WordShapeClassifier.getKnownLowerCaseWords());
 
       oos.writeObject(knownLCWords);
@@ -2593,8 +2749,12 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
           weights[i][j] = (float) dWeights[i][j];
         }
       }
+    } else if (tempWeights instanceof PackedCRFWeights) {
+      weights = null;
+      packedWeights = (PackedCRFWeights) tempWeights;
     } else {
       weights = (float[][]) tempWeights;
+      packedWeights = null;
     }
 
     // WordShapeClassifier.setKnownLowerCaseWords((Set) ois.readObject());
@@ -2611,6 +2771,10 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
       labelDictionary = (LabelDictionary) ois.readObject();
     }
 
+    if (flags.packedWeights != null) {
+      packWeights(PackedCRFWeights.Format.fromString(flags.packedWeights));
+    }
+
     if (VERBOSE) {
       log.info("windowSize=" + windowSize);
       log.info("flags=\n" + flags);
@@ -2719,11 +2883,12 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
   }
 
   public void writeWeights(PrintStream p) {
+    float[][] unpacked = weightsForReading();
     for (String feature : featureIndex) {
       int index = featureIndex.indexOf(feature);
       // line.add(feature+"["+(-p)+"]");
       // rowHeaders.add(feature + '[' + (-p) + ']');
-      float[] v = weights[index];
+      float[] v = unpacked[index];
       Index<CRFLabel> l = this.labelIndices.get(0);
       p.println(feature + "\t\t");
       for (CRFLabel label : l) {
@@ -2735,12 +2900,13 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
   }
 
   public Map<String, Counter<String>> topWeights() {
+    float[][] unpacked = weightsForReading();
     Map<String, Counter<String>> w = new HashMap<>();
     for (String feature : featureIndex) {
       int index = featureIndex.indexOf(feature);
       // line.add(feature+"["+(-p)+"]");
       // rowHeaders.add(feature + '[' + (-p) + ']');
-      float[] v = weights[index];
+      float[] v = unpacked[index];
       Index<CRFLabel> l = this.labelIndices.get(0);
       for (CRFLabel label : l) {
         if(!w.containsKey(label.toString(classIndex)))
@@ -2977,6 +3143,10 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
       crf.serializeClassifier(serializeTo);
     }
 
+    if (crf.flags.serializeToMapped != null) {
+      crf.serializeClassifierMapped(crf.flags.serializeToMapped);
+    }
+
     if (crf.flags.serializeWeightsTo != null) {
       crf.serializeWeights(crf.flags.serializeWeightsTo);
     }
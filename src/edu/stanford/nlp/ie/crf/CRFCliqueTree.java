@@ -275,6 +275,33 @@ public class CRFCliqueTree<E> implements ListeningSequenceModel  {
     return probs;
   }
 
+  /**
+   * The marginal probabilities of all labels at all positions, as one flat array:
+   * the probability of label {@code j} at position {@code i} is at {@code i * getNumClasses() + j}.
+   */
+  public double[] marginals() {
+    double[] result = new double[length() * numClasses];
+    marginals(result, false);
+    return result;
+  }
+
+  /**
+   * Fills {@code result}, which must have at least {@code length() * getNumClasses()} entries,
+   * with the marginal probabilities (or log probabilities) of all labels at all positions,
+   * laid out as in {@link #marginals()}.  Nothing is allocated, so a caller can reuse one
+   * array across documents.
+   */
+  public void marginals(double[] result, boolean logScale) {
+    for (int i = 0, length = length(); i < length; i++) {
+      FactorTable table = factorTables[i];
+      int offset = i * numClasses;
+      for (int j = 0; j < numClasses; j++) {
+        double logProb = table.unnormalizedLogProbEnd(j) - z;
+        result[offset + j] = logScale ? logProb : Math.exp(logProb);
+      }
+    }
+  }
+
   public Counter<E> probs(int position) {
     Counter<E> c = new ClassicCounter<>();
     for (int i = 0, sz = classIndex.size(); i < sz; i++) {
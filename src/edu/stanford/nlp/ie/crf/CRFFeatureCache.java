@@ -0,0 +1,366 @@
+package edu.stanford.nlp.ie.crf;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import edu.stanford.nlp.io.RuntimeIOException;
+import edu.stanford.nlp.sequences.SeqClassifierFlags;
+import edu.stanford.nlp.util.CoreMap;
+import edu.stanford.nlp.util.HashIndex;
+import edu.stanford.nlp.util.Index;
+import edu.stanford.nlp.util.Pair;
+import edu.stanford.nlp.util.logging.Redwood;
+
+
+/**
+ * A binary file holding the featurized training data of a {@link CRFClassifier}: the
+ * {@code int[][][][]} data and {@code int[][]} labels made by
+ * {@link CRFClassifier#documentsToDataAndLabels}, together with the class, label and
+ * feature indices they refer to.  With {@code featureCacheDir} set, CRFClassifier training
+ * looks in that directory for the file of its key, and if it is there, reads it instead of
+ * featurizing the documents; otherwise it featurizes them and writes the file.
+ * So a sweep over sigma, the optimizer or the number of threads featurizes the corpus once.
+ * <p>
+ * The key is a hash of the flags, leaving out those which only affect optimization or
+ * input and output (see {@link #IGNORED_FLAGS}), of the size and modification time of every
+ * file or classpath resource the flags name (such as the distributional similarity lexicon
+ * and the gazettes), and of the annotations of every token of the training documents.  The feature ids are read back through a memory map of the file,
+ * which the OS pages in, rather than through Java serialization.
+ * <p>
+ * Training with feature values ({@code useEmbedding}), pruning rounds
+ * ({@code numTimesPruneFeatures}), a label dictionary, or feature template groups
+ * needs more state than is cached, and so does not use the cache.
+ */
+public class CRFFeatureCache {
+
+  /** A logger for this class */
+  private static final Redwood.RedwoodChannels log = Redwood.channels(CRFFeatureCache.class);
+
+  private static final int MAGIC = 0x43524643; // CRFC
+  private static final int VERSION = 1;
+
+  /** The most bytes of the file mapped at once. */
+  private static final long MAX_REGION = 1L << 30;
+
+  /** Flags which do not change the features of the training data. */
+  static final Set<String> IGNORED_FLAGS = new HashSet<>(Arrays.asList(
+      "sigma", "epsilon", "priorType", "maxIterations", "QNsize", "QNsize2", "tolerance", "useQN",
+      "useOWLQN", "useSGD", "useSGDtoQN", "SGDPasses", "QNPasses", "useInPlaceSGD", "useAdaGradFOBOS",
+      "initRate", "tuneSGD", "multiThreadGrad", "gradientShardSize", "maxQNItr", "interimOutputFreq",
+      "evaluateIters", "evaluateTrain", "evalCmd", "terminateOnEvalImprovement", "useMemoryEvaluator",
+      "featureCacheDir", "trainFile", "trainFiles", "trainDirs", "baseTrainDir", "testFile", "testFiles",
+      "testDirs", "textFile", "textFiles", "loadClassifier", "loadTextClassifier", "serializeTo",
+      "serializeToText", "serializeClassIndexTo", "serializeWeightsTo", "serializeFeatureIndexTo",
+      "exportFeatures", "printFeatures", "outputFile", "outputEncoding", "saveFeatureIndexToDisk",
+      "packedWeights", "featureIdInference", "verboseMode"));
+
+  private CRFFeatureCache() {} // static methods
+
+  /** Whether training with these flags can use the cache. */
+  public static boolean supports(SeqClassifierFlags flags) {
+    return ! flags.useEmbedding && flags.numTimesPruneFeatures == 0 && flags.labelDictionaryCutoff <= 0 &&
+        ! flags.groupByFeatureTemplate && flags.numOfFeatureSlices <= 0;
+  }
+
+  /** The key of the featurized data of these documents with these flags. */
+  public static String key(SeqClassifierFlags flags, Collection<? extends List<? extends CoreMap>> documents) {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+    for (String line : flags.getNotNullTrueStringRep().split("\n")) {
+      int equals = line.indexOf('=');
+      if (equals > 0 && ! IGNORED_FLAGS.contains(line.substring(0, equals))) {
+        digest.update(line.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) '\n');
+        for (String path : line.substring(equals + 1).split("[ ,;\t]+")) {
+          digestResource(digest, path);
+        }
+      }
+    }
+    // the gazettes are a list, and so are not in the flags' string form
+    if (flags.useGazettes && flags.gazettes != null) {
+      for (String gazette : flags.gazettes) {
+        digest.update(("gazette=" + gazette + '\n').getBytes(StandardCharsets.UTF_8));
+        digestResource(digest, gazette);
+      }
+    }
+    for (List<? extends CoreMap> document : documents) {
+      for (CoreMap token : document) {
+        for (Class<?> annotation : token.keySet()) {
+          @SuppressWarnings("unchecked")
+          Object value = token.get((Class) annotation);
+          digest.update((annotation.getName() + '=' + value + '\t').getBytes(StandardCharsets.UTF_8));
+        }
+        digest.update((byte) '\n');
+      }
+      digest.update((byte) '\f');
+    }
+    StringBuilder key = new StringBuilder();
+    for (byte b : digest.digest()) {
+      key.append(String.format("%02x", b));
+    }
+    return key.substring(0, 32);
+  }
+
+  /**
+   * Adds the length and modification time of the file or classpath resource at path to the digest,
+   * if there is one, so that the key changes when a lexicon or gazette the features are made from changes.
+   */
+  private static void digestResource(MessageDigest digest, String path) {
+    if (path.isEmpty()) {
+      return;
+    }
+    long length;
+    long modified;
+    File file = new File(path);
+    if (file.isFile()) {
+      length = file.length();
+      modified = file.lastModified();
+    } else {
+      URL url = CRFFeatureCache.class.getClassLoader().getResource(path);
+      if (url == null) {
+        return;
+      }
+      try {
+        URLConnection connection = url.openConnection();
+        length = connection.getContentLengthLong();
+        modified = connection.getLastModified();
+      } catch (IOException e) {
+        throw new RuntimeIOException(e);
+      }
+    }
+    digest.update((path + ' ' + length + ' ' + modified + '\n').getBytes(StandardCharsets.UTF_8));
+  }
+
+  /** The cache file of a key in the directory. */
+  public static File file(String directory, String key) {
+    return new File(directory, "crf-features-" + key + ".bin");
+  }
+
+  /**
+   * Writes the indices of the classifier and the featurized data to the file, through a
+   * temporary file so that a file is either complete or absent.
+   */
+  public static void write(File file, String key, CRFClassifier<?> crf, int[][][][] data, int[][] labels) throws IOException {
+    File directory = file.getAbsoluteFile().getParentFile();
+    if (directory != null && ! directory.isDirectory() && ! directory.mkdirs()) {
+      throw new IOException("Could not make directory " + directory);
+    }
+    File tmp = new File(file.getPath() + ".tmp");
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      writeString(out, key);
+      writeStrings(out, crf.classIndex);
+      out.writeInt(crf.labelIndices.size());
+      for (Index<CRFLabel> labelIndex : crf.labelIndices) {
+        out.writeInt(labelIndex.size());
+        for (CRFLabel label : labelIndex) {
+          int[] l = label.getLabel();
+          out.writeInt(l.length);
+          for (int x : l) {
+            out.writeInt(x);
+          }
+        }
+      }
+      writeStrings(out, crf.featureIndex);
+      for (int clique : crf.map) {
+        out.writeInt(clique);
+      }
+      // the data, as ints
+      out.writeInt(data.length);
+      for (int d = 0; d < data.length; d++) {
+        out.writeInt(labels[d].length);
+        for (int label : labels[d]) {
+          out.writeInt(label);
+        }
+        out.writeInt(data[d].length);
+        for (int[][] position : data[d]) {
+          out.writeInt(position.length);
+          for (int[] clique : position) {
+            out.writeInt(clique.length);
+            for (int feature : clique) {
+              out.writeInt(feature);
+            }
+          }
+        }
+      }
+    }
+    if ( ! tmp.renameTo(file)) {
+      if ( ! file.delete() || ! tmp.renameTo(file)) {
+        throw new IOException("Could not rename " + tmp + " to " + file);
+      }
+    }
+    log.info("Wrote featurized data of " + data.length + " documents to " + file + " (" + file.length() + " bytes)");
+  }
+
+  /**
+   * Reads the file into the classifier's indices and returns its data and labels, or returns
+   * null, leaving the classifier alone, if the file is absent or has another key or version.
+   */
+  public static Pair<int[][][][], int[][]> read(File file, String key, CRFClassifier<?> crf) throws IOException {
+    if ( ! file.isFile()) {
+      return null;
+    }
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+      MappedInts in = new MappedInts(channel);
+      if (in.next() != MAGIC || in.next() != VERSION || ! key.equals(in.nextString())) {
+        log.info("Ignoring feature cache " + file + ", which has another key or version");
+        return null;
+      }
+      Index<String> classIndex = new HashIndex<>(in.nextStrings());
+      int numLabelIndices = in.next();
+      List<Index<CRFLabel>> labelIndices = new ArrayList<>(numLabelIndices);
+      for (int i = 0; i < numLabelIndices; i++) {
+        int size = in.next();
+        Index<CRFLabel> labelIndex = new HashIndex<>(size);
+        for (int j = 0; j < size; j++) {
+          labelIndex.add(new CRFLabel(in.next(new int[in.next()])));
+        }
+        labelIndices.add(labelIndex);
+      }
+      List<String> features = in.nextStrings();
+      Index<String> featureIndex = new HashIndex<>(features);
+      int[] map = in.next(new int[features.size()]);
+      // as made by makeAnswerArraysAndTagIndex: the features of the first and of the last clique, in index order
+      Index<Integer> nodeFeatureIndicesMap = new HashIndex<>();
+      Index<Integer> edgeFeatureIndicesMap = numLabelIndices > 1 ? new HashIndex<>() : crf.edgeFeatureIndicesMap;
+      for (int f = 0; f < map.length; f++) {
+        if (map[f] == 0) {
+          nodeFeatureIndicesMap.add(f);
+        } else if (map[f] == numLabelIndices - 1) {
+          edgeFeatureIndicesMap.add(f);
+        }
+      }
+
+      int[][][][] data = new int[in.next()][][][];
+      int[][] labels = new int[data.length][];
+      for (int d = 0; d < data.length; d++) {
+        labels[d] = in.next(new int[in.next()]);
+        int[][][] doc = data[d] = new int[in.next()][][];
+        for (int i = 0; i < doc.length; i++) {
+          int[][] position = doc[i] = new int[in.next()][];
+          for (int j = 0; j < position.length; j++) {
+            position[j] = in.next(new int[in.next()]);
+          }
+        }
+      }
+
+      crf.classIndex = classIndex;
+      crf.labelIndices = labelIndices;
+      crf.featureIndex = featureIndex;
+      crf.map = map;
+      crf.nodeFeatureIndicesMap = nodeFeatureIndicesMap;
+      crf.edgeFeatureIndicesMap = edgeFeatureIndicesMap;
+      log.info("Read featurized data of " + data.length + " documents with " + features.size() + " features from " + file);
+      return new Pair<>(data, labels);
+    }
+  }
+
+  private static void writeString(DataOutputStream out, String s) throws IOException {
+    byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+    // keep the ints which follow aligned
+    for (int i = bytes.length; i % 4 != 0; i++) {
+      out.write(0);
+    }
+  }
+
+  private static void writeStrings(DataOutputStream out, Index<String> strings) throws IOException {
+    out.writeInt(strings.size());
+    for (String s : strings) {
+      writeString(out, s);
+    }
+  }
+
+
+  /** Reads the ints of a file through memory maps of at most MAX_REGION bytes. */
+  private static class MappedInts {
+
+    private final FileChannel channel;
+    private final long size;
+    private long regionStart; // = 0
+    private IntBuffer ints;
+
+    MappedInts(FileChannel channel) throws IOException {
+      this.channel = channel;
+      this.size = channel.size();
+      map(0);
+    }
+
+    private void map(long start) throws IOException {
+      regionStart = start;
+      long length = Math.min(MAX_REGION, size - start);
+      ints = channel.map(FileChannel.MapMode.READ_ONLY, start, length & ~3L).asIntBuffer();
+    }
+
+    /** Maps the next region if this one is used up. */
+    private void ensure() throws IOException {
+      if ( ! ints.hasRemaining()) {
+        long next = regionStart + 4L * ints.capacity();
+        if (next >= size) {
+          throw new IOException("Truncated feature cache");
+        }
+        map(next);
+      }
+    }
+
+    int next() throws IOException {
+      ensure();
+      return ints.get();
+    }
+
+    /** Fills the array with the next ints, and returns it. */
+    int[] next(int[] array) throws IOException {
+      int offset = 0;
+      while (offset < array.length) {
+        ensure();
+        int n = Math.min(array.length - offset, ints.remaining());
+        ints.get(array, offset, n);
+        offset += n;
+      }
+      return array;
+    }
+
+    String nextString() throws IOException {
+      int length = next();
+      int[] packed = next(new int[(length + 3) / 4]);
+      ByteBuffer bytes = ByteBuffer.allocate(4 * packed.length);
+      bytes.asIntBuffer().put(packed);
+      return new String(bytes.array(), 0, length, StandardCharsets.UTF_8);
+    }
+
+    List<String> nextStrings() throws IOException {
+      int n = next();
+      List<String> strings = new ArrayList<>(n);
+      for (int i = 0; i < n; i++) {
+        strings.add(nextString());
+      }
+      return strings;
+    }
+
+  }
+
+}
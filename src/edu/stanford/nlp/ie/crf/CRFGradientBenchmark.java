@@ -0,0 +1,133 @@
+package edu.stanford.nlp.ie.crf;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.optimization.Evaluator;
+import edu.stanford.nlp.util.StringUtils;
+import edu.stanford.nlp.util.Timing;
+import edu.stanford.nlp.util.logging.Redwood;
+
+
+/**
+ * Times the CRF training gradient on a training file for increasing numbers of threads,
+ * both with the fixed partition of the documents into one part per thread and with the
+ * fork/join shards of {@code gradientShardSize} documents (see
+ * {@link CRFLogConditionalObjectiveFunction#setGradientShardSize}).  For each it reports
+ * the time of one gradient, the speedup over the first number of threads, and the largest
+ * difference from the gradient computed with it.  (On one thread, both compute the gradient
+ * serially.)
+ * <p>
+ * Usage: {@code java edu.stanford.nlp.ie.crf.CRFGradientBenchmark -prop ner.prop -trainFile train.tsv [-threads 1,2,4,8,16,32] [-gradients 5]}
+ * <br>
+ * The features are made as for training a CRFClassifier with the same properties;
+ * {@code gradientShardSize} defaults to 16.
+ */
+public class CRFGradientBenchmark extends CRFClassifier<CoreLabel> {
+
+  /** A logger for this class */
+  private static final Redwood.RedwoodChannels log = Redwood.channels(CRFGradientBenchmark.class);
+
+  private final int[] threads;
+  private final int gradients;
+
+  private CRFGradientBenchmark(Properties props, int[] threads, int gradients) {
+    super(props);
+    this.threads = threads;
+    this.gradients = gradients;
+    if (flags.gradientShardSize <= 0) {
+      flags.gradientShardSize = 16;
+    }
+  }
+
+  /** Runs the benchmark on the featurized documents instead of training. */
+  @Override
+  protected double[] trainWeights(int[][][][] data, int[][] labels, Evaluator[] evaluators, int pruneFeatureItr, double[][][][] featureVals) {
+    int numWeights = 0;
+    for (int clique : map) {
+      numWeights += labelIndices.get(clique).size();
+    }
+    log.info("Timing gradients over " + data.length + " documents with " + map.length + " features and " + numWeights + " weights");
+    int gradientShardSize = flags.gradientShardSize;
+    double[] x = null;
+    double[] reference = null;
+    double oneThread = 0.0;
+    for (int numThreads : threads) {
+      flags.multiThreadGrad = numThreads;
+      CRFLogConditionalObjectiveFunction func = getObjectiveFunction(data, labels);
+      if (x == null) {
+        x = func.initial();
+        reference = func.derivativeAt(x).clone();
+      } else {
+        func.derivativeAt(x);
+      }
+      double partitioned = time(func, x);
+      double partitionedError = maxDifference(reference, func.getDerivative());
+      func.setGradientShardSize(gradientShardSize);
+      double sharded = time(func, x);
+      double shardedError = maxDifference(reference, func.getDerivative());
+      func.shutdownGradientPool();
+      if (oneThread == 0.0) {
+        oneThread = Math.min(partitioned, sharded);
+      }
+      log.info(String.format("%3d threads  partitioned %9.1f ms (%5.2fx, max diff %.1e)  sharded %9.1f ms (%5.2fx, max diff %.1e)",
+          numThreads, partitioned, oneThread / partitioned, partitionedError,
+          sharded, oneThread / sharded, shardedError));
+    }
+    return x;
+  }
+
+  /** The average time of a gradient in milliseconds, after one gradient to warm up. */
+  private double time(CRFLogConditionalObjectiveFunction func, double[] x) {
+    func.calculate(x);
+    Timing timing = new Timing();
+    for (int i = 0; i < gradients; i++) {
+      func.calculate(x);
+    }
+    return (double) timing.stop() / gradients;
+  }
+
+  private static double maxDifference(double[] a, double[] b) {
+    double max = 0.0;
+    for (int i = 0; i < a.length; i++) {
+      max = Math.max(max, Math.abs(a[i] - b[i]));
+    }
+    return max;
+  }
+
+  public static void main(String[] args) {
+    Properties props = StringUtils.argsToProperties(args);
+    String trainFile = props.getProperty("trainFile");
+    if (trainFile == null) {
+      log.info("Usage: java edu.stanford.nlp.ie.crf.CRFGradientBenchmark -prop ner.prop -trainFile train.tsv [-threads 1,2,4,8,16,32] [-gradients 5]");
+      return;
+    }
+    List<Integer> threadList = new ArrayList<>();
+    String threadsProp = props.getProperty("threads");
+    if (threadsProp == null) {
+      int processors = Runtime.getRuntime().availableProcessors();
+      for (int n = 1; n < processors; n *= 2) {
+        threadList.add(n);
+      }
+      threadList.add(processors);
+    } else {
+      for (String n : threadsProp.split(",")) {
+        threadList.add(Integer.parseInt(n.trim()));
+      }
+    }
+    int[] threads = new int[threadList.size()];
+    for (int i = 0; i < threads.length; i++) {
+      threads[i] = threadList.get(i);
+    }
+    int gradients = Integer.parseInt(props.getProperty("gradients", "5"));
+    props.remove("threads");
+    props.remove("gradients");
+    props.remove("trainFile");
+
+    CRFGradientBenchmark benchmark = new CRFGradientBenchmark(props, threads, gradients);
+    benchmark.train(trainFile);
+  }
+
+}
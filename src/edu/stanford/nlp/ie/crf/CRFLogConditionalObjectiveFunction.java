@@ -11,7 +11,12 @@ import edu.stanford.nlp.util.logging.Redwood;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * @author Jenny Finkel
@@ -76,6 +81,16 @@ public class CRFLogConditionalObjectiveFunction extends AbstractStochasticCachin
   protected double[][] weights;
   protected CliquePotentialFunction cliquePotentialFunc;
 
+  /** If positive, {@link #multiThreadGradient} shards the documents into fork/join tasks of at most this many documents. */
+  protected int gradientShardSize; // = 0
+  private ForkJoinPool gradientPool; // = null
+  private final Queue<SparseCounts> sparseCounts = new ConcurrentLinkedQueue<>();
+  private final ThreadLocal<SparseCounts> workerCounts = ThreadLocal.withInitial(() -> {
+    SparseCounts counts = new SparseCounts();
+    sparseCounts.add(counts);
+    return counts;
+  });
+
   @Override
   public double[] initial() {
     return initial(rand);
@@ -363,6 +378,9 @@ public class CRFLogConditionalObjectiveFunction extends AbstractStochasticCachin
     if (multiThreadGrad <= 1) {
       return (calculateEmpirical ? expectedAndEmpiricalThreadProcessor : expectedThreadProcessor).process(new TaskPart(0, 0, docIDs.length, docIDs)).objective;
     }
+    if (gradientShardSize > 0) {
+      return shardedGradient(docIDs, calculateEmpirical);
+    }
     // TODO: This is a bunch of unnecessary heap traffic, should all be on the stack
     if (parallelE == null) {
       parallelE = new double[multiThreadGrad][][];
@@ -404,6 +422,152 @@ public class CRFLogConditionalObjectiveFunction extends AbstractStochasticCachin
     return objective;
   }
 
+  /**
+   * Computes the expected (and if asked, the empirical) counts of the documents on a
+   * fork/join pool of multiThreadGrad threads, adding them into E (and Ehat), and returns
+   * the summed log probability of the documents.  The documents are split into shards of
+   * at most gradientShardSize documents, which idle threads steal from each other.  Instead of a
+   * full copy of E per thread, each thread counts into rows which it only allocates for
+   * the features it sees, and these are then added into E in parallel over ranges of
+   * features, so that no two threads write the same row and no locks are needed.
+   * The rows are zeroed after they are added, and kept for the next evaluation.
+   * The pool is started on the first call; {@link #shutdownGradientPool()} stops it.
+   */
+  protected double shardedGradient(int[] docIDs, boolean calculateEmpirical) {
+    if (gradientPool == null) {
+      gradientPool = new ForkJoinPool(multiThreadGrad);
+    }
+    double objective = gradientPool.invoke(new ShardTask(docIDs, 0, docIDs.length, calculateEmpirical));
+    gradientPool.invoke(new MergeTask(0, map.length, calculateEmpirical));
+    return objective;
+  }
+
+  /**
+   * Stops the threads of the sharded gradient computation, and drops their count rows.
+   * Call this once training is done.  A later sharded gradient computation starts a new pool.
+   */
+  public void shutdownGradientPool() {
+    if (gradientPool != null) {
+      gradientPool.shutdown();
+      gradientPool = null;
+      sparseCounts.clear();
+    }
+  }
+
+  /**
+   * Sets the number of documents in each shard of the fork/join gradient computation.
+   * A non-positive size, the default, uses the fixed partition of the documents into
+   * multiThreadGrad parts with a full count array each.
+   */
+  public void setGradientShardSize(int gradientShardSize) {
+    this.gradientShardSize = gradientShardSize;
+  }
+
+  /** The counts of one worker thread, with a row for just the features of the documents it has counted so far. */
+  private class SparseCounts {
+    final double[][] e = new double[map.length][];
+    final double[][] eHat = new double[map.length][];
+
+    /** Allocates the rows of the features of a document which are not yet allocated. */
+    void allocate(double[][] counts, int[][][] docData) {
+      for (int[][] docData_i : docData) {
+        for (int[] docData_ij : docData_i) {
+          for (int feature : docData_ij) {
+            if (counts[feature] == null) {
+              counts[feature] = new double[labelIndices.get(map[feature]).size()];
+            }
+          }
+        }
+      }
+    }
+  }
+
+  /** Counts a range of documents, splitting it in two while it is longer than gradientShardSize. */
+  private class ShardTask extends RecursiveTask<Double> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int[] docIDs;
+    private final int begin, end;
+    private final boolean calculateEmpirical;
+
+    ShardTask(int[] docIDs, int begin, int end, boolean calculateEmpirical) {
+      this.docIDs = docIDs;
+      this.begin = begin;
+      this.end = end;
+      this.calculateEmpirical = calculateEmpirical;
+    }
+
+    @Override
+    protected Double compute() {
+      if (end - begin > gradientShardSize) {
+        int middle = (begin + end) >>> 1;
+        ShardTask left = new ShardTask(docIDs, begin, middle, calculateEmpirical);
+        left.fork();
+        double right = new ShardTask(docIDs, middle, end, calculateEmpirical).compute();
+        return left.join() + right;
+      }
+      SparseCounts counts = workerCounts.get();
+      double probSum = 0.0;
+      for (int i = begin; i < end; i++) {
+        int docIndex = docIDs[i];
+        counts.allocate(counts.e, data[docIndex]);
+        if (calculateEmpirical) {
+          counts.allocate(counts.eHat, data[docIndex]);
+          probSum += expectedAndEmpiricalCountsAndValueForADoc(counts.e, counts.eHat, docIndex);
+        } else {
+          probSum += expectedCountsAndValueForADoc(counts.e, docIndex);
+        }
+      }
+      return probSum;
+    }
+  }
+
+  /** Adds the rows of all the workers for a range of features into E (and Ehat), and zeroes them for the next evaluation. */
+  private class MergeTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int MIN_FEATURES = 4096;
+
+    private final int begin, end;
+    private final boolean calculateEmpirical;
+
+    MergeTask(int begin, int end, boolean calculateEmpirical) {
+      this.begin = begin;
+      this.end = end;
+      this.calculateEmpirical = calculateEmpirical;
+    }
+
+    @Override
+    protected void compute() {
+      if (end - begin > MIN_FEATURES) {
+        int middle = (begin + end) >>> 1;
+        invokeAll(new MergeTask(begin, middle, calculateEmpirical), new MergeTask(middle, end, calculateEmpirical));
+        return;
+      }
+      for (SparseCounts counts : sparseCounts) {
+        merge(E, counts.e);
+        if (calculateEmpirical) {
+          merge(Ehat, counts.eHat);
+        }
+      }
+    }
+
+    private void merge(double[][] into, double[][] rows) {
+      for (int i = begin; i < end; i++) {
+        double[] row = rows[i];
+        if (row != null) {
+          double[] into_i = into[i];
+          for (int j = 0; j < row.length; j++) {
+            into_i[j] += row[j];
+            row[j] = 0.0;
+          }
+        }
+      }
+    }
+  }
+
   /**
    * Calculates both value and partial derivatives at the point x, and save them internally.
    */
@@ -169,17 +169,6 @@ public class FactorTable  {
     return indices;
   }
 
-  private int[] indicesEnd(int entry) {
-    int index = entry;
-    int[] indices = new int[SloppyMath.intPow(numClasses, windowSize - 1)];
-    for (int i = 0; i < indices.length; i++) {
-      indices[i] = index;
-      index += numClasses;
-    }
-    // log.info("indicesEnd returning: " + Arrays.toString(indices));
-    return indices;
-  }
-
 
   /** This now returns the first index of the requested entries.
    *  The run of numClasses ^ (windowSize - entries.length)
@@ -299,6 +288,22 @@ public class FactorTable  {
     return result;
   }
 
+  /**
+   * Computes the log probability of the tag at the end of the table given the previous tags,
+   * for every cell of the table at once: the result at the index of (given..., of) is
+   * {@code conditionalLogProbGivenPrevious(given, of)}.
+   *
+   * @param result Where to put the conditional log probabilities, of the size of the table
+   */
+  void conditionalLogProbsGivenPrevious(double[] result) {
+    for (int start = 0; start < table.length; start += numClasses) {
+      final double z = ArrayMath.logSum(table, start, start + numClasses);
+      for (int i = start, end = start + numClasses; i < end; i++) {
+        result[i] = table[i] - z;
+      }
+    }
+  }
+
   /**
    * Computes the probability of the sequence OF being at the end of the table
    * given that the first tag in table is GIVEN. given is at the beginning, of is
@@ -406,12 +411,8 @@ public class FactorTable  {
   }
 
   public double unnormalizedLogProbEnd(int label) {
-    int[] labels = indicesEnd(label);
-    double[] masses = new double[labels.length];
-    for (int i = 0; i < masses.length; i++) {
-      masses[i] = table[labels[i]];
-    }
-    return ArrayMath.logSum(masses);
+    // the entries ending in label are every numClasses'th one, starting at label
+    return ArrayMath.logSum(table, label, table.length, numClasses);
   }
 
   public double logProbEnd(int label) {
@@ -458,17 +459,26 @@ public class FactorTable  {
     logIncrementValue(indexOf(label), value);
   }
 
+  // These two are written as plain loops over runs of the table, without a division per cell,
+  // so that the JIT can vectorize the inner loops.
+
   public void multiplyInFront(FactorTable other) {
-    int divisor = SloppyMath.intPow(numClasses, windowSize - other.windowSize());
-    for (int i = 0; i < table.length; i++) {
-      table[i] += other.getValue(i / divisor);
+    int run = SloppyMath.intPow(numClasses, windowSize - other.windowSize());
+    for (int j = 0, start = 0, sz = other.table.length; j < sz; j++, start += run) {
+      final double value = other.table[j];
+      for (int i = start, end = start + run; i < end; i++) {
+        table[i] += value;
+      }
     }
   }
 
   public void multiplyInEnd(FactorTable other) {
-    int divisor = SloppyMath.intPow(numClasses, other.windowSize());
-    for (int i = 0; i < table.length; i++) {
-      table[i] += other.getValue(i % divisor);
+    final double[] otherTable = other.table;
+    final int run = otherTable.length;
+    for (int start = 0; start < table.length; start += run) {
+      for (int j = 0; j < run; j++) {
+        table[start + j] += otherTable[j];
+      }
     }
   }
 
@@ -0,0 +1,142 @@
+package edu.stanford.nlp.ie.crf;
+
+import edu.stanford.nlp.math.SloppyMath;
+import edu.stanford.nlp.util.RuntimeInterruptedException;
+
+import java.util.Arrays;
+
+
+/**
+ * Viterbi decoding straight from the calibrated {@link FactorTable}s of a {@link CRFCliqueTree}.
+ * This finds the same sequence as running {@link edu.stanford.nlp.sequences.ExactBestSequenceFinder}
+ * on a {@link TestSequenceModel}, but rather than asking the model for the scores of each window
+ * of labels through {@code scoresOf(int[], int)}, which allocates arrays and recomputes the
+ * normalization of the factor table for every call, it works on flat arrays: the conditional
+ * log probabilities of a whole factor table are computed in one pass, and the Viterbi state
+ * is a flat array indexed by the previous {@code window - 1} labels, just like the rows of the
+ * factor tables.  The inner loops run over contiguous runs of these arrays.
+ *
+ * @author Jenny Finkel (factor table layout)
+ */
+public class LinearChainViterbi {
+
+  private LinearChainViterbi() {} // static methods
+
+  /**
+   * Find the most likely label sequence.
+   *
+   * @param factorTables The calibrated factor tables of a CRFCliqueTree, one per position
+   * @param backgroundIndex The label assumed before the start of the sequence
+   * @param allowedLabels For each position, the labels it may take, or null to allow all labels
+   *                      at every position.  An entry may also be null to allow all labels there.
+   * @return The best sequence, preceded by {@code window - 1} background labels,
+   *     as returned by {@code ExactBestSequenceFinder} on a TestSequenceModel
+   */
+  public static int[] bestSequence(FactorTable[] factorTables, int backgroundIndex, int[][] allowedLabels) {
+    final int length = factorTables.length;
+    final int window = factorTables[0].windowSize();
+    final int numClasses = factorTables[0].numClasses();
+    final int leftWindow = window - 1;
+    int[] sequence = new int[length + leftWindow];
+    Arrays.fill(sequence, 0, leftWindow, backgroundIndex);
+
+    if (window == 1) {
+      // no transitions: just the best label at each position
+      for (int pos = 0; pos < length; pos++) {
+        double[] logProbs = new double[numClasses];
+        factorTables[pos].conditionalLogProbsGivenPrevious(logProbs);
+        sequence[pos] = argmax(logProbs, allowed(allowedLabels, pos));
+      }
+      return sequence;
+    }
+
+    // A state is the previous window - 1 labels, indexed as in a factor table of that size;
+    // a cell of a factor table is a state followed by a label, so the state after the cell
+    // is its index modulo the number of states.
+    final int numStates = SloppyMath.intPow(numClasses, leftWindow);
+    double[] delta = new double[numStates];
+    double[] nextDelta = new double[numStates];
+    int[][] backPointers = new int[length][numStates];
+    double[] logProbs = new double[numStates * numClasses];
+
+    Arrays.fill(delta, Double.NEGATIVE_INFINITY);
+    int start = 0;
+    for (int i = 0; i < leftWindow; i++) {
+      start = start * numClasses + backgroundIndex;
+    }
+    delta[start] = 0.0;
+
+    for (int pos = 0; pos < length; pos++) {
+      if (Thread.interrupted()) {  // Allow interrupting
+        throw new RuntimeInterruptedException();
+      }
+      factorTables[pos].conditionalLogProbsGivenPrevious(logProbs);
+      Arrays.fill(nextDelta, Double.NEGATIVE_INFINITY);
+      final int[] back = backPointers[pos];
+      final int[] allowed = allowed(allowedLabels, pos);
+      for (int state = 0; state < numStates; state++) {
+        final double score = delta[state];
+        if (score == Double.NEGATIVE_INFINITY) {
+          continue;
+        }
+        final int row = state * numClasses;
+        final int next = row % numStates;
+        if (allowed == null) {
+          for (int label = 0; label < numClasses; label++) {
+            final double s = score + logProbs[row + label];
+            if (s > nextDelta[next + label]) {
+              nextDelta[next + label] = s;
+              back[next + label] = state;
+            }
+          }
+        } else {
+          for (int label : allowed) {
+            final double s = score + logProbs[row + label];
+            if (s > nextDelta[next + label]) {
+              nextDelta[next + label] = s;
+              back[next + label] = state;
+            }
+          }
+        }
+      }
+      double[] tmp = delta;
+      delta = nextDelta;
+      nextDelta = tmp;
+    }
+
+    // Trace back from the best final state
+    int state = argmax(delta, null);
+    for (int pos = length - 1; pos >= 0; pos--) {
+      sequence[pos + leftWindow] = state % numClasses;
+      state = backPointers[pos][state];
+    }
+    return sequence;
+  }
+
+  private static int[] allowed(int[][] allowedLabels, int pos) {
+    return allowedLabels == null ? null : allowedLabels[pos];
+  }
+
+  /** The index of the first largest score, among the allowed indices if not null. */
+  private static int argmax(double[] scores, int[] allowed) {
+    int best = -1;
+    double bestScore = Double.NEGATIVE_INFINITY;
+    if (allowed == null) {
+      for (int i = 0; i < scores.length; i++) {
+        if (best < 0 || scores[i] > bestScore) {
+          best = i;
+          bestScore = scores[i];
+        }
+      }
+    } else {
+      for (int i : allowed) {
+        if (best < 0 || scores[i] > bestScore) {
+          best = i;
+          bestScore = scores[i];
+        }
+      }
+    }
+    return best;
+  }
+
+}
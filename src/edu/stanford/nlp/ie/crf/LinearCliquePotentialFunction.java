@@ -7,21 +7,40 @@ public class LinearCliquePotentialFunction implements CliquePotentialFunction {
 
   private final float[][] fWeights;
   private final double[][] dWeights;
+  private final PackedCRFWeights pWeights;
 
   LinearCliquePotentialFunction(float[][] weights) {
     this.fWeights = weights;
     this.dWeights = null;
+    this.pWeights = null;
   }
 
   LinearCliquePotentialFunction(double[][] weights) {
     this.fWeights = null;
     this.dWeights = weights;
+    this.pWeights = null;
+  }
+
+  LinearCliquePotentialFunction(PackedCRFWeights weights) {
+    this.fWeights = null;
+    this.dWeights = null;
+    this.pWeights = weights;
   }
 
   @Override
   public double computeCliquePotential(int cliqueSize, int labelIndex,
                                        int[] cliqueFeatures, double[] featureVal, int posInSent) {
     double output = 0.0;
+    if (pWeights != null) {
+      for (int m = 0; m < cliqueFeatures.length; m++) {
+        double dotProd = pWeights.get(cliqueFeatures[m], labelIndex);
+        if (featureVal != null) {
+          dotProd *= featureVal[m];
+        }
+        output += dotProd;
+      }
+      return output;
+    }
     for (int m = 0; m < cliqueFeatures.length; m++) {
       double dotProd = fWeights == null ? dWeights[cliqueFeatures[m]][labelIndex] : fWeights[cliqueFeatures[m]][labelIndex];
       if (featureVal != null) {
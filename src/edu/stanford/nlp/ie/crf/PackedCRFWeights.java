@@ -0,0 +1,348 @@
+package edu.stanford.nlp.ie.crf;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+
+import edu.stanford.nlp.io.MappedObjectStreams;
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.util.StringUtils;
+import edu.stanford.nlp.util.Timing;
+import edu.stanford.nlp.util.logging.Redwood;
+
+
+/**
+ * The weights of a {@link CRFClassifier} in one flat array, optionally quantized.
+ * A CRFClassifier normally keeps its weights as a {@code float[][]} with one array per
+ * feature, which costs an object header and a reference for each feature on top of
+ * the weights themselves.  Here the rows of all the features are laid end to end, and
+ * with the {@link Format#INT16} or {@link Format#INT8} formats each weight is stored as a
+ * short or a byte, times a scale for each feature: the largest weight of the feature divided
+ * by the largest short or byte, so that every weight is kept to within half of that scale.
+ * <p>
+ * Use {@code packedWeights = float|int16|int8} (or {@code ner.packedWeights} in CoreNLP)
+ * to have a CRFClassifier pack its weights when it is loaded.  A classifier with packed
+ * weights also serializes them packed.  A classifier written with
+ * {@link edu.stanford.nlp.ie.AbstractSequenceClassifier#serializeClassifierMapped} always
+ * has its weights packed, as floats if they weren't packed already, and when it is loaded
+ * the float weights are read in place from the mapped file rather than copied into the heap.
+ * <p>
+ * The main method reports the size, weight error, speed and agreement with the original
+ * model of each format: <br>
+ * {@code java edu.stanford.nlp.ie.crf.PackedCRFWeights -loadClassifier model.ser.gz -testFile test.tsv}
+ */
+public abstract class PackedCRFWeights implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  /** A logger for this class */
+  private static final Redwood.RedwoodChannels log = Redwood.channels(PackedCRFWeights.class);
+
+  public enum Format {
+    /** Floats in one flat array: no loss of precision. */
+    FLOAT,
+    /** 16 bit weights with a scale per feature. */
+    INT16,
+    /** 8 bit weights with a scale per feature. */
+    INT8;
+
+    /** Reads a format name, such as "int8", ignoring case. */
+    public static Format fromString(String name) {
+      try {
+        return valueOf(name.trim().toUpperCase(Locale.ROOT));
+      } catch (IllegalArgumentException e) {
+        throw new IllegalArgumentException("Unknown packed weight format " + name + "; should be float, int16 or int8");
+      }
+    }
+  }
+
+  /** The weights of feature i start at offsets[i] of the flat array, and end at offsets[i + 1]. */
+  final int[] offsets;
+
+  private PackedCRFWeights(float[][] weights) {
+    offsets = new int[weights.length + 1];
+    for (int i = 0; i < weights.length; i++) {
+      offsets[i + 1] = offsets[i] + weights[i].length;
+    }
+  }
+
+  /** Packs weights of the form {@code weights[featureIndex][labelIndex]} in the given format. */
+  public static PackedCRFWeights pack(float[][] weights, Format format) {
+    switch (format) {
+      case FLOAT:
+        return new Floats(weights);
+      case INT16:
+        return new Shorts(weights);
+      case INT8:
+        return new Bytes(weights);
+      default:
+        throw new IllegalArgumentException("Unknown packed weight format " + format);
+    }
+  }
+
+  public abstract Format format();
+
+  /** The (possibly approximate) weight of the label for the feature. */
+  public abstract float get(int feature, int label);
+
+  /** The number of features. */
+  public int numFeatures() {
+    return offsets.length - 1;
+  }
+
+  /** The total number of weights. */
+  public int numWeights() {
+    return offsets[offsets.length - 1];
+  }
+
+  /** The weights as a {@code weights[featureIndex][labelIndex]} array, as closely as they are stored. */
+  public float[][] unpack() {
+    float[][] weights = new float[numFeatures()][];
+    for (int i = 0; i < weights.length; i++) {
+      weights[i] = new float[offsets[i + 1] - offsets[i]];
+      for (int j = 0; j < weights[i].length; j++) {
+        weights[i][j] = get(i, j);
+      }
+    }
+    return weights;
+  }
+
+  /** An estimate of the heap used by these weights, in bytes. */
+  public abstract long sizeInBytes();
+
+  /** An estimate of the heap used by weights stored as a float[][], in bytes (assuming compressed references). */
+  public static long sizeInBytes(float[][] weights) {
+    long size = arraySize(weights.length, 4);
+    for (float[] row : weights) {
+      size += arraySize(row.length, 4);
+    }
+    return size;
+  }
+
+  /** The size of an array with a 16 byte header, rounded up to 8 bytes. */
+  static long arraySize(long length, int elementSize) {
+    return (16 + length * elementSize + 7) & ~7L;
+  }
+
+
+  static class Floats extends PackedCRFWeights {
+
+    private static final long serialVersionUID = 2L;
+
+    /** In a mapped model file, these are read in place from the file. */
+    private final MappedObjectStreams.FloatArray values;
+
+    Floats(float[][] weights) {
+      super(weights);
+      float[] flat = new float[numWeights()];
+      for (int i = 0; i < weights.length; i++) {
+        System.arraycopy(weights[i], 0, flat, offsets[i], weights[i].length);
+      }
+      values = new MappedObjectStreams.FloatArray(flat);
+    }
+
+    @Override
+    public Format format() {
+      return Format.FLOAT;
+    }
+
+    @Override
+    public float get(int feature, int label) {
+      return values.get(offsets[feature] + label);
+    }
+
+    /** Whether the weights are read from a mapped model file, rather than from the heap. */
+    boolean isMapped() {
+      return values.isMapped();
+    }
+
+    @Override
+    public long sizeInBytes() {
+      return arraySize(offsets.length, 4) + (values.isMapped() ? 0 : arraySize(values.length(), 4));
+    }
+
+  }
+
+
+  /** Weights stored as integers of at most 16 bits, times a scale for each feature. */
+  private abstract static class Quantized extends PackedCRFWeights {
+
+    private static final long serialVersionUID = 1L;
+
+    final float[] scales;
+
+    Quantized(float[][] weights, int maxValue) {
+      super(weights);
+      scales = new float[weights.length];
+      for (int i = 0; i < weights.length; i++) {
+        float max = 0.0f;
+        for (float w : weights[i]) {
+          max = Math.max(max, Math.abs(w));
+        }
+        scales[i] = max / maxValue;
+      }
+    }
+
+    /** The weight as a multiple of the scale of its feature. */
+    int quantize(float weight, int feature) {
+      return scales[feature] == 0.0f ? 0 : Math.round(weight / scales[feature]);
+    }
+
+  }
+
+
+  private static class Shorts extends Quantized {
+
+    private static final long serialVersionUID = 1L;
+
+    private final short[] values;
+
+    Shorts(float[][] weights) {
+      super(weights, Short.MAX_VALUE);
+      values = new short[numWeights()];
+      for (int i = 0; i < weights.length; i++) {
+        for (int j = 0; j < weights[i].length; j++) {
+          values[offsets[i] + j] = (short) quantize(weights[i][j], i);
+        }
+      }
+    }
+
+    @Override
+    public Format format() {
+      return Format.INT16;
+    }
+
+    @Override
+    public float get(int feature, int label) {
+      return values[offsets[feature] + label] * scales[feature];
+    }
+
+    @Override
+    public long sizeInBytes() {
+      return arraySize(offsets.length, 4) + arraySize(scales.length, 4) + arraySize(values.length, 2);
+    }
+
+  }
+
+
+  private static class Bytes extends Quantized {
+
+    private static final long serialVersionUID = 1L;
+
+    private final byte[] values;
+
+    Bytes(float[][] weights) {
+      super(weights, Byte.MAX_VALUE);
+      values = new byte[numWeights()];
+      for (int i = 0; i < weights.length; i++) {
+        for (int j = 0; j < weights[i].length; j++) {
+          values[offsets[i] + j] = (byte) quantize(weights[i][j], i);
+        }
+      }
+    }
+
+    @Override
+    public Format format() {
+      return Format.INT8;
+    }
+
+    @Override
+    public float get(int feature, int label) {
+      return values[offsets[feature] + label] * scales[feature];
+    }
+
+    @Override
+    public long sizeInBytes() {
+      return arraySize(offsets.length, 4) + arraySize(scales.length, 4) + arraySize(values.length, 1);
+    }
+
+  }
+
+
+  /**
+   * Compares the packed formats with the original weights of a classifier: the size of the
+   * weights, the largest and average error of a weight, the time to classify the test file,
+   * and how many of the labels agree with those of the original classifier.
+   * <p>
+   * Usage: {@code java edu.stanford.nlp.ie.crf.PackedCRFWeights -loadClassifier model -testFile file [-formats int8,int16,float]}
+   * Other properties are passed to the classifier, as for CRFClassifier, except for packedWeights,
+   * which is refused, since the original classifier has to keep its float weights.
+   */
+  public static void main(String[] args) throws Exception {
+    Properties props = StringUtils.argsToProperties(args);
+    String model = props.getProperty("loadClassifier");
+    String testFile = props.getProperty("testFile");
+    if (model == null || testFile == null) {
+      log.info("Usage: java edu.stanford.nlp.ie.crf.PackedCRFWeights -loadClassifier model -testFile file [-formats int8,int16,float]");
+      return;
+    }
+    if (props.stringPropertyNames().stream().anyMatch(key -> key.equalsIgnoreCase("packedWeights") || key.equalsIgnoreCase("ner.packedWeights"))) {
+      // the original classifier has to keep its float weights, for the others to be compared to
+      log.info("Give the formats to compare with -formats, not -packedWeights");
+      return;
+    }
+    String[] formats = props.getProperty("formats", "float,int16,int8").split(",");
+    props.remove("formats");
+    props.remove("loadClassifier");
+    props.remove("testFile");
+
+    CRFClassifier<CoreLabel> original = CRFClassifier.getClassifier(model, props);
+    List<List<CoreLabel>> documents = new ArrayList<>();
+    for (List<CoreLabel> document : original.makeObjectBankFromFile(testFile, original.makeReaderAndWriter())) {
+      documents.add(document);
+    }
+    float[][] weights = original.weights;
+    long originalSize = sizeInBytes(weights);
+    List<List<String>> expected = new ArrayList<>();
+    long originalTime = classify(original, documents, expected);
+    log.info(String.format("%-8s %12d bytes  %10s  %10s  %8d ms", "original", originalSize, "", "", originalTime));
+
+    for (String name : formats) {
+      Format format = Format.fromString(name);
+      PackedCRFWeights packed = pack(weights, format);
+      double maxError = 0.0;
+      double totalError = 0.0;
+      for (int i = 0; i < weights.length; i++) {
+        for (int j = 0; j < weights[i].length; j++) {
+          double error = Math.abs(packed.get(i, j) - weights[i][j]);
+          maxError = Math.max(maxError, error);
+          totalError += error;
+        }
+      }
+      CRFClassifier<CoreLabel> crf = CRFClassifier.getClassifier(model, props);
+      crf.packWeights(format);
+      List<List<String>> labels = new ArrayList<>();
+      long time = classify(crf, documents, labels);
+      int agree = 0;
+      int total = 0;
+      for (int d = 0; d < labels.size(); d++) {
+        for (int t = 0; t < labels.get(d).size(); t++) {
+          total++;
+          if (labels.get(d).get(t).equals(expected.get(d).get(t))) {
+            agree++;
+          }
+        }
+      }
+      log.info(String.format("%-8s %12d bytes  max error %.2e  mean error %.2e  %8d ms  %.3f%% labels agree (%.1fx smaller)",
+          format, packed.sizeInBytes(), maxError, totalError / Math.max(1, packed.numWeights()), time,
+          100.0 * agree / Math.max(1, total), (double) originalSize / packed.sizeInBytes()));
+    }
+  }
+
+  /** Classifies copies of the documents, recording the labels, and returns the time taken in milliseconds. */
+  private static long classify(CRFClassifier<CoreLabel> crf, List<List<CoreLabel>> documents, List<List<String>> labels) {
+    Timing timing = new Timing();
+    for (List<CoreLabel> document : documents) {
+      List<String> answers = new ArrayList<>();
+      for (CoreLabel token : crf.classify(new ArrayList<>(document))) {
+        answers.add(token.get(CoreAnnotations.AnswerAnnotation.class));
+      }
+      labels.add(answers);
+    }
+    return timing.report();
+  }
+
+}
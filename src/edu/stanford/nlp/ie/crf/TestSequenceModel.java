@@ -78,6 +78,16 @@ public class TestSequenceModel implements SequenceModel {
       allowedTagsAtPosition[realPos];
   }
 
+  /**
+   * The best label sequence under this model, padded at the front with {@link #leftWindow()}
+   * background labels, as {@link edu.stanford.nlp.sequences.ExactBestSequenceFinder} returns it.
+   * This decodes straight from the factor tables with {@link LinearChainViterbi}, which is much
+   * faster than going through {@link #scoresOf(int[], int)}.
+   */
+  public int[] bestSequence() {
+    return LinearChainViterbi.bestSequence(cliqueTree.getFactorTables(), cliqueTree.backgroundIndex(), allowedTagsAtPosition);
+  }
+
   /**
    * Get the probability of label with labelIndex for the token at position
    * @return
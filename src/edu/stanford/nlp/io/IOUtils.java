@@ -275,6 +275,9 @@ public class IOUtils  {
    */
   public static <T> T readObjectFromFile(File file) throws IOException,
           ClassNotFoundException {
+    if (MappedObjectStreams.isMappedFile(file)) {
+      return MappedObjectStreams.readObject(file);
+    }
     try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(
             new GZIPInputStream(new FileInputStream(file))))) {
       Object o = ois.readObject();
@@ -306,7 +309,7 @@ public class IOUtils  {
    * @return The object read from the file.
    */
   public static <T> T readObjectFromURLOrClasspathOrFileSystem(String filename) throws IOException, ClassNotFoundException {
-    try (ObjectInputStream ois = new ObjectInputStream(getInputStreamFromURLOrClasspathOrFileSystem(filename))) {
+    try (ObjectInputStream ois = readStreamFromString(filename)) {
       Object o = ois.readObject();
       return ErasureUtils.uncheckedCast(o);
     }
@@ -391,6 +394,7 @@ public class IOUtils  {
    * Returns an ObjectInputStream reading from any of a URL, a CLASSPATH resource, or a file.
    * The CLASSPATH takes priority over the file system.
    * This stream is buffered and, if necessary, gunzipped.
+   * A file in the {@link MappedObjectStreams} format has its arrays memory mapped instead.
    *
    * @param filenameOrUrl The String specifying the URL/resource/file to load
    * @return An ObjectInputStream for loading a resource
@@ -399,6 +403,9 @@ public class IOUtils  {
    */
   public static ObjectInputStream readStreamFromString(String filenameOrUrl)
           throws IOException {
+    if (MappedObjectStreams.isMappedFile(filenameOrUrl)) {
+      return MappedObjectStreams.open(new File(filenameOrUrl));
+    }
     InputStream is = getInputStreamFromURLOrClasspathOrFileSystem(filenameOrUrl);
     return new ObjectInputStream(is);
   }
@@ -0,0 +1,436 @@
+package edu.stanford.nlp.io;
+
+import edu.stanford.nlp.util.ErasureUtils;
+
+import java.io.*;
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A file format for serialized models which keeps their large numeric arrays out of
+ * Java serialization.
+ * <br>
+ * The file starts with a short header and an ordinary (uncompressed) Java serialization
+ * stream, in which every {@code float}, {@code double} or {@code int} array, or array of
+ * such arrays, with at least {@link #MIN_ELEMENTS} elements is replaced by a small
+ * reference.  The arrays themselves follow, laid out flat and little endian.  When the
+ * stream is read, each reference is resolved by memory mapping its region of the file
+ * with {@link FileChannel#map} and bulk copying it into a new array.  This skips both
+ * gunzipping and the element by element decoding of {@link ObjectInputStream}, and the
+ * array data is read straight from the page cache.
+ * <br>
+ * A model which wraps its floats in a {@link FloatArray} instead gets no copy at all:
+ * the FloatArray which is read back is a view of the mapping, which is read in place,
+ * so those floats take no heap, load in no time, and are shared through the page cache
+ * by every JVM on a host which loads the same model.  The weights of a
+ * {@link edu.stanford.nlp.ie.crf.CRFClassifier} are written this way.
+ * <br>
+ * Anything which is written with an {@link ObjectOutputStream} can be written this way,
+ * and read back through {@link #open(File)}.  {@link IOUtils#readStreamFromString(String)},
+ * {@link IOUtils#readObjectFromURLOrClasspathOrFileSystem(String)} and the sequence
+ * classifiers recognize these files by their header, so a model can be converted and then
+ * loaded from the same property as before.  Only files in the file system can be mapped,
+ * not classpath resources or URLs.
+ * <br>
+ * To convert a model which is stored as a single serialized object:
+ * <pre>
+ *   java edu.stanford.nlp.io.MappedObjectStreams model.ser.gz model.mapped
+ * </pre>
+ */
+public class MappedObjectStreams {
+
+  /** The first bytes of every file in this format. */
+  private static final byte[] MAGIC = { 'C', 'N', 'L', 'P', 'M', 'A', 'P', '1' };
+
+  /** The magic number, then the offset of the array data. */
+  private static final int HEADER_LENGTH = MAGIC.length + Long.BYTES;
+
+  /** Arrays with fewer elements than this are left in the serialization stream. */
+  public static final int MIN_ELEMENTS = 1024;
+
+  private MappedObjectStreams() {} // static methods
+
+  /** Something which writes a model to an ObjectOutputStream, e.g., {@code classifier::serializeClassifier}. */
+  @FunctionalInterface
+  public interface ObjectWriter {
+    void write(ObjectOutputStream oos) throws IOException;
+  }
+
+  /**
+   * An array of floats which, in a file in this format, is read in place from the mapped
+   * file rather than copied into the heap.  Anywhere else, e.g., in an ordinary
+   * serialization stream, it is just an array.  It can't be changed, and it may be read
+   * by any number of threads at once.
+   */
+  public static final class FloatArray implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private transient FloatBuffer buffer;
+
+    /** Wraps the array, which shouldn't be changed afterwards. */
+    public FloatArray(float[] values) {
+      buffer = FloatBuffer.wrap(values);
+    }
+
+    private FloatArray(FloatBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    public float get(int i) {
+      return buffer.get(i);
+    }
+
+    public int length() {
+      return buffer.limit();
+    }
+
+    /** Whether the floats are read from a mapped file, rather than from an array in the heap. */
+    public boolean isMapped() {
+      return buffer.isDirect();
+    }
+
+    /** A copy of the floats. */
+    public float[] toArray() {
+      float[] values = new float[buffer.limit()];
+      buffer.duplicate().get(values);
+      return values;
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+      out.defaultWriteObject();
+      out.writeObject(toArray());
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+      in.defaultReadObject();
+      buffer = FloatBuffer.wrap((float[]) in.readObject());
+    }
+
+  }
+
+  /** Stands in the serialization stream for an array stored after it. */
+  private static class ArrayRef implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /** 'F', 'D' or 'I' */
+    final char type;
+    /** The length of each row, or null for a one dimensional array */
+    final int[] rowLengths;
+    /** The number of elements in total */
+    final long length;
+    /** Where the data starts, relative to the start of the array data */
+    final long offset;
+    /** Whether this is a {@link FloatArray}, which is read in place */
+    final boolean inPlace;
+
+    ArrayRef(char type, int[] rowLengths, long length, long offset, boolean inPlace) {
+      this.type = type;
+      this.rowLengths = rowLengths;
+      this.length = length;
+      this.offset = offset;
+      this.inPlace = inPlace;
+    }
+
+    int elementBytes() {
+      return type == 'D' ? Double.BYTES : Integer.BYTES;
+    }
+  }
+
+  /** Replaces large arrays with {@link ArrayRef}s, keeping the arrays to write out later. */
+  private static class ExternalizingOutputStream extends ObjectOutputStream {
+    final List<Object> arrays = new ArrayList<>();
+    final List<ArrayRef> refs = new ArrayList<>();
+    private final Map<Object, ArrayRef> seen = new IdentityHashMap<>();
+    private long nextOffset; // = 0
+
+    ExternalizingOutputStream(OutputStream out) throws IOException {
+      super(out);
+      enableReplaceObject(true);
+    }
+
+    @Override
+    protected Object replaceObject(Object obj) {
+      ArrayRef ref = seen.get(obj);
+      if (ref != null) {
+        return ref;
+      }
+      char type;
+      int[] rowLengths = null;
+      long length;
+      if (obj instanceof FloatArray) {
+        // however short it is, since it is read back as a FloatArray and not an array
+        float[] values = ((FloatArray) obj).toArray();
+        ref = new ArrayRef('F', null, values.length, nextOffset, true);
+        nextOffset += align((long) values.length * Float.BYTES);
+        seen.put(obj, ref);
+        arrays.add(values);
+        refs.add(ref);
+        return ref;
+      } else if (obj instanceof float[]) {
+        type = 'F';
+        length = ((float[]) obj).length;
+      } else if (obj instanceof double[]) {
+        type = 'D';
+        length = ((double[]) obj).length;
+      } else if (obj instanceof int[]) {
+        type = 'I';
+        length = ((int[]) obj).length;
+      } else if (obj instanceof float[][] || obj instanceof double[][] || obj instanceof int[][]) {
+        type = obj instanceof float[][] ? 'F' : obj instanceof double[][] ? 'D' : 'I';
+        Object[] rows = (Object[]) obj;
+        rowLengths = new int[rows.length];
+        length = 0;
+        for (int i = 0; i < rows.length; ++i) {
+          if (rows[i] == null) {
+            return obj;  // can't represent this; leave it to ordinary serialization
+          }
+          rowLengths[i] = Array.getLength(rows[i]);
+          length += rowLengths[i];
+        }
+      } else {
+        return obj;
+      }
+      if (length < MIN_ELEMENTS) {
+        return obj;
+      }
+      ref = new ArrayRef(type, rowLengths, length, nextOffset, false);
+      nextOffset += align(length * ref.elementBytes());
+      seen.put(obj, ref);
+      arrays.add(obj);
+      refs.add(ref);
+      return ref;
+    }
+  }
+
+  /** Resolves {@link ArrayRef}s by mapping the array data of the file. */
+  private static class MappedInputStream extends ObjectInputStream {
+    private final FileChannel channel;
+    private final long arraysStart;
+
+    MappedInputStream(FileChannel channel, long arraysStart) throws IOException {
+      super(new BufferedInputStream(Channels.newInputStream(channel.position(HEADER_LENGTH))));
+      this.channel = channel;
+      this.arraysStart = arraysStart;
+      enableResolveObject(true);
+    }
+
+    @Override
+    protected Object resolveObject(Object obj) throws IOException {
+      if ( ! (obj instanceof ArrayRef)) {
+        return obj;
+      }
+      ArrayRef ref = (ArrayRef) obj;
+      long bytes = ref.length * ref.elementBytes();
+      if (bytes > Integer.MAX_VALUE) {
+        throw new IOException("Array of " + ref.length + " elements is too large to map");
+      }
+      MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, arraysStart + ref.offset, bytes);
+      ByteBuffer buffer = mapped.order(ByteOrder.LITTLE_ENDIAN);
+      if (ref.inPlace) {
+        return new FloatArray(buffer.asFloatBuffer().asReadOnlyBuffer());
+      }
+      int[] rowLengths = ref.rowLengths == null ? new int[] { (int) ref.length } : ref.rowLengths;
+      Object[] rows;
+      switch (ref.type) {
+        case 'F': {
+          FloatBuffer in = buffer.asFloatBuffer();
+          float[][] out = new float[rowLengths.length][];
+          for (int i = 0; i < out.length; ++i) {
+            out[i] = new float[rowLengths[i]];
+            in.get(out[i]);
+          }
+          rows = out;
+          break;
+        }
+        case 'D': {
+          DoubleBuffer in = buffer.asDoubleBuffer();
+          double[][] out = new double[rowLengths.length][];
+          for (int i = 0; i < out.length; ++i) {
+            out[i] = new double[rowLengths[i]];
+            in.get(out[i]);
+          }
+          rows = out;
+          break;
+        }
+        case 'I': {
+          IntBuffer in = buffer.asIntBuffer();
+          int[][] out = new int[rowLengths.length][];
+          for (int i = 0; i < out.length; ++i) {
+            out[i] = new int[rowLengths[i]];
+            in.get(out[i]);
+          }
+          rows = out;
+          break;
+        }
+        default:
+          throw new InvalidObjectException("Unknown array type " + ref.type);
+      }
+      return ref.rowLengths == null ? rows[0] : rows;
+    }
+
+    @Override
+    public void close() throws IOException {
+      super.close();
+      channel.close();
+    }
+  }
+
+  private static long align(long bytes) {
+    return (bytes + 7) & ~7L;
+  }
+
+  /**
+   * Write a model in this format.
+   *
+   * @param file The file to write to.  It is not compressed, even if its name ends in .gz.
+   * @param body Writes the model to the stream it is given.
+   */
+  public static void write(File file, ObjectWriter body) throws IOException {
+    ByteArrayOutputStream objects = new ByteArrayOutputStream();
+    ExternalizingOutputStream oos = new ExternalizingOutputStream(objects);
+    body.write(oos);
+    oos.close();
+
+    try (FileChannel channel = FileChannel.open(file.toPath(),
+        StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+      long arraysStart = align(HEADER_LENGTH + objects.size());
+      ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+      header.put(MAGIC).putLong(arraysStart).flip();
+      writeFully(channel, header);
+      writeFully(channel, ByteBuffer.wrap(objects.toByteArray()));
+
+      ByteBuffer chunk = ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+      for (int a = 0; a < oos.arrays.size(); ++a) {
+        channel.position(arraysStart + oos.refs.get(a).offset);
+        Object array = oos.arrays.get(a);
+        Object[] rows = array instanceof Object[] ? (Object[]) array : new Object[] { array };
+        for (Object row : rows) {
+          if (row instanceof float[]) {
+            for (float x : (float[]) row) {
+              if (chunk.remaining() < Float.BYTES) { flush(channel, chunk); }
+              chunk.putFloat(x);
+            }
+          } else if (row instanceof double[]) {
+            for (double x : (double[]) row) {
+              if (chunk.remaining() < Double.BYTES) { flush(channel, chunk); }
+              chunk.putDouble(x);
+            }
+          } else {
+            for (int x : (int[]) row) {
+              if (chunk.remaining() < Integer.BYTES) { flush(channel, chunk); }
+              chunk.putInt(x);
+            }
+          }
+        }
+        flush(channel, chunk);
+      }
+    }
+  }
+
+  private static void flush(FileChannel channel, ByteBuffer chunk) throws IOException {
+    chunk.flip();
+    writeFully(channel, chunk);
+    chunk.clear();
+  }
+
+  private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+
+  /** Returns true if the stream is one which {@link #write} is writing a file in this format with. */
+  public static boolean isMappedStream(ObjectOutputStream oos) {
+    return oos instanceof ExternalizingOutputStream;
+  }
+
+  /** Write a single object in this format. */
+  public static void writeObject(Object o, File file) throws IOException {
+    write(file, oos -> oos.writeObject(o));
+  }
+
+  /**
+   * Returns true if the given path names a file in the file system which is in this format.
+   * Classpath resources and URLs are never in this format.
+   */
+  public static boolean isMappedFile(String path) {
+    return isMappedFile(new File(path));
+  }
+
+  /** Returns true if the given file exists and is in this format. */
+  public static boolean isMappedFile(File file) {
+    if ( ! file.isFile() || file.length() < HEADER_LENGTH) {
+      return false;
+    }
+    byte[] start = new byte[MAGIC.length];
+    try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+      in.readFully(start);
+    } catch (IOException e) {
+      return false;
+    }
+    return Arrays.equals(start, MAGIC);
+  }
+
+  /**
+   * Open a file in this format for reading.  Objects are read from the returned stream
+   * in the order they were written, exactly as from an ordinary ObjectInputStream.
+   */
+  public static ObjectInputStream open(File file) throws IOException {
+    FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    try {
+      ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+      while (header.hasRemaining()) {
+        if (channel.read(header) < 0) {
+          throw new EOFException("Truncated header in " + file);
+        }
+      }
+      header.flip();
+      byte[] magic = new byte[MAGIC.length];
+      header.get(magic);
+      if ( ! Arrays.equals(magic, MAGIC)) {
+        throw new StreamCorruptedException("Not a mapped model file: " + file);
+      }
+      long arraysStart = header.getLong();
+      return new MappedInputStream(channel, arraysStart);
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /** Read a single object from a file in this format. */
+  public static <T> T readObject(File file) throws IOException, ClassNotFoundException {
+    try (ObjectInputStream ois = open(file)) {
+      return ErasureUtils.uncheckedCast(ois.readObject());
+    }
+  }
+
+  /**
+   * Convert a model stored as a single serialized object (optionally gzipped, and
+   * anywhere {@link IOUtils#readObjectFromURLOrClasspathOrFileSystem(String)} can find it)
+   * to this format.
+   */
+  public static void main(String[] args) throws IOException, ClassNotFoundException {
+    if (args.length != 2) {
+      System.err.println("Usage: java " + MappedObjectStreams.class.getName() + " <serialized model> <output file>");
+      System.exit(1);
+    }
+    Object o = IOUtils.readObjectFromURLOrClasspathOrFileSystem(args[0]);
+    writeObject(o, new File(args[1]));
+  }
+
+}
@@ -0,0 +1,179 @@
+package edu.stanford.nlp.ling;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import edu.stanford.nlp.util.ArrayCoreMap;
+import edu.stanford.nlp.util.CoreMap;
+import edu.stanford.nlp.util.ErasureUtils;
+import edu.stanford.nlp.util.TypesafeMap;
+
+
+/**
+ * A {@link CoreLabel} whose common annotations live in a row of a {@link TokenColumns}.
+ * Annotations which have no column are stored in the label itself, exactly as in a CoreLabel.
+ * <p>
+ * When serialized, a ColumnarCoreLabel is written as a plain CoreLabel with the same contents.
+ *
+ * @see TokenColumns
+ */
+public class ColumnarCoreLabel extends CoreLabel {
+
+  private static final long serialVersionUID = 1L;
+
+  private final TokenColumns columns;
+
+  private final int row;
+
+  ColumnarCoreLabel(TokenColumns columns, int row) {
+    super(0);
+    this.columns = columns;
+    this.row = row;
+  }
+
+  /** The columns this label is a view onto. */
+  public TokenColumns columns() {
+    return columns;
+  }
+
+  /** The row of this label in its columns. */
+  public int row() {
+    return row;
+  }
+
+  /** Copy all the annotations of another map into this label. */
+  void setAll(CoreMap other) {
+    Consumer<Class<? extends TypesafeMap.Key<?>>> savedListener = ArrayCoreMap.listener;  // don't listen to the copy
+    ArrayCoreMap.listener = null;
+    for (Class<?> key : other.keySet()) {
+      Class<? extends TypesafeMap.Key<Object>> typedKey = ErasureUtils.uncheckedCast(key);
+      set(typedKey, other.get(typedKey));
+    }
+    ArrayCoreMap.listener = savedListener;
+  }
+
+  @Override
+  protected boolean isArrayBacked() {
+    return false;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <VALUE> VALUE get(Class<? extends TypesafeMap.Key<VALUE>> key) {
+    int column = TokenColumns.column(key);
+    if (column >= 0 && columns.has(column, row)) {
+      if (listener != null) {
+        listener.accept(key);
+      }
+      return (VALUE) columns.get(column, row);
+    }
+    return super.get(key);
+  }
+
+  @Override
+  public <VALUE> VALUE set(Class<? extends TypesafeMap.Key<VALUE>> key, VALUE value) {
+    int column = TokenColumns.column(key);
+    if (column < 0) {
+      return super.set(key, value);
+    }
+    VALUE previous = remove(key);
+    if ( ! columns.set(column, row, value)) {
+      // a null or unusual value: keep it in the label
+      super.set(key, value);
+    }
+    return previous;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <VALUE> VALUE remove(Class<? extends TypesafeMap.Key<VALUE>> key) {
+    int column = TokenColumns.column(key);
+    if (column >= 0 && columns.has(column, row)) {
+      VALUE previous = (VALUE) columns.get(column, row);
+      columns.clear(column, row);
+      return previous;
+    }
+    return super.remove(key);
+  }
+
+  @Override
+  public <VALUE> boolean containsKey(Class<? extends TypesafeMap.Key<VALUE>> key) {
+    int column = TokenColumns.column(key);
+    return (column >= 0 && columns.has(column, row)) || super.containsKey(key);
+  }
+
+  /** {@inheritDoc}  Unlike for an ArrayCoreMap, this is a copy of the keys. */
+  @Override
+  public Set<Class<?>> keySet() {
+    Set<Class<?>> keys = new LinkedHashSet<>();
+    for (int column = 0; column < TokenColumns.numColumns(); ++column) {
+      if (columns.has(column, row)) {
+        keys.add(TokenColumns.key(column));
+      }
+    }
+    keys.addAll(super.keySet());
+    return keys;
+  }
+
+  @Override
+  public Set<Class<?>> keySetNotNull() {
+    // values in columns are never null
+    Set<Class<?>> keys = super.keySetNotNull();
+    for (int column = 0; column < TokenColumns.numColumns(); ++column) {
+      if (columns.has(column, row)) {
+        keys.add(TokenColumns.key(column));
+      }
+    }
+    return keys;
+  }
+
+  @Override
+  public int size() {
+    int size = super.size();
+    for (int column = 0; column < TokenColumns.numColumns(); ++column) {
+      if (columns.has(column, row)) {
+        size++;
+      }
+    }
+    return size;
+  }
+
+  /** A copy of this label which keeps all its annotations in its own arrays. */
+  private CoreLabel materialize() {
+    return new CoreLabel((CoreMap) this);
+  }
+
+  @Override
+  public String toShorterString(String... what) {
+    return materialize().toShorterString(what);
+  }
+
+  @Override
+  public String toShortString(char separator, String... what) {
+    return materialize().toShortString(separator, what);
+  }
+
+  /**
+   * The same hash code as an ArrayCoreMap with the same contents.
+   * (Equality needs no override, as ArrayCoreMap compares maps which are not array backed through their keySet.)
+   */
+  @Override
+  public int hashCode() {
+    int keysCode = 0;
+    int valuesCode = 0;
+    for (Class<?> key : keySet()) {
+      Object value = get(ErasureUtils.<Class<? extends TypesafeMap.Key<Object>>>uncheckedCast(key));
+      if (value != null) {
+        keysCode += key.hashCode();
+        valuesCode += value.hashCode();
+      }
+    }
+    return keysCode * 37 + valuesCode;
+  }
+
+  private Object writeReplace() {
+    return materialize();
+  }
+
+}
@@ -31,6 +31,7 @@ public class BinaryGrammar implements Serializable, Iterable<BinaryRule>  {
   private transient Set<BinaryRule>[] ruleSetWithRC;
   private transient BinaryRule[][] splitRulesWithLC;
   private transient BinaryRule[][] splitRulesWithRC;
+  private transient BinaryRule[][] allRulesWithLC;
   //  private transient BinaryRule[][] splitRulesWithParent = null;
   private transient Map<BinaryRule,BinaryRule> ruleMap;
   // for super speed! (maybe)
@@ -73,6 +74,7 @@ public class BinaryGrammar implements Serializable, Iterable<BinaryRule>  {
 
     splitRulesWithLC = new BinaryRule[numStates][];
     splitRulesWithRC = new BinaryRule[numStates][];
+    allRulesWithLC = new BinaryRule[numStates][];
     //    splitRulesWithParent = new BinaryRule[numStates][];
     // rules accessed by their "synthetic" child or left child if none
     for (int state = 0; state < numStates; state++) {
@@ -105,6 +107,7 @@ public class BinaryGrammar implements Serializable, Iterable<BinaryRule>  {
         splitRulesWithRC[state] = ruleList.toArray(new BinaryRule[ruleList.size()]);
         // Arrays.sort(splitRulesWithRC[state]);
       }
+      allRulesWithLC[state] = rulesWithLC[state].toArray(new BinaryRule[rulesWithLC[state].size()]);
       // parent accessor
       //      splitRulesWithParent[state] = toBRArray(rulesWithParent[state]);
     }
@@ -124,6 +127,11 @@ public class BinaryGrammar implements Serializable, Iterable<BinaryRule>  {
     return splitRulesWithRC[state];
   }
 
+  /** All the rules with this left child, unlike {@link #splitRulesWithLC}.  Set up by {@link #splitRules}. */
+  public BinaryRule[] rulesWithLC(int state) {
+    return allRulesWithLC[state];
+  }
+
   //  public BinaryRule[] splitRulesWithParent(int state) {
   //    return splitRulesWithParent[state];
   //  }
@@ -0,0 +1,260 @@
+package edu.stanford.nlp.parser.lexparser;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import edu.stanford.nlp.stats.ClassicCounter;
+import edu.stanford.nlp.stats.Counter;
+import edu.stanford.nlp.trees.TreebankLanguagePack;
+import edu.stanford.nlp.util.Generics;
+import edu.stanford.nlp.util.HashIndex;
+import edu.stanford.nlp.util.Index;
+
+/**
+ * Projects a split grammar onto the basic categories of its states, so that
+ * "NP^S" and "NP^VP" become "NP", and the binarization state "@NP|^S|&lt;DT&gt;"
+ * becomes "@NP".  The projected grammar is the one which generates the
+ * projections of the trees of the split grammar: the probability of a
+ * projected rule is that of the split rules projecting onto it, weighted by
+ * how often the split grammar expects to use their parents in a tree.  Tags
+ * are projected the same way, so {@link CoarseToFinePruner} can score a word
+ * with a projected tag from the scores of the split tags.
+ *
+ * @see TestOptions#coarseToFine
+ */
+class CoarseGrammarProjection implements GrammarProjection {
+
+  /** The expected counts of states are summed over derivations of at most this depth. */
+  private static final int MAX_DEPTH = 200;
+
+  /** Added to the expected count of each state, so that unreachable states still get weights. */
+  private static final double MIN_COUNT = 1.0e-100;
+
+  private final BinaryGrammar sourceBG;
+  private final UnaryGrammar sourceUG;
+  private final Index<String> targetIndex;
+  private final BinaryGrammar targetBG;
+  private final UnaryGrammar targetUG;
+  private final int[] projection;
+  /** For each tag, the log of its share of the expected count of the tags projecting with it; -Infinity for other states. */
+  private final float[] tagLogWeights;
+
+  CoarseGrammarProjection(BinaryGrammar bg, UnaryGrammar ug, Index<String> stateIndex, Index<String> tagIndex, TreebankLanguagePack tlp) {
+    sourceBG = bg;
+    sourceUG = ug;
+    int numStates = stateIndex.size();
+    String[] targetStates = new String[numStates];
+    Set<String> categories = Generics.newHashSet();
+    for (int state = 0; state < numStates; state++) {
+      targetStates[state] = basicState(stateIndex.get(state), tlp);
+      if ( ! bg.isSynthetic(state)) {
+        categories.add(targetStates[state]);
+      }
+    }
+    List<UnaryRule> unaryRules = ug.rules();
+    resolveCompactedStates(bg, unaryRules, targetStates, categories, stateIndex);
+    targetIndex = new HashIndex<>();
+    projection = new int[numStates];
+    for (int state = 0; state < numStates; state++) {
+      projection[state] = targetIndex.addToIndex(targetStates[state]);
+    }
+    int numTargetStates = targetIndex.size();
+
+    double[] counts = expectedCounts(bg, unaryRules, numStates, stateIndex.indexOf(tlp.startSymbol()));
+    double[] targetCounts = new double[numTargetStates];
+    for (int state = 0; state < numStates; state++) {
+      targetCounts[projection[state]] += counts[state];
+    }
+
+    Counter<BinaryRule> binaries = new ClassicCounter<>();
+    for (BinaryRule br : bg) {
+      BinaryRule rule = new BinaryRule(projection[br.parent], projection[br.leftChild], projection[br.rightChild]);
+      binaries.incrementCount(rule, counts[br.parent] * Math.exp(br.score) / targetCounts[rule.parent]);
+    }
+    targetBG = new BinaryGrammar(targetIndex);
+    for (BinaryRule br : binaries.keySet()) {
+      br.score = (float) Math.log(binaries.getCount(br));
+      targetBG.addRule(br);
+    }
+    targetBG.splitRules();
+
+    // A unary rule whose child and parent project to the same state is left out.
+    Counter<UnaryRule> unaries = new ClassicCounter<>();
+    for (UnaryRule ur : unaryRules) {
+      if (projection[ur.parent] != projection[ur.child]) {
+        UnaryRule rule = new UnaryRule(projection[ur.parent], projection[ur.child]);
+        unaries.incrementCount(rule, counts[ur.parent] * Math.exp(ur.score) / targetCounts[rule.parent]);
+      }
+    }
+    targetUG = new UnaryGrammar(targetIndex);
+    for (UnaryRule ur : unaries.keySet()) {
+      ur.score = (float) Math.log(unaries.getCount(ur));
+      targetUG.addRule(ur);
+    }
+    targetUG.purgeRules();
+
+    double[] tagCounts = new double[numTargetStates];
+    boolean[] isTag = new boolean[numStates];
+    for (String tag : tagIndex.objectsList()) {
+      int state = stateIndex.indexOf(tag);
+      if (state >= 0) {
+        isTag[state] = true;
+        tagCounts[projection[state]] += counts[state];
+      }
+    }
+    tagLogWeights = new float[numStates];
+    for (int state = 0; state < numStates; state++) {
+      tagLogWeights[state] = isTag[state] ? (float) Math.log(counts[state] / tagCounts[projection[state]]) : Float.NEGATIVE_INFINITY;
+    }
+  }
+
+  /**
+   * The number of times each state is expected in a tree of the grammar, which
+   * is found by pushing the counts down from the start symbol, one level at a
+   * time, until they stop changing.  The rules of a compacted grammar are not
+   * normalized state by state, so the counts are pushed down by the share of
+   * each rule in the total probability of the rules of its parent.
+   */
+  private static double[] expectedCounts(BinaryGrammar bg, List<UnaryRule> unaryRules, int numStates, int goal) {
+    double[] totals = new double[numStates];
+    for (BinaryRule br : bg) {
+      totals[br.parent] += Math.exp(br.score);
+    }
+    for (UnaryRule ur : unaryRules) {
+      totals[ur.parent] += Math.exp(ur.score);
+    }
+    double[] counts = new double[numStates];
+    double[] next = new double[numStates];
+    for (int depth = 0; depth < MAX_DEPTH; depth++) {
+      Arrays.fill(next, 0.0);
+      if (goal >= 0) {
+        next[goal] = 1.0;
+      }
+      for (BinaryRule br : bg) {
+        double count = counts[br.parent];
+        if (count > 0.0) {
+          count *= Math.exp(br.score) / totals[br.parent];
+          next[br.leftChild] += count;
+          next[br.rightChild] += count;
+        }
+      }
+      for (UnaryRule ur : unaryRules) {
+        double count = counts[ur.parent];
+        if (count > 0.0) {
+          next[ur.child] += count * Math.exp(ur.score) / totals[ur.parent];
+        }
+      }
+      double[] previous = counts;
+      counts = next;
+      next = previous;
+      if (Arrays.equals(counts, next)) {
+        break;
+      }
+    }
+    for (int state = 0; state < numStates; state++) {
+      counts[state] += MIN_COUNT;
+    }
+    return counts;
+  }
+
+  /**
+   * A compacted grammar names some binarization states "@NodeSet-..." (see
+   * {@link edu.stanford.nlp.fsm.TransducerGraph}), which says nothing of their
+   * category.  Such a state takes the category of a parent of a rule it is a
+   * child of, binary or unary.  One whose category can't be found this way is
+   * not projected.
+   */
+  private static void resolveCompactedStates(BinaryGrammar bg, List<UnaryRule> unaryRules, String[] targetStates, Set<String> categories, Index<String> stateIndex) {
+    boolean[] unresolved = new boolean[targetStates.length];
+    for (int state = 0; state < targetStates.length; state++) {
+      unresolved[state] = bg.isSynthetic(state) && ! categories.contains(targetStates[state].substring(1));
+    }
+    for (boolean changed = true; changed; ) {
+      changed = false;
+      for (BinaryRule br : bg) {
+        if (unresolved[br.parent] || ! (unresolved[br.leftChild] || unresolved[br.rightChild])) {
+          continue;
+        }
+        String category = targetStates[br.parent];
+        String synthetic = category.charAt(0) == '@' ? category : '@' + category;
+        for (int child : new int[] { br.leftChild, br.rightChild }) {
+          if (unresolved[child]) {
+            targetStates[child] = synthetic;
+            unresolved[child] = false;
+            changed = true;
+          }
+        }
+      }
+      for (UnaryRule ur : unaryRules) {
+        if (unresolved[ur.child] && ! unresolved[ur.parent]) {
+          String category = targetStates[ur.parent];
+          targetStates[ur.child] = category.charAt(0) == '@' ? category : '@' + category;
+          unresolved[ur.child] = false;
+          changed = true;
+        }
+      }
+    }
+    for (int state = 0; state < targetStates.length; state++) {
+      if (unresolved[state]) {
+        targetStates[state] = stateIndex.get(state);
+      }
+    }
+  }
+
+  /** The basic category of a state, keeping the "@" of a binarization state. */
+  private static String basicState(String state, TreebankLanguagePack tlp) {
+    boolean synthetic = state.length() > 1 && state.charAt(0) == '@';
+    String basic = tlp.basicCategory(synthetic ? state.substring(1) : state);
+    if (basic.isEmpty()) {
+      return state;
+    }
+    return synthetic ? '@' + basic : basic;
+  }
+
+  @Override
+  public int project(int state) {
+    return projection[state];
+  }
+
+  /** The number of states of the split grammar. */
+  int numSourceStates() {
+    return projection.length;
+  }
+
+  /**
+   * The log of the share of a tag of the split grammar in its projected tag,
+   * or -Infinity if the state is not a tag.  The log probability of a word
+   * given a projected tag is the log of the sum, over the split tags projecting
+   * to it, of the probability of the word given the split tag times this share.
+   */
+  float tagLogWeight(int state) {
+    return tagLogWeights[state];
+  }
+
+  /** The states of the projected grammar. */
+  Index<String> targetStateIndex() {
+    return targetIndex;
+  }
+
+  @Override
+  public UnaryGrammar sourceUG() {
+    return sourceUG;
+  }
+
+  @Override
+  public BinaryGrammar sourceBG() {
+    return sourceBG;
+  }
+
+  @Override
+  public UnaryGrammar targetUG() {
+    return targetUG;
+  }
+
+  @Override
+  public BinaryGrammar targetBG() {
+    return targetBG;
+  }
+
+}
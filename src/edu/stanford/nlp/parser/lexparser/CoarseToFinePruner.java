@@ -0,0 +1,346 @@
+package edu.stanford.nlp.parser.lexparser;
+
+import java.util.Arrays;
+import java.util.List;
+
+import edu.stanford.nlp.math.SloppyMath;
+
+/**
+ * The coarse pass of coarse-to-fine parsing.  It parses a sentence with a
+ * {@link CoarseGrammarProjection}, scoring the words from the tag cells of the
+ * chart of the split grammar, and finds the Viterbi inside and outside scores
+ * of each projected state over each span.  Their sum is the score of the best
+ * coarse parse using that state over that span, which like the parser's own
+ * outside scores is a Viterbi (max) rather than a summed posterior.  A state
+ * of the split grammar is then only worth building over a span if that score
+ * for its projection comes within a threshold of the best coarse parse.
+ * <br>
+ * The coarse scores are kept in {@link SparsePCFGChart}s, which hold only the
+ * states reached in each cell, and only a cell at a time is held densely.
+ * The charts are kept from sentence to sentence.  This class is not threadsafe.
+ *
+ * @see TestOptions#coarseToFine
+ */
+class CoarseToFinePruner {
+
+  private final CoarseGrammarProjection projection;
+  private final UnaryGrammar ug;
+  /** The binary rules of the projected grammar, which are few enough to loop over directly. */
+  private final int[] ruleParents;
+  private final int[] ruleLeftChildren;
+  private final int[] ruleRightChildren;
+  private final float[] ruleScores;
+  private final int numStates;
+  private final int goal;
+  /** The states of the split grammar which project to each state of the projected grammar. */
+  private final int[][] fineStates;
+
+  private int length;
+  /** Inside scores. */
+  private final SparsePCFGChart iChart;
+  /** Outside scores of the states which have inside scores. */
+  private final SparsePCFGChart oChart;
+  /** After {@link #parse}, the sums of the inside and outside scores. */
+  private final SparsePCFGChart chart;
+  /** After {@link #parse}, the best score in each cell of chart, at start * (length + 1) + end. */
+  private float[] cellBest = new float[0];
+  private float goalScore = Float.NEGATIVE_INFINITY;
+
+  /** Dense scores of the cell being built and of the cells it is built from; all -Infinity between uses. */
+  private final float[] cellScores;
+  private final float[] insideScores;
+  private final float[] parentScores;
+  private final float[] leftScores;
+  private final float[] rightScores;
+
+  CoarseToFinePruner(CoarseGrammarProjection projection, String goalStr) {
+    this.projection = projection;
+    this.ug = projection.targetUG();
+    List<BinaryRule> rules = projection.targetBG().rules();
+    int numRules = rules.size();
+    ruleParents = new int[numRules];
+    ruleLeftChildren = new int[numRules];
+    ruleRightChildren = new int[numRules];
+    ruleScores = new float[numRules];
+    for (int i = 0; i < numRules; i++) {
+      BinaryRule rule = rules.get(i);
+      ruleParents[i] = rule.parent;
+      ruleLeftChildren[i] = rule.leftChild;
+      ruleRightChildren[i] = rule.rightChild;
+      ruleScores[i] = rule.score;
+    }
+    this.numStates = projection.targetStateIndex().size();
+    this.goal = projection.targetStateIndex().indexOf(goalStr);
+
+    int numFineStates = projection.numSourceStates();
+    int[] counts = new int[numStates];
+    for (int state = 0; state < numFineStates; state++) {
+      counts[projection.project(state)]++;
+    }
+    fineStates = new int[numStates][];
+    for (int state = 0; state < numStates; state++) {
+      fineStates[state] = new int[counts[state]];
+      counts[state] = 0;
+    }
+    for (int state = 0; state < numFineStates; state++) {
+      int coarse = projection.project(state);
+      fineStates[coarse][counts[coarse]++] = state;
+    }
+
+    iChart = new SparsePCFGChart(numStates);
+    oChart = new SparsePCFGChart(numStates);
+    chart = new SparsePCFGChart(numStates);
+    cellScores = newCell();
+    insideScores = newCell();
+    parentScores = newCell();
+    leftScores = newCell();
+    rightScores = newCell();
+  }
+
+  private float[] newCell() {
+    float[] cell = new float[numStates];
+    Arrays.fill(cell, Float.NEGATIVE_INFINITY);
+    return cell;
+  }
+
+  /** Copies cell [start, end] of a sparse chart into a dense cell, which must be all -Infinity. */
+  private static void load(SparsePCFGChart sparse, int start, int end, float[] cell) {
+    for (int i = sparse.begin(start, end), stop = sparse.end(start, end); i < stop; i++) {
+      cell[sparse.state(i)] = sparse.score(i);
+    }
+  }
+
+  /** Sets back to -Infinity the scores a {@link #load} put in a dense cell. */
+  private static void unload(SparsePCFGChart sparse, int start, int end, float[] cell) {
+    for (int i = sparse.begin(start, end), stop = sparse.end(start, end); i < stop; i++) {
+      cell[sparse.state(i)] = Float.NEGATIVE_INFINITY;
+    }
+  }
+
+  private static boolean isEmpty(SparsePCFGChart sparse, int start, int end) {
+    return sparse.begin(start, end) == sparse.end(start, end);
+  }
+
+  /** Adds the cell in cellScores to a sparse chart, and empties cellScores. */
+  private void addCell(SparsePCFGChart sparse, int start, int end, float[] cell) {
+    sparse.addCell(start, end, cell, Float.POSITIVE_INFINITY, Integer.MAX_VALUE);
+    Arrays.fill(cell, Float.NEGATIVE_INFINITY);
+  }
+
+  /**
+   * Parses a sentence in the coarse grammar.
+   *
+   * @param fineIScore The inside scores of the split grammar; only the cells of single words are used
+   * @param length The length of the sentence, including the boundary symbol
+   * @return Whether there is a coarse parse.  If not, there is no parse of the
+   *         split grammar either, and nothing should be pruned.
+   */
+  boolean parse(float[][][] fineIScore, int length) {
+    this.length = length;
+    int cells = (length + 1) * (length + 1);
+    if (cellBest.length < cells) {
+      cellBest = new float[cells];
+    }
+    Arrays.fill(cellBest, 0, cells, Float.NEGATIVE_INFINITY);
+    iChart.reset(length);
+    oChart.reset(length);
+    chart.reset(length);
+
+    for (int start = 0; start < length; start++) {
+      float[] fine = fineIScore[start][start + 1];
+      for (int state = 0; state < fine.length; state++) {
+        float weight = projection.tagLogWeight(state);
+        if (weight > Float.NEGATIVE_INFINITY && fine[state] > Float.NEGATIVE_INFINITY) {
+          int coarse = projection.project(state);
+          cellScores[coarse] = SloppyMath.logAdd(cellScores[coarse], fine[state] + weight);
+        }
+      }
+      doUnaries();
+      addCell(iChart, start, start + 1, cellScores);
+    }
+    for (int diff = 2; diff <= length; diff++) {
+      for (int start = 0; start < lastStart(diff); start++) {
+        doInsideCell(start, start + diff);
+      }
+    }
+    goalScore = iChart.score(0, length, goal);
+    if (goalScore == Float.NEGATIVE_INFINITY) {
+      return false;
+    }
+
+    for (int diff = length; diff >= 1; diff--) {
+      for (int start = 0; start < lastStart(diff); start++) {
+        doOutsideCell(start, start + diff);
+      }
+    }
+    return true;
+  }
+
+  /** One past the last start of a span of this length; the boundary symbol only goes with the whole sentence. */
+  private int lastStart(int diff) {
+    if (diff == length) {
+      return 1;
+    }
+    return diff == 1 ? length : length - diff;
+  }
+
+  private void doInsideCell(int start, int end) {
+    for (int split = start + 1; split < end; split++) {
+      if (isEmpty(iChart, start, split) || isEmpty(iChart, split, end)) {
+        continue;
+      }
+      load(iChart, start, split, leftScores);
+      load(iChart, split, end, rightScores);
+      for (int i = 0; i < ruleScores.length; i++) {
+        float tot = ruleScores[i] + leftScores[ruleLeftChildren[i]] + rightScores[ruleRightChildren[i]];
+        if (tot > cellScores[ruleParents[i]]) {
+          cellScores[ruleParents[i]] = tot;
+        }
+      }
+      unload(iChart, start, split, leftScores);
+      unload(iChart, split, end, rightScores);
+    }
+    doUnaries();
+    addCell(iChart, start, end, cellScores);
+  }
+
+  /** Applies the closed unary rules to the inside scores in cellScores. */
+  private void doUnaries() {
+    for (int state = 0; state < numStates; state++) {
+      float iS = cellScores[state];
+      if (iS == Float.NEGATIVE_INFINITY) {
+        continue;
+      }
+      for (UnaryRule ur : ug.closedRulesByChild(state)) {
+        float tot = iS + ur.score;
+        if (tot > cellScores[ur.parent]) {
+          cellScores[ur.parent] = tot;
+        }
+      }
+    }
+  }
+
+  /**
+   * Finds the outside scores of cell [start, end] from those of the cells it
+   * is a child of, which come first, and adds the cell to oChart and its
+   * sums of inside and outside scores to chart.
+   */
+  private void doOutsideCell(int start, int end) {
+    if (isEmpty(iChart, start, end)) {
+      return;
+    }
+    if (start == 0 && end == length) {
+      cellScores[goal] = 0.0f;
+    } else {
+      // as the left child of [start, parentEnd]
+      for (int parentEnd = end + 1; parentEnd <= length; parentEnd++) {
+        if (isEmpty(oChart, start, parentEnd) || isEmpty(iChart, end, parentEnd)) {
+          continue;
+        }
+        load(oChart, start, parentEnd, parentScores);
+        load(iChart, end, parentEnd, rightScores);
+        for (int i = 0; i < ruleScores.length; i++) {
+          float tot = parentScores[ruleParents[i]] + ruleScores[i] + rightScores[ruleRightChildren[i]];
+          if (tot > cellScores[ruleLeftChildren[i]]) {
+            cellScores[ruleLeftChildren[i]] = tot;
+          }
+        }
+        unload(oChart, start, parentEnd, parentScores);
+        unload(iChart, end, parentEnd, rightScores);
+      }
+      // as the right child of [parentStart, end]
+      for (int parentStart = 0; parentStart < start; parentStart++) {
+        if (isEmpty(oChart, parentStart, end) || isEmpty(iChart, parentStart, start)) {
+          continue;
+        }
+        load(oChart, parentStart, end, parentScores);
+        load(iChart, parentStart, start, leftScores);
+        for (int i = 0; i < ruleScores.length; i++) {
+          float tot = parentScores[ruleParents[i]] + ruleScores[i] + leftScores[ruleLeftChildren[i]];
+          if (tot > cellScores[ruleRightChildren[i]]) {
+            cellScores[ruleRightChildren[i]] = tot;
+          }
+        }
+        unload(oChart, parentStart, end, parentScores);
+        unload(iChart, parentStart, start, leftScores);
+      }
+    }
+
+    load(iChart, start, end, insideScores);
+    for (int state = 0; state < numStates; state++) {
+      float oS = cellScores[state];
+      if (oS == Float.NEGATIVE_INFINITY) {
+        continue;
+      }
+      for (UnaryRule ur : ug.closedRulesByParent(state)) {
+        if (insideScores[ur.child] == Float.NEGATIVE_INFINITY) {
+          continue;
+        }
+        float tot = oS + ur.score;
+        if (tot > cellScores[ur.child]) {
+          cellScores[ur.child] = tot;
+        }
+      }
+    }
+    float best = Float.NEGATIVE_INFINITY;
+    for (int state = 0; state < numStates; state++) {
+      float iS = insideScores[state];
+      if (iS == Float.NEGATIVE_INFINITY) {
+        cellScores[state] = Float.NEGATIVE_INFINITY;
+      } else {
+        float score = iS + cellScores[state];
+        insideScores[state] = score;
+        if (score > best) {
+          best = score;
+        }
+      }
+    }
+    cellBest[start * (length + 1) + end] = best;
+    addCell(oChart, start, end, cellScores);
+    addCell(chart, start, end, insideScores);
+  }
+
+  /** The score of the best coarse parse with any constituent over [start, end]. */
+  float bestScoreThrough(int start, int end) {
+    return cellBest[start * (length + 1) + end];
+  }
+
+  /**
+   * Puts in states the states of the split grammar whose projections are in
+   * a coarse parse scoring at least floor with them over [start, end].
+   *
+   * @return The number of states put in states, which are in no particular order
+   */
+  int statesAbove(int start, int end, float floor, int[] states) {
+    int size = 0;
+    for (int i = chart.begin(start, end), stop = chart.end(start, end); i < stop; i++) {
+      if (chart.score(i) >= floor) {
+        int[] fine = fineStates[chart.state(i)];
+        System.arraycopy(fine, 0, states, size, fine.length);
+        size += fine.length;
+      }
+    }
+    return size;
+  }
+
+  /** Whether some coarse parse scoring below floor has a constituent over [start, end], so that a lower floor would keep more there. */
+  boolean prunesBelow(int start, int end, float floor) {
+    for (int i = chart.begin(start, end), stop = chart.end(start, end); i < stop; i++) {
+      if (chart.score(i) < floor) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * The score of the best coarse parse of the last sentence.  The coarse rule
+   * scores are weighted averages of the split rules, not their maxima, so this
+   * is no bound on the score of the best parse of the split grammar; it is
+   * only the point the pruning threshold is measured from.
+   */
+  float goalScore() {
+    return goalScore;
+  }
+
+}
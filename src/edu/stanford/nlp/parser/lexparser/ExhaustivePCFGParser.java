@@ -107,6 +107,28 @@ public class ExhaustivePCFGParser implements Scorer, KBestViterbiParser  {
   protected final int numStates;
   protected int arraySize = 0;
 
+  // Sentences of at least op.testOptions.sparseChartLength words are parsed into a
+  // SparsePCFGChart, which is kept for the next sentence.  Then iScore only has the
+  // span 1 cells, which initializeChart fills in, and of the other arrays only those
+  // linear in the sentence length are made.
+  protected SparsePCFGChart sparseChart; // = null
+  protected boolean useSparseChart; // = false; whether the current sentence is in sparseChart
+  private int sparseArraySize = 0;
+  private float[] sparseCell; // the cell being built; all -Infinity between cells
+  private int[] sparseCellStates; // the states which are not -Infinity in sparseCell
+  private int sparseCellSize; // = 0; the number of them
+  private float[] sparseRight; // a right child cell; all -Infinity between uses
+
+  // With op.testOptions.coarseToFine, every sentence is parsed into the sparse chart,
+  // keeping only the states which the coarse pass of the pruner allows.
+  private final CoarseGrammarProjection coarseProjection; // null unless coarse-to-fine
+  private CoarseToFinePruner coarsePruner; // = null; made with the first sentence
+  private int[] allowedStates; // the states which the coarse pass allows in the cell being built
+  private boolean[] allowed; // whether each of them is allowed; all false between cells
+  private int[] sparseAgenda; // a queue of states whose unary rules are yet to be applied in the cell being built
+  private boolean[] sparseOnAgenda; // all false between cells
+  private int[] sparseQueued; // how often each state was put on the agenda; all 0 between cells
+
   /**
    * When you want to force the parser to parse a particular
    * subsequence into a particular state.  Parses will only be made
@@ -147,7 +169,7 @@ public class ExhaustivePCFGParser implements Scorer, KBestViterbiParser  {
   public double oScore(Edge edge) {
     double oS = oScore[edge.start][edge.end][edge.state];
     if (op.testOptions.pcfgThreshold) {
-      double iS = iScore[edge.start][edge.end][edge.state];
+      double iS = insideScore(edge.start, edge.end, edge.state);
       if (iS + oS - bestScore < op.testOptions.pcfgThresholdValue) {
         return Double.NEGATIVE_INFINITY;
       }
@@ -155,9 +177,14 @@ public class ExhaustivePCFGParser implements Scorer, KBestViterbiParser  {
     return oS;
   }
 
+  /** The inside score of a state over a span, from whichever chart the sentence was parsed into. */
+  protected float insideScore(int start, int end, int state) {
+    return useSparseChart ? sparseChart.score(start, end, state) : iScore[start][end][state];
+  }
+
   @Override
   public double iScore(Edge edge) {
-    return iScore[edge.start][edge.end][edge.state];
+    return insideScore(edge.start, edge.end, edge.state);
   }
 
   @Override
@@ -213,7 +240,7 @@ public class ExhaustivePCFGParser implements Scorer, KBestViterbiParser  {
       int word = wordIndex.indexOf(wordStr);
       IntTaggedWord iTW = new IntTaggedWord(word, tag);
       float score = lex.score(iTW, start, wordStr, null);
-      float bound = iScore[start][start + 1][stateIndex.indexOf(tree.label().value())];
+      float bound = insideScore(start, start + 1, stateIndex.indexOf(tree.label().value()));
       if (score > bound + epsilon) {
         System.out.println("Invalid tagging:");
         System.out.println("  Tag: " + tree.label().value());
@@ -228,7 +255,7 @@ public class ExhaustivePCFGParser implements Scorer, KBestViterbiParser  {
     if (tree.numChildren() == 1) {
       UnaryRule ur = new UnaryRule(parent, firstChild);
       double score = SloppyMath.max(ug.scoreRule(ur), -10000.0) + validateBinarizedTree(tree.children()[0], start);
-      double bound = iScore[start][start + tree.yield().size()][parent];
+      double bound = insideScore(start, start + tree.yield().size(), parent);
       if (score > bound + epsilon) {
         System.out.println("Invalid unary:");
         System.out.println("  Parent: " + tree.label().value());
@@ -243,7 +270,7 @@ public class ExhaustivePCFGParser implements Scorer, KBestViterbiParser  {
     int secondChild = stateIndex.indexOf(tree.children()[1].label().value());
     BinaryRule br = new BinaryRule(parent, firstChild, secondChild);
     double score = SloppyMath.max(bg.scoreRule(br), -10000.0) + validateBinarizedTree(tree.children()[0], start) + validateBinarizedTree(tree.children()[1], start + tree.children()[0].yield().size());
-    double bound = iScore[start][start + tree.yield().size()][parent];
+    double bound = insideScore(start, start + tree.yield().size(), parent);
     if (score > bound + epsilon) {
       System.out.println("Invalid binary:");
       System.out.println("  Parent: " + tree.label().value());
@@ -348,7 +375,16 @@ public class ExhaustivePCFGParser implements Scorer, KBestViterbiParser  {
       tick("Starting PCFG parse...");
     }
     length = sentence.size();
-    if (length > arraySize) {
+    useSparseChart = (coarseProjection != null || length - 1 >= op.testOptions.sparseChartLength) && canUseSparseChart();
+    if (useSparseChart) {
+      if (sparseChart == null) {
+        createSparseBuffers();
+      }
+      // dense arrays big enough for the sentence serve for its sparse parse too
+      if (length > arraySize && length > sparseArraySize) {
+        createSparseArrays(length + 1);
+      }
+    } else if (length > arraySize) {
       considerCreatingArrays(length);
     }
     int goal = stateIndex.indexOf(goalStr);
@@ -423,7 +459,8 @@ public class ExhaustivePCFGParser implements Scorer, KBestViterbiParser  {
       throw new RuntimeInterruptedException();
     }
     for (int start = 0; start < length; start++) {
-      for (int end = start + 1; end <= length; end++) {
+      int maxEnd = useSparseChart ? start + 1 : length; // a sparse chart only keeps the span 1 cells here
+      for (int end = start + 1; end <= maxEnd; end++) {
         Arrays.fill(iScore[start][end], Float.NEGATIVE_INFINITY);
         if (op.doDep && ! op.testOptions.useFastFactored) {
           Arrays.fill(oScore[start][end], Float.NEGATIVE_INFINITY);
@@ -471,9 +508,9 @@ public class ExhaustivePCFGParser implements Scorer, KBestViterbiParser  {
     if (op.testOptions.verbose) {
       // insideTime += Timing.tick("done.");
       Timing.tick("done.");
-      System.out.println("PCFG parsing " + length + " words (incl. stop): insideScore = " + iScore[0][length][goal]);
+      System.out.println("PCFG parsing " + length + " words (incl. stop): insideScore = " + insideScore(0, length, goal));
     }
-    bestScore = iScore[0][length][goal];
+    bestScore = insideScore(0, length, goal);
     boolean succeeded = hasParse();
     if (op.testOptions.doRecovery && !succeeded && !floodTags) {
       floodTags = true; // sentence will try to reparse
@@ -545,6 +582,7 @@ public class ExhaustivePCFGParser implements Scorer, KBestViterbiParser  {
 
 
     // The number of whitespace nodes in the lattice
+    useSparseChart = false;
     length = lr.getNumNodes() - 1; //Subtract 1 since considerCreatingArrays will add the final interstice
     if (length > arraySize)
       considerCreatingArrays(length);
@@ -837,6 +875,10 @@ oScore[split][end][br.rightChild] = totR;
    *  of length 2 or more.
    */
   void doInsideScores() {
+    if (useSparseChart) {
+      doSparseInsideScores();
+      return;
+    }
     for (int diff = 2; diff <= length; diff++) {
       if (Thread.interrupted()) {
         throw new RuntimeInterruptedException();
@@ -1204,6 +1246,263 @@ oScore[split][end][br.rightChild] = totR;
   }
 
 
+  /**
+   * Fills in a SparsePCFGChart with the inside scores of each category over each
+   * span, as doInsideScores does for the dense chart.  Each cell is built in
+   * sparseCell from the states kept in its child cells, and then only the states
+   * surviving the beam are kept in the chart.  If pruning loses every parse, the
+   * chart is filled in again with twice the beam and states per cell, until a
+   * parse is found or nothing was pruned.
+   */
+  private void doSparseInsideScores() {
+    int goal = stateIndex.indexOf(goalStr);
+    boolean beamed = length - 1 >= op.testOptions.sparseChartLength;
+    float beam = beamed ? op.testOptions.sparseChartBeam : Float.POSITIVE_INFINITY;
+    int maxStates = beamed ? op.testOptions.sparseChartCellStates : Integer.MAX_VALUE;
+    float threshold = Float.POSITIVE_INFINITY;
+    if (coarseProjection != null) {
+      if (coarsePruner == null) {
+        coarsePruner = new CoarseToFinePruner(coarseProjection, goalStr);
+      }
+      if (coarsePruner.parse(iScore, length)) {
+        threshold = op.testOptions.coarseToFineThreshold;
+      }
+    }
+    while (fillSparseChart(beam, maxStates, threshold) && sparseChart.score(0, length, goal) == Float.NEGATIVE_INFINITY) {
+      // a beam, limit or threshold set (not through Options) to zero or less would never widen by doubling
+      beam = beam > 0 ? beam * 2 : Float.POSITIVE_INFINITY;
+      maxStates = maxStates <= 0 || maxStates > Integer.MAX_VALUE / 2 ? Integer.MAX_VALUE : maxStates * 2;
+      threshold = threshold > 0 ? threshold * 2 : Float.POSITIVE_INFINITY;
+      if (op.testOptions.verbose) {
+        log.info("No parse in sparse chart; widening beam to " + beam + " and " + maxStates + " states per cell" +
+                 (coarseProjection == null ? "" : " and coarse-to-fine threshold to " + threshold));
+      }
+    }
+  }
+
+  /**
+   * Fills in the sparse chart, pruning each cell to these limits except the cells
+   * of single words, whose taggings are all kept, and the cell of the whole sentence.
+   * Unless the threshold is infinite, the other cells are also pruned by the coarse parse.
+   *
+   * @return Whether any state was pruned
+   */
+  private boolean fillSparseChart(float beam, int maxStates, float threshold) {
+    boolean pruned = false;
+    boolean coarse = threshold < Float.POSITIVE_INFINITY;
+    float coarseFloor = coarse ? coarsePruner.goalScore() - threshold : Float.NEGATIVE_INFINITY;
+    sparseChart.reset(length);
+    for (int start = 0; start < length; start++) {
+      sparseChart.addCell(start, start + 1, iScore[start][start + 1], Float.POSITIVE_INFINITY, Integer.MAX_VALUE);
+    }
+    for (int diff = 2; diff <= length; diff++) {
+      if (Thread.interrupted()) {
+        throw new RuntimeInterruptedException();
+      }
+      for (int start = 0; start < ((diff == length) ? 1: length - diff); start++) {
+        if (coarse) {
+          float best = coarsePruner.bestScoreThrough(start, start + diff);
+          if (best < coarseFloor) {
+            // the cell is left empty
+            pruned |= best > Float.NEGATIVE_INFINITY;
+            continue;
+          }
+        }
+        pruned |= doSparseInsideChartCell(diff, start, coarseFloor);
+        Arrays.sort(sparseCellStates, 0, sparseCellSize);
+        if (diff == length) {
+          sparseChart.addCell(start, start + diff, sparseCell, sparseCellStates, sparseCellSize, Float.POSITIVE_INFINITY, Integer.MAX_VALUE);
+        } else {
+          pruned |= sparseChart.addCell(start, start + diff, sparseCell, sparseCellStates, sparseCellSize, beam, maxStates);
+        }
+        for (int i = 0; i < sparseCellSize; i++) {
+          sparseCell[sparseCellStates[i]] = Float.NEGATIVE_INFINITY;
+        }
+        sparseCellSize = 0;
+      }
+    }
+    return pruned;
+  }
+
+  /** Sets a state of sparseCell, which is the cell being built, noting it in sparseCellStates if it is new. */
+  private void setSparseCell(int state, float score) {
+    if (sparseCell[state] == Float.NEGATIVE_INFINITY) {
+      sparseCellStates[sparseCellSize++] = state;
+    }
+    sparseCell[state] = score;
+  }
+
+  /**
+   * Builds cell [start, start + diff] in sparseCell from the cells already in the
+   * sparse chart, and notes the states built in sparseCellStates.
+   * Unless coarseFloor is -Infinity, only the states which the coarse parse
+   * allows over the span are built, and then the unary rules are applied one
+   * at a time through the states which are allowed, since extractBestParse
+   * rebuilds a chain of unary rules from the chart a rule at a time.
+   *
+   * @return Whether the coarse parse pruned a state which a lower floor might keep
+   */
+  private boolean doSparseInsideChartCell(final int diff, final int start, final float coarseFloor) {
+    final int end = start + diff;
+    final float[] cell = sparseCell;
+    final float[] right = sparseRight;
+
+    final List<ParserConstraint> constraints = getConstraints();
+    final boolean hasConstraints = constraints != null && ! constraints.isEmpty();
+    if (hasConstraints) {
+      for (ParserConstraint c : constraints) {
+        if ((start > c.start && start < c.end && end > c.end) || (end > c.start && end < c.end && start < c.start)) {
+          return false;
+        }
+      }
+    }
+
+    final boolean coarse = coarseFloor > Float.NEGATIVE_INFINITY;
+    int numAllowed = 0;
+    if (coarse) {
+      numAllowed = coarsePruner.statesAbove(start, end, coarseFloor, allowedStates);
+      for (int i = 0; i < numAllowed; i++) {
+        allowed[allowedStates[i]] = true;
+      }
+    }
+
+    for (int split = start + 1; split < end; split++) {
+      int leftBegin = sparseChart.begin(start, split);
+      int leftEnd = sparseChart.end(start, split);
+      int rightBegin = sparseChart.begin(split, end);
+      int rightEnd = sparseChart.end(split, end);
+      if (leftBegin == leftEnd || rightBegin == rightEnd) {
+        continue;
+      }
+      for (int i = rightBegin; i < rightEnd; i++) {
+        right[sparseChart.state(i)] = sparseChart.score(i);
+      }
+      for (int i = leftBegin; i < leftEnd; i++) {
+        int leftState = sparseChart.state(i);
+        float lS = sparseChart.score(i);
+        for (BinaryRule rule : bg.rulesWithLC(leftState)) {
+          if (coarse && ! allowed[rule.parent]) {
+            continue;
+          }
+          float rS = right[rule.rightChild];
+          if (rS == Float.NEGATIVE_INFINITY) {
+            continue;
+          }
+          if (hasConstraints && ! constraintsAllow(constraints, start, split, end, leftState, rule.rightChild)) {
+            continue;
+          }
+          float tot = rule.score + lS + rS;
+          if (tot > cell[rule.parent]) {
+            setSparseCell(rule.parent, tot);
+          }
+        }
+      }
+      for (int i = rightBegin; i < rightEnd; i++) {
+        right[sparseChart.state(i)] = Float.NEGATIVE_INFINITY;
+      }
+    }
+
+    if (coarse) {
+      // A first in first out agenda of the states whose scores have gone up since
+      // their unary rules were last applied.  Without a cycle of unary rules whose
+      // scores add up to more than 0, no state goes on it more often than there
+      // are states allowed, which bounds the loop even with such a cycle.
+      int head = 0;
+      int agendaSize = sparseCellSize;
+      for (int i = 0; i < sparseCellSize; i++) {
+        int state = sparseCellStates[i];
+        sparseAgenda[i] = state;
+        sparseOnAgenda[state] = true;
+        sparseQueued[state] = 1;
+      }
+      while (agendaSize > 0) {
+        int state = sparseAgenda[head];
+        head = head + 1 == numStates ? 0 : head + 1;
+        agendaSize--;
+        sparseOnAgenda[state] = false;
+        float iS = cell[state];
+        for (UnaryRule ur : ug.rulesByChild(state)) {
+          if ( ! allowed[ur.parent]) {
+            continue;
+          }
+          float tot = iS + ur.score;
+          if (tot > cell[ur.parent] && ( ! hasConstraints || constraintsAllow(constraints, start, end, ur.parent))) {
+            setSparseCell(ur.parent, tot);
+            if ( ! sparseOnAgenda[ur.parent] && sparseQueued[ur.parent] < numAllowed) {
+              int tail = head + agendaSize;
+              sparseAgenda[tail >= numStates ? tail - numStates : tail] = ur.parent;
+              agendaSize++;
+              sparseOnAgenda[ur.parent] = true;
+              sparseQueued[ur.parent]++;
+            }
+          }
+        }
+      }
+      for (int i = 0; i < sparseCellSize; i++) {
+        sparseQueued[sparseCellStates[i]] = 0;
+      }
+      for (int i = 0; i < numAllowed; i++) {
+        allowed[allowedStates[i]] = false;
+      }
+      return coarsePruner.prunesBelow(start, end, coarseFloor);
+    }
+
+    // do unary rules, in the same order as doInsideChartCell
+    for (int state = 0; state < numStates; state++) {
+      float iS = cell[state];
+      if (iS == Float.NEGATIVE_INFINITY) {
+        continue;
+      }
+      for (UnaryRule ur : ug.closedRulesByChild(state)) {
+        if (hasConstraints && ! constraintsAllow(constraints, start, end, ur.parent)) {
+          continue;
+        }
+        float tot = iS + ur.score;
+        if (tot > cell[ur.parent]) {
+          setSparseCell(ur.parent, tot);
+        }
+      }
+    }
+    return false;
+  }
+
+  /** Whether the constraints allow a binary rule over [start, end] with these children split at split. */
+  private boolean constraintsAllow(List<ParserConstraint> constraints, int start, int split, int end, int leftState, int rightState) {
+    for (ParserConstraint c : constraints) {
+      if (((start < c.start && end >= c.end) || (start <= c.start && end > c.end)) && split > c.start && split < c.end) {
+        return false;
+      }
+      if (start == c.start && split == c.end && ! c.state.matcher(stateIndex.get(leftState)).matches()) {
+        return false;
+      }
+      if (split == c.start && end == c.end && ! c.state.matcher(stateIndex.get(rightState)).matches()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Whether the constraints allow a unary rule to make this parent over [start, end]. */
+  private boolean constraintsAllow(List<ParserConstraint> constraints, int start, int end, int parentState) {
+    for (ParserConstraint c : constraints) {
+      if (start == c.start && end == c.end && ! c.state.matcher(stateIndex.get(parentState)).matches()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Whether a sentence may be parsed into a sparse chart.  This needs only the
+   * inside scores (no outside scores for the exact factored parser) of a parse
+   * of single words with unnormalized scores.
+   */
+  protected boolean canUseSparseChart() {
+    return ( ! op.doDep || op.testOptions.useFastFactored) &&
+        ! op.testOptions.lengthNormalization && op.testOptions.maxSpanForTags <= 1;
+  }
+
+
   private void initializeChart(Lattice lr) {
     for (LatticeEdge edge : lr) {
       int start = edge.start;
@@ -1513,13 +1812,16 @@ oScore[split][end][br.rightChild] = totR;
   }
 
   public double getBestScore(String stateName) {
-    if (length > arraySize) {
+    if (length > arraySize && ! useSparseChart) {
       return Double.NEGATIVE_INFINITY;
     }
     if (!stateIndex.contains(stateName)) {
       return Double.NEGATIVE_INFINITY;
     }
     int goal = stateIndex.indexOf(stateName);
+    if (useSparseChart) {
+      return sparseChart.score(0, length, goal);
+    }
     if (iScore == null || iScore.length == 0 || iScore[0].length <= length || iScore[0][length].length <= goal) {
       return Double.NEGATIVE_INFINITY;
     }
@@ -1550,7 +1852,7 @@ oScore[split][end][br.rightChild] = totR;
   private Tree extractBestParse(int goal, int start, int end) {
     // find source of inside score
     // no backtraces so we can speed up the parsing for its primary use
-    double bestScore = iScore[start][end][goal];
+    double bestScore = insideScore(start, end, goal);
     double normBestScore = op.testOptions.lengthNormalization ? (bestScore / wordsInSpan[start][end][goal]) : bestScore;
     String goalStr = stateIndex.get(goal);
 
@@ -1624,7 +1926,7 @@ oScore[split][end][br.rightChild] = totR;
     for (int split = start + 1; split < end; split++) {
       for (Iterator<BinaryRule> binaryI = bg.ruleIteratorByParent(goal); binaryI.hasNext(); ) {
         BinaryRule br = binaryI.next();
-        double score = br.score + iScore[start][split][br.leftChild] + iScore[split][end][br.rightChild];
+        double score = br.score + insideScore(start, split, br.leftChild) + insideScore(split, end, br.rightChild);
         boolean matches;
         if (op.testOptions.lengthNormalization) {
           double normScore = score / (wordsInSpan[start][split][br.leftChild] + wordsInSpan[split][end][br.rightChild]);
@@ -1655,7 +1957,7 @@ oScore[split][end][br.rightChild] = totR;
     for (Iterator<UnaryRule> unaryI = ug.ruleIteratorByParent(goal); unaryI.hasNext(); ) {
       UnaryRule ur = unaryI.next();
       // log.info("  Trying " + ur + " dtr score: " + iScore[start][end][ur.child]);
-      double score = ur.score + iScore[start][end][ur.child];
+      double score = ur.score + insideScore(start, end, ur.child);
       boolean matches;
       if (op.testOptions.lengthNormalization) {
         double normScore = score / wordsInSpan[start][end][ur.child];
@@ -1714,7 +2016,7 @@ oScore[split][end][br.rightChild] = totR;
   protected List<Tree> extractBestParses(int goal, int start, int end) {
     // find sources of inside score
     // no backtraces so we can speed up the parsing for its primary use
-    double bestScore = iScore[start][end][goal];
+    double bestScore = insideScore(start, end, goal);
     String goalStr = stateIndex.get(goal);
     //System.out.println("Searching for "+goalStr+" from "+start+" to "+end+" scored "+bestScore);
     // check tags
@@ -1739,7 +2041,7 @@ oScore[split][end][br.rightChild] = totR;
     for (int split = start + 1; split < end; split++) {
       for (Iterator<BinaryRule> binaryI = bg.ruleIteratorByParent(goal); binaryI.hasNext(); ) {
         BinaryRule br = binaryI.next();
-        double score = br.score + iScore[start][split][br.leftChild] + iScore[split][end][br.rightChild];
+        double score = br.score + insideScore(start, split, br.leftChild) + insideScore(split, end, br.rightChild);
         if (matches(score, bestScore)) {
           // build binary split
           List<Tree> leftChildTrees = extractBestParses(br.leftChild, start, split);
@@ -1764,7 +2066,7 @@ oScore[split][end][br.rightChild] = totR;
     // check unaries
     for (Iterator<UnaryRule> unaryI = ug.ruleIteratorByParent(goal); unaryI.hasNext(); ) {
       UnaryRule ur = unaryI.next();
-      double score = ur.score + iScore[start][end][ur.child];
+      double score = ur.score + insideScore(start, end, ur.child);
       if (ur.child != ur.parent && matches(score, bestScore)) {
         // build unary
         List<Tree> childTrees = extractBestParses(ur.child, start, end);
@@ -1988,7 +2290,7 @@ oScore[split][end][br.rightChild] = totR;
     // pre-terminal??
     if (isTag[v.goal] && v.start + 1 == v.end) {
       List<Vertex> tails = new ArrayList<>();
-      double score = iScore[v.start][v.end][v.goal];
+      double score = insideScore(v.start, v.end, v.goal);
       Arc arc = new Arc(tails, v, score);
       bs.add(arc);
     }
@@ -2033,7 +2335,7 @@ oScore[split][end][br.rightChild] = totR;
         List<Double> childrenScores = new ArrayList<>();
         for (int i = 0; i < size; i++) {
           Vertex child = arc.tails.get(i);
-          double s = iScore[child.start][child.end][child.goal];
+          double s = insideScore(child.start, child.end, child.goal);
           childrenScores.add(s);
           score += s;
         }
@@ -2117,7 +2419,7 @@ oScore[split][end][br.rightChild] = totR;
     int start = 0;
     int end = length;
     int goal = stateIndex.indexOf(goalStr);
-    double bestScore = iScore[start][end][goal];
+    double bestScore = insideScore(start, end, goal);
     List<Tree> internalTrees = extractBestParses(goal, start, end);
     //System.out.println("Got internal best parse...");
     // for (Tree internalTree : internalTrees) {
@@ -2146,6 +2448,16 @@ oScore[split][end][br.rightChild] = totR;
   }
 
   public ExhaustivePCFGParser(BinaryGrammar bg, UnaryGrammar ug, Lexicon lex, Options op, Index<String> stateIndex, Index<String> wordIndex, Index<String> tagIndex) {
+    this(bg, ug, lex, op, stateIndex, wordIndex, tagIndex, null);
+  }
+
+  /**
+   * Makes a parser which, given a projection of its grammar, parses coarse-to-fine.
+   *
+   * @param coarseProjection The projection of bg and ug used to prune the chart,
+   *     or null to parse exhaustively
+   */
+  ExhaustivePCFGParser(BinaryGrammar bg, UnaryGrammar ug, Lexicon lex, Options op, Index<String> stateIndex, Index<String> wordIndex, Index<String> tagIndex, CoarseGrammarProjection coarseProjection) {
     //    System.out.println("ExhaustivePCFGParser constructor called.");
     this.bg = bg;
     this.ug = ug;
@@ -2156,6 +2468,7 @@ oScore[split][end][br.rightChild] = totR;
     this.stateIndex = stateIndex;
     this.wordIndex = wordIndex;
     this.tagIndex = tagIndex;
+    this.coarseProjection = coarseProjection;
     tf = new LabeledScoredTreeFactory();
 
     numStates = stateIndex.size();
@@ -2254,7 +2567,48 @@ oScore[split][end][br.rightChild] = totR;
     //    System.out.println("ExhaustivePCFGParser constructor finished.");
   }
 
+  /**
+   * Makes the arrays for parsing into a sparse chart: only the span 1 cells of
+   * iScore, and the other arrays which are linear in the sentence length.
+   */
+  private void createSparseArrays(int length) {
+    clearArrays();
+    arraySize = 0;
+    iScore = new float[length][length + 1][];
+    for (int start = 0; start < length; start++) {
+      iScore[start][start + 1] = new float[numStates];
+    }
+    narrowRExtent = new int[length][numStates];
+    wideRExtent = new int[length][numStates];
+    narrowLExtent = new int[length + 1][numStates];
+    wideLExtent = new int[length + 1][numStates];
+    tags = new boolean[length][tagIndex.size()];
+    sparseArraySize = length;
+    if (op.testOptions.verbose) {
+      log.info("Created sparse PCFG parser arrays of size " + length);
+    }
+  }
+
+  /**
+   * Makes the sparse chart and the buffers for building its cells, whose sizes
+   * depend only on the grammar, so that they are made once for any sentence length.
+   */
+  private void createSparseBuffers() {
+    sparseChart = new SparsePCFGChart(numStates);
+    sparseCell = new float[numStates];
+    sparseCellStates = new int[numStates];
+    sparseRight = new float[numStates];
+    allowedStates = new int[numStates];
+    allowed = new boolean[numStates];
+    sparseAgenda = new int[numStates];
+    sparseOnAgenda = new boolean[numStates];
+    sparseQueued = new int[numStates];
+    Arrays.fill(sparseCell, Float.NEGATIVE_INFINITY);
+    Arrays.fill(sparseRight, Float.NEGATIVE_INFINITY);
+  }
+
   private void clearArrays() {
+    sparseArraySize = 0;
     iScore = oScore = null;
     iPossibleByL = iPossibleByR = oPossibleByL = oPossibleByR = null;
     oFilteredEnd = oFilteredStart = null;
@@ -104,6 +104,23 @@ public class LexicalizedParser extends ParserGrammar implements Serializable  {
 
   public Reranker reranker; // = null;
 
+  /** The projection of the grammar which coarse-to-fine parsing prunes with; made when first needed. */
+  private transient volatile CoarseGrammarProjection coarseProjection; // = null
+
+  CoarseGrammarProjection coarseGrammarProjection() {
+    CoarseGrammarProjection projection = coarseProjection;
+    if (projection == null) {
+      synchronized (this) {
+        projection = coarseProjection;
+        if (projection == null) {
+          projection = new CoarseGrammarProjection(bg, ug, stateIndex, tagIndex, op.langpack());
+          coarseProjection = projection;
+        }
+      }
+    }
+    return projection;
+  }
+
   @Override
   public TreebankLangParserParams getTLPParams() { return op.tlpParams; }
 
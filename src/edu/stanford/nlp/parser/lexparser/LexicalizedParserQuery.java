@@ -130,7 +130,8 @@ public class LexicalizedParserQuery implements ParserQuery  {
       if (op.testOptions.iterativeCKY) {
         pparser = new IterativeCKYPCFGParser(bg, ug, lex, op, stateIndex, wordIndex, tagIndex);
       } else {
-        pparser = new ExhaustivePCFGParser(bg, ug, lex, op, stateIndex, wordIndex, tagIndex);
+        CoarseGrammarProjection coarseProjection = op.testOptions.coarseToFine ? parser.coarseGrammarProjection() : null;
+        pparser = new ExhaustivePCFGParser(bg, ug, lex, op, stateIndex, wordIndex, tagIndex, coarseProjection);
       }
     } else {
       pparser = null;
@@ -249,6 +249,31 @@ public class Options implements Serializable  {
     } else if (args[i].equalsIgnoreCase("-iterativeCKY")) {
       testOptions.iterativeCKY = true;
       i++;
+    } else if (args[i].equalsIgnoreCase("-sparseChartLength") && (i + 1 < args.length)) {
+      testOptions.sparseChartLength = Integer.parseInt(args[i + 1]);
+      i += 2;
+    } else if (args[i].equalsIgnoreCase("-sparseChartBeam") && (i + 1 < args.length)) {
+      testOptions.sparseChartBeam = Float.parseFloat(args[i + 1]);
+      if ( ! (testOptions.sparseChartBeam > 0)) {
+        throw new IllegalArgumentException("Invalid value for -sparseChartBeam, which must be positive: " + args[i+1]);
+      }
+      i += 2;
+    } else if (args[i].equalsIgnoreCase("-sparseChartCellStates") && (i + 1 < args.length)) {
+      testOptions.sparseChartCellStates = Integer.parseInt(args[i + 1]);
+      if (testOptions.sparseChartCellStates <= 0) {
+        throw new IllegalArgumentException("Invalid value for -sparseChartCellStates, which must be positive: " + args[i+1]);
+      }
+      i += 2;
+    } else if (args[i].equalsIgnoreCase("-coarseToFine")) {
+      testOptions.coarseToFine = true;
+      i++;
+    } else if (args[i].equalsIgnoreCase("-coarseToFineThreshold") && (i + 1 < args.length)) {
+      testOptions.coarseToFine = true;
+      testOptions.coarseToFineThreshold = Float.parseFloat(args[i + 1]);
+      if ( ! (testOptions.coarseToFineThreshold > 0)) {
+        throw new IllegalArgumentException("Invalid value for -coarseToFineThreshold, which must be positive: " + args[i+1]);
+      }
+      i += 2;
     } else if (args[i].equalsIgnoreCase("-vMarkov") && (i + 1 < args.length)) {
       int order = Integer.parseInt(args[i + 1]);
       if (order <= 1) {
@@ -0,0 +1,183 @@
+package edu.stanford.nlp.parser.lexparser;
+
+import java.util.Arrays;
+
+/**
+ * The inside scores of a PCFG chart which keeps only the states of each cell
+ * that survive pruning.  A cell is a run of (state, score) pairs, sorted by
+ * state, in two flat arrays which are kept from sentence to sentence.  So a
+ * sentence takes memory in proportion to the number of states kept, which
+ * the pruning bounds, rather than to length<sup>2</sup> times the number of
+ * grammar states, as the dense arrays of {@link ExhaustivePCFGParser} do.
+ * <br>
+ * Each cell is added once, whole, as CKY builds it (or, for outside scores,
+ * parents first); a cell cannot be changed once it is added.
+ * This class is not threadsafe.
+ *
+ * @see TestOptions#sparseChartLength
+ */
+class SparsePCFGChart {
+
+  private final int numStates;
+
+  /** One more than the length of the sentence (including the boundary). */
+  private int width; // = 0
+  /** The offset of the run of cell [start, end] is at cellBegin[start * width + end]. */
+  private int[] cellBegin = new int[0];
+  private int[] cellEnd = new int[0];
+
+  private int[] states = new int[1024];
+  private float[] scores = new float[1024];
+  private int size; // = 0
+
+  /** Used to find the score threshold when a cell has too many states. */
+  private float[] sortScratch = new float[64];
+  /** The live states of a dense cell. */
+  private final int[] liveScratch;
+
+  SparsePCFGChart(int numStates) {
+    this.numStates = numStates;
+    this.liveScratch = new int[numStates];
+  }
+
+  /** Empties the chart for a sentence of this length (including the boundary symbol). */
+  void reset(int length) {
+    width = length + 1;
+    int cells = width * width;
+    if (cellBegin.length < cells) {
+      cellBegin = new int[cells];
+      cellEnd = new int[cells];
+    } else {
+      Arrays.fill(cellBegin, 0, cells, 0);
+      Arrays.fill(cellEnd, 0, cells, 0);
+    }
+    size = 0;
+  }
+
+  /** The index of the first entry of cell [start, end]. */
+  int begin(int start, int end) {
+    return cellBegin[start * width + end];
+  }
+
+  /** One past the index of the last entry of cell [start, end]. */
+  int end(int start, int end) {
+    return cellEnd[start * width + end];
+  }
+
+  int state(int entry) {
+    return states[entry];
+  }
+
+  float score(int entry) {
+    return scores[entry];
+  }
+
+  /** The number of (state, score) entries in the chart. */
+  int size() {
+    return size;
+  }
+
+  /** The inside score of a state over a span, or negative infinity if it was not built or was pruned. */
+  float score(int start, int end, int state) {
+    int cell = start * width + end;
+    int i = Arrays.binarySearch(states, cellBegin[cell], cellEnd[cell], state);
+    return i >= 0 ? scores[i] : Float.NEGATIVE_INFINITY;
+  }
+
+  /**
+   * Adds cell [start, end] from a dense array of its scores, keeping the states
+   * which score within {@code beam} of the best state of the cell, and of those
+   * the best {@code maxStates}.  States tied with the last of those are kept too,
+   * since a unary rule with probability 1 ties its parent with its child, and
+   * the parse of a state kept must be in the chart.
+   *
+   * @return Whether any state was pruned
+   */
+  boolean addCell(int start, int end, float[] cellScores, float beam, int maxStates) {
+    int live = 0;
+    for (int state = 0; state < numStates; state++) {
+      if (cellScores[state] > Float.NEGATIVE_INFINITY) {
+        liveScratch[live++] = state;
+      }
+    }
+    return addCell(start, end, cellScores, liveScratch, live, beam, maxStates);
+  }
+
+  /**
+   * Adds cell [start, end] as {@link #addCell(int, int, float[], float, int)} does,
+   * but looks in cellScores only at the first numCellStates of cellStates, which must
+   * be sorted and hold every state of the cell which is not negative infinity.
+   * So a cell costs time in proportion to the states built in it rather than to
+   * the states of the grammar.
+   *
+   * @return Whether any state was pruned
+   */
+  boolean addCell(int start, int end, float[] cellScores, int[] cellStates, int numCellStates, float beam, int maxStates) {
+    float best = Float.NEGATIVE_INFINITY;
+    int live = 0;
+    for (int i = 0; i < numCellStates; i++) {
+      float score = cellScores[cellStates[i]];
+      if (score > Float.NEGATIVE_INFINITY) {
+        live++;
+        if (score > best) {
+          best = score;
+        }
+      }
+    }
+    float threshold = best - beam;
+    int kept = live;
+    if (beam < Float.POSITIVE_INFINITY) {
+      kept = 0;
+      for (int i = 0; i < numCellStates; i++) {
+        float score = cellScores[cellStates[i]];
+        if (score > Float.NEGATIVE_INFINITY && score >= threshold) {
+          kept++;
+        }
+      }
+    }
+    if (kept > maxStates) {
+      if (sortScratch.length < kept) {
+        sortScratch = new float[Math.max(kept, 2 * sortScratch.length)];
+      }
+      kept = 0;
+      for (int i = 0; i < numCellStates; i++) {
+        float score = cellScores[cellStates[i]];
+        if (score > Float.NEGATIVE_INFINITY && score >= threshold) {
+          sortScratch[kept++] = score;
+        }
+      }
+      Arrays.sort(sortScratch, 0, kept);
+      threshold = sortScratch[kept - maxStates];
+      int i = kept - maxStates;
+      while (i > 0 && sortScratch[i - 1] == threshold) {
+        i--;
+      }
+      kept -= i;
+    }
+    ensureCapacity(size + kept);
+    int cell = start * width + end;
+    cellBegin[cell] = size;
+    if (kept > 0) {
+      for (int i = 0; i < numCellStates; i++) {
+        int state = cellStates[i];
+        float score = cellScores[state];
+        if (score >= threshold && score > Float.NEGATIVE_INFINITY) {
+          states[size] = state;
+          scores[size] = score;
+          size++;
+        }
+      }
+    }
+    cellEnd[cell] = size;
+    return kept < live;
+  }
+
+  private void ensureCapacity(int capacity) {
+    if (capacity > states.length) {
+      int newLength = Math.max(capacity, 2 * states.length);
+      states = Arrays.copyOf(states, newLength);
+      scores = Arrays.copyOf(scores, newLength);
+    }
+  }
+
+}
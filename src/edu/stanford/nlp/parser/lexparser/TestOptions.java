@@ -69,6 +69,44 @@ public class TestOptions implements Serializable  {
   /** If true, use faster iterative deepening CKY algorithm. */
   public boolean iterativeCKY = false;
 
+  /**
+   * Sentences of at least this many words are parsed by the PCFG parser with a
+   * sparse chart, which keeps only the states of each cell that survive pruning
+   * by {@link #sparseChartBeam} and {@link #sparseChartCellStates}.  Its memory
+   * is bounded by the number of cells times the states kept per cell, so much
+   * longer sentences can be parsed than with the dense chart, at the cost of
+   * possibly not finding the best parse.  It is only used for PCFG parsing (or
+   * the fast factored parser), and not with lengthNormalization.
+   * The default never uses it.
+   */
+  public int sparseChartLength = Integer.MAX_VALUE;
+
+  /**
+   * In a sparse chart, states which score more than this (log probability)
+   * below the best state over the same span are pruned.  It must be positive.
+   */
+  public float sparseChartBeam = 20.0f;
+
+  /** In a sparse chart, the most states kept over each span.  It must be positive. */
+  public int sparseChartCellStates = 500;
+
+  /**
+   * If true, the PCFG parser first parses each sentence with its grammar
+   * projected onto basic categories, and then builds in the chart of the full
+   * grammar only the states whose projection is in a coarse parse scoring
+   * within {@link #coarseToFineThreshold} of the best one.  This uses the
+   * sparse chart (see {@link #sparseChartLength}), and has the same limits.
+   */
+  public boolean coarseToFine = false;
+
+  /**
+   * The pruning threshold (log probability) of coarse-to-fine parsing.  The
+   * smaller it is, the faster the parser, and the more likely it is to miss
+   * the best parse.  If a sentence fails to parse, it is retried with the
+   * threshold doubled.  It must be positive.
+   */
+  public float coarseToFineThreshold = 10.0f;
+
   /**
    * The maximum sentence length (including punctuation, etc.) to parse.
    */
@@ -2,12 +2,13 @@ package edu.stanford.nlp.parser.nndep;
 
 import edu.stanford.nlp.math.ArrayMath;
 import edu.stanford.nlp.util.CollectionUtils;
-import edu.stanford.nlp.util.LeastRecentlyUsedCache;
 import edu.stanford.nlp.util.Pair;
+import edu.stanford.nlp.util.concurrent.ConcurrentIntLookupCache;
 import edu.stanford.nlp.util.concurrent.MulticoreWrapper;
 import edu.stanford.nlp.util.concurrent.ThreadsafeProcessor;
 import edu.stanford.nlp.util.logging.Redwood;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -72,6 +73,17 @@ public class Classifier  {
    */
   private final Map<Integer, Integer> preMap;
 
+  /**
+   * The entries of {@link #preMap} again, in an open addressing table
+   * of ints, so that the feature IDs of a sentence can be looked up
+   * without boxing them. Empty slots have a key of -1.
+   */
+  private final int[] preKeys;
+  private final int[] preIds;
+  private final int preMask;
+  /** The shift which leaves the top log2(capacity) bits of a hash, which are its best mixed. */
+  private final int preShift;
+
   /**
    * Initial training state is dependent on how the classifier is
    * initialized. We use this flag to determine whether calls to
@@ -102,7 +114,12 @@ public class Classifier  {
    */
   private final int numLabels;
 
-  private LeastRecentlyUsedCache<Integer, float[]> cache;
+  /**
+   * Hidden layer activations of feature IDs which are not precomputed,
+   * shared without locking by all the threads using this classifier.
+   * Null if nothing is cached.
+   */
+  private final ConcurrentIntLookupCache<float[]> cache;
 
   /**
    * Instantiate a classifier with previously learned parameters in
@@ -148,6 +165,20 @@ public class Classifier  {
     preMap = new HashMap<>();
     for (int i = 0; i < preComputed.size() && i < config.numPreComputed; ++i)
       preMap.put(preComputed.get(i), i);
+    int capacity = Integer.highestOneBit(Math.max(2 * preMap.size(), 1)) << 1;
+    preKeys = new int[capacity];
+    preIds = new int[capacity];
+    preMask = capacity - 1;
+    preShift = 32 - Integer.numberOfTrailingZeros(capacity);
+    Arrays.fill(preKeys, -1);
+    for (Map.Entry<Integer, Integer> entry : preMap.entrySet()) {
+      int slot = preSlot(entry.getKey());
+      while (preKeys[slot] >= 0) {
+        slot = (slot + 1) & preMask;
+      }
+      preKeys[slot] = entry.getKey();
+      preIds[slot] = entry.getValue();
+    }
 
     isTraining = dataset != null;
     if (isTraining)
@@ -155,7 +186,8 @@ public class Classifier  {
     else
       jobHandler = null;
 
-    cache = new LeastRecentlyUsedCache<>(config.numCached);
+    int cacheSize = cacheSize(config, W1.length);
+    cache = cacheSize > 0 ? new ConcurrentIntLookupCache<>(this::computeSlice, cacheSize) : null;
   }
 
   /**
@@ -211,9 +243,9 @@ public class Classifier  {
                             .toArray();
 
         int offset = 0;
-        for (int j = 0; j < config.numTokens; ++j) {
+        for (int j = 0; j < Config.numTokens; ++j) {
           int tok = feature.get(j);
-          int index = tok * config.numTokens + j;
+          int index = tok * Config.numTokens + j;
 
           if (preMap.containsKey(index)) {
             // Unit activations for this input feature value have been
@@ -283,9 +315,9 @@ public class Classifier  {
         }
 
         offset = 0;
-        for (int j = 0; j < config.numTokens; ++j) {
+        for (int j = 0; j < Config.numTokens; ++j) {
           int tok = feature.get(j);
-          int index = tok * config.numTokens + j;
+          int index = tok * Config.numTokens + j;
           if (preMap.containsKey(index)) {
             int id = preMap.get(index);
             for (int nodeIndex : ls)
@@ -403,8 +435,8 @@ public class Classifier  {
     private void backpropSaved(Set<Integer> featuresSeen) {
       for (int x : featuresSeen) {
         int mapX = preMap.get(x);
-        int tok = x / config.numTokens;
-        int offset = (x % config.numTokens) * config.embeddingSize;
+        int tok = x / Config.numTokens;
+        int offset = (x % Config.numTokens) * config.embeddingSize;
         for (int j = 0; j < config.hiddenSize; ++j) {
           double delta = gradSaved[mapX][j];
           for (int k = 0; k < config.embeddingSize; ++k) {
@@ -482,9 +514,9 @@ public class Classifier  {
     for (Example ex : examples) {
       List<Integer> feature = ex.getFeature();
 
-      for (int j = 0; j < config.numTokens; j++) {
+      for (int j = 0; j < Config.numTokens; j++) {
         int tok = feature.get(j);
-        int index = tok * config.numTokens + j;
+        int index = tok * Config.numTokens + j;
         if (preMap.containsKey(index))
           featureIDs.add(index);
       }
@@ -665,7 +697,7 @@ public class Classifier  {
     // actually hurt training performance! (See experiments with
     // "smallMap.")
     saved = new double[preMap.size()][config.hiddenSize];
-    final int numTokens = config.numTokens;
+    final int numTokens = Config.numTokens;
     final int embeddingSize = config.embeddingSize;
 
     for (int x : toPreCompute) {
@@ -679,42 +711,54 @@ public class Classifier  {
   }
 
 
-  double[] computeScores(int[] feature) {
-    return computeScores(feature, preMap);
+  private int preSlot(int index) {
+    return (index * 0x9E3779B9) >>> preShift;
+  }
+
+  /** The most slots looked at to find a precomputed feature ID, or 0 if there are none. */
+  int maxPreComputedProbes() {
+    int max = 0;
+    for (int slot = 0; slot <= preMask; slot++) {
+      int key = preKeys[slot];
+      if (key >= 0) {
+        max = Math.max(max, ((slot - preSlot(key)) & preMask) + 1);
+      }
+    }
+    return max;
+  }
+
+  /** The index into {@link #saved} of a feature ID, or -1 if it is not precomputed. */
+  private int preComputedId(int index) {
+    for (int slot = preSlot(index); preKeys[slot] >= 0; slot = (slot + 1) & preMask) {
+      if (preKeys[slot] == index) {
+        return preIds[slot];
+      }
+    }
+    return -1;
   }
 
   /**
    * Feed a feature vector forward through the network. Returns the
    * values of the output layer.
    */
-  private double[] computeScores(int[] feature, Map<Integer, Integer> preMap) {
+  double[] computeScores(int[] feature) {
     final double[] hidden = new double[config.hiddenSize];
-    final int numTokens = config.numTokens;
+    final int numTokens = Config.numTokens;
     final int embeddingSize = config.embeddingSize;
 
     int offset = 0;
     for (int j = 0; j < feature.length; j++) {
       int tok = feature[j];
       int index = tok * numTokens + j;
-      Integer idInteger = preMap.get(index);
-      if (idInteger != null) {
-        ArrayMath.pairwiseAddInPlace(hidden, saved[idInteger]);
+      int id = preComputedId(index);
+      if (id >= 0) {
+        ArrayMath.pairwiseAddInPlace(hidden, saved[id]);
       } else {
-        if (isTraining || config.numCached == 0) {
+        if (isTraining || cache == null) {
           // TODO: can the cache be used when training, actually?
           matrixMultiplySliceSum(hidden, W1, E[tok], offset);
         } else {
-          float[] cached;
-          synchronized (cache) {
-            cached = cache.getOrDefault(index, null);
-          }
-          if (cached == null) {
-            cached = matrixMultiplySlice(W1, E[tok], offset);
-            synchronized (cache) {
-              cache.add(index, cached);
-            }
-          }
-          ArrayMath.pairwiseAddInPlace(hidden, cached);
+          ArrayMath.pairwiseAddInPlace(hidden, cache.get(index));
         }
       }
       offset += embeddingSize;
@@ -723,6 +767,100 @@ public class Classifier  {
     return matrixMultiply(W2, hidden);
   }
 
+  /**
+   * Feeds a batch of feature vectors forward through the network, giving
+   * the same scores as {@link #computeScores(int[])} would for each.
+   * The hidden layers are built a feature position at a time across the
+   * batch.  The tokens at that position which are neither precomputed
+   * nor cached are multiplied by W1 together, as one matrix-matrix
+   * product, so each row of W1 is read once per position rather than once
+   * per vector.  The output layer is then the product of W2 and the matrix
+   * of hidden layers, taken a row of W2 at a time.  Each hidden unit adds
+   * up the same terms in the same order as for a single vector, so the
+   * scores are exactly the same.
+   *
+   * @param features The feature vectors, of which the first batchSize are scored
+   * @return The values of the output layer for each feature vector
+   */
+  double[][] computeScores(int[][] features, int batchSize) {
+    final int numTokens = Config.numTokens;
+    final int embeddingSize = config.embeddingSize;
+    final boolean useCache = ! isTraining && cache != null;
+
+    double[][] hidden = new double[batchSize][config.hiddenSize];
+    // the vectors whose token at the current position is multiplied by W1, and its embedding
+    int[] rows = new int[batchSize];
+    double[][] embeddings = new double[batchSize][];
+    int offset = 0;
+    for (int j = 0; j < numTokens; j++) {
+      int numRows = 0;
+      for (int b = 0; b < batchSize; b++) {
+        int tok = features[b][j];
+        int index = tok * numTokens + j;
+        int id = preComputedId(index);
+        if (id >= 0) {
+          ArrayMath.pairwiseAddInPlace(hidden[b], saved[id]);
+        } else if (useCache) {
+          ArrayMath.pairwiseAddInPlace(hidden[b], cache.get(index));
+        } else {
+          rows[numRows] = b;
+          embeddings[numRows] = E[tok];
+          numRows++;
+        }
+      }
+      if (numRows > 0) {
+        matrixMultiplySliceSum(hidden, rows, embeddings, numRows, W1, offset);
+      }
+      offset += embeddingSize;
+    }
+    for (int b = 0; b < batchSize; b++) {
+      addCubeInPlace(hidden[b], b1);
+    }
+
+    double[][] scores = new double[batchSize][W2.length];
+    for (int i = 0; i < W2.length; i++) {
+      double[] row = W2[i];
+      for (int b = 0; b < batchSize; b++) {
+        scores[b][i] = ArrayMath.dotProduct(row, hidden[b]);
+      }
+    }
+    return scores;
+  }
+
+  /** The hidden layer activations of the token of a feature ID, as kept in the cache. */
+  private float[] computeSlice(int index) {
+    int tok = index / Config.numTokens;
+    int pos = index % Config.numTokens;
+    return matrixMultiplySlice(W1, E[tok], pos * config.embeddingSize);
+  }
+
+  /**
+   * The number of hidden layer activations to cache: numCached, or fewer
+   * if that many would take more than maxCacheMB.  The cache rounds its
+   * size up to a power of two, so a size limited by memory is rounded
+   * down to one here.
+   */
+  private static int cacheSize(Config config, int hiddenSize) {
+    int size = config.numCached;
+    if (config.maxCacheMB > 0 && size > 0) {
+      // a float[] and the cache's entry each take some bytes beyond the floats
+      long bytesPerEntry = 4L * hiddenSize + 64;
+      long fit = ((long) config.maxCacheMB << 20) / bytesPerEntry;
+      if (fit < size) {
+        size = fit == 0 ? 0 : Integer.highestOneBit((int) fit);
+      }
+    }
+    return size;
+  }
+
+  /**
+   * A description of the cache of hidden layer activations, with its
+   * size and hit rate so far.
+   */
+  String cacheStatistics() {
+    return cache == null ? "no cache" : cache.toString();
+  }
+
   // extracting these small methods makes things faster; hotspot likes them
 
   private static double[] matrixMultiply(double[][] matrix, double[] vector) {
@@ -755,6 +893,25 @@ public class Classifier  {
     }
   }
 
+  /**
+   * For each of numRows vectors, does what {@link #matrixMultiplySliceSum(double[], double[][], double[], int)}
+   * does to sums[rows[r]] with vectors[r], but with each row of the matrix read once for all of them.
+   */
+  private static void matrixMultiplySliceSum(double[][] sums, int[] rows, double[][] vectors, int numRows, double[][] matrix, int leftColumnOffset) {
+    for (int i = 0; i < matrix.length; i++) {
+      double[] row = matrix[i];
+      for (int r = 0; r < numRows; r++) {
+        double[] vector = vectors[r];
+        double[] sum = sums[rows[r]];
+        double partial = sum[i];
+        for (int j = 0; j < vector.length; j++) {
+          partial += row[leftColumnOffset + j] * vector[j];
+        }
+        sum[i] = partial;
+      }
+    }
+  }
+
   private static void addCubeInPlace(double[] vector, double [] bias) {
     for (int i = 0; i < vector.length; i++) {
       vector[i] += bias[i]; // add bias
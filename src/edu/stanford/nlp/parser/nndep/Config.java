@@ -138,6 +138,13 @@ public class Config {
    */
   public int numCached = 5000;
 
+  /**
+   * If positive, the most memory in megabytes which the cached hidden layer
+   * activations may take, which can lower the number cached.  The cache is
+   * shared by all the threads using the parser.
+   */
+  public int maxCacheMB = 0;
+
   /**
    * During training, run a full UAS evaluation after every
    * {@code evalPerIter} iterations.
@@ -237,6 +244,7 @@ public class Config {
     embeddingSize = PropertiesUtils.getInt(props, "embeddingSize", embeddingSize);
     numPreComputed = PropertiesUtils.getInt(props, "numPreComputed", numPreComputed);
     numCached = PropertiesUtils.getInt(props, "numCached", numCached);
+    maxCacheMB = PropertiesUtils.getInt(props, "maxCacheMB", maxCacheMB);
     evalPerIter = PropertiesUtils.getInt(props, "evalPerIter", evalPerIter);
     clearGradientsPerIter = PropertiesUtils.getInt(props, "clearGradientsPerIter", clearGradientsPerIter);
     saveIntermediate = PropertiesUtils.getBool(props, "saveIntermediate", saveIntermediate);
@@ -301,6 +309,7 @@ public class Config {
     System.err.printf("embeddingSize = %d%n", embeddingSize);
     System.err.printf("numPreComputed = %d%n", numPreComputed);
     System.err.printf("numCached = %d%n", numCached);
+    System.err.printf("maxCacheMB = %d%n", maxCacheMB);
     System.err.printf("evalPerIter = %d%n", evalPerIter);
     System.err.printf("clearGradientsPerIter = %d%n", clearGradientsPerIter);
     System.err.printf("saveItermediate = %b%n", saveIntermediate);
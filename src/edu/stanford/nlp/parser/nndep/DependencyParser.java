@@ -939,22 +939,84 @@ public class DependencyParser  {
         throw new RuntimeInterruptedException();
       }
       double[] scores = classifier.computeScores(getFeatureArray(c));
+      applyBestTransition(c, scores, numTrans);
+    }
+    return c.tree;
+  }
 
-      double optScore = Double.NEGATIVE_INFINITY;
-      String optTrans = null;
+  /** Applies the highest scoring transition which can be applied to the configuration. */
+  private void applyBestTransition(Configuration c, double[] scores, int numTrans) {
+    double optScore = Double.NEGATIVE_INFINITY;
+    String optTrans = null;
+
+    for (int j = 0; j < numTrans; ++j) {
+      if (scores[j] > optScore) {
+        String tr = system.transitions.get(j);
+        if (system.canApply(c, tr)) {
+          optScore = scores[j];
+          optTrans = tr;
+        }
+      }
+    }
+    system.apply(c, optTrans);
+  }
 
-      for (int j = 0; j < numTrans; ++j) {
-        if (scores[j] > optScore) {
-          String tr = system.transitions.get(j);
-          if (system.canApply(c, tr)) {
-            optScore = scores[j];
-            optTrans = tr;
-          }
+  /**
+   * Determine the dependency parses of many sentences, parsing up to
+   * batchSize of them in lockstep: each step, the next transitions of
+   * all the sentences in the batch are scored together by
+   * {@link Classifier#computeScores(int[][], int)}.  When a sentence is
+   * done, the next one takes its place in the batch.  The parses are
+   * the same as those of {@link #predictInner(CoreMap)}.
+   */
+  private List<DependencyTree> predictInner(List<? extends CoreMap> sentences, int batchSize) {
+    int numTrans = system.numTransitions();
+    DependencyTree[] trees = new DependencyTree[sentences.size()];
+
+    Configuration[] batch = new Configuration[batchSize];
+    int[] sentenceIndices = new int[batchSize];
+    int[][] features = new int[batchSize][];
+    int size = 0;
+    int next = 0;
+    while (size > 0 || next < sentences.size()) {
+      if (Thread.interrupted()) {  // Allow interrupting
+        throw new RuntimeInterruptedException();
+      }
+      while (size < batchSize && next < sentences.size()) {
+        Configuration c = system.initialConfiguration(sentences.get(next));
+        if (system.isTerminal(c)) {
+          trees[next] = c.tree;
+        } else {
+          batch[size] = c;
+          sentenceIndices[size] = next;
+          size++;
+        }
+        next++;
+      }
+      if (size == 0) {
+        break;
+      }
+
+      for (int i = 0; i < size; i++) {
+        features[i] = getFeatureArray(batch[i]);
+      }
+      double[][] scores = classifier.computeScores(features, size);
+
+      int kept = 0;
+      for (int i = 0; i < size; i++) {
+        Configuration c = batch[i];
+        applyBestTransition(c, scores[i], numTrans);
+        if (system.isTerminal(c)) {
+          trees[sentenceIndices[i]] = c.tree;
+        } else {
+          batch[kept] = c;
+          sentenceIndices[kept] = sentenceIndices[i];
+          kept++;
         }
       }
-      system.apply(c, optTrans);
+      size = kept;
     }
-    return c.tree;
+    return Arrays.asList(trees);
   }
 
   /**
@@ -970,11 +1032,39 @@ public class DependencyParser  {
           "loaded and initialized; first load a model.");
 
     DependencyTree result = predictInner(sentence);
+    return toGrammaticalStructure(sentence, result);
+  }
 
-    // The rest of this method is just busy-work to convert the
-    // package-local representation into a CoreNLP-standard
-    // GrammaticalStructure.
+  /**
+   * Determine the dependency parses of the given sentences using the loaded model,
+   * parsing up to batchSize of them together.  This gives the same parses as
+   * {@link #predict(CoreMap)} on each sentence, and on a document of many
+   * sentences it is faster, since the neural network is run on a batch of
+   * sentences at a time.
+   *
+   * @throws java.lang.IllegalStateException If parser has not yet been loaded and initialized
+   *         (see {@link #initialize(boolean)}
+   */
+  public List<GrammaticalStructure> predict(List<? extends CoreMap> sentences, int batchSize) {
+    if (system == null)
+      throw new IllegalStateException("Parser has not been  " +
+          "loaded and initialized; first load a model.");
+    if (batchSize < 1)
+      throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
 
+    List<DependencyTree> results = predictInner(sentences, batchSize);
+    List<GrammaticalStructure> parses = new ArrayList<>(sentences.size());
+    for (int i = 0; i < sentences.size(); i++) {
+      parses.add(toGrammaticalStructure(sentences.get(i), results.get(i)));
+    }
+    return parses;
+  }
+
+  /**
+   * Just busy-work to convert the package-local representation into a
+   * CoreNLP-standard GrammaticalStructure.
+   */
+  private GrammaticalStructure toGrammaticalStructure(CoreMap sentence, DependencyTree result) {
     List<CoreLabel> tokens = sentence.get(CoreAnnotations.TokensAnnotation.class);
     List<TypedDependency> dependencies = new ArrayList<>();
 
@@ -1078,6 +1168,16 @@ public class DependencyParser  {
     return predict(sentenceLabel);
   }
 
+  /**
+   * A description of the cache of hidden layer activations (see numCached and maxCacheMB):
+   * its capacity, and its hits, misses and hit rate over everything parsed so far, which
+   * shows whether it is big enough for the text being parsed.  It is "no cache" if
+   * numCached is 0, and "no model" before a model is loaded or trained.
+   */
+  public String cacheStatistics() {
+    return classifier == null ? "no model" : classifier.cacheStatistics();
+  }
+
   //TODO: support sentence-only files as input
 
   /** Run the parser in the modelFile on a testFile and perhaps save output.
@@ -1122,6 +1222,7 @@ public class DependencyParser  {
     double sentspersec = numSentences / (((double) millis) / 1000);
     log.info(String.format("%s parsed %d words in %d sentences in %.1fs at %.1f w/s, %.1f sent/s.%n",
             StringUtils.getShortClassName(this), numWords, numSentences, millis / 1000.0, wordspersec, sentspersec));
+    log.info("Hidden layer cache: " + cacheStatistics());
 
     if (outFile != null) {
         Util.writeConllFile(outFile, testSents, predicted);
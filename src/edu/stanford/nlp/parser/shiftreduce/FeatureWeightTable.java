@@ -0,0 +1,126 @@
+package edu.stanford.nlp.parser.shiftreduce;
+
+import java.util.Map;
+
+import edu.stanford.nlp.util.Generics;
+
+/**
+ * A read-only copy of the feature weights of a {@link PerceptronModel},
+ * laid out for scoring states at parse time.  The features are kept in
+ * an open addressing hash table of parallel arrays, and the rows of
+ * weights of all the features in two flat arrays of transitions and
+ * scores.  So looking up a feature follows no pointers but the feature
+ * string itself, and scoring it reads no {@link Weight} object.
+ * <br>
+ * The table is never changed once built, so any number of parser
+ * threads can share it.  The model keeps only the table while parsing,
+ * and makes its map again from {@link #toFeatureWeights} when its weights
+ * are to be changed, or a copy of the map when they are only read.
+ */
+class FeatureWeightTable {
+
+  private final int mask;
+  private final String[] features;
+  private final int[] hashes;
+  /** The row of the feature in a slot is at [rowBegins[slot], rowEnds[slot]) of transitions and scores. */
+  private final int[] rowBegins;
+  private final int[] rowEnds;
+  private final int[] transitions;
+  private final float[] scores;
+  private final int size;
+
+  FeatureWeightTable(Map<String, Weight> featureWeights) {
+    int numFeatures = 0;
+    int numWeights = 0;
+    for (Weight weight : featureWeights.values()) {
+      if (weight.size() > 0) {
+        numFeatures++;
+        numWeights += weight.size();
+      }
+    }
+    // at most half full, so a feature which is not there is soon found not to be
+    int capacity = 2;
+    while (capacity < 2 * numFeatures) {
+      capacity <<= 1;
+    }
+    mask = capacity - 1;
+    features = new String[capacity];
+    hashes = new int[capacity];
+    rowBegins = new int[capacity];
+    rowEnds = new int[capacity];
+    transitions = new int[numWeights];
+    scores = new float[numWeights];
+    size = numFeatures;
+
+    int offset = 0;
+    for (Map.Entry<String, Weight> entry : featureWeights.entrySet()) {
+      Weight weight = entry.getValue();
+      if (weight.size() == 0) {
+        continue;
+      }
+      int hash = hash(entry.getKey());
+      int slot = hash & mask;
+      while (features[slot] != null) {
+        slot = (slot + 1) & mask;
+      }
+      features[slot] = entry.getKey();
+      hashes[slot] = hash;
+      rowBegins[slot] = offset;
+      // kept in the order of the Weight, so the scores add up exactly as Weight.score would
+      for (int i = 0; i < weight.size(); ++i) {
+        transitions[offset] = weight.indexAt(i);
+        scores[offset] = weight.scoreAt(i);
+        ++offset;
+      }
+      rowEnds[slot] = offset;
+    }
+  }
+
+  /** Spreads the higher bits of the hash code into the lower ones, which choose the slot. */
+  private static int hash(String feature) {
+    int h = feature.hashCode();
+    return h ^ (h >>> 16);
+  }
+
+  /** The number of features with a non-zero weight. */
+  int size() {
+    return size;
+  }
+
+  /**
+   * The weights of the features as a map of {@link Weight}s, with the rows in
+   * the same order as in the map the table was built from.  Features with no
+   * weights are not in the table, so they are not in the map either.
+   */
+  Map<String, Weight> toFeatureWeights() {
+    Map<String, Weight> featureWeights = Generics.newHashMap(size);
+    for (int slot = 0; slot < features.length; ++slot) {
+      if (features[slot] == null) {
+        continue;
+      }
+      Weight weight = new Weight();
+      for (int i = rowBegins[slot]; i < rowEnds[slot]; ++i) {
+        weight.updateWeight(transitions[i], scores[i]);
+      }
+      featureWeights.put(features[slot], weight);
+    }
+    return featureWeights;
+  }
+
+  /**
+   * Adds the weights of this feature to the scores of the transitions.
+   * Features not in the model are ignored.
+   */
+  void score(String feature, float[] transitionScores) {
+    int hash = hash(feature);
+    for (int slot = hash & mask; features[slot] != null; slot = (slot + 1) & mask) {
+      if (hashes[slot] == hash && features[slot].equals(feature)) {
+        for (int i = rowBegins[slot]; i < rowEnds[slot]; ++i) {
+          transitionScores[transitions[i]] += scores[i];
+        }
+        return;
+      }
+    }
+  }
+
+}
@@ -1,5 +1,7 @@
 package edu.stanford.nlp.parser.shiftreduce;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
 import java.util.Collection;
@@ -40,9 +42,22 @@ public class PerceptronModel extends BaseModel  {
 
   private float learningRate = 1.0f;
 
-  Map<String, Weight> featureWeights;
+  /**
+   * The weights of each feature, or null while they are in weightTable.
+   * Use {@link #featureWeights()} to change them, which makes the map again
+   * if needed, and {@link #readFeatureWeights()} to read them, which doesn't.
+   */
+  private volatile Map<String, Weight> featureWeights;
   final FeatureFactory featureFactory;
 
+  /**
+   * The weights laid out for parsing, made when first needed.  Then featureWeights
+   * is dropped, so that a model loaded for parsing does not keep its weights twice.
+   * Exactly one of the two is not null.  Only changing the weights, which is never
+   * done while parsing, drops the table again.
+   */
+  private transient volatile FeatureWeightTable weightTable;
+
   public PerceptronModel(ShiftReduceOptions op, Index<Transition> transitionIndex,
                          Set<String> knownStates, Set<String> rootStates, Set<String> rootOnlyStates) {
     super(op, transitionIndex, knownStates, rootStates, rootOnlyStates);
@@ -70,9 +85,10 @@ public class PerceptronModel extends BaseModel  {
     super(other);
     this.featureFactory = other.featureFactory;
 
+    Map<String, Weight> otherWeights = other.readFeatureWeights();
     this.featureWeights = Generics.newHashMap();
-    for (String feature : other.featureWeights.keySet()) {
-      featureWeights.put(feature, new Weight(other.featureWeights.get(feature)));
+    for (String feature : otherWeights.keySet()) {
+      featureWeights.put(feature, new Weight(otherWeights.get(feature)));
     }
   }
 
@@ -101,25 +117,27 @@ public class PerceptronModel extends BaseModel  {
 
     Set<String> features = Generics.newHashSet();
     for (PerceptronModel model : models) {
-      for (String feature : model.featureWeights.keySet()) {
+      for (String feature : model.readFeatureWeights().keySet()) {
         features.add(feature);
       }
     }
 
-    featureWeights = Generics.newHashMap();
+    Map<String, Weight> averaged = Generics.newHashMap();
     for (String feature : features) {
-      featureWeights.put(feature, new Weight());
+      averaged.put(feature, new Weight());
     }
 
     int numModels = models.size();
     for (String feature : features) {
       for (PerceptronModel model : models) {
-        if (!model.featureWeights.containsKey(feature)) {
+        Map<String, Weight> modelWeights = model.readFeatureWeights();
+        if (!modelWeights.containsKey(feature)) {
           continue;
         }
-        featureWeights.get(feature).addScaled(model.featureWeights.get(feature), 1.0f / numModels);
+        averaged.get(feature).addScaled(modelWeights.get(feature), 1.0f / numModels);
       }
     }
+    setFeatureWeights(averaged);
   }
 
   /**
@@ -128,6 +146,7 @@ public class PerceptronModel extends BaseModel  {
    * Any feature with no transitions left is then removed
    */
   private void condenseFeatures() {
+    Map<String, Weight> featureWeights = featureWeights();
     Iterator<String> featureIt = featureWeights.keySet().iterator();
     while (featureIt.hasNext()) {
       String feature = featureIt.next();
@@ -140,7 +159,7 @@ public class PerceptronModel extends BaseModel  {
   }
 
   private void filterFeatures(Set<String> keep) {
-    Iterator<String> featureIt = featureWeights.keySet().iterator();
+    Iterator<String> featureIt = featureWeights().keySet().iterator();
     while (featureIt.hasNext()) {
       if (!keep.contains(featureIt.next())) {
         featureIt.remove();
@@ -153,6 +172,7 @@ public class PerceptronModel extends BaseModel  {
    * Output some random facts about the model
    */
   public void outputStats() {
+    Map<String, Weight> featureWeights = readFeatureWeights();
     log.info("Number of known features: " + featureWeights.size());
     int numWeights = 0;
     for (Map.Entry<String, Weight> stringWeightEntry : featureWeights.entrySet()) {
@@ -177,7 +197,7 @@ public class PerceptronModel extends BaseModel  {
     Set<String> tags = Generics.newHashSet();
     Pattern p1 = Pattern.compile("Q0TQ1T-([^-]+)-.*");
     Pattern p2 = Pattern.compile("S0T-(.*)");
-    for (String feat : featureWeights.keySet()) {
+    for (String feat : readFeatureWeights().keySet()) {
       Matcher m1 = p1.matcher(feat);
       if (m1.matches()) {
         tags.add(m1.group(1));
@@ -203,13 +223,87 @@ public class PerceptronModel extends BaseModel  {
     return transitions.iterator().next();
   }
 
+  /**
+   * The weights of each feature, for training and the other uses of the model
+   * which change them.  If parsing has dropped them, they are made again from
+   * the {@link FeatureWeightTable}, which is then dropped, so this must not be
+   * called while the model may be parsing.
+   */
+  Map<String, Weight> featureWeights() {
+    Map<String, Weight> weights = featureWeights;
+    if (weights == null) {
+      synchronized (this) {
+        weights = featureWeights;
+        if (weights == null) {
+          weights = weightTable.toFeatureWeights();
+          featureWeights = weights;
+          weightTable = null;
+        }
+      }
+    }
+    return weights;
+  }
+
+  /**
+   * The weights of each feature, to be read but not changed.  If parsing has
+   * dropped them, this is a copy made from the {@link FeatureWeightTable},
+   * which is neither kept nor dropped, so it is safe to call on a model which
+   * is parsing.
+   */
+  Map<String, Weight> readFeatureWeights() {
+    Map<String, Weight> weights = featureWeights;
+    if (weights == null) {
+      synchronized (this) {
+        weights = featureWeights;
+        if (weights == null) {
+          weights = weightTable.toFeatureWeights();
+        }
+      }
+    }
+    return Collections.unmodifiableMap(weights);
+  }
+
+  private synchronized void setFeatureWeights(Map<String, Weight> weights) {
+    featureWeights = weights;
+    weightTable = null;
+  }
+
+  /**
+   * The weights as a {@link FeatureWeightTable}, which is made from featureWeights
+   * if they have been changed since the last one.  featureWeights is then dropped.
+   */
+  FeatureWeightTable weightTable() {
+    FeatureWeightTable table = weightTable;
+    if (table == null) {
+      synchronized (this) {
+        table = weightTable;
+        if (table == null) {
+          table = new FeatureWeightTable(featureWeights);
+          weightTable = table;
+          featureWeights = null;
+        }
+      }
+    }
+    return table;
+  }
+
+  /**
+   * Scores the transitions with the {@link FeatureWeightTable} rather than
+   * featureWeights, so this should not be called while training changes the weights.
+   * Once the model is trained, any number of threads may call this at once.
+   */
   @Override
   public Collection<ScoredObject<Integer>> findHighestScoringTransitions(State state, boolean requireLegal, int numTransitions, List<ParserConstraint> constraints) {
-    List<String> features = featureFactory.featurize(state);
-    return findHighestScoringTransitions(state, features, requireLegal, numTransitions, constraints);
+    FeatureWeightTable table = weightTable();
+    float[] scores = new float[transitionIndex.size()];
+    for (String feature : featureFactory.featurize(state)) {
+      table.score(feature, scores);
+    }
+    return findHighestScoringTransitions(state, scores, requireLegal, numTransitions, constraints);
   }
 
   private Collection<ScoredObject<Integer>> findHighestScoringTransitions(State state, List<String> features, boolean requireLegal, int numTransitions, List<ParserConstraint> constraints) {
+    Map<String, Weight> featureWeights = featureWeights();
     float[] scores = new float[transitionIndex.size()];
     for (String feature : features) {
       Weight weight = featureWeights.get(feature);
@@ -219,7 +313,10 @@ public class PerceptronModel extends BaseModel  {
       }
       weight.score(scores);
     }
+    return findHighestScoringTransitions(state, scores, requireLegal, numTransitions, constraints);
+  }
 
+  private Collection<ScoredObject<Integer>> findHighestScoringTransitions(State state, float[] scores, boolean requireLegal, int numTransitions, List<ParserConstraint> constraints) {
     PriorityQueue<ScoredObject<Integer>> queue = new PriorityQueue<>(numTransitions + 1, ScoredComparator.ASCENDING_COMPARATOR);
     for (int i = 0; i < scores.length; ++i) {
       if (!requireLegal || transitionIndex.get(i).isLegal(state, constraints)) {
@@ -537,6 +634,7 @@ public class PerceptronModel extends BaseModel  {
         numCorrect += result.second;
         numWrong += result.third;
 
+        Map<String, Weight> featureWeights = featureWeights();
         for (Update update : result.first) {
           for (String feature : update.features) {
             if (allowedFeatures != null && !allowedFeatures.contains(feature)) {
@@ -659,14 +757,30 @@ public class PerceptronModel extends BaseModel  {
       trainModel(tempName, tagger, random, binarizedTrees, transitionLists, devTreebank, nThreads, null);
       ShiftReduceParser temp = new ShiftReduceParser(op, this);
       temp.saveModel(tempName);
-      Set<String> features = featureWeights.keySet();
-      featureWeights = Generics.newHashMap();
+      Set<String> features = readFeatureWeights().keySet();
+      setFeatureWeights(Generics.newHashMap());
       trainModel(serializedPath, tagger, random, binarizedTrees, transitionLists, devTreebank, nThreads, features);
     } else {
       trainModel(serializedPath, tagger, random, binarizedTrees, transitionLists, devTreebank, nThreads, null);
     }
   }
 
+  /**
+   * Writes the weights as the map they are loaded as, made from the table if
+   * parsing has dropped the map, without changing which of the two this model keeps.
+   */
+  private void writeObject(ObjectOutputStream out) throws IOException {
+    Map<String, Weight> weights;
+    synchronized (this) {
+      weights = featureWeights != null ? featureWeights : weightTable.toFeatureWeights();
+    }
+    ObjectOutputStream.PutField fields = out.putFields();
+    fields.put("learningRate", learningRate);
+    fields.put("featureWeights", weights);
+    fields.put("featureFactory", featureFactory);
+    out.writeFields();
+  }
+
   private static final long serialVersionUID = 1;
 
 }
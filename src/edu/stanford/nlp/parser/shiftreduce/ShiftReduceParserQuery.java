@@ -22,6 +22,7 @@ import edu.stanford.nlp.trees.tregex.tsurgeon.Tsurgeon;
 import edu.stanford.nlp.trees.tregex.tsurgeon.TsurgeonPattern;
 import edu.stanford.nlp.util.Generics;
 import edu.stanford.nlp.util.RuntimeInterruptedException;
+import edu.stanford.nlp.util.Scored;
 import edu.stanford.nlp.util.ScoredComparator;
 import edu.stanford.nlp.util.ScoredObject;
 
@@ -69,6 +70,35 @@ public class ShiftReduceParserQuery implements ParserQuery  {
   private static TsurgeonPattern rearrangeFinalPunctuationTsurgeon =
     Tsurgeon.parseOperation("[move punc >-1 top] [if exists single prune single]");
 
+  /**
+   * A transition from a state of the beam.  Applying a transition builds a
+   * new State, and for a binary transition new tree nodes, so a transition
+   * is only applied once it is known to make the next beam.
+   */
+  private static class Candidate implements Scored {
+    final State state;
+    final int transition;
+    final double scoreDelta;
+    /** The score of the state the transition would make. */
+    final double score;
+
+    Candidate(State state, int transition, double scoreDelta) {
+      this.state = state;
+      this.transition = transition;
+      this.scoreDelta = scoreDelta;
+      this.score = state.score + scoreDelta;
+    }
+
+    State apply(BaseModel model) {
+      return model.transitionIndex.get(transition).apply(state, scoreDelta);
+    }
+
+    @Override
+    public double score() {
+      return score;
+    }
+  }
+
   private boolean parseInternal() {
     final int maxBeamSize = Math.max(parser.op.testOptions().beamSize, 1);
 
@@ -85,8 +115,8 @@ public class ShiftReduceParserQuery implements ParserQuery  {
       // log.info("Current beam:");
       // log.info(beam);
       PriorityQueue<State> oldBeam = beam;
-      beam = new PriorityQueue<>(maxBeamSize + 1, ScoredComparator.ASCENDING_COMPARATOR);
-      State bestState = null;
+      PriorityQueue<Candidate> candidates = new PriorityQueue<>(maxBeamSize + 1, ScoredComparator.ASCENDING_COMPARATOR);
+      Candidate bestCandidate = null;
       for (State state : oldBeam) {
         if (Thread.interrupted()) {  // Allow interrupting the parser
           throw new RuntimeInterruptedException();
@@ -94,18 +124,33 @@ public class ShiftReduceParserQuery implements ParserQuery  {
         Collection<ScoredObject<Integer>> predictedTransitions = parser.model.findHighestScoringTransitions(state, true, maxBeamSize, constraints);
         // log.info("Examining state: " + state);
         for (ScoredObject<Integer> predictedTransition : predictedTransitions) {
-          Transition transition = parser.model.transitionIndex.get(predictedTransition.object());
-          State newState = transition.apply(state, predictedTransition.score());
-          // log.info("  Transition: " + transition + " (" + predictedTransition.score() + ")");
-          if (bestState == null || bestState.score() < newState.score()) {
-            bestState = newState;
+          Candidate candidate = new Candidate(state, predictedTransition.object(), predictedTransition.score());
+          // log.info("  Transition: " + parser.model.transitionIndex.get(candidate.transition) + " (" + predictedTransition.score() + ")");
+          if (bestCandidate == null || bestCandidate.score() < candidate.score()) {
+            bestCandidate = candidate;
           }
-          beam.add(newState);
-          if (beam.size() > maxBeamSize) {
-            beam.poll();
+          candidates.add(candidate);
+          if (candidates.size() > maxBeamSize) {
+            candidates.poll();
           }
         }
       }
+      // Only the transitions which made the beam are applied.  Adding them
+      // in the order of the candidates' heap gives the beam the same order
+      // as adding the states themselves would have.
+      beam = new PriorityQueue<>(maxBeamSize + 1, ScoredComparator.ASCENDING_COMPARATOR);
+      State bestState = null;
+      for (Candidate candidate : candidates) {
+        State newState = candidate.apply(parser.model);
+        if (candidate == bestCandidate) {
+          bestState = newState;
+        }
+        beam.add(newState);
+      }
+      if (bestCandidate != null && bestState == null) {
+        // the best candidate tied with the candidates kept, and lost its place
+        bestState = bestCandidate.apply(parser.model);
+      }
       if (beam.size() == 0) {
         // Oops, time for some fallback plan
         // This can happen with the set of constraints given by the original paper
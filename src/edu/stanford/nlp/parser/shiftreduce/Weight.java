@@ -59,6 +59,16 @@ public class Weight implements Serializable {
     return pack;
   }
 
+  /** The transition of the i-th non-zero score of this row. */
+  int indexAt(int i) {
+    return unpackIndex(i);
+  }
+
+  /** The i-th non-zero score of this row. */
+  float scoreAt(int i) {
+    return unpackScore(i);
+  }
+
   public void score(float[] scores) {
     for (int i = 0; i < size(); ++i) {
       // Since this is the critical method, we optimize it even further.
@@ -63,6 +63,16 @@ public abstract class AnnotationOutputter {
     public final double relationsBeam;
     /** Columns to print in CoNLL output. */
     public final List<Class<? extends CoreAnnotation<?>>> keysToPrint;
+    /** If true, outputters which write sentence by sentence flush after each sentence, so that
+     *  a consumer of the output stream (e.g., a chunked HTTP response) need not hold the whole
+     *  output in memory. The server also streams annotation for JSON, CoNLL and CoNLL-U output
+     *  when the pipeline only splits sentences and then runs annotators which look at one sentence
+     *  at a time (pos, lemma, truecase, parse, depparse, sentiment, udfeats): each sentence is
+     *  written as soon as it is annotated. With any annotator which looks across the document
+     *  (e.g., ner, entitymentions, quote or coref), or any other output format, the document is
+     *  fully annotated before any of it is written.
+     */
+    public final boolean chunked;
 
 
     public Options() {
@@ -80,6 +90,7 @@ public abstract class AnnotationOutputter {
       printSingletons = false;
       relationsBeam = 0.0;
       keysToPrint = getKeysToPrint(DEFAULT_KEYS);
+      chunked = false;
     }
 
     public Options(Properties properties) {
@@ -94,6 +105,7 @@ public abstract class AnnotationOutputter {
       printSingletons = PropertiesUtils.getBool(properties, "output.printSingletonEntities", false);
       relationsBeam = PropertiesUtils.getDouble(properties, "output.relation.beam", 0.0);
       keysToPrint = getKeysToPrint(properties.getProperty("output.columns", DEFAULT_KEYS));
+      chunked = PropertiesUtils.getBool(properties, "output.chunked", false);
     }
 
     private static List<Class<? extends CoreAnnotation<?>>> getKeysToPrint(String columns) {
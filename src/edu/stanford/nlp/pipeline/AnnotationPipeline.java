@@ -9,6 +9,7 @@ import edu.stanford.nlp.util.logging.Redwood;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 
 
@@ -64,24 +65,40 @@ public class AnnotationPipeline implements Annotator {
    */
   @Override
   public void annotate(Annotation annotation) {
-    Iterator<MutableLong> it = accumulatedTime.iterator();
+    annotate(annotation, 0, annotators.size());
+  }
+
+  /**
+   * Run only the annotators in positions [begin, end) of this pipeline on an annotation.
+   * This is used by {@link StagedAnnotationExecutor} to run one stage of the pipeline.
+   * The time spent is added to the same per-annotator totals as {@link #annotate(Annotation)}.
+   *
+   * @param annotation The annotation to modify in place
+   * @param begin The index of the first annotator to run
+   * @param end One past the index of the last annotator to run
+   */
+  void annotate(Annotation annotation, int begin, int end) {
     Timing t = new Timing();
-    for (Annotator annotator : annotators) {
+    for (int i = begin; i < end; i++) {
       if (Thread.interrupted()) {  // Allow interrupting
         throw new RuntimeInterruptedException();
       }
       if (TIME) {
         t.start();
       }
-      annotator.annotate(annotation);
+      annotators.get(i).annotate(annotation);
       if (TIME) {
         long elapsed = t.stop();
-        MutableLong m = it.next();
-        m.incValue(elapsed);
+        accumulatedTime.get(i).incValue(elapsed);
       }
     }
   }
 
+  /** The annotators of this pipeline, in the order they are run. */
+  List<Annotator> annotators() {
+    return Collections.unmodifiableList(annotators);
+  }
+
   /**
    * Annotate a collection of input annotations IN PARALLEL, making use of
    * all available cores.
@@ -167,6 +184,43 @@ public class AnnotationPipeline implements Annotator {
     Redwood.Util.threadAndRun(this.getClass().getSimpleName(), threads, numThreads );
   }
 
+  /**
+   * Annotate a stream of input annotations with the pipeline split into stages
+   * (see {@link StagedAnnotationExecutor}), each run on its own thread and connected
+   * by bounded queues.  While one document is being parsed, the next one can be tagged
+   * and the one after that tokenized, so a stream of many small documents keeps several
+   * cores busy.  Annotations are passed to the callback in the order they were given.
+   * If an annotator throws, the exception is stored under
+   * {@link CoreAnnotations.ExceptionAnnotation} and the remaining stages are skipped.
+   * If the callback throws, no more annotations are submitted, and its exception or
+   * error is rethrown once the annotations already submitted are finished.
+   *
+   * @param annotations The input annotations to process
+   * @param queueCapacity The number of documents which may wait in front of each stage
+   * @param callback A function to be called when an annotation finishes.
+   */
+  public void annotatePipelined(final Iterable<Annotation> annotations, int queueCapacity, final Consumer<Annotation> callback) {
+    AtomicReference<Throwable> failure = new AtomicReference<>();
+    try (StagedAnnotationExecutor executor = new StagedAnnotationExecutor(this, queueCapacity)) {
+      for (Annotation ann : annotations) {
+        if (failure.get() != null) {
+          break;
+        }
+        executor.submit(ann, callback).whenComplete((done, e) -> {
+          if (e != null) {
+            failure.compareAndSet(null, e);
+          }
+        });
+      }
+    }
+    Throwable t = failure.get();
+    if (t instanceof Error) {
+      throw (Error) t;
+    } else if (t != null) {
+      throw (RuntimeException) t;
+    }
+  }
+
   /** Return the total pipeline annotation time in milliseconds.
    *
    *  @return The total pipeline annotation time in milliseconds
@@ -138,13 +138,18 @@ public class AnnotatorPool  {
    * Retrieve an Annotator from the pool. If the named Annotator has not yet
    * been requested, it will be created. Otherwise, the existing instance of
    * the Annotator will be returned.
+   * Different annotators may be created at the same time from different threads;
+   * the pool is not locked while an annotator loads.
    *
    * @param name The annotator to retrieve from the pool
    * @return The annotator
    * @throws IllegalArgumentException If the annotator cannot be created
    */
-  public synchronized Annotator get(String name) {
-    CachedAnnotator factory =  this.cachedAnnotators.get(name);
+  public Annotator get(String name) {
+    CachedAnnotator factory;
+    synchronized (this.cachedAnnotators) {
+      factory = this.cachedAnnotators.get(name);
+    }
     if (factory != null) {
       return factory.annotator.get();
     } else {
@@ -189,6 +189,9 @@ public class CoNLLOutputter extends AnnotationOutputter {
           }
         }
         writer.println(); // extra blank line at end of sentence
+        if (options.chunked) {
+          writer.flush();
+        }
       }
     }
     writer.flush();
@@ -131,6 +131,9 @@ public class CoNLLUOutputter extends AnnotationOutputter {
       } else {
         writer.print(conllUWriter.printPOSAnnotations(sentence));
       }
+      if (options.chunked) {
+        writer.flush();
+      }
     }
     writer.flush();
   }
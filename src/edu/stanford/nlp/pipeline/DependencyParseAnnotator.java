@@ -43,6 +43,13 @@ public class DependencyParseAnnotator extends SentenceAnnotator  {
    */
   private static final long DEFAULT_MAXTIME = -1;
 
+  /**
+   * The number of sentences of a document to parse together, or 1 to parse them one at a time.
+   * Only used when sentences are parsed on one thread with no timeout.
+   */
+  private final int sentenceBatchSize;
+  private static final int DEFAULT_SENTENCE_BATCH_SIZE = 1;
+
   /**
    * If true, include the extra arcs in the dependency representation.
    */
@@ -58,6 +65,7 @@ public class DependencyParseAnnotator extends SentenceAnnotator  {
 
     nThreads = PropertiesUtils.getInt(properties, "nthreads", DEFAULT_NTHREADS);
     maxTime = PropertiesUtils.getLong(properties, "sentenceTimeout", DEFAULT_MAXTIME);
+    sentenceBatchSize = PropertiesUtils.getInt(properties, "sentenceBatchSize", DEFAULT_SENTENCE_BATCH_SIZE);
     extraDependencies = MetaClass.cast(properties.getProperty("extradependencies", "NONE"), GrammaticalStructure.Extras.class);
   }
 
@@ -71,10 +79,30 @@ public class DependencyParseAnnotator extends SentenceAnnotator  {
     return maxTime;
   }
 
+  /**
+   * With a sentenceBatchSize above 1, and neither threads nor a timeout, parses the
+   * sentences of the document in batches.  Otherwise parses them one at a time.
+   */
+  @Override
+  public void annotate(Annotation annotation) {
+    if (sentenceBatchSize <= 1 || nThreads() != 1 || maxTime() > 0 ||
+        ! annotation.containsKey(CoreAnnotations.SentencesAnnotation.class)) {
+      super.annotate(annotation);
+      return;
+    }
+    List<CoreMap> sentences = annotation.get(CoreAnnotations.SentencesAnnotation.class);
+    List<GrammaticalStructure> parses = parser.predict(sentences, sentenceBatchSize);
+    for (int i = 0; i < sentences.size(); i++) {
+      setDependencies(sentences.get(i), parses.get(i));
+    }
+  }
+
   @Override
   protected void doOneSentence(Annotation annotation, CoreMap sentence) {
-    GrammaticalStructure gs = parser.predict(sentence);
+    setDependencies(sentence, parser.predict(sentence));
+  }
 
+  private void setDependencies(CoreMap sentence, GrammaticalStructure gs) {
     SemanticGraph deps = SemanticGraphFactory.makeFromTree(gs, Mode.COLLAPSED, extraDependencies, null),
                   uncollapsedDeps = SemanticGraphFactory.makeFromTree(gs, Mode.BASIC, extraDependencies, null),
                   ccDeps = SemanticGraphFactory.makeFromTree(gs, Mode.CCPROCESSED, extraDependencies, null),
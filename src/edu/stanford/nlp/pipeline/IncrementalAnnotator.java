@@ -0,0 +1,343 @@
+package edu.stanford.nlp.pipeline;
+
+import edu.stanford.nlp.ling.CoreAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.util.CoreMap;
+import edu.stanford.nlp.util.logging.Redwood;
+
+import java.util.*;
+
+/**
+ * Brings the annotation of a document up to date after an edit of its text, redoing
+ * only the sentences around the edit.  This is meant for editors, where a user changes
+ * a few words of a long document at a time.
+ *
+ * The pipeline is split in two.  Its first annotators, up to the first one which is not
+ * sentence-local (see {@link #isSentenceLocal(Annotator)}), are run on just the text of
+ * the sentences touched by the edit, plus {@code contextSentences} sentences on either side
+ * (so that a change of sentence boundaries is picked up).  The new sentences replace the
+ * old ones, and the tokens, sentences and entity mentions after them are moved to their new
+ * character, token, sentence and mention offsets; all their other annotations are kept.
+ * The remaining, document-level annotators (for example, coref) are then run again on the
+ * whole document.
+ *
+ * A few things are only approximated: the annotations of a sentence never change because of
+ * an edit in a sentence which is further away than {@code contextSentences}, and a canonical
+ * entity mention which was in the redone sentences is replaced by the mention itself.
+ * A pipeline which does not start with sentence-local annotators reannotates the whole document.
+ *
+ * Typical usage:
+ * <pre>
+ *   IncrementalAnnotator incremental = new IncrementalAnnotator(pipeline);
+ *   Annotation doc = new Annotation(text);
+ *   pipeline.annotate(doc);
+ *   ...
+ *   incremental.update(doc, editBegin, editEnd, replacement);  // or incremental.update(doc, newText)
+ * </pre>
+ */
+public class IncrementalAnnotator {
+
+  /** A logger for this class */
+  private static final Redwood.RedwoodChannels log = Redwood.channels(IncrementalAnnotator.class);
+
+  /** The annotators which work on one sentence, or one token, at a time. */
+  private static final Set<Class<? extends Annotator>> SENTENCE_LOCAL = new HashSet<>(Arrays.asList(
+      TokenizerAnnotator.class, WordsToSentencesAnnotator.class, MWTAnnotator.class, POSTaggerAnnotator.class,
+      MorphaAnnotator.class, EntityMentionsAnnotator.class, TokensRegexNERAnnotator.class,
+      RegexNERAnnotator.class, TrueCaseAnnotator.class, NumberAnnotator.class));
+
+  /** Document annotations which are not made by annotators, and which are given to the annotators of the edited text. */
+  private static final List<Class<? extends CoreAnnotation<?>>> DOCUMENT_METADATA = Arrays.asList(
+      CoreAnnotations.DocIDAnnotation.class, CoreAnnotations.DocDateAnnotation.class,
+      CoreAnnotations.DocTypeAnnotation.class, CoreAnnotations.DocSourceTypeAnnotation.class,
+      CoreAnnotations.CalendarAnnotation.class, CoreAnnotations.AuthorAnnotation.class,
+      CoreAnnotations.LocationAnnotation.class);
+
+  private final AnnotationPipeline pipeline;
+  private final int contextSentences;
+
+  public IncrementalAnnotator(AnnotationPipeline pipeline) {
+    this(pipeline, 1);
+  }
+
+  /**
+   * @param pipeline The pipeline which annotated the documents to be updated
+   * @param contextSentences How many unedited sentences to redo on either side of the edit
+   */
+  public IncrementalAnnotator(AnnotationPipeline pipeline, int contextSentences) {
+    this.pipeline = pipeline;
+    this.contextSentences = contextSentences;
+  }
+
+  /**
+   * Whether an annotator only looks at one sentence (or token) at a time, so that it gives
+   * the same annotations when run on a few sentences of a document as on the whole document.
+   * Subclasses may override this to add their own annotators.
+   */
+  protected boolean isSentenceLocal(Annotator annotator) {
+    if (annotator instanceof StanfordCoreNLP.LazyAnnotator) {
+      annotator = ((StanfordCoreNLP.LazyAnnotator) annotator).delegate();
+    }
+    return annotator instanceof SentenceAnnotator || SENTENCE_LOCAL.contains(annotator.getClass());
+  }
+
+  /**
+   * Updates the annotation of a document whose text has changed to newText, finding the
+   * edit as the text between the common prefix and the common suffix of the two texts.
+   *
+   * @return The new sentences made for the edit (empty if the text did not change)
+   */
+  public List<CoreMap> update(Annotation annotation, String newText) {
+    String text = annotation.get(CoreAnnotations.TextAnnotation.class);
+    int prefix = 0;
+    int maxPrefix = Math.min(text.length(), newText.length());
+    while (prefix < maxPrefix && text.charAt(prefix) == newText.charAt(prefix)) {
+      prefix++;
+    }
+    if (prefix == text.length() && prefix == newText.length()) {
+      return Collections.emptyList();
+    }
+    int suffix = 0;
+    int maxSuffix = maxPrefix - prefix;
+    while (suffix < maxSuffix && text.charAt(text.length() - 1 - suffix) == newText.charAt(newText.length() - 1 - suffix)) {
+      suffix++;
+    }
+    return update(annotation, prefix, text.length() - suffix, newText.substring(prefix, newText.length() - suffix));
+  }
+
+  /**
+   * Updates the annotation of a document, in place, for the replacement of the characters
+   * [begin, end) of its text by the given text.
+   *
+   * @return The new sentences made for the edit
+   */
+  public List<CoreMap> update(Annotation annotation, int begin, int end, String replacement) {
+    String text = annotation.get(CoreAnnotations.TextAnnotation.class);
+    if (begin < 0 || end < begin || end > text.length()) {
+      throw new IllegalArgumentException("Edit [" + begin + ", " + end + ") is not in a text of length " + text.length());
+    }
+    String newText = text.substring(0, begin) + replacement + text.substring(end);
+    List<CoreMap> sentences = annotation.get(CoreAnnotations.SentencesAnnotation.class);
+    List<Annotator> annotators = pipeline.annotators();
+    int numLocal = 0;
+    while (numLocal < annotators.size() && isSentenceLocal(annotators.get(numLocal))) {
+      numLocal++;
+    }
+    if (sentences == null || sentences.isEmpty() || numLocal == 0) {
+      reannotate(annotation, newText);
+      return annotation.get(CoreAnnotations.SentencesAnnotation.class);
+    }
+
+    // the sentences to redo: [lo, hi]
+    int lo = sentences.size();
+    int hi = -1;
+    for (int i = 0; i < sentences.size(); i++) {
+      CoreMap sentence = sentences.get(i);
+      if (lo == sentences.size() && sentence.get(CoreAnnotations.CharacterOffsetEndAnnotation.class) >= begin) {
+        lo = i;
+      }
+      if (sentence.get(CoreAnnotations.CharacterOffsetBeginAnnotation.class) <= end) {
+        hi = i;
+      }
+    }
+    lo = Math.max(0, Math.min(lo, sentences.size() - 1) - contextSentences);
+    hi = Math.min(sentences.size() - 1, Math.max(hi, lo) + contextSentences);
+    int delta = replacement.length() - (end - begin);
+    int regionBegin = Math.min(begin, sentences.get(lo).get(CoreAnnotations.CharacterOffsetBeginAnnotation.class));
+    int regionEnd = Math.max(end, sentences.get(hi).get(CoreAnnotations.CharacterOffsetEndAnnotation.class)) + delta;
+
+    // annotate the text of the redone sentences
+    Annotation region = new Annotation(newText.substring(regionBegin, regionEnd));
+    for (Class<? extends CoreAnnotation<?>> key : DOCUMENT_METADATA) {
+      copy(annotation, region, key);
+    }
+    pipeline.annotate(region, 0, numLocal);
+    List<CoreMap> regionSentences = region.get(CoreAnnotations.SentencesAnnotation.class);
+    List<CoreLabel> regionTokens = region.get(CoreAnnotations.TokensAnnotation.class);
+
+    // split up the old tokens and mentions
+    List<CoreLabel> tokens = annotation.get(CoreAnnotations.TokensAnnotation.class);
+    int oldTokenBegin = sentences.get(lo).get(CoreAnnotations.TokenBeginAnnotation.class);
+    int oldTokenEnd = sentences.get(hi).get(CoreAnnotations.TokenEndAnnotation.class);
+    List<CoreMap> mentions = annotation.get(CoreAnnotations.MentionsAnnotation.class);
+    int oldMentionBegin = 0;
+    int oldMentionEnd = 0;
+    if (mentions != null) {
+      for (CoreMap mention : mentions) {
+        int sentenceIndex = mention.get(CoreAnnotations.SentenceIndexAnnotation.class);
+        if (sentenceIndex < lo) {
+          oldMentionBegin++;
+        }
+        if (sentenceIndex <= hi) {
+          oldMentionEnd++;
+        }
+      }
+    }
+    List<CoreMap> regionMentions = region.get(CoreAnnotations.MentionsAnnotation.class);
+    int numRegionMentions = regionMentions == null ? 0 : regionMentions.size();
+
+    // move the new annotations to their places in the document, and the later ones after them
+    Shift regionShift = new Shift(regionBegin, oldTokenBegin, lo, oldMentionBegin, -1, -1);
+    Set<CoreMap> shifted = Collections.newSetFromMap(new IdentityHashMap<>());
+    regionShift.applyToSentences(regionSentences, regionTokens, regionMentions, shifted);
+    List<CoreMap> after = sentences.subList(hi + 1, sentences.size());
+    Shift afterShift = new Shift(delta, regionTokens.size() - (oldTokenEnd - oldTokenBegin),
+        regionSentences.size() - (hi - lo + 1), numRegionMentions - (oldMentionEnd - oldMentionBegin),
+        oldMentionBegin, oldMentionEnd);
+    afterShift.applyToSentences(after, tokens.subList(oldTokenEnd, tokens.size()),
+        mentions == null ? null : mentions.subList(oldMentionEnd, mentions.size()), shifted);
+
+    List<CoreMap> newSentences = new ArrayList<>(sentences.size() + regionSentences.size() - (hi - lo + 1));
+    newSentences.addAll(sentences.subList(0, lo));
+    newSentences.addAll(regionSentences);
+    newSentences.addAll(after);
+    List<CoreLabel> newTokens = new ArrayList<>(tokens.size() + regionTokens.size() - (oldTokenEnd - oldTokenBegin));
+    newTokens.addAll(tokens.subList(0, oldTokenBegin));
+    newTokens.addAll(regionTokens);
+    newTokens.addAll(tokens.subList(oldTokenEnd, tokens.size()));
+    fixWhitespace(newText, newTokens, oldTokenBegin);
+    fixWhitespace(newText, newTokens, oldTokenBegin + regionTokens.size());
+    if (mentions != null || regionMentions != null) {
+      List<CoreMap> newMentions = new ArrayList<>();
+      if (mentions != null) {
+        newMentions.addAll(mentions.subList(0, oldMentionBegin));
+      }
+      if (regionMentions != null) {
+        newMentions.addAll(regionMentions);
+      }
+      if (mentions != null) {
+        newMentions.addAll(mentions.subList(oldMentionEnd, mentions.size()));
+      }
+      annotation.set(CoreAnnotations.MentionsAnnotation.class, newMentions);
+    }
+    annotation.set(CoreAnnotations.TextAnnotation.class, newText);
+    annotation.set(CoreAnnotations.TokensAnnotation.class, newTokens);
+    annotation.set(CoreAnnotations.SentencesAnnotation.class, newSentences);
+
+    if (numLocal < annotators.size()) {
+      pipeline.annotate(annotation, numLocal, annotators.size());
+    }
+    return regionSentences;
+  }
+
+  /** Annotates the whole new text of the document from scratch, keeping its metadata. */
+  @SuppressWarnings("unchecked")
+  private void reannotate(Annotation annotation, String newText) {
+    log.info("Reannotating the whole document");
+    Annotation metadata = new Annotation("");
+    for (Class<? extends CoreAnnotation<?>> key : DOCUMENT_METADATA) {
+      copy(annotation, metadata, key);
+    }
+    for (Class<?> key : new ArrayList<>(annotation.keySet())) {
+      annotation.remove((Class) key);
+    }
+    for (Class<? extends CoreAnnotation<?>> key : DOCUMENT_METADATA) {
+      copy(metadata, annotation, key);
+    }
+    annotation.set(CoreAnnotations.TextAnnotation.class, newText);
+    pipeline.annotate(annotation);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static void copy(CoreMap from, CoreMap to, Class<? extends CoreAnnotation<?>> key) {
+    if (from.containsKey((Class) key)) {
+      to.set((Class) key, from.get((Class) key));
+    }
+  }
+
+  /**
+   * Sets the whitespace between tokens[index - 1] and tokens[index], where the redone
+   * tokens meet the others: the tokenizer of the redone text did not see the text around it.
+   */
+  private static void fixWhitespace(String text, List<CoreLabel> tokens, int index) {
+    int begin = index == 0 ? 0 : tokens.get(index - 1).endPosition();
+    int end = index == tokens.size() ? text.length() : tokens.get(index).beginPosition();
+    String whitespace = text.substring(begin, end);
+    if (index > 0) {
+      tokens.get(index - 1).setAfter(whitespace);
+    }
+    if (index < tokens.size()) {
+      tokens.get(index).setBefore(whitespace);
+    }
+  }
+
+
+  /** Moves annotations by a number of characters, tokens, sentences and entity mentions. */
+  private static class Shift {
+    private final int chars, tokens, sentences, mentions;
+    /** The mentions which are gone: canonical mentions among them are replaced by the mention itself. */
+    private final int goneMentionBegin, goneMentionEnd;
+
+    Shift(int chars, int tokens, int sentences, int mentions, int goneMentionBegin, int goneMentionEnd) {
+      this.chars = chars;
+      this.tokens = tokens;
+      this.sentences = sentences;
+      this.mentions = mentions;
+      this.goneMentionBegin = goneMentionBegin;
+      this.goneMentionEnd = goneMentionEnd;
+    }
+
+    /**
+     * Moves the tokens, the sentences, the CoreMaps in lists of the sentences (such as their
+     * entity mentions), and the document's mentions, each only once.
+     */
+    void applyToSentences(List<CoreMap> sentenceList, List<CoreLabel> tokenList, List<CoreMap> mentionList, Set<CoreMap> shifted) {
+      for (CoreLabel token : tokenList) {
+        apply(token, shifted);
+      }
+      if (mentionList != null) {
+        for (CoreMap mention : mentionList) {
+          apply(mention, shifted);
+        }
+      }
+      for (CoreMap sentence : sentenceList) {
+        apply(sentence, shifted);
+        for (Class<?> key : sentence.keySet()) {
+          @SuppressWarnings("unchecked")
+          Object value = sentence.get((Class) key);
+          if (value instanceof List) {
+            for (Object item : (List<?>) value) {
+              if (item instanceof CoreMap) {
+                apply((CoreMap) item, shifted);
+              }
+            }
+          }
+        }
+      }
+    }
+
+    private void apply(CoreMap map, Set<CoreMap> shifted) {
+      if ( ! shifted.add(map)) {
+        return;
+      }
+      add(map, CoreAnnotations.CharacterOffsetBeginAnnotation.class, chars);
+      add(map, CoreAnnotations.CharacterOffsetEndAnnotation.class, chars);
+      add(map, CoreAnnotations.TokenBeginAnnotation.class, tokens);
+      add(map, CoreAnnotations.TokenEndAnnotation.class, tokens);
+      add(map, CoreAnnotations.SentenceIndexAnnotation.class, sentences);
+      Integer mentionIndex = map.get(CoreAnnotations.EntityMentionIndexAnnotation.class);
+      if (mentionIndex != null) {
+        mentionIndex += mentions;
+        map.set(CoreAnnotations.EntityMentionIndexAnnotation.class, mentionIndex);
+      }
+      Integer canonical = map.get(CoreAnnotations.CanonicalEntityMentionIndexAnnotation.class);
+      if (canonical != null) {
+        if (canonical >= goneMentionEnd) {
+          canonical += mentions;
+        } else if (canonical >= goneMentionBegin && mentionIndex != null) {
+          canonical = mentionIndex;
+        }
+        map.set(CoreAnnotations.CanonicalEntityMentionIndexAnnotation.class, canonical);
+      }
+    }
+
+    private static void add(CoreMap map, Class<? extends CoreAnnotation<Integer>> key, int delta) {
+      Integer value = map.get(key);
+      if (value != null) {
+        map.set(key, value + delta);
+      }
+    }
+  }
+
+}
@@ -30,6 +30,7 @@ import java.text.NumberFormat;
 import java.util.*;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 
@@ -70,8 +71,11 @@ public class JSONOutputter extends AnnotationOutputter {
 
       // Add sentences
       if (doc.get(CoreAnnotations.SentencesAnnotation.class) != null) {
-        l1.set("sentences", doc.get(CoreAnnotations.SentencesAnnotation.class).stream().map(sentence -> (Consumer<Writer>) (Writer l2) -> {
+        List<CoreMap> sentences = doc.get(CoreAnnotations.SentencesAnnotation.class);
+        l1.set("sentences", IntStream.range(0, sentences.size()).mapToObj(i -> (Consumer<Writer>) (Writer l2) -> {
           // Add a single sentence
+          // (got only when it is written, so that chunked output can write each sentence as soon as it is annotated)
+          CoreMap sentence = sentences.get(i);
           // (metadata)
           l2.set("id", sentence.get(CoreAnnotations.SentenceIDAnnotation.class));
           l2.set("index", sentence.get(CoreAnnotations.SentenceIndexAnnotation.class));
@@ -206,6 +210,9 @@ public class JSONOutputter extends AnnotationOutputter {
               writeTime(l3, time);
             }));
           }
+          if (options.chunked) {
+            l0.flush();
+          }
         }));
       } else {
         if (doc.get(CoreAnnotations.TokensAnnotation.class) != null) {
@@ -6,6 +6,7 @@ import edu.stanford.nlp.ling.CoreAnnotation;
 import edu.stanford.nlp.ling.CoreAnnotations;
 import edu.stanford.nlp.ling.CoreLabel;
 import edu.stanford.nlp.ling.tokensregex.types.Tags;
+import edu.stanford.nlp.sequences.TokenFeatureCache;
 import edu.stanford.nlp.time.TimeAnnotations;
 import edu.stanford.nlp.time.TimeExpression;
 import edu.stanford.nlp.util.CoreMap;
@@ -50,6 +51,13 @@ public class NERCombinerAnnotator extends SentenceAnnotator  {
   private final int nThreads;
   private final int maxSentenceLength;
   private final boolean applyNumericClassifiers;
+
+  /**
+   * Classify all the sentences of a document in one batch when running single threaded,
+   * so that each statistical model labels every sentence before the next model starts,
+   * and the models share the word shapes and distsim classes they compute.
+   */
+  private boolean batchSentences = false;
   private LanguageInfo.HumanLanguage language = LanguageInfo.HumanLanguage.ENGLISH;
 
   /**
@@ -139,6 +147,10 @@ public class NERCombinerAnnotator extends SentenceAnnotator  {
 
     Properties combinerProperties = PropertiesUtils.extractSelectedProperties(properties,
         NERClassifierCombiner.DEFAULT_PASS_DOWN_PROPERTIES);
+    if ( ! combinerProperties.containsKey("ner.loadThreads") && properties.containsKey("loadThreads")) {
+      // if the pipeline loads its annotators concurrently, load the NER models concurrently too
+      combinerProperties.setProperty("ner.loadThreads", properties.getProperty("loadThreads"));
+    }
     if (useSUTime) {
       // Make sure SUTime parameters are included
       Properties sutimeProps = PropertiesUtils.extractPrefixedProperties(properties, NumberSequenceClassifier.SUTIME_PROPERTY  + '.', true);
@@ -150,6 +162,7 @@ public class NERCombinerAnnotator extends SentenceAnnotator  {
     this.nThreads = PropertiesUtils.getInt(properties, "ner.nthreads", PropertiesUtils.getInt(properties, "nthreads", 1));
     this.maxTime = PropertiesUtils.getLong(properties, "ner.maxtime", 0);
     this.maxSentenceLength = PropertiesUtils.getInt(properties, "ner.maxlen", Integer.MAX_VALUE);
+    this.batchSentences = PropertiesUtils.getBool(properties, "ner.batchSentences", false);
     this.language =
         LanguageInfo.getLanguageFromString(PropertiesUtils.getString(properties, "ner.language", "en"));
 
@@ -487,7 +500,11 @@ public class NERCombinerAnnotator extends SentenceAnnotator  {
     if (setDocDate)
       docDateAnnotator.annotate(nerAnnotation);
 
-    super.annotate(nerAnnotation);
+    if (batchSentences && nThreads == 1 && maxTime <= 0 && nerAnnotation.containsKey(CoreAnnotations.SentencesAnnotation.class)) {
+      annotateSentences(nerAnnotation);
+    } else {
+      super.annotate(nerAnnotation);
+    }
     this.ner.finalizeAnnotation(nerAnnotation);
 
     if (VERBOSE) {
@@ -543,6 +560,35 @@ public class NERCombinerAnnotator extends SentenceAnnotator  {
 
   }
 
+  /**
+   * Labels all the sentences of the document in one call to the classifier.
+   * Used instead of the sentence at a time annotation of SentenceAnnotator if {@code ner.batchSentences} is set.
+   */
+  private void annotateSentences(Annotation annotation) {
+    List<CoreMap> batch = new ArrayList<>();
+    for (CoreMap sentence : annotation.get(CoreAnnotations.SentencesAnnotation.class)) {
+      if (sentence.get(CoreAnnotations.TokensAnnotation.class).size() <= this.maxSentenceLength) {
+        batch.add(sentence);
+      } else {
+        doOneFailedSentence(annotation, sentence);
+      }
+    }
+    List<List<CoreLabel>> outputs; // only used if try assignment works.
+    try {
+      outputs = this.ner.classifySentencesWithGlobalInformation(batch, annotation, new TokenFeatureCache());
+    } catch (RuntimeInterruptedException e) {
+      // If we get interrupted, set the NER labels to the background
+      // symbol if they are not already set, then exit.
+      for (CoreMap sentence : batch) {
+        doOneFailedSentence(annotation, sentence);
+      }
+      return;
+    }
+    for (int i = 0; i < batch.size(); i++) {
+      setNERTags(batch.get(i).get(CoreAnnotations.TokensAnnotation.class), outputs.get(i));
+    }
+  }
+
   @Override
   public void doOneSentence(Annotation annotation, CoreMap sentence) {
     List<CoreLabel> tokens = sentence.get(CoreAnnotations.TokensAnnotation.class);
@@ -561,32 +607,37 @@ public class NERCombinerAnnotator extends SentenceAnnotator  {
     if (output == null) {
       doOneFailedSentence(annotation, sentence);
     } else {
-      for (int i = 0, sz = tokens.size(); i < sz; ++i) {
-        // add the named entity tag to each token
-        String neTag = output.get(i).get(CoreAnnotations.NamedEntityTagAnnotation.class);
-        String normNeTag = output.get(i).get(CoreAnnotations.NormalizedNamedEntityTagAnnotation.class);
-        Map<String,Double> neTagProbMap = output.get(i).get(CoreAnnotations.NamedEntityTagProbsAnnotation.class);
-        tokens.get(i).setNER(neTag);
-        tokens.get(i).set(CoreAnnotations.NamedEntityTagProbsAnnotation.class, neTagProbMap);
-        tokens.get(i).set(CoreAnnotations.CoarseNamedEntityTagAnnotation.class, neTag);
-        if (normNeTag != null) tokens.get(i).set(CoreAnnotations.NormalizedNamedEntityTagAnnotation.class, normNeTag);
-        NumberSequenceClassifier.transferAnnotations(output.get(i), tokens.get(i));
-      }
+      setNERTags(tokens, output);
+    }
+  }
 
-      if (VERBOSE) {
-        boolean first = true;
-        StringBuilder sb = new StringBuilder("NERCombinerAnnotator output: [");
-        for (CoreLabel w : tokens) {
-          if (first) {
-            first = false;
-          } else {
-            sb.append(", ");
-          }
-          sb.append(w.toShorterString("Text", "NamedEntityTag", "NormalizedNamedEntityTag"));
+  /** Copies the tags found by the classifier to the tokens of a sentence. */
+  private void setNERTags(List<CoreLabel> tokens, List<CoreLabel> output) {
+    for (int i = 0, sz = tokens.size(); i < sz; ++i) {
+      // add the named entity tag to each token
+      String neTag = output.get(i).get(CoreAnnotations.NamedEntityTagAnnotation.class);
+      String normNeTag = output.get(i).get(CoreAnnotations.NormalizedNamedEntityTagAnnotation.class);
+      Map<String,Double> neTagProbMap = output.get(i).get(CoreAnnotations.NamedEntityTagProbsAnnotation.class);
+      tokens.get(i).setNER(neTag);
+      tokens.get(i).set(CoreAnnotations.NamedEntityTagProbsAnnotation.class, neTagProbMap);
+      tokens.get(i).set(CoreAnnotations.CoarseNamedEntityTagAnnotation.class, neTag);
+      if (normNeTag != null) tokens.get(i).set(CoreAnnotations.NormalizedNamedEntityTagAnnotation.class, normNeTag);
+      NumberSequenceClassifier.transferAnnotations(output.get(i), tokens.get(i));
+    }
+
+    if (VERBOSE) {
+      boolean first = true;
+      StringBuilder sb = new StringBuilder("NERCombinerAnnotator output: [");
+      for (CoreLabel w : tokens) {
+        if (first) {
+          first = false;
+        } else {
+          sb.append(", ");
         }
-        sb.append(']');
-        log.info(sb);
+        sb.append(w.toShorterString("Text", "NamedEntityTag", "NormalizedNamedEntityTag"));
       }
+      sb.append(']');
+      log.info(sb);
     }
   }
 
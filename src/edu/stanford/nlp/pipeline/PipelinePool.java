@@ -0,0 +1,183 @@
+package edu.stanford.nlp.pipeline;
+
+import edu.stanford.nlp.util.Lazy;
+import edu.stanford.nlp.util.logging.Redwood;
+
+import java.lang.ref.SoftReference;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * A bounded pool of {@link StanfordCoreNLP} pipelines, keyed by the properties they were
+ * created with.  This is what the {@link StanfordCoreNLPServer} uses so that requests with
+ * different properties (e.g., a different output format, or a different set of annotators)
+ * do not each throw away the pipeline of the last request.
+ *
+ * The pool is least-recently-used: once it holds more than {@code maxPipelines} pipelines,
+ * the pipeline which was used longest ago is dropped.  Pipelines are also held through soft
+ * references, so that, as before, the garbage collector may drop them if memory gets tight.
+ *
+ * The pool keeps counts of hits, misses and evictions; see {@link #toString()}.
+ */
+public class PipelinePool {
+
+  /** A logger for this class */
+  private static final Redwood.RedwoodChannels log = Redwood.channels(PipelinePool.class);
+
+  /** The text run through pipelines in {@link #warmup(Properties, int)}. */
+  public static final String WARMUP_TEXT =
+      "Stanford University is located in California. It is a great university, founded in 1891.\n" +
+      "Barack Obama was born in Hawaii on August 4, 1961. He was the 44th president of the United States.";
+
+  private final int maxPipelines;
+
+  private final Function<Properties, StanfordCoreNLP> factory;
+
+  /** Guarded by this.  An access-ordered map, so that iteration starts at the least recently used entry. */
+  private final LinkedHashMap<String, SoftReference<StanfordCoreNLP>> pipelines = new LinkedHashMap<>(16, 0.75f, true);
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+  private final AtomicLong collected = new AtomicLong();
+  private final AtomicLong loadMillis = new AtomicLong();
+
+  /**
+   * Create a pool of pipelines.
+   *
+   * @param maxPipelines The maximum number of pipelines to keep.  If non-positive, there is no limit.
+   */
+  public PipelinePool(int maxPipelines) {
+    this(maxPipelines, StanfordCoreNLP::new);
+  }
+
+  PipelinePool(int maxPipelines, Function<Properties, StanfordCoreNLP> factory) {
+    this.maxPipelines = maxPipelines;
+    this.factory = factory;
+  }
+
+  /** The key a set of properties is cached under.  The date is ignored, since it changes with every request. */
+  static String cacheKey(Properties props) {
+    StringBuilder sb = new StringBuilder();
+    new TreeSet<>(props.stringPropertyNames()).stream().filter(key -> !key.equalsIgnoreCase("date")).forEach(key -> {
+      String pvalue = props.getProperty(key);
+      sb.append(key).append(':').append(pvalue).append(';');
+    });
+    return sb.toString();
+  }
+
+  /**
+   * Get the pipeline for these properties, creating it if it is not in the pool.
+   * Pipelines are created while holding the lock on the pool, so that two requests
+   * for a new set of properties do not both load the same models.
+   */
+  public synchronized StanfordCoreNLP get(Properties props) {
+    String key = cacheKey(props);
+    SoftReference<StanfordCoreNLP> ref = pipelines.get(key);
+    if (ref != null) {
+      StanfordCoreNLP pipeline = ref.get();
+      if (pipeline != null) {
+        hits.incrementAndGet();
+        return pipeline;
+      }
+      // The garbage collector got to it first
+      pipelines.remove(key);
+      collected.incrementAndGet();
+    }
+    misses.incrementAndGet();
+    cleanGlobalCache();
+
+    // Create a CoreNLP
+    long start = System.currentTimeMillis();
+    StanfordCoreNLP pipeline = factory.apply(props);
+    loadMillis.addAndGet(System.currentTimeMillis() - start);
+
+    pipelines.put(key, new SoftReference<>(pipeline));
+    evict();
+    return pipeline;
+  }
+
+  /** Drop least recently used pipelines until the pool is within its limit.  Must hold the lock. */
+  private void evict() {
+    Iterator<String> iter = pipelines.keySet().iterator();
+    while (maxPipelines > 0 && pipelines.size() > maxPipelines && iter.hasNext()) {
+      iter.next();
+      iter.remove();
+      evictions.incrementAndGet();
+    }
+  }
+
+  /** Do some housekeeping on the global annotator cache: drop the annotators which were garbage collected. */
+  private static void cleanGlobalCache() {
+    for (Iterator<Map.Entry<StanfordCoreNLP.AnnotatorSignature, Lazy<Annotator>>> iter = StanfordCoreNLP.GLOBAL_ANNOTATOR_CACHE.entrySet().iterator();
+         iter.hasNext(); ) {
+      Map.Entry<StanfordCoreNLP.AnnotatorSignature, Lazy<Annotator>> entry = iter.next();
+      if ( ! entry.getValue().isCache()) {
+        log.error("Entry in global cache is not garbage collectable!");
+        iter.remove();
+      } else if (entry.getValue().isGarbageCollected()) {
+        iter.remove();
+      }
+    }
+  }
+
+  /**
+   * Load the pipeline for these properties into the pool, and run {@link #WARMUP_TEXT} through
+   * it a few times, so that the first real request does not pay for loading models or for
+   * the JIT compiling the annotators.
+   *
+   * @param props The properties of the pipeline, exactly as requests will ask for it.
+   * @param iterations The number of times to annotate the warmup text.
+   */
+  public void warmup(Properties props, int iterations) {
+    long start = System.currentTimeMillis();
+    StanfordCoreNLP pipeline = get(props);
+    for (int i = 0; i < iterations; ++i) {
+      pipeline.annotate(new Annotation(WARMUP_TEXT));
+    }
+    log.info("Warmed up pipeline [" + props.getProperty("annotators") + "] in " + (System.currentTimeMillis() - start) + " ms");
+  }
+
+  /** True if there is no pipeline in the pool, which means the next request will have to load one. */
+  public synchronized boolean isEmpty() {
+    return pipelines.isEmpty();
+  }
+
+  /** The number of pipelines in the pool. */
+  public synchronized int size() {
+    return pipelines.size();
+  }
+
+  /** The number of requests served by a pipeline already in the pool. */
+  public long hits() {
+    return hits.get();
+  }
+
+  /** The number of requests which had to create a new pipeline. */
+  public long misses() {
+    return misses.get();
+  }
+
+  /** The number of pipelines dropped to keep the pool within its limit. */
+  public long evictions() {
+    return evictions.get();
+  }
+
+  /** The pool's statistics, one "name value" pair per line. */
+  public synchronized String stats() {
+    return "pipelines " + pipelines.size() + '\n' +
+        "hits " + hits.get() + '\n' +
+        "misses " + misses.get() + '\n' +
+        "evictions " + evictions.get() + '\n' +
+        "collected " + collected.get() + '\n' +
+        "loadMillis " + loadMillis.get() + '\n';
+  }
+
+  @Override
+  public synchronized String toString() {
+    return String.format("PipelinePool[pipelines: %d  hits: %d  misses: %d  evictions: %d  collected: %d]",
+        pipelines.size(), hits.get(), misses.get(), evictions.get(), collected.get());
+  }
+
+}
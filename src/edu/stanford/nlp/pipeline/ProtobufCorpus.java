@@ -0,0 +1,418 @@
+package edu.stanford.nlp.pipeline;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.Descriptors;
+import com.google.protobuf.WireFormat;
+import edu.stanford.nlp.io.IOUtils;
+import edu.stanford.nlp.io.RuntimeIOException;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.util.*;
+
+/**
+ * A corpus of documents stored as a single stream of length-delimited {@link CoreNLPProtos.Document}
+ * records, i.e., exactly what repeated calls to {@link ProtobufAnnotationSerializer#write(Annotation, OutputStream)}
+ * would produce.  Unlike reading such a file through the serializer, documents are read lazily, one at a time,
+ * so that a corpus does not need to fit in memory.
+ *
+ * <p>
+ *   The {@link Writer} can also write an index next to the corpus (the corpus path with {@link #INDEX_SUFFIX}
+ *   appended), holding the byte offset of every document.  If the index is there and the corpus is not
+ *   compressed, {@link Reader#get(int)} can seek straight to a document.
+ * </p>
+ *
+ * <p>
+ *   A {@link Projection} makes the reader decode only some of the fields of each document.  The unwanted fields are
+ *   skipped at the wire format level, before the protocol buffer is parsed, so that, e.g., reading only the
+ *   tokens and named entities of a parsed corpus never builds its parse trees or dependency graphs.
+ * </p>
+ */
+public class ProtobufCorpus {
+
+  /** The suffix of the index of a corpus, appended to the path of the corpus. */
+  public static final String INDEX_SUFFIX = ".idx";
+
+  private ProtobufCorpus() {} // static methods and classes
+
+
+  /**
+   * A subset of the fields of a {@link CoreNLPProtos.Document} (and of its sentences) to decode.
+   * Projections are immutable; {@link #dropDocumentFields(String...)} and {@link #dropSentenceFields(String...)}
+   * return a new projection.
+   */
+  public static class Projection {
+
+    /** Decode everything. */
+    public static final Projection ALL = new Projection(Collections.emptySet(), Collections.emptySet());
+
+    /**
+     * Decode the tokens of each sentence along with their tags and named entities, but not the parse trees,
+     * dependency graphs, OpenIE and KBP triples, relations, quotes or coreference.
+     */
+    public static final Projection TOKENS_AND_NER = ALL
+        .dropDocumentFields("corefChain", "quote", "mentionsForCoref", "hasCorefMentionAnnotation", "hasCorefAnnotation",
+            "corefMentionToEntityMentionMappings", "entityMentionToCorefMentionMappings")
+        .dropSentenceFields("parseTree", "binarizedParseTree", "annotatedParseTree", "kBestParseTrees",
+            "basicDependencies", "collapsedDependencies", "collapsedCCProcessedDependencies", "alternativeDependencies",
+            "enhancedDependencies", "enhancedPlusPlusDependencies",
+            "openieTriple", "kbpTriple", "entailedSentence", "entailedClause", "hasKBPTriplesAnnotation", "hasOpenieTriplesAnnotation",
+            "hasRelationAnnotations", "entity", "relation", "mentionsForCoref", "hasCorefMentionsAnnotation", "enhancedSentence");
+
+    private static final int SENTENCE_FIELD = CoreNLPProtos.Document.SENTENCE_FIELD_NUMBER;
+
+    private final Set<Integer> documentFields;
+    private final Set<Integer> sentenceFields;
+
+    private Projection(Set<Integer> documentFields, Set<Integer> sentenceFields) {
+      this.documentFields = documentFields;
+      this.sentenceFields = sentenceFields;
+    }
+
+    /** A projection which also skips these fields of {@link CoreNLPProtos.Document}, by their name in CoreNLP.proto. */
+    public Projection dropDocumentFields(String... names) {
+      Set<Integer> fields = new HashSet<>(documentFields);
+      fields.addAll(fieldNumbers(CoreNLPProtos.Document.getDescriptor(), names));
+      return new Projection(Collections.unmodifiableSet(fields), sentenceFields);
+    }
+
+    /** A projection which also skips these fields of {@link CoreNLPProtos.Sentence}, by their name in CoreNLP.proto. */
+    public Projection dropSentenceFields(String... names) {
+      Set<Integer> fields = new HashSet<>(sentenceFields);
+      fields.addAll(fieldNumbers(CoreNLPProtos.Sentence.getDescriptor(), names));
+      return new Projection(documentFields, Collections.unmodifiableSet(fields));
+    }
+
+    private static Set<Integer> fieldNumbers(Descriptors.Descriptor descriptor, String... names) {
+      Set<Integer> numbers = new HashSet<>();
+      for (String name : names) {
+        Descriptors.FieldDescriptor field = descriptor.findFieldByName(name);
+        if (field == null) {
+          throw new IllegalArgumentException("No field " + name + " in " + descriptor.getName());
+        }
+        if (field.isRequired()) {
+          throw new IllegalArgumentException("Cannot drop the required field " + name + " of " + descriptor.getName());
+        }
+        numbers.add(field.getNumber());
+      }
+      return numbers;
+    }
+
+    /** True if this projection decodes every field. */
+    public boolean isAll() {
+      return documentFields.isEmpty() && sentenceFields.isEmpty();
+    }
+
+    /** Parse a serialized document, skipping the fields this projection drops. */
+    public CoreNLPProtos.Document parse(byte[] serialized) throws IOException {
+      if (isAll()) {
+        return CoreNLPProtos.Document.parseFrom(serialized);
+      }
+      ByteString.Output buffer = ByteString.newOutput(serialized.length);
+      CodedOutputStream out = CodedOutputStream.newInstance(buffer);
+      filter(serialized, out, documentFields, true);
+      out.flush();
+      return CoreNLPProtos.Document.parseFrom(buffer.toByteString());
+    }
+
+    /**
+     * Copy the fields of a serialized message to out, except for the ones in drop, recursing into sentences.
+     * Kept fields are copied as the raw bytes they were read from, tag included, so they are never decoded here.
+     */
+    private void filter(byte[] message, CodedOutputStream out, Set<Integer> drop, boolean isDocument) throws IOException {
+      CodedInputStream in = CodedInputStream.newInstance(message);
+      while (true) {
+        int start = in.getTotalBytesRead();
+        int tag = in.readTag();
+        if (tag == 0) {
+          break;
+        }
+        int field = WireFormat.getTagFieldNumber(tag);
+        if (drop.contains(field)) {
+          in.skipField(tag);
+        } else if (isDocument && field == SENTENCE_FIELD && ! sentenceFields.isEmpty()) {
+          byte[] sentence = in.readByteArray();
+          ByteString.Output buffer = ByteString.newOutput(sentence.length);
+          CodedOutputStream sentenceOut = CodedOutputStream.newInstance(buffer);
+          filter(sentence, sentenceOut, sentenceFields, false);
+          sentenceOut.flush();
+          out.writeBytes(field, buffer.toByteString());
+        } else {
+          in.skipField(tag);
+          out.writeRawBytes(message, start, in.getTotalBytesRead() - start);
+        }
+      }
+    }
+
+  } // end static class Projection
+
+
+  /**
+   * Writes documents to a corpus, and optionally its index.
+   * The corpus is compressed if its path ends in .gz or .bz2.
+   */
+  public static class Writer implements Closeable {
+
+    private final ProtobufAnnotationSerializer serializer;
+    private final CountingOutputStream out;
+    private final DataOutputStream index;
+    private int size; // = 0
+
+    /** Write a corpus, with an index if writeIndex is true, using a lossless {@link ProtobufAnnotationSerializer}. */
+    public Writer(String path, boolean writeIndex) throws IOException {
+      this(path, writeIndex, new ProtobufAnnotationSerializer());
+    }
+
+    public Writer(String path, boolean writeIndex, ProtobufAnnotationSerializer serializer) throws IOException {
+      this.serializer = serializer;
+      this.out = new CountingOutputStream(new BufferedOutputStream(IOUtils.getFileOutputStream(path)));
+      this.index = writeIndex ? new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path + INDEX_SUFFIX))) : null;
+    }
+
+    /** Serialize and append a document. */
+    public void write(Annotation document) throws IOException {
+      write(serializer.toProto(document));
+    }
+
+    /** Append a document. */
+    public void write(CoreNLPProtos.Document document) throws IOException {
+      if (index != null) {
+        index.writeLong(out.count);
+      }
+      document.writeDelimitedTo(out);
+      size += 1;
+    }
+
+    /** The number of documents written so far. */
+    public int size() {
+      return size;
+    }
+
+    @Override
+    public void close() throws IOException {
+      out.close();
+      if (index != null) {
+        index.close();
+      }
+    }
+
+  } // end static class Writer
+
+
+  /**
+   * Reads the documents of a corpus.  Iterating over the reader opens the corpus and decodes one document
+   * at a time; it can be iterated over as many times as needed.  Random access through {@link #get(int)}
+   * needs the index of the corpus, and an uncompressed corpus.
+   *
+   * <p>
+   *   Each iterator holds the corpus open until it reaches the end of the corpus, until it is closed,
+   *   or until the reader is closed, whichever comes first.  A caller which may stop iterating early
+   *   should close the iterator, or close the reader when it is done with it.
+   * </p>
+   */
+  public static class Reader implements Iterable<CoreNLPProtos.Document>, Closeable {
+
+    private final String path;
+    private final Projection projection;
+    private final long[] offsets;
+    private RandomAccessFile file; // opened on the first call to get(); guarded by this
+    private final Set<DocumentIterator> openIterators = new HashSet<>(); // guarded by this
+
+    public Reader(String path) throws IOException {
+      this(path, Projection.ALL);
+    }
+
+    public Reader(String path, Projection projection) throws IOException {
+      this.path = path;
+      this.projection = projection;
+      this.offsets = readIndex(path);
+    }
+
+    private static long[] readIndex(String path) throws IOException {
+      File indexFile = new File(path + INDEX_SUFFIX);
+      if ( ! indexFile.exists() || path.endsWith(".gz") || path.endsWith(".bz2")) {
+        return null;
+      }
+      long[] offsets = new long[(int) (indexFile.length() / Long.BYTES)];
+      try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+        for (int i = 0; i < offsets.length; ++i) {
+          offsets[i] = in.readLong();
+        }
+      }
+      return offsets;
+    }
+
+    /** True if the corpus has an index, and so supports {@link #size()} and {@link #get(int)}. */
+    public boolean hasIndex() {
+      return offsets != null;
+    }
+
+    /** The number of documents in the corpus, from its index. */
+    public int size() {
+      checkIndex();
+      return offsets.length;
+    }
+
+    /** Read the i'th document of the corpus, seeking to it through the index. */
+    public synchronized CoreNLPProtos.Document get(int i) throws IOException {
+      checkIndex();
+      if (i < 0 || i >= offsets.length) {
+        throw new IndexOutOfBoundsException("Document " + i + " of a corpus of " + offsets.length + " documents");
+      }
+      if (file == null) {
+        file = new RandomAccessFile(path, "r");
+      }
+      file.seek(offsets[i]);
+      // not buffered, since the stream has to stop at the end of the document
+      return readDocument(Channels.newInputStream(file.getChannel()), projection);
+    }
+
+    private void checkIndex() {
+      if (offsets == null) {
+        throw new IllegalStateException("No index for " + path + " (or the corpus is compressed)");
+      }
+    }
+
+    /**
+     * An iterator over the documents of the corpus, which holds the corpus open until it gets to the end
+     * or is closed.
+     */
+    public class DocumentIterator implements Iterator<CoreNLPProtos.Document>, Closeable {
+
+      private final InputStream in;
+      private CoreNLPProtos.Document next;
+
+      private DocumentIterator() {
+        try {
+          in = new BufferedInputStream(IOUtils.getFileInputStream(path));
+        } catch (IOException e) {
+          throw new RuntimeIOException(e);
+        }
+        synchronized (Reader.this) {
+          openIterators.add(this);
+        }
+        next = advance();
+      }
+
+      private CoreNLPProtos.Document advance() {
+        try {
+          CoreNLPProtos.Document document = readDocument(in, projection);
+          if (document == null) {
+            close();
+          }
+          return document;
+        } catch (IOException e) {
+          IOUtils.closeIgnoringExceptions(this);
+          throw new RuntimeIOException(e);
+        }
+      }
+
+      @Override
+      public boolean hasNext() {
+        return next != null;
+      }
+
+      @Override
+      public CoreNLPProtos.Document next() {
+        if (next == null) {
+          throw new NoSuchElementException();
+        }
+        CoreNLPProtos.Document document = next;
+        next = advance();
+        return document;
+      }
+
+      /** Close the corpus.  The iterator then has no more documents. */
+      @Override
+      public void close() throws IOException {
+        next = null;
+        synchronized (Reader.this) {
+          openIterators.remove(this);
+        }
+        in.close();
+      }
+
+    } // end class DocumentIterator
+
+    @Override
+    public DocumentIterator iterator() {
+      return new DocumentIterator();
+    }
+
+    /**
+     * The documents of the corpus, converted to {@link Annotation}s by the given serializer.
+     * As with {@link #iterator()}, each iteration holds the corpus open until it gets to the end,
+     * or until the reader is closed.
+     */
+    public Iterable<Annotation> annotations(ProtobufAnnotationSerializer serializer) {
+      return () -> new Iterator<Annotation>() {
+        private final Iterator<CoreNLPProtos.Document> documents = iterator();
+
+        @Override
+        public boolean hasNext() {
+          return documents.hasNext();
+        }
+
+        @Override
+        public Annotation next() {
+          return serializer.fromProto(documents.next());
+        }
+      };
+    }
+
+    /** Close the file used by {@link #get(int)}, and any iterators which have not yet been closed. */
+    @Override
+    public synchronized void close() throws IOException {
+      if (file != null) {
+        file.close();
+        file = null;
+      }
+      for (DocumentIterator iterator : new ArrayList<>(openIterators)) {
+        iterator.close();
+      }
+    }
+
+  } // end static class Reader
+
+
+  /** Read one length-delimited document, or return null at the end of the stream. */
+  static CoreNLPProtos.Document readDocument(InputStream in, Projection projection) throws IOException {
+    if (projection.isAll()) {
+      return CoreNLPProtos.Document.parseDelimitedFrom(in);
+    }
+    int firstByte = in.read();
+    if (firstByte == -1) {
+      return null;
+    }
+    byte[] serialized = new byte[CodedInputStream.readRawVarint32(firstByte, in)];
+    new DataInputStream(in).readFully(serialized);
+    return projection.parse(serialized);
+  }
+
+
+  /** Counts the bytes written, for the offsets in the index. */
+  private static class CountingOutputStream extends FilterOutputStream {
+
+    private long count; // = 0
+
+    private CountingOutputStream(OutputStream out) {
+      super(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      out.write(b);
+      count += 1;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      out.write(b, off, len);
+      count += len;
+    }
+
+  }
+
+}
@@ -1,13 +1,11 @@
 package edu.stanford.nlp.pipeline;
 
 import java.util.List;
-import java.util.concurrent.RejectedExecutionException;
 
 import edu.stanford.nlp.ling.CoreAnnotations;
 import edu.stanford.nlp.util.CoreMap;
 import edu.stanford.nlp.util.RuntimeInterruptedException;
-import edu.stanford.nlp.util.concurrent.InterruptibleMulticoreWrapper;
-import edu.stanford.nlp.util.concurrent.ThreadsafeProcessor;
+import edu.stanford.nlp.util.concurrent.SharedWorkScheduler;
 
 /**
  * A parent class for annotators which might want to analyze one
@@ -18,81 +16,23 @@ import edu.stanford.nlp.util.concurrent.ThreadsafeProcessor;
  * @author John Bauer
  */
 public abstract class SentenceAnnotator implements Annotator {
-  protected class AnnotatorProcessor implements ThreadsafeProcessor<CoreMap, CoreMap> {
-
-    final Annotation annotation;
-
-    AnnotatorProcessor(Annotation annotation) {
-      this.annotation = annotation;
-    }
-
-    @Override
-    public CoreMap process(CoreMap sentence) {
-      doOneSentence(annotation, sentence);
-      return sentence;
-    }
-
-    @Override
-    public ThreadsafeProcessor<CoreMap, CoreMap> newInstance() {
-      return this;
-    }
-  }
-
-  private InterruptibleMulticoreWrapper<CoreMap, CoreMap> buildWrapper(Annotation annotation) {
-    InterruptibleMulticoreWrapper<CoreMap, CoreMap> wrapper = new InterruptibleMulticoreWrapper<>(nThreads(), new AnnotatorProcessor(annotation), true, maxTime());
-    return wrapper;
-  }
 
   @Override
   public void annotate(Annotation annotation) {
     if (annotation.containsKey(CoreAnnotations.SentencesAnnotation.class)) {
       if (nThreads() != 1 || maxTime() > 0) {
-        InterruptibleMulticoreWrapper<CoreMap, CoreMap> wrapper = buildWrapper(annotation);
+        // The sentences are run on the process-wide scheduler, which is shared with the other
+        // sentence annotators, so that we don't start up a new thread pool for every document.
+        // At most nThreads() sentences of this document run at once.
+        SharedWorkScheduler.Batch<CoreMap> batch = SharedWorkScheduler.global().newBatch(nThreads(), sentence -> doOneSentence(annotation, sentence));
         for (CoreMap sentence : annotation.get(CoreAnnotations.SentencesAnnotation.class)) {
-          boolean success = false;
-          // We iterate twice for each sentence so that if we fail for
-          // a sentence once, we start a new queue and try again.
-          // If the sentence fails a second time we give up.
-          for (int attempt = 0; attempt < 2; ++attempt) {
-            try {
-              wrapper.put(sentence);
-              success = true;
-              break;
-            } catch (RejectedExecutionException e) {
-              // If we time out, for now, we just throw away all jobs which were running at the time.
-              // Note that in order for this to be useful, the underlying job needs to handle Thread.interrupted()
-              List<CoreMap> failedSentences = wrapper.joinWithTimeout();
-              if (failedSentences != null) {
-                for (CoreMap failed : failedSentences) {
-                  doOneFailedSentence(annotation, failed);
-                }
-              }
-              // We don't wait for termination here, and perhaps this
-              // is a mistake.  If the processor used does not respect
-              // interruption, we could easily create many threads
-              // which are all doing useless work.  However, there is
-              // no clean way to interrupt the thread and then
-              // guarantee it finishes without running the risk of
-              // waiting forever for the thread to finish, which is
-              // exactly what we don't want with the timeout.
-              wrapper = buildWrapper(annotation);
-            }
-          }
-          if (!success) {
-            doOneFailedSentence(annotation, sentence);
-          }
-          while (wrapper.peek()) {
-            wrapper.poll();
-          }
+          batch.submit(sentence);
         }
-        List<CoreMap> failedSentences = wrapper.joinWithTimeout();
-        while (wrapper.peek()) {
-          wrapper.poll();
-        }
-        if (failedSentences != null) {
-          for (CoreMap failed : failedSentences) {
-            doOneFailedSentence(annotation, failed);
-          }
+        // If we time out, for now, we just throw away all jobs which were not yet running.
+        // Note that in order for this to be useful, the underlying job needs to handle Thread.interrupted()
+        List<CoreMap> failedSentences = batch.await(maxTime());
+        for (CoreMap failed : failedSentences) {
+          doOneFailedSentence(annotation, failed);
         }
       } else {
         for (CoreMap sentence : annotation.get(CoreAnnotations.SentencesAnnotation.class)) {
@@ -107,6 +47,11 @@ public abstract class SentenceAnnotator implements Annotator {
     }
   }
 
+  /**
+   * The maximum number of sentences of one document to annotate at once.
+   * All sentence annotators share the threads of {@link SharedWorkScheduler#global()},
+   * so this is a limit per document rather than a number of threads to start.
+   */
   protected abstract int nThreads();
 
   /**
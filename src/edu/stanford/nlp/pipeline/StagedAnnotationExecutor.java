@@ -0,0 +1,251 @@
+package edu.stanford.nlp.pipeline;
+
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.util.RuntimeInterruptedException;
+import edu.stanford.nlp.util.logging.Redwood;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Runs an {@link AnnotationPipeline} over a stream of documents as a series of
+ * concurrent stages.  Each stage is a contiguous run of the pipeline's annotators
+ * and has a single thread of its own; stages are connected by bounded queues.
+ * A document moves through the stages in order, so for any one document the
+ * annotators still run one after another exactly as in
+ * {@link AnnotationPipeline#annotate(Annotation)}, but different documents
+ * occupy different stages at the same time.
+ *
+ * Since every annotator is only ever called from the thread of its stage, the
+ * annotators do not need to be threadsafe.  The last stage calls the callback of
+ * each document, so callbacks are invoked in submission order from one thread.
+ * If a callback throws, even an Error, the future returned when its document
+ * was submitted fails with what it threw, and the stage goes on to the next document.
+ *
+ * Stage boundaries are taken from the {@link Annotator#requires()} /
+ * {@link Annotator#requirementsSatisfied()} declarations: an annotator which
+ * declares neither (for example, a custom annotator which does not take part in
+ * the requirements system) is run in the same stage as the annotator before it,
+ * since we cannot tell what it reads or writes.  Every other annotator starts a
+ * stage of its own.
+ *
+ * Typical usage:
+ * <pre>
+ *   try (StagedAnnotationExecutor executor = new StagedAnnotationExecutor(pipeline, 16)) {
+ *     for (Annotation doc : docs) {
+ *       executor.submit(doc, done -&gt; output(done));
+ *     }
+ *   }
+ * </pre>
+ */
+public class StagedAnnotationExecutor implements AutoCloseable {
+
+  /** A logger for this class */
+  private static final Redwood.RedwoodChannels log = Redwood.channels(StagedAnnotationExecutor.class);
+
+  /** A document and what to do with it once the last stage is done. */
+  private static class Job {
+    final Annotation annotation;
+    final Consumer<Annotation> callback;
+    final CompletableFuture<Annotation> done = new CompletableFuture<>();
+
+    Job(Annotation annotation, Consumer<Annotation> callback) {
+      this.annotation = annotation;
+      this.callback = callback;
+    }
+  }
+
+  /** Marks the end of the stream; passed down from stage to stage. */
+  private static final Job END_OF_STREAM = new Job(null, null);
+
+  private final AnnotationPipeline pipeline;
+
+  /** The stage boundaries: stage i runs annotators [boundaries[i], boundaries[i+1]). */
+  private final int[] boundaries;
+
+  /** queues.get(i) holds the documents waiting for stage i. */
+  private final List<BlockingQueue<Job>> queues;
+
+  private final List<Thread> workers;
+
+  private boolean closed;  // = false
+
+  /**
+   * Start the stage threads for the given pipeline.
+   *
+   * @param pipeline The pipeline to run.  It must not be modified while this executor is open.
+   * @param queueCapacity The number of documents which may wait in front of each stage.
+   *                      {@link #submit(Annotation, Consumer)} blocks when the first queue is full.
+   */
+  public StagedAnnotationExecutor(AnnotationPipeline pipeline, int queueCapacity) {
+    if (queueCapacity <= 0) {
+      throw new IllegalArgumentException("Queue capacity must be positive: " + queueCapacity);
+    }
+    this.pipeline = pipeline;
+    this.boundaries = stageBoundaries(pipeline.annotators());
+    int numStages = boundaries.length - 1;
+    this.queues = new ArrayList<>(numStages);
+    for (int i = 0; i < numStages; i++) {
+      queues.add(new ArrayBlockingQueue<>(queueCapacity));
+    }
+    this.workers = new ArrayList<>(numStages);
+    for (int i = 0; i < numStages; i++) {
+      final int stage = i;
+      Thread worker = new Thread(() -> runStage(stage), "StagedAnnotationExecutor-stage-" + i);
+      worker.setDaemon(true);
+      workers.add(worker);
+    }
+    log.info("Running " + pipeline.annotators().size() + " annotators in " + numStages + " stages");
+    workers.forEach(Thread::start);
+  }
+
+  /**
+   * Compute where the stages of a list of annotators begin.
+   * The returned array starts with 0 and ends with annotators.size(); an empty
+   * pipeline still gets one (empty) stage so that callbacks are run.
+   */
+  static int[] stageBoundaries(List<Annotator> annotators) {
+    List<Integer> starts = new ArrayList<>();
+    starts.add(0);
+    for (int i = 1; i < annotators.size(); i++) {
+      Annotator annotator = annotators.get(i);
+      boolean opaque = isEmpty(annotator.requires()) && isEmpty(annotator.requirementsSatisfied());
+      if ( ! opaque) {
+        starts.add(i);
+      }
+    }
+    int[] boundaries = new int[starts.size() + 1];
+    for (int i = 0; i < starts.size(); i++) {
+      boundaries[i] = starts.get(i);
+    }
+    boundaries[starts.size()] = annotators.size();
+    return boundaries;
+  }
+
+  private static boolean isEmpty(Set<?> requirements) {
+    return requirements == null || requirements.isEmpty();
+  }
+
+  /** The number of stages (and therefore threads) this executor runs. */
+  public int numStages() {
+    return queues.size();
+  }
+
+  /**
+   * Queue a document for annotation.  This blocks if the first stage is backed up.
+   *
+   * @param annotation The document to annotate in place
+   * @param callback Called from the last stage once the document has been through every stage,
+   *                 or as soon as an annotator threw an exception, which is then stored under
+   *                 {@link CoreAnnotations.ExceptionAnnotation}.
+   * @return A future which completes with the annotation once the callback has returned,
+   *         or fails with the exception or error the callback threw
+   */
+  public CompletableFuture<Annotation> submit(Annotation annotation, Consumer<Annotation> callback) {
+    if (closed) {
+      throw new IllegalStateException("Cannot submit to a closed StagedAnnotationExecutor");
+    }
+    Job job = new Job(annotation, callback);
+    put(0, job);
+    return job.done;
+  }
+
+  /**
+   * Wait for all submitted documents to finish and stop the stage threads.
+   */
+  @Override
+  public void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    put(0, END_OF_STREAM);
+    try {
+      for (Thread worker : workers) {
+        worker.join();
+      }
+    } catch (InterruptedException e) {
+      workers.forEach(Thread::interrupt);
+      throw new RuntimeInterruptedException(e);
+    }
+  }
+
+  private void put(int stage, Job job) {
+    try {
+      queues.get(stage).put(job);
+    } catch (InterruptedException e) {
+      throw new RuntimeInterruptedException(e);
+    }
+  }
+
+  private void runStage(int stage) {
+    BlockingQueue<Job> in = queues.get(stage);
+    boolean last = stage == queues.size() - 1;
+    try {
+      while (true) {
+        Job job = in.take();
+        if (job == END_OF_STREAM) {
+          if ( ! last) {
+            put(stage + 1, job);
+          }
+          return;
+        }
+        if ( ! job.annotation.containsKey(CoreAnnotations.ExceptionAnnotation.class)) {
+          try {
+            pipeline.annotate(job.annotation, boundaries[stage], boundaries[stage + 1]);
+          } catch (RuntimeInterruptedException e) {
+            throw e;
+          } catch (Throwable t) {
+            job.annotation.set(CoreAnnotations.ExceptionAnnotation.class, t);
+          }
+        }
+        if (last) {
+          finish(job);
+        } else {
+          put(stage + 1, job);
+        }
+      }
+    } catch (InterruptedException | RuntimeInterruptedException e) {
+      log.warn("Stage " + stage + " was interrupted; documents still queued will not be annotated");
+    }
+  }
+
+  /**
+   * Calls the callback of a finished document and completes its future.  Whatever the
+   * callback throws, even an Error, fails the future rather than the stage thread, so
+   * later documents are still finished and {@link #close()} does not wait forever.
+   */
+  private void finish(Job job) {
+    try {
+      job.callback.accept(job.annotation);
+    } catch (Throwable t) {
+      job.done.completeExceptionally(t);
+      if (t instanceof RuntimeInterruptedException) {
+        throw (RuntimeInterruptedException) t;
+      }
+    } finally {
+      // does nothing if the callback failed
+      job.done.complete(job.annotation);
+    }
+  }
+
+  @Override
+  public String toString() {
+    List<String> stages = new ArrayList<>();
+    List<Annotator> annotators = pipeline.annotators();
+    for (int i = 0; i + 1 < boundaries.length; i++) {
+      List<String> names = new ArrayList<>();
+      for (Annotator annotator : annotators.subList(boundaries[i], boundaries[i + 1])) {
+        names.add(annotator.getClass().getSimpleName());
+      }
+      stages.add(names.toString());
+    }
+    return "StagedAnnotationExecutor" + stages;
+  }
+
+}
@@ -43,7 +43,12 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
 import java.util.function.Consumer;
@@ -172,6 +177,12 @@ public class StanfordCoreNLP extends AnnotationPipeline  {
   /** The annotator pool we should be using to get annotators. */
   public final AnnotatorPool pool;
 
+  /** Whether to check that the requirements of each annotator are met by the annotators before it. */
+  private final boolean enforceRequirements;
+
+  /** With the {@code lazyLoad} property, the annotators behind the {@link LazyAnnotator}s, once they are loaded. */
+  private volatile List<Annotator> lazyAnnotators; // = null
+
 
   /**
    * Constructs a pipeline using as properties the properties file found in the classpath
@@ -243,17 +254,81 @@ public class StanfordCoreNLP extends AnnotationPipeline  {
 
     // now construct the annotators from the given properties in the given order
     String[] annoNames = getRequiredProperty(this.properties, "annotators").split("[, \t]+");
-    Set<String> alreadyAddedAnnoNames = Generics.newHashSet();
-    Set<Class<? extends CoreAnnotation>> requirementsSatisfied = Generics.newHashSet();
+    List<String> names = new ArrayList<>();
     for (String name : annoNames) {
       name = name.trim();
-      if (name.isEmpty()) { continue; }
-      logger.info("Adding annotator " + name);
+      if ( ! name.isEmpty()) {
+        names.add(name);
+      }
+    }
+    this.enforceRequirements = enforceRequirements;
+    if (PropertiesUtils.getBool(this.properties, "lazyLoad", false)) {
+      // Stand-ins which load every annotator the first time any of them is used
+      for (int i = 0; i < names.size(); ++i) {
+        logger.info("Adding annotator " + names.get(i) + " (not loaded yet)");
+        this.addAnnotator(new LazyAnnotator(names, i));
+      }
+    } else {
+      for (Annotator an : loadAnnotators(names)) {
+        this.addAnnotator(an);
+      }
+    }
 
-      Annotator an = pool.get(name);
-      this.addAnnotator(an);
+    // Sanity check
+    if (! names.contains(STANFORD_SSPLIT)) {
+      System.setProperty(NEWLINE_SPLITTER_PROPERTY, "false");
+    }
+    this.pipelineSetupTime = tim.report();
+  }
 
-      if (enforceRequirements) {
+  /**
+   * Get the named annotators from the pool, and check that the requirements of each are
+   * satisfied by the ones before it (if we are enforcing requirements).
+   * If the property {@code loadThreads} is more than 1, that many annotators are loaded at once;
+   * otherwise they are loaded one after another, in order.
+   */
+  private List<Annotator> loadAnnotators(List<String> names) {
+    int loadThreads = PropertiesUtils.getInt(properties, "loadThreads", 1);
+    List<Annotator> annotators = new ArrayList<>(names.size());
+    if (loadThreads > 1 && names.size() > 1) {
+      Timing tim = new Timing();
+      ExecutorService loader = Executors.newFixedThreadPool(Math.min(loadThreads, names.size()), r -> {
+        Thread thread = new Thread(r, "StanfordCoreNLP-loader");
+        thread.setDaemon(true);
+        return thread;
+      });
+      try {
+        List<Future<Annotator>> futures = new ArrayList<>(names.size());
+        for (String name : names) {
+          logger.info("Adding annotator " + name);
+          futures.add(loader.submit(() -> pool.get(name)));
+        }
+        for (Future<Annotator> future : futures) {
+          annotators.add(future.get());
+        }
+      } catch (InterruptedException e) {
+        throw new RuntimeInterruptedException(e);
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof RuntimeException) {
+          throw (RuntimeException) e.getCause();
+        }
+        throw new RuntimeException(e.getCause());
+      } finally {
+        loader.shutdownNow();
+      }
+      tim.done(logger, "Loading " + names.size() + " annotators on " + Math.min(loadThreads, names.size()) + " threads");
+    } else {
+      for (String name : names) {
+        logger.info("Adding annotator " + name);
+        annotators.add(pool.get(name));
+      }
+    }
+
+    if (enforceRequirements) {
+      Set<Class<?>> requirementsSatisfied = Generics.newHashSet();
+      for (int i = 0; i < names.size(); ++i) {
+        String name = names.get(i);
+        Annotator an = annotators.get(i);
         Set<Class<? extends CoreAnnotation>> allRequirements = an.requires();
         for (Class<? extends CoreAnnotation> requirement : allRequirements) {
           if (!requirementsSatisfied.contains(requirement)) {
@@ -266,15 +341,66 @@ public class StanfordCoreNLP extends AnnotationPipeline  {
         }
         requirementsSatisfied.addAll(an.requirementsSatisfied());
       }
+    }
+    return annotators;
+  }
 
-      alreadyAddedAnnoNames.add(name);
+  /**
+   * Stands in for an annotator of a pipeline created with the {@code lazyLoad} property.
+   * The first call to any of the stand-ins loads all the annotators of the pipeline
+   * (concurrently, if {@code loadThreads} is set) and checks their requirements;
+   * every call is then passed on to the real annotator.
+   */
+  class LazyAnnotator implements Annotator {
+    private final List<String> names;
+    private final int index;
+
+    LazyAnnotator(List<String> names, int index) {
+      this.names = names;
+      this.index = index;
     }
 
-    // Sanity check
-    if (! alreadyAddedAnnoNames.contains(STANFORD_SSPLIT)) {
-      System.setProperty(NEWLINE_SPLITTER_PROPERTY, "false");
+    /** The real annotator, which is loaded if it was not yet. */
+    Annotator delegate() {
+      return loadLazyAnnotators(names).get(index);
     }
-    this.pipelineSetupTime = tim.report();
+
+    @Override
+    public void annotate(Annotation annotation) {
+      delegate().annotate(annotation);
+    }
+
+    // the raw type is the one Annotator declares
+    @Override
+    @SuppressWarnings("rawtypes")
+    public Set<Class<? extends CoreAnnotation>> requirementsSatisfied() {
+      return delegate().requirementsSatisfied();
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public Set<Class<? extends CoreAnnotation>> requires() {
+      return delegate().requires();
+    }
+
+    @Override
+    public void unmount() {
+      if (lazyAnnotators != null) {
+        lazyAnnotators.get(index).unmount();
+      }
+    }
+
+    @Override
+    public String toString() {
+      return lazyAnnotators == null ? "LazyAnnotator[" + names.get(index) + ']' : lazyAnnotators.get(index).toString();
+    }
+  }
+
+  private synchronized List<Annotator> loadLazyAnnotators(List<String> names) {
+    if (lazyAnnotators == null) {
+      lazyAnnotators = loadAnnotators(names);
+    }
+    return lazyAnnotators;
   }
 
   //
@@ -651,12 +777,65 @@ public class StanfordCoreNLP extends AnnotationPipeline  {
   @Override
   public void annotate(Annotation annotation) {
     super.annotate(annotation);
+    countWords(annotation);
+  }
+
+  private void countWords(Annotation annotation) {
     List<CoreLabel> words = annotation.get(CoreAnnotations.TokensAnnotation.class);
     if (words != null) {
       numWords += words.size();
     }
   }
 
+  /** Annotators which only tokenize and split the document into sentences. */
+  private static final Set<String> SPLITTING_ANNOTATORS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+      STANFORD_TOKENIZE, STANFORD_CLEAN_XML, STANFORD_DOCDATE, STANFORD_SSPLIT, STANFORD_MWT)));
+
+  /**
+   * Annotators which annotate each sentence by itself, without looking at the rest of the document.
+   * NER is not one of them: it uses the document date, and finds entity mentions for the whole document.
+   */
+  private static final Set<String> SENTENCE_ANNOTATORS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+      STANFORD_POS, STANFORD_LEMMA, STANFORD_TRUECASE, STANFORD_PARSE, STANFORD_DEPENDENCIES, STANFORD_SENTIMENT,
+      STANFORD_UD_FEATURES)));
+
+  /**
+   * If this pipeline splits the document into sentences and then runs only annotators which
+   * annotate each sentence by itself (such as pos, parse or depparse), the position of the first
+   * of those, which may also be the number of annotators.  The annotators from there on can then
+   * be run on one sentence at a time, with the same result as running them on the whole document.
+   * A custom annotator counts as one of them if it is a {@link SentenceAnnotator}.
+   *
+   * @return The position of the first sentence annotator, or -1 if the pipeline does not split
+   *         sentences or runs any annotator which looks across sentences (e.g., ner, entitymentions or coref)
+   */
+  int sentenceAnnotatorsStart() {
+    List<String> names = new ArrayList<>();
+    for (String name : properties.getProperty("annotators", "").split("[, \t]+")) {
+      if ( ! name.trim().isEmpty()) {
+        names.add(name.trim());
+      }
+    }
+    if (names.size() != annotators().size()) {
+      return -1;
+    }
+    int start = 0;
+    while (start < names.size() && SPLITTING_ANNOTATORS.contains(names.get(start))) {
+      start++;
+    }
+    if ( ! names.subList(0, start).contains(STANFORD_SSPLIT)) {
+      return -1;
+    }
+    for (int i = start; i < names.size(); i++) {
+      String name = names.get(i);
+      boolean custom = properties.containsKey(CUSTOM_ANNOTATOR_PREFIX + name);
+      if (custom ? ! (annotators().get(i) instanceof SentenceAnnotator) : ! SENTENCE_ANNOTATORS.contains(name)) {
+        return -1;
+      }
+    }
+    return start;
+  }
+
 
   public void annotate(final Annotation annotation, final Consumer<Annotation> callback){
     if (PropertiesUtils.getInt(properties, "threads", 1) == 1) {
@@ -852,6 +1031,7 @@ public class StanfordCoreNLP extends AnnotationPipeline  {
     os.println("\t\"tokenize.options\" - PTBTokenizer options (see edu.stanford.nlp.process.PTBTokenizer for details)");
     os.println("\t\"tokenize.whitespace\" - If true, just use whitespace tokenization");
     os.println("\t\"tokenize.codepoint\" - If true, add codepoint offsets for counting non-BMP characters");
+    os.println("\t\"tokenize.columnar\" - If true, store the common token annotations in columns, to save memory on large documents");
 
     os.println();
     os.println("\tIf annotator \"cleanxml\" is defined:");
@@ -914,6 +1094,10 @@ public class StanfordCoreNLP extends AnnotationPipeline  {
     os.println("\t\"noClobber\" - don't automatically override (clobber) output files that already exist");
     os.println("\t\"isOneDocument\" - (for piped input only) treat the text till eof as one document rather than one document per line");
     os.println("\t\"threads\" - multithread on this number of threads");
+    os.println("\t\"loadThreads\" - number of annotators to load at once when the pipeline is created (default: 1)");
+    os.println("\t\"lazyLoad\" - don't load the annotators until the pipeline is first used");
+    os.println("\t\"pipelineStages\" - run each annotator as a concurrent stage over the stream of files, instead of one file per thread");
+    os.println("\t\"pipelineStages.queueSize\" - number of files which may wait in front of each stage (default: 4)");
     os.println();
     os.println("If none of the above are present, run the pipeline in an interactive shell (default properties will be loaded from the classpath).");
     os.println("The shell accepts input from stdin and displays the output at stdout.");
@@ -1092,7 +1276,29 @@ public class StanfordCoreNLP extends AnnotationPipeline  {
   public void processFiles(String base, final Collection<File> files, int numThreads, boolean clearPool, Optional<Timing> tim) throws IOException {
     AnnotationOutputter.Options options = AnnotationOutputter.getOptions(properties);
     StanfordCoreNLP.OutputFormat outputFormat = StanfordCoreNLP.OutputFormat.valueOf(properties.getProperty("outputFormat", DEFAULT_OUTPUT_FORMAT).toUpperCase());
-    processFiles(base, files, numThreads, properties, this::annotate, createOutputter(properties, options), outputFormat, clearPool, Optional.of(this), tim);
+    if (PropertiesUtils.getBool(properties, "pipelineStages", false)) {
+      // run the annotators as concurrent stages over the stream of files rather than one file per thread
+      int queueSize = PropertiesUtils.getInt(properties, "pipelineStages.queueSize", 4);
+      AtomicReference<Throwable> failure = new AtomicReference<>();
+      try (StagedAnnotationExecutor executor = new StagedAnnotationExecutor(this, queueSize)) {
+        processFiles(base, files, numThreads, properties,
+            (annotation, callback) -> executor.submit(annotation, finished -> {
+              countWords(finished);
+              callback.accept(finished);
+            }).whenComplete((finished, e) -> {
+              if (e != null) {
+                logger.err("Could not output " + annotation.get(CoreAnnotations.DocIDAnnotation.class), e);
+                failure.compareAndSet(null, e);
+              }
+            }),
+            createOutputter(properties, options), outputFormat, clearPool, Optional.of(this), tim);
+      }
+      if (failure.get() != null) {
+        throw (RuntimeException) failure.get();
+      }
+    } else {
+      processFiles(base, files, numThreads, properties, this::annotate, createOutputter(properties, options), outputFormat, clearPool, Optional.of(this), tim);
+    }
   }
 
   protected static void processFiles(String base, final Collection<File> files, int numThreads,
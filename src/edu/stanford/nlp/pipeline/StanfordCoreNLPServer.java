@@ -24,7 +24,6 @@ import edu.stanford.nlp.util.*;
 import edu.stanford.nlp.util.logging.Redwood;
 
 import java.io.*;
-import java.lang.ref.SoftReference;
 import java.math.BigInteger;
 import java.net.*;
 import javax.net.ssl.*;
@@ -35,6 +34,7 @@ import java.security.cert.CertificateException;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
@@ -88,6 +88,20 @@ public class StanfordCoreNLPServer implements Runnable {
   protected static String blockList = null;
   @ArgumentParser.Option(name="stanford", gloss="If true, do special options (domain blockList, timeout modifications) for public Stanford server")
   protected boolean stanford = false;
+  @ArgumentParser.Option(name="computeThreads", gloss="The number of threads to run annotation on (non-positive means the same as -threads)")
+  protected static int computeThreads = -1;
+  @ArgumentParser.Option(name="maxQueuedRequests", gloss="The maximum number of requests waiting for an annotation thread. Further requests are refused with HTTP 503 and a Retry-After header (non-positive means no limit)")
+  protected static int maxQueuedRequests = -1;
+  @ArgumentParser.Option(name="retryAfter", gloss="The number of seconds an overloaded server asks clients to wait before retrying")
+  protected static int retryAfterSeconds = 1;
+  @ArgumentParser.Option(name="virtualThreads", gloss="If true, handle HTTP connections on virtual threads (or, before Java 21, on an unbounded thread pool), so that slow clients do not hold up -threads server threads")
+  protected static boolean virtualThreads = false;
+  @ArgumentParser.Option(name="pipelinePoolSize", gloss="The maximum number of pipelines, one per distinct set of request properties, to keep loaded (non-positive means no limit)")
+  protected static int pipelinePoolSize = 4;
+  @ArgumentParser.Option(name="warmup", gloss="Comma separated list of properties files. A pipeline for each is loaded and run over some dummy text before the server starts; 'true' means the server's default properties")
+  protected static String warmupProfiles = null;
+  @ArgumentParser.Option(name="warmupIterations", gloss="The number of times to run the dummy text through each pipeline named by -warmup")
+  protected static int warmupIterations = 3;
 
   /** List of server specific properties **/
   private static final List<String> serverSpecificProperties = ArgumentParser.listOptions(StanfordCoreNLPServer.class);
@@ -100,19 +114,21 @@ public class StanfordCoreNLPServer implements Runnable {
 
   /**
    * The thread pool for the HTTP server.
+   * This only reads requests and writes responses; the annotation itself runs on {@link #corenlpExecutor}.
    */
   private final ExecutorService serverExecutor;
 
   /**
-   * To prevent grossly wasteful over-creation of pipeline objects, cache the last
-   *  one we created.
+   * To prevent grossly wasteful over-creation of pipeline objects, cache the
+   * pipelines of the last few distinct sets of properties.
    */
-  private SoftReference<Pair<String, StanfordCoreNLP>> lastPipeline = new SoftReference<>(null);
+  private final PipelinePool pipelinePool = new PipelinePool(pipelinePoolSize);
 
   /**
    * An executor to time out CoreNLP execution with.
+   * Its queue is bounded by {@link #maxQueuedRequests}, if set.
    */
-  private final ExecutorService corenlpExecutor;
+  private final ThreadPoolExecutor corenlpExecutor;
 
 
   /**
@@ -200,8 +216,8 @@ public class StanfordCoreNLPServer implements Runnable {
         String.join("\n", defaultPropertyKeys.stream().map(
             k -> String.format("\t\t\t%s = %s", k, this.defaultProps.get(k))).collect(Collectors.toList())));
 
-    this.serverExecutor = Executors.newFixedThreadPool(ArgumentParser.threads);
-    this.corenlpExecutor = Executors.newFixedThreadPool(ArgumentParser.threads);
+    this.serverExecutor = newServerExecutor();
+    this.corenlpExecutor = newCoreNLPExecutor();
 
     // Generate and write a shutdown key, get optional server_id from passed in properties
     // this way if multiple servers running can shut them all down with different ids
@@ -242,6 +258,182 @@ public class StanfordCoreNLPServer implements Runnable {
     }
   }
 
+  /**
+   * Create the executor which handles HTTP connections.
+   * If {@link #virtualThreads} is set, each connection gets a virtual thread of its own when the JVM
+   * supports them, or else a thread from an unbounded cached pool.  Either way a slow client only
+   * ties up a cheap thread, and the CPU bound work is still limited by {@link #corenlpExecutor}.
+   */
+  private static ExecutorService newServerExecutor() {
+    if ( ! virtualThreads) {
+      return Executors.newFixedThreadPool(ArgumentParser.threads);
+    }
+    try {
+      // Looked up reflectively, as we still compile for Java 8
+      ExecutorService executor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+      log("Handling HTTP connections on virtual threads");
+      return executor;
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      log("Virtual threads are not available in this JVM; handling HTTP connections on a cached thread pool");
+      return Executors.newCachedThreadPool();
+    }
+  }
+
+  /**
+   * Create the executor which runs the annotation of requests.
+   * It has {@link #computeThreads} threads, and refuses new work once {@link #maxQueuedRequests}
+   * requests are already waiting for one of them.
+   */
+  private static ThreadPoolExecutor newCoreNLPExecutor() {
+    int threads = computeThreads > 0 ? computeThreads : ArgumentParser.threads;
+    BlockingQueue<Runnable> queue = maxQueuedRequests > 0 ? new ArrayBlockingQueue<>(maxQueuedRequests) : new LinkedBlockingQueue<>();
+    return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, queue);
+  }
+
+  /**
+   * Submit an annotation job to {@link #corenlpExecutor}.
+   * If the server is already at {@link #maxQueuedRequests}, respond to the request with
+   * HTTP 503 instead, and return null.
+   *
+   * @param job The job to run.
+   * @param httpExchange The exchange to refuse if the server is overloaded.
+   *
+   * @return The future of the job, or null if the request was refused.
+   *
+   * @throws IOException Thrown if the HttpExchange cannot communicate the refusal.
+   */
+  private <T> Future<T> submitToCoreNLP(Callable<T> job, HttpExchange httpExchange) throws IOException {
+    try {
+      return corenlpExecutor.submit(job);
+    } catch (RejectedExecutionException e) {
+      respondOverloaded(httpExchange);
+      return null;
+    }
+  }
+
+  /**
+   * Submit an annotation job to {@link #corenlpExecutor}, waiting up to the given time for
+   * room in its queue if the server is already at {@link #maxQueuedRequests}.
+   *
+   * @param job The job to run.
+   * @param waitMilliseconds How long to wait for room in the queue.
+   *
+   * @return The future of the job, or null if there was still no room after waiting.
+   *
+   * @throws InterruptedException Thrown if interrupted while waiting for room.
+   */
+  private <T> Future<T> submitToCoreNLP(Callable<T> job, long waitMilliseconds) throws InterruptedException {
+    try {
+      return corenlpExecutor.submit(job);
+    } catch (RejectedExecutionException e) {
+      // The queue is only full when every thread of the pool has been started, and those
+      // threads keep taking work from the queue, so a task put straight on it will be run.
+      FutureTask<T> task = new FutureTask<>(job);
+      if (corenlpExecutor.getQueue().offer(task, waitMilliseconds, TimeUnit.MILLISECONDS)) {
+        return task;
+      }
+      return null;
+    }
+  }
+
+  /** The output formats whose outputters write the sentences of a document in order, one after another. */
+  private static final Set<StanfordCoreNLP.OutputFormat> STREAMED_FORMATS = Collections.unmodifiableSet(EnumSet.of(
+      StanfordCoreNLP.OutputFormat.JSON, StanfordCoreNLP.OutputFormat.CONLL, StanfordCoreNLP.OutputFormat.CONLLU));
+
+  /**
+   * The sentences of a document which is being annotated one sentence at a time, as seen by the
+   * thread writing the output: getting a sentence waits until it has been annotated, so that each
+   * sentence is written as soon as it is done.  Getting a sentence fails if annotation failed before
+   * reaching it, or if it is not done by the deadline.
+   */
+  private static class StreamedSentences extends AbstractList<CoreMap> {
+
+    private final List<CoreMap> sentences;
+    private final long deadline;
+    /** The number of sentences annotated so far. */
+    private int annotated;  // = 0
+    private Throwable failure;  // = null
+
+    StreamedSentences(List<CoreMap> sentences, long deadline) {
+      this.sentences = sentences;
+      this.deadline = deadline;
+    }
+
+    synchronized void annotated(int count) {
+      annotated = count;
+      notifyAll();
+    }
+
+    synchronized void failed(Throwable t) {
+      failure = t;
+      notifyAll();
+    }
+
+    /** Waits until the first count sentences (or all of them, if there are fewer) are annotated. */
+    synchronized void await(int count) throws InterruptedException, ExecutionException, TimeoutException {
+      count = Math.min(count, sentences.size());
+      while (annotated < count) {
+        if (failure != null) {
+          throw new ExecutionException("Could not annotate sentence " + annotated, failure);
+        }
+        long remaining = deadline - System.currentTimeMillis();
+        if (remaining <= 0) {
+          throw new TimeoutException("CoreNLP request timed out after " + annotated + " of " + sentences.size() + " sentences");
+        }
+        wait(remaining);
+      }
+    }
+
+    @Override
+    public CoreMap get(int index) {
+      try {
+        await(index + 1);
+      } catch (InterruptedException e) {
+        throw new RuntimeInterruptedException(e);
+      } catch (ExecutionException | TimeoutException e) {
+        throw new RuntimeException(e);
+      }
+      return sentences.get(index);
+    }
+
+    @Override
+    public int size() {
+      return sentences.size();
+    }
+
+  }
+
+  /**
+   * Annotates a document with a pipeline which has a {@link StanfordCoreNLP#sentenceAnnotatorsStart()}:
+   * first runs the annotators before that position on the whole document, and hands its sentences to
+   * the writer of the output, and then runs the rest of them on each sentence in turn.
+   * The result is the same as {@link StanfordCoreNLP#annotate(Annotation)}, except that
+   * annotators which batch the sentences of a document (e.g., depparse) get only one at a time.
+   *
+   * @param streamed Completed with the sentences once they are split, or with the failure if that fails
+   */
+  private static void annotateBySentence(StanfordCoreNLP pipeline, Annotation ann, int sentenceStart,
+                                         long deadline, CompletableFuture<StreamedSentences> streamed) {
+    StreamedSentences sentences = null;
+    try {
+      pipeline.annotate(ann, 0, sentenceStart);
+      List<CoreMap> split = ann.get(CoreAnnotations.SentencesAnnotation.class);
+      sentences = new StreamedSentences(split == null ? Collections.emptyList() : split, deadline);
+      streamed.complete(sentences);
+      for (int i = 0; i < sentences.size(); i++) {
+        pipeline.annotate(new Annotation(Collections.singletonList(split.get(i))), sentenceStart, pipeline.annotators().size());
+        sentences.annotated(i + 1);
+      }
+    } catch (RuntimeException | Error e) {
+      if (sentences == null) {
+        streamed.completeExceptionally(e);
+      } else {
+        sentences.failed(e);
+      }
+      throw e;
+    }
+  }
+
   /**
    * Parse the URL parameters into a map of (key, value) pairs. <br>
    * https://codereview.stackexchange.com/questions/175332/splitting-url-query-string-to-key-value-pairs
@@ -356,38 +548,34 @@ public class StanfordCoreNLPServer implements Runnable {
    * @return A pipeline parameterized by these properties.
    */
   private StanfordCoreNLP mkStanfordCoreNLP(Properties props) {
-    StanfordCoreNLP impl;
-
-    StringBuilder sb = new StringBuilder();
-    props.stringPropertyNames().stream().filter(key -> !key.equalsIgnoreCase("date")).forEach(key -> {
-      String pvalue = props.getProperty(key);
-      sb.append(key).append(':').append(pvalue).append(';');
-    });
-    String cacheKey = sb.toString();
-
-    synchronized (this) {
-      Pair<String, StanfordCoreNLP> lastPipeline = this.lastPipeline.get();
-      if (lastPipeline != null && Objects.equals(lastPipeline.first, cacheKey)) {
-        return lastPipeline.second;
-      } else {
-        // Do some housekeeping on the global cache
-        for (Iterator<Map.Entry<StanfordCoreNLP.AnnotatorSignature, Lazy<Annotator>>> iter = StanfordCoreNLP.GLOBAL_ANNOTATOR_CACHE.entrySet().iterator();
-             iter.hasNext(); ) {
-          Map.Entry<StanfordCoreNLP.AnnotatorSignature, Lazy<Annotator>> entry = iter.next();
-          if ( ! entry.getValue().isCache()) {
-            error("Entry in global cache is not garbage collectable!");
-            iter.remove();
-          } else if (entry.getValue().isGarbageCollected()) {
-            iter.remove();
-          }
-        }
-        // Create a CoreNLP
-        impl = new StanfordCoreNLP(props);
-        this.lastPipeline = new SoftReference<>(Pair.makePair(cacheKey, impl));
+    return pipelinePool.get(props);
+  }
+
+  /**
+   * Load a pipeline for each of the given properties files into the pipeline pool, and run some
+   * dummy text through it, so that the first requests with those properties do not have to wait
+   * for models to load or for the JIT.
+   * The properties are filled in the same way as {@link #getProperties(HttpExchange)} fills in the
+   * properties of a request, so that requests for the same annotators find the warm pipeline.
+   *
+   * @param profiles A comma separated list of properties files; 'true' means the server's default properties.
+   */
+  private void warmup(String profiles) {
+    for (String profile : profiles.split("\\s*,\\s*")) {
+      Properties props = new Properties();
+      defaultProps.forEach((key, value) -> props.setProperty(key.toString(), value.toString()));
+      Map<String, String> profileProps = Collections.emptyMap();
+      if ( ! profile.trim().equals("true")) {
+        profileProps = PropertiesUtils.asMap(StringUtils.argsToProperties("-props", profile));
+      }
+      addRequestProperties(props, profileProps);
+      try {
+        pipelinePool.warmup(props, warmupIterations);
+      } catch (Throwable throwable) {
+        err("Could not warm up pipeline for " + profile + "; encountered exception:");
+        err(throwable);
       }
     }
-
-    return impl;
   }
 
   /**
@@ -450,19 +638,32 @@ public class StanfordCoreNLPServer implements Runnable {
       }
     }
 
+    addRequestProperties(props, urlProperties);
+    return props;
+  }
+
+  /**
+   * Put the properties of a request on top of the server's properties, and add the annotators the
+   * requested ones need.  This is shared by {@link #getProperties(HttpExchange)} and
+   * {@link #warmup(String)}, so that a warmed up pipeline has exactly the properties requests ask for.
+   *
+   * @param props The server's properties, which are updated in place.
+   * @param requestProps The properties given with the request.
+   */
+  private static void addRequestProperties(Properties props, Map<String, String> requestProps) {
     // (tweak the default properties a bit)
     if (!props.containsKey("mention.type")) {
       // Set coref head to use dependencies
       props.setProperty("mention.type", "dep");
-      if (urlProperties.containsKey("annotators") && urlProperties.get("annotators") != null &&
-          ArrayUtils.contains(urlProperties.get("annotators").split(","), "parse")) {
+      if (requestProps.containsKey("annotators") && requestProps.get("annotators") != null &&
+          ArrayUtils.contains(requestProps.get("annotators").split(","), "parse")) {
         // (case: the properties have a parse annotator --
         //        we don't have to use the dependency mention finder)
         props.remove("mention.type");
       }
     }
     // (add new properties on top of the default properties)
-    urlProperties.forEach(props::setProperty);
+    requestProps.forEach(props::setProperty);
 
     // Get the annotators
     String annotators = props.getProperty("annotators");
@@ -474,8 +675,6 @@ public class StanfordCoreNLPServer implements Runnable {
     // Make sure the properties compile
     if (annotators != null)
       props.setProperty("annotators", annotators);
-
-    return props;
   }
 
 
@@ -511,6 +710,24 @@ public class StanfordCoreNLPServer implements Runnable {
   }
 
 
+  /**
+   * A helper function to respond to a request with an error stating that the server is
+   * too busy to accept it right now.  The client is told when to retry.
+   *
+   * @param httpExchange The exchange to send the error over.
+   *
+   * @throws IOException Thrown if the HttpExchange cannot communicate the error.
+   */
+  private static void respondOverloaded(HttpExchange httpExchange) throws IOException {
+    warn("Server is overloaded; responding unavailable to " + httpExchange.getRemoteAddress());
+    httpExchange.getResponseHeaders().add("Content-type", "text/plain");
+    httpExchange.getResponseHeaders().add("Retry-After", Integer.toString(retryAfterSeconds));
+    byte[] content = "CoreNLP server is overloaded; please retry later".getBytes(StandardCharsets.UTF_8);
+    httpExchange.sendResponseHeaders(HTTP_UNAVAILABLE, content.length);
+    httpExchange.getResponseBody().write(content);
+    httpExchange.close();
+  }
+
   /**
    * A helper function to respond to a request with an error stating that the user is not authorized
    * to make this request.
@@ -652,6 +869,22 @@ public class StanfordCoreNLPServer implements Runnable {
   }
 
 
+  /**
+   * A handler which reports the statistics of the pipeline pool: how many requests found their
+   * pipeline already loaded, how many had to load one, and how many pipelines were dropped.
+   */
+  protected class StatsHandler implements HttpHandler {
+    @Override
+    public void handle(HttpExchange httpExchange) throws IOException {
+      httpExchange.getResponseHeaders().set("Content-type", "text/plain");
+      byte[] response = pipelinePool.stats().getBytes();
+      httpExchange.sendResponseHeaders(HTTP_OK, response.length);
+      httpExchange.getResponseBody().write(response);
+      httpExchange.close();
+    }
+  }
+
+
   /**
    * A handler to let the caller know if the server is alive AND ready to respond to requests.
    * The canonical use-case for this is for Kubernetes readiness checks.
@@ -913,33 +1146,72 @@ public class StanfordCoreNLPServer implements Runnable {
       }
 
       Future<Annotation> completedAnnotationFuture = null;
+      boolean responseStarted = false;
       try {
         // Annotate
         StanfordCoreNLP pipeline = mkStanfordCoreNLP(props);
-        completedAnnotationFuture = corenlpExecutor.submit(() -> {
-          pipeline.annotate(ann);
+        AnnotationOutputter.Options options = AnnotationOutputter.getOptions(pipeline.getProperties());
+        int timeoutMilliseconds = getTimeout(props, httpExchange);
+        int sentenceStart = options.chunked && STREAMED_FORMATS.contains(of) ? pipeline.sentenceAnnotatorsStart() : -1;
+        long deadline = System.currentTimeMillis() + timeoutMilliseconds;
+        CompletableFuture<StreamedSentences> streamed = new CompletableFuture<>();
+        completedAnnotationFuture = submitToCoreNLP(() -> {
+          if (sentenceStart < 0) {
+            pipeline.annotate(ann);
+          } else {
+            annotateBySentence(pipeline, ann, sentenceStart, deadline, streamed);
+          }
           return ann;
-        });
+        }, httpExchange);
+        if (completedAnnotationFuture == null) {
+          return;
+        }
         Annotation completedAnnotation;
-        int timeoutMilliseconds = getTimeout(props, httpExchange);
-        completedAnnotation = completedAnnotationFuture.get(timeoutMilliseconds, TimeUnit.MILLISECONDS);
-        completedAnnotationFuture = null;  // No longer any need for the future
+        Annotation outputAnnotation;
+        if (sentenceStart < 0) {
+          completedAnnotation = completedAnnotationFuture.get(timeoutMilliseconds, TimeUnit.MILLISECONDS);
+          completedAnnotationFuture = null;  // No longer any need for the future
+          outputAnnotation = completedAnnotation;
+        } else {
+          // Output a view of the document whose sentences are handed over as they are annotated,
+          // and answer once the first one is done, so that a failure on it still gets an error status
+          StreamedSentences sentences = streamed.get(timeoutMilliseconds, TimeUnit.MILLISECONDS);
+          sentences.await(1);
+          completedAnnotation = null;
+          outputAnnotation = new Annotation(ann);
+          outputAnnotation.set(CoreAnnotations.SentencesAnnotation.class, sentences);
+        }
 
         // Get output
-        ByteArrayOutputStream os = new ByteArrayOutputStream();
-        AnnotationOutputter.Options options = AnnotationOutputter.getOptions(pipeline.getProperties());
-        StanfordCoreNLP.createOutputter(props, options).accept(completedAnnotation, os);
-        os.close();
-        byte[] response = os.toByteArray();
-
         String contentType = getContentType(props, of);
         if (contentType.equals("application/json") || contentType.startsWith("text/")) {
           contentType += ";charset=" + options.encoding;
         }
         httpExchange.getResponseHeaders().add("Content-type", contentType);
-        httpExchange.getResponseHeaders().add("Content-length", Integer.toString(response.length));
-        httpExchange.sendResponseHeaders(HTTP_OK, response.length);
-        httpExchange.getResponseBody().write(response);
+        if (options.chunked) {
+          // Write the output as it is serialized, in chunks, rather than building it all in memory first.
+          // Outputters which write sentence by sentence flush after each sentence. If the pipeline only
+          // splits sentences and then annotates each one by itself (see sentenceAnnotatorsStart), each
+          // sentence is written as soon as it is annotated; otherwise the document is already complete here.
+          httpExchange.sendResponseHeaders(HTTP_OK, 0);
+          responseStarted = true;
+          OutputStream os = httpExchange.getResponseBody();
+          StanfordCoreNLP.createOutputter(props, options).accept(outputAnnotation, os);
+          os.close();
+          if (completedAnnotation == null) {
+            completedAnnotation = completedAnnotationFuture.get(Math.max(deadline - System.currentTimeMillis(), 0), TimeUnit.MILLISECONDS);
+            completedAnnotationFuture = null;
+          }
+        } else {
+          ByteArrayOutputStream os = new ByteArrayOutputStream();
+          StanfordCoreNLP.createOutputter(props, options).accept(outputAnnotation, os);
+          os.close();
+          byte[] response = os.toByteArray();
+
+          httpExchange.getResponseHeaders().add("Content-length", Integer.toString(response.length));
+          httpExchange.sendResponseHeaders(HTTP_OK, response.length);
+          httpExchange.getResponseBody().write(response);
+        }
         httpExchange.close();
         if (completedAnnotation != null && ! StringUtils.isNullOrEmpty(props.getProperty("annotators"))) {
           callback.accept(new FinishedRequest(props, completedAnnotation));
@@ -947,22 +1219,32 @@ public class StanfordCoreNLPServer implements Runnable {
       } catch (TimeoutException e) {
         // Print the stack trace for debugging
         warn(e);
-        // Return error message.
-        respondError("CoreNLP request timed out. Your document may be too long.", httpExchange);
         // Cancel the future if it's alive
         //noinspection ConstantConditions
         if (completedAnnotationFuture != null) {
           completedAnnotationFuture.cancel(true);
         }
+        if (responseStarted) {
+          // The sentences annotated in time have already been sent; cut the response off there
+          httpExchange.close();
+          return;
+        }
+        // Return error message.
+        respondError("CoreNLP request timed out. Your document may be too long.", httpExchange);
       } catch (Exception e) {
         // Print the stack trace for debugging
         warn(e);
-        // Return error message.
-        respondError(e.getClass().getName() + ": " + e.getMessage(), httpExchange);
         // Cancel the future if it's alive
         if (completedAnnotationFuture != null) {  // just in case...
           completedAnnotationFuture.cancel(true);
         }
+        if (responseStarted) {
+          // Part of the output is already on its way to the client; all we can do is cut it off
+          httpExchange.close();
+          return;
+        }
+        // Return error message.
+        respondError(e.getClass().getName() + ": " + e.getMessage(), httpExchange);
       }
     }
 
@@ -1010,7 +1292,7 @@ public class StanfordCoreNLPServer implements Runnable {
       }
       Map<String, String> params = getURLParams(httpExchange.getRequestURI());
 
-      Future<Pair<String, Annotation>> future = corenlpExecutor.submit(() -> {
+      Future<Pair<String, Annotation>> future = submitToCoreNLP(() -> {
         try {
           // Get the document
           Annotation doc = getDocument(props, httpExchange);
@@ -1075,12 +1357,15 @@ public class StanfordCoreNLPServer implements Runnable {
           }
         }
         return new Pair<>("", null);
-      });
+      }, httpExchange);
+      if (future == null) {
+        return;
+      }
 
       // Send response
       try {
         int timeout = getTimeout(props, httpExchange);
-        if (lastPipeline.get() == null) {
+        if (pipelinePool.isEmpty()) {
           timeout = timeout + 60000; // add 60 seconds for loading a pipeline if needed
         }
         Pair<String, Annotation> response = future.get(timeout, TimeUnit.MILLISECONDS);
@@ -1138,7 +1423,7 @@ public class StanfordCoreNLPServer implements Runnable {
       }
       Map<String, String> params = getURLParams(httpExchange.getRequestURI());
 
-      Future<Pair<byte[], Annotation>> response = corenlpExecutor.submit(() -> {
+      Future<Pair<byte[], Annotation>> response = submitToCoreNLP(() -> {
         try {
           // Get the document
           Annotation doc = getDocument(props, httpExchange);
@@ -1235,12 +1520,15 @@ public class StanfordCoreNLPServer implements Runnable {
           }
         }
         return Pair.makePair("".getBytes(), null);
-      });
+      }, httpExchange);
+      if (response == null) {
+        return;
+      }
 
       // Send response
       try {
         int timeout = getTimeout(props, httpExchange);
-        if (lastPipeline.get() == null) {
+        if (pipelinePool.isEmpty()) {
           timeout = timeout + 60000; // add 60 seconds for loading a pipeline if needed
         }
         Pair<byte[], Annotation> pair = response.get(timeout, TimeUnit.MILLISECONDS);
@@ -1316,7 +1604,7 @@ public class StanfordCoreNLPServer implements Runnable {
       }
       Map<String, String> params = getURLParams(httpExchange.getRequestURI());
 
-      Future<Pair<String, Annotation>> response = corenlpExecutor.submit(() -> {
+      Future<Pair<String, Annotation>> response = submitToCoreNLP(() -> {
         try {
           // Get the document
           Annotation doc = getDocument(props, httpExchange);
@@ -1370,12 +1658,15 @@ public class StanfordCoreNLPServer implements Runnable {
           }
         }
         return Pair.makePair("", null);
-      });
+      }, httpExchange);
+      if (response == null) {
+        return;
+      }
 
       // Send response
       try {
         int timeout = getTimeout(props, httpExchange);
-        if (lastPipeline.get() == null) {
+        if (pipelinePool.isEmpty()) {
           timeout = timeout + 60000; // add 60 seconds for loading a pipeline if needed
         }
         Pair<String, Annotation> pair = response.get(timeout, TimeUnit.MILLISECONDS);
@@ -1391,6 +1682,310 @@ public class StanfordCoreNLPServer implements Runnable {
     }
   }
 
+  /**
+   * A handler for annotating many documents in one request.
+   * The documents are annotated in parallel on the annotation threads, and the output of each
+   * is streamed back (with chunked transfer encoding) as soon as it and all the documents
+   * before it are done, so the results come back in the order the documents were sent.
+   * <p>
+   * The request body is either a JSON array of strings, each the text of one document, or, if the
+   * inputFormat is "serialized", a sequence of length-delimited {@link CoreNLPProtos.Document}s.
+   * The response is a JSON array of the usual JSON outputs, or, if the outputFormat is "serialized",
+   * a sequence of length-delimited {@link CoreNLPProtos.Document}s.
+   * A document which fails to annotate comes back as {@code {"error": "..."}} in JSON output,
+   * and as a document holding only its input text in serialized output.
+   */
+  protected class BatchHandler implements HttpHandler {
+
+    /** A document of the batch, and how its annotation is going. */
+    private class BatchJob {
+      final Annotation doc;
+      /** The text of the document, read before it is handed to an annotation thread. */
+      final String text;
+      Future<Annotation> future;  // = null
+      Throwable error;  // = null
+
+      BatchJob(Annotation doc) {
+        this.doc = doc;
+        this.text = doc.get(CoreAnnotations.TextAnnotation.class);
+      }
+    }
+
+    /**
+     * A callback to call when an annotation job has finished.
+     */
+    private final Consumer<FinishedRequest> callback;
+
+    /**
+     * An authenticator to determine if we can perform this API request.
+     */
+    private final Predicate<Properties> authenticator;
+
+    /**
+     * Create a new Batch Handler.
+     * @param callback The callback to call when each document has been annotated.
+     */
+    public BatchHandler(Predicate<Properties> authenticator, Consumer<FinishedRequest> callback) {
+      this.callback = callback;
+      this.authenticator = authenticator;
+    }
+
+    /**
+     * Read the documents of a request lazily, so that each document is only read as we
+     * get to it, and a large batch is never held in memory all at once.  A JSON array of
+     * texts is read with a streaming {@link javax.json.stream.JsonParser}, one string at
+     * a time, and serialized documents are parsed one at a time.
+     */
+    private Iterator<Annotation> readDocuments(Properties props, HttpExchange httpExchange) throws IOException {
+      String inputFormat = props.getProperty("inputFormat", "text");
+      String date = props.getProperty("date");
+      switch (inputFormat) {
+        case "text":
+          javax.json.stream.JsonParser parser = javax.json.Json.createParser(new InputStreamReader(httpExchange.getRequestBody(), StandardCharsets.UTF_8));
+          try {
+            if ( ! parser.hasNext() || parser.next() != javax.json.stream.JsonParser.Event.START_ARRAY) {
+              throw new IOException("Batch input must be a JSON array of strings");
+            }
+          } catch (javax.json.JsonException e) {
+            throw new IOException("Batch input must be a JSON array of strings", e);
+          }
+          return new Iterator<Annotation>() {
+            private String next = parseNext();
+
+            private String parseNext() {
+              try {
+                javax.json.stream.JsonParser.Event event = parser.next();
+                if (event == javax.json.stream.JsonParser.Event.END_ARRAY) {
+                  parser.close();
+                  return null;
+                }
+                if (event != javax.json.stream.JsonParser.Event.VALUE_STRING) {
+                  throw new RuntimeIOException("Batch input must be a JSON array of strings, not " + event);
+                }
+                return parser.getString();
+              } catch (javax.json.JsonException | NoSuchElementException e) {
+                throw new RuntimeIOException("Batch input must be a JSON array of strings", e);
+              }
+            }
+
+            @Override
+            public boolean hasNext() {
+              return next != null;
+            }
+
+            @Override
+            public Annotation next() {
+              if (next == null) {
+                throw new NoSuchElementException();
+              }
+              Annotation doc = new Annotation(next);
+              if (date != null) {
+                doc.set(CoreAnnotations.DocDateAnnotation.class, date);
+              }
+              next = parseNext();
+              return doc;
+            }
+          };
+        case "serialized":
+          ProtobufAnnotationSerializer serializer = new ProtobufAnnotationSerializer(false);
+          InputStream is = httpExchange.getRequestBody();
+          return new Iterator<Annotation>() {
+            private CoreNLPProtos.Document next = parseNext();
+
+            private CoreNLPProtos.Document parseNext() {
+              try {
+                return CoreNLPProtos.Document.parseDelimitedFrom(is);  // null at the end of the stream
+              } catch (IOException e) {
+                throw new RuntimeIOException(e);
+              }
+            }
+
+            @Override
+            public boolean hasNext() {
+              return next != null;
+            }
+
+            @Override
+            public Annotation next() {
+              if (next == null) {
+                throw new NoSuchElementException();
+              }
+              Annotation doc = serializer.fromProto(next);
+              if (date != null) {
+                doc.set(CoreAnnotations.DocDateAnnotation.class, date);
+              }
+              next = parseNext();
+              return doc;
+            }
+          };
+        default:
+          throw new IOException("Could not parse input format: " + inputFormat);
+      }
+    }
+
+    @Override
+    public void handle(HttpExchange httpExchange) throws IOException {
+      if (onBlockList(httpExchange)) {
+        respondUnauthorized(httpExchange);
+        return;
+      }
+      setHttpExchangeResponseHeaders(httpExchange);
+      if ( ! "POST".equalsIgnoreCase(httpExchange.getRequestMethod())) {
+        respondBadInput("The batch interface only accepts POST requests", httpExchange);
+        return;
+      }
+
+      Properties props = getProperties(httpExchange);
+      if (authenticator != null && ! authenticator.test(props)) {
+        respondUnauthorized(httpExchange);
+        return;
+      }
+      StanfordCoreNLP.OutputFormat of = StanfordCoreNLP.OutputFormat.valueOf(props.getProperty("outputFormat", "json").toUpperCase());
+      if (of != StanfordCoreNLP.OutputFormat.JSON && of != StanfordCoreNLP.OutputFormat.SERIALIZED) {
+        respondBadInput("Interface batch does not handle output format " + of, httpExchange);
+        return;
+      }
+      if ( ! quiet) {
+        log("[" + httpExchange.getRemoteAddress() + "] Batch API call w/annotators " + props.getProperty("annotators", "<unknown>"));
+      }
+
+      Iterator<Annotation> docs;
+      StanfordCoreNLP pipeline;
+      BiConsumer<Annotation, OutputStream> outputter;
+      try {
+        docs = readDocuments(props, httpExchange);
+        pipeline = mkStanfordCoreNLP(props);
+        outputter = StanfordCoreNLP.createOutputter(props, AnnotationOutputter.getOptions(pipeline.getProperties()));
+      } catch (Exception e) {
+        warn(e);
+        respondBadInput("Could not handle incoming batch: " + e.getMessage(), httpExchange);
+        return;
+      }
+      int timeout = getTimeout(props, httpExchange);
+      // Keep a bounded number of documents in flight, so a huge batch neither floods the
+      // annotation queue nor holds all of its results in memory at once
+      int window = 2 * (computeThreads > 0 ? computeThreads : ArgumentParser.threads);
+      ArrayDeque<BatchJob> inFlight = new ArrayDeque<>();
+      BatchJob pending = null;  // a document the annotation queue had no room for
+      OutputStream os = null;
+      int numDocs = 0;
+      try {
+        while (pending != null || docs.hasNext() || ! inFlight.isEmpty()) {
+          if ((pending != null || docs.hasNext()) && inFlight.size() < window) {
+            BatchJob job = pending != null ? pending : new BatchJob(docs.next());
+            pending = null;
+            if (maxCharLength > 0 && job.text != null && job.text.length() > maxCharLength) {
+              job.error = new IllegalArgumentException("Document is too long to be handled by server: " + job.text.length() + " characters. Max length is " + maxCharLength + " characters.");
+              inFlight.add(job);
+              continue;
+            }
+            Callable<Annotation> annotate = () -> {
+              pipeline.annotate(job.doc);
+              return job.doc;
+            };
+            try {
+              job.future = corenlpExecutor.submit(annotate);
+              inFlight.add(job);
+              continue;
+            } catch (RejectedExecutionException e) {
+              if (os == null && inFlight.isEmpty()) {
+                // nothing has been started yet, so we can still refuse the whole request
+                respondOverloaded(httpExchange);
+                return;
+              }
+              if (inFlight.isEmpty()) {
+                // the annotation queue is full of other requests' work; wait for room in it
+                job.future = submitToCoreNLP(annotate, timeout);
+                if (job.future == null) {
+                  job.error = new RejectedExecutionException("CoreNLP server is overloaded");
+                }
+                inFlight.add(job);
+                continue;
+              }
+              // otherwise, write out our oldest document to make room
+              pending = job;
+            }
+          }
+
+          // Write the oldest document, which may mean waiting for it to finish
+          if (os == null) {
+            httpExchange.getResponseHeaders().add("Content-type", of == StanfordCoreNLP.OutputFormat.JSON ? "application/json;charset=utf-8" : "application/x-protobuf");
+            httpExchange.sendResponseHeaders(HTTP_OK, 0);  // 0 means chunked
+            os = httpExchange.getResponseBody();
+            if (of == StanfordCoreNLP.OutputFormat.JSON) {
+              os.write('[');
+            }
+          }
+          BatchJob job = inFlight.poll();
+          if (job.future != null) {
+            try {
+              job.future.get(timeout, TimeUnit.MILLISECONDS);
+            } catch (ExecutionException e) {
+              job.error = e.getCause();
+            } catch (TimeoutException e) {
+              // The annotator may not stop at once, and may still be writing to the document,
+              // so from here on only the text read before it started is used
+              job.future.cancel(true);
+              job.error = e;
+            }
+          }
+          if (of == StanfordCoreNLP.OutputFormat.JSON && numDocs > 0) {
+            os.write(',');
+          }
+          if (job.error == null) {
+            outputter.accept(job.doc, os);
+          } else {
+            warn("Error annotating document " + numDocs + " of batch: " + job.error);
+            if (of == StanfordCoreNLP.OutputFormat.JSON) {
+              Throwable error = job.error;
+              os.write(JSONOutputter.JSONWriter.objectToJSON(writer -> writer.set("error", error.getClass().getName() + ": " + error.getMessage())).getBytes(StandardCharsets.UTF_8));
+            } else {
+              new ProtobufAnnotationSerializer(false).write(new Annotation(job.text == null ? "" : job.text), os);
+            }
+          }
+          os.flush();
+          numDocs += 1;
+          if (job.error == null && ! StringUtils.isNullOrEmpty(props.getProperty("annotators"))) {
+            callback.accept(new FinishedRequest(props, job.doc));
+          }
+        }
+        if (os == null) {
+          // an empty batch
+          if (of == StanfordCoreNLP.OutputFormat.JSON) {
+            sendAndGetResponse(httpExchange, "[]".getBytes());
+          } else {
+            httpExchange.getResponseHeaders().add("Content-type", "application/x-protobuf");
+            httpExchange.sendResponseHeaders(HTTP_OK, -1);  // -1 means no body
+            httpExchange.close();
+          }
+          return;
+        }
+        if (of == StanfordCoreNLP.OutputFormat.JSON) {
+          os.write(']');
+        }
+        httpExchange.close();
+      } catch (Exception e) {
+        warn(e);
+        for (BatchJob job : inFlight) {
+          if (job.future != null) {
+            job.future.cancel(true);
+          }
+        }
+        if (os == null && e instanceof RuntimeIOException) {
+          // the documents are read as we go, so a bad one further on is found here
+          respondBadInput("Could not handle incoming batch: " + e.getMessage(), httpExchange);
+        } else if (os == null) {
+          respondError(e.getClass().getName() + ": " + e.getMessage(), httpExchange);
+        } else {
+          // We're in the middle of a response already, so all we can do is cut it short
+          httpExchange.close();
+        }
+      }
+    }
+
+  } // end class BatchHandler
+
+
   private static void sendAndGetResponse(HttpExchange httpExchange, byte[] response) throws IOException {
     if (response.length > 0) {
       httpExchange.getResponseHeaders().add("Content-type", "application/json");
@@ -1534,10 +2129,12 @@ public class StanfordCoreNLPServer implements Runnable {
       withAuth(server.createContext(uriContext+"/tokensregex", new TokensRegexHandler(authenticator, callback)), basicAuth);
       withAuth(server.createContext(uriContext+"/semgrex", new SemgrexHandler(authenticator, callback)), basicAuth);
       withAuth(server.createContext(uriContext+"/tregex", new TregexHandler(authenticator, callback)), basicAuth);
+      withAuth(server.createContext(uriContext+"/batch", new BatchHandler(authenticator, callback)), basicAuth);
       withAuth(server.createContext(uriContext+"/corenlp-brat.js", new FileHandler("edu/stanford/nlp/pipeline/demo/corenlp-brat.js", "application/javascript")), basicAuth);
       withAuth(server.createContext(uriContext+"/corenlp-brat.cs", new FileHandler("edu/stanford/nlp/pipeline/demo/corenlp-brat.css", "text/css")), basicAuth);
       withAuth(server.createContext(uriContext+"/corenlp-parseviewer.js", new FileHandler("edu/stanford/nlp/pipeline/demo/corenlp-parseviewer.js", "application/javascript")), basicAuth);
       withAuth(server.createContext(uriContext+"/ping", new PingHandler()), Optional.empty());
+      withAuth(server.createContext(uriContext+"/stats", new StatsHandler()), basicAuth);
       withAuth(server.createContext(uriContext+"/shutdown", new ShutdownHandler()), basicAuth);
       if (this.serverPort == this.statusPort) {
         withAuth(server.createContext(uriContext+"/live", new LiveHandler()), Optional.empty());
@@ -1582,6 +2179,12 @@ public class StanfordCoreNLPServer implements Runnable {
       server.statusPort = Integer.parseInt(serverProperties.getProperty("port"));
     }
     log("Threads: " + ArgumentParser.threads);
+    if (computeThreads > 0) {
+      log("Annotation threads: " + computeThreads);
+    }
+    if (maxQueuedRequests > 0) {
+      log("Max queued requests: " + maxQueuedRequests);
+    }
 
     // Start the liveness server
     AtomicBoolean live = new AtomicBoolean(false);
@@ -1613,6 +2216,12 @@ public class StanfordCoreNLPServer implements Runnable {
       }
     }
 
+    // Warm up the pipelines we expect to be asked for
+    if (StanfordCoreNLPServer.warmupProfiles != null) {
+      server.warmup(StanfordCoreNLPServer.warmupProfiles);
+      log("Pipeline pool: " + server.pipelinePool);
+    }
+
     // Credentials
     Optional<Pair<String, String>> credentials = Optional.empty();
     if (server.username != null && server.password != null) {
@@ -7,6 +7,7 @@ import java.util.*;
 import edu.stanford.nlp.ling.CoreAnnotation;
 import edu.stanford.nlp.ling.CoreAnnotations;
 import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.ling.TokenColumns;
 import edu.stanford.nlp.process.*;
 import edu.stanford.nlp.international.spanish.process.SpanishTokenizer;
 import edu.stanford.nlp.international.french.process.FrenchTokenizer;
@@ -137,6 +138,9 @@ public class TokenizerAnnotator implements Annotator  {
   /** run a custom post processor after the lexer **/
   private final List<CoreLabelProcessor> postProcessors;
 
+  /** store the common token annotations in columns (see {@link TokenColumns}) **/
+  private final boolean columnar;
+
   // CONSTRUCTORS
 
   /** Gives a non-verbose, English tokenizer. */
@@ -238,6 +242,7 @@ public class TokenizerAnnotator implements Annotator  {
       processors.add(new CodepointCoreLabelProcessor());
     }
     postProcessors = Collections.unmodifiableList(processors);
+    columnar = PropertiesUtils.getBool(props, "tokenize.columnar", false);
 
     VERBOSE = PropertiesUtils.getBool(props, "tokenize.verbose", verbose);
     TokenizerType type = TokenizerType.getTokenizerType(props);
@@ -364,6 +369,9 @@ public class TokenizerAnnotator implements Annotator  {
       // set indexes into document wide tokens list
       setTokenBeginTokenEnd(annotation.get(CoreAnnotations.TokensAnnotation.class));
       setNewlineStatus(annotation.get(CoreAnnotations.TokensAnnotation.class));
+      if (columnar) {
+        TokenColumns.columnize(annotation);
+      }
       return;
     }
 
@@ -389,6 +397,10 @@ public class TokenizerAnnotator implements Annotator  {
         tokens = postProcessor.process(tokens);
       }
 
+      if (columnar) {
+        tokens = TokenColumns.columnize(tokens);
+      }
+
       // add tokens list to annotation
       annotation.set(CoreAnnotations.TokensAnnotation.class, tokens);
 
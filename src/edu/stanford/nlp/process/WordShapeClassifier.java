@@ -2,6 +2,7 @@ package edu.stanford.nlp.process;
 import edu.stanford.nlp.util.logging.Redwood;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import edu.stanford.nlp.trees.international.pennchinese.ChineseUtils;
@@ -9,6 +10,7 @@ import edu.stanford.nlp.trees.international.pennchinese.ChineseUtils;
 import edu.stanford.nlp.objectbank.ObjectBank;
 import edu.stanford.nlp.util.Generics;
 import edu.stanford.nlp.util.Timing;
+import edu.stanford.nlp.util.concurrent.ConcurrentLookupCache;
 
 // TODO: put in a regexp for ordinals, fraction num/num and perhaps even 30-5/8
 
@@ -118,6 +120,23 @@ public class WordShapeClassifier  {
             shape == WORDSHAPECHRIS3;
   }
 
+  /**
+   * Returns true if the specified word shaper looks at the list of known
+   * lower case words when one is passed in, so that the shape of a word
+   * depends on that list and not only on the word.
+   *
+   * @param shape One of the defined shape constants
+   * @return true if the shape of a word may depend on the known lower case words
+   */
+  public static boolean usesKnownLCWords(int shape) {
+    return shape == WORDSHAPEDAN2USELC ||
+            shape == WORDSHAPEDAN2BIOUSELC ||
+            shape == WORDSHAPEJENNY1USELC ||
+            shape == WORDSHAPECHRIS2USELC ||
+            shape == WORDSHAPECHRIS3USELC ||
+            shape == WORDSHAPECHRIS4;
+  }
+
 
   /**
    * Specify the String and the int identifying which word shaper to
@@ -132,6 +151,46 @@ public class WordShapeClassifier  {
   }
 
 
+  /** The number of word shapes each shaper's cache keeps. */
+  private static final int SHAPE_CACHE_SIZE = 1 << 16;
+
+  private static final AtomicReferenceArray<ConcurrentLookupCache<String,String>> shapeCaches =
+      new AtomicReferenceArray<>(WORDSHAPECLUSTER1 + 1);
+
+  /**
+   * The cache of word shapes for a shaper, which is shared by every caller of
+   * {@link #cachedWordShape} in this JVM.  Its hit rate says how well it works.
+   *
+   * @param wordShaper Constant for which shaping formula to use, other than NOWORDSHAPE
+   * @return The cache of word shapes of this shaper
+   */
+  public static ConcurrentLookupCache<String,String> shapeCache(int wordShaper) {
+    ConcurrentLookupCache<String,String> cache = shapeCaches.get(wordShaper);
+    if (cache == null) {
+      shapeCaches.compareAndSet(wordShaper, null,
+          new ConcurrentLookupCache<>(word -> wordShape(word, wordShaper), SHAPE_CACHE_SIZE));
+      cache = shapeCaches.get(wordShaper);
+    }
+    return cache;
+  }
+
+  /**
+   * Returns the same word shape as {@link #wordShape(String, int)}, but remembers the
+   * shapes of recent words in a bounded cache.  This is threadsafe and takes no locks,
+   * so taggers and sequence classifiers running in many threads can share the cache.
+   *
+   * @param inStr String to calculate word shape of
+   * @param wordShaper Constant for which shaping formula to use
+   * @return The wordshape String
+   */
+  public static String cachedWordShape(String inStr, int wordShaper) {
+    if (wordShaper < 0 || wordShaper >= shapeCaches.length()) {
+      return wordShape(inStr, wordShaper);
+    }
+    return shapeCache(wordShaper).get(inStr);
+  }
+
+
   /**
    * Specify the string and the int identifying which word shaper to
    * use and this returns the result of using that wordshaper on the String.
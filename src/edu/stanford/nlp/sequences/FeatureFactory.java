@@ -98,6 +98,43 @@ public abstract class FeatureFactory<IN> implements Serializable {
    */
   public abstract Collection<String> getCliqueFeatures(PaddedList<IN> info, int position, Clique clique);
 
+  /**
+   * The ids of the features calculated for the word at the specified position
+   * for the specified {@link Clique}, as found by featureIds.  Features which
+   * are not in its index are left out.  This implementation looks up the
+   * Strings from {@link #getCliqueFeatures}; feature factories may override it
+   * to avoid building the feature Strings at all.
+   *
+   * @param info A PaddedList of the feature-value pairs
+   * @param position The current position to extract features at
+   * @param clique The particular clique for which to extract features
+   * @param featureIds The lookup of the feature index of the classifier
+   * @return The ids of the known features, each at most once
+   */
+  public int[] getCliqueFeatureIds(PaddedList<IN> info, int position, Clique clique, FeatureIdLookup featureIds) {
+    Collection<String> features = getCliqueFeatures(info, position, clique);
+    int[] ids = new int[features.size()];
+    int numIds = 0;
+    for (String feature : features) {
+      int id = featureIds.indexOf(feature);
+      if (id >= 0) {
+        ids[numIds++] = id;
+      }
+    }
+    return numIds == ids.length ? ids : Arrays.copyOf(ids, numIds);
+  }
+
+  /**
+   * Adds to the tokens of a sentence the annotations which this feature factory
+   * would otherwise compute for each token while extracting features, taking
+   * them from the cache where another classifier already computed them the same way.
+   * This implementation does nothing.
+   *
+   * @param tokens The tokens of a sentence about to be classified
+   * @param cache Values shared by the classifiers labeling a batch of sentences
+   */
+  public void annotateTokens(List<IN> tokens, TokenFeatureCache cache) { }
+
 
   /** Makes more complete feature names out of partial feature names, by
    *  adding a suffix to the String feature name, adding results to an
@@ -0,0 +1,96 @@
+package edu.stanford.nlp.sequences;
+
+import java.util.Arrays;
+
+import edu.stanford.nlp.util.Index;
+
+
+/**
+ * Finds the id of a feature in a feature {@link Index} from any {@link CharSequence},
+ * such as the {@code StringBuilder} a feature name is being built in, without first
+ * making a {@code String} of it.  This lets feature factories skip allocating the
+ * millions of feature Strings a document produces at test time, most of which are
+ * only looked up and then thrown away.
+ * <p>
+ * The table is an open addressing hash table of 64-bit hashes of the feature names,
+ * built once from the index.  A hash match is confirmed by comparing the characters
+ * with the feature in the index, so lookups give exactly the same answers as
+ * {@link Index#indexOf(Object)}.  The lookup reflects the index at the time it was
+ * built; use {@link #isLookupOf(Index)} to notice that features were added since,
+ * or that it is another index.
+ * Lookups are threadsafe.
+ */
+public class FeatureIdLookup {
+
+  private final Index<String> index;
+
+  /** The feature ids in each slot of the table, or -1 for an empty slot. */
+  private final int[] ids;
+
+  /** The high 32 bits of the hash of the feature in each slot, to avoid most string comparisons. */
+  private final int[] fingerprints;
+
+  private final int mask;
+
+  private final int size;
+
+  public FeatureIdLookup(Index<String> index) {
+    this.index = index;
+    this.size = index.size();
+    // keep the table at most 2/3 full
+    int capacity = Integer.highestOneBit(Math.max(16, size + size / 2) - 1) << 1;
+    this.ids = new int[capacity];
+    this.fingerprints = new int[capacity];
+    this.mask = capacity - 1;
+    Arrays.fill(ids, -1);
+    for (int id = 0; id < size; id++) {
+      long hash = hash(index.get(id));
+      int slot = (int) hash & mask;
+      while (ids[slot] >= 0) {
+        slot = (slot + 1) & mask;
+      }
+      ids[slot] = id;
+      fingerprints[slot] = (int) (hash >>> 32);
+    }
+  }
+
+  /** The number of features in the index when this lookup was built. */
+  public int size() {
+    return size;
+  }
+
+  /** Whether this lookup was built from this very index, and no features were added since. */
+  public boolean isLookupOf(Index<String> index) {
+    return this.index == index && size == index.size();
+  }
+
+  /**
+   * The id of the feature with this name, or -1 if it is not in the index.
+   */
+  public int indexOf(CharSequence feature) {
+    long hash = hash(feature);
+    int fingerprint = (int) (hash >>> 32);
+    for (int slot = (int) hash & mask; ids[slot] >= 0; slot = (slot + 1) & mask) {
+      if (fingerprints[slot] == fingerprint && index.get(ids[slot]).contentEquals(feature)) {
+        return ids[slot];
+      }
+    }
+    return -1;
+  }
+
+  /** A 64-bit FNV-1a hash of the characters, with a final mix so that the low bits are well distributed. */
+  static long hash(CharSequence s) {
+    long h = 0xcbf29ce484222325L;
+    for (int i = 0, len = s.length(); i < len; i++) {
+      h ^= s.charAt(i);
+      h *= 0x100000001b3L;
+    }
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+
+}
@@ -2,7 +2,6 @@ package edu.stanford.nlp.sequences;
 
 import edu.stanford.nlp.stats.ClassicCounter;
 import edu.stanford.nlp.stats.Counter;
-import edu.stanford.nlp.stats.Counters;
 
 import java.util.Arrays;
 
@@ -13,6 +12,60 @@ import java.util.Arrays;
  */
 public class KBestSequenceFinder implements BestSequenceFinder {
 
+  /**
+   * The k best label sequences of a model, best first.  The sequences and their scores are
+   * kept in flat primitive arrays, so that many labellings can be scored without boxing.
+   */
+  public static class ScoredSequences {
+
+    private final int size;
+    private final int length;
+    private final int leftWindow;
+    /** The padded sequences (as returned by {@link #bestSequence}), one after another. */
+    private final int[] sequences;
+    private final double[] scores;
+
+    public ScoredSequences(int size, int length, int leftWindow, int[] sequences, double[] scores) {
+      this.size = size;
+      this.length = length;
+      this.leftWindow = leftWindow;
+      this.sequences = sequences;
+      this.scores = scores;
+    }
+
+    /** The number of sequences, which may be less than the k asked for. */
+    public int size() {
+      return size;
+    }
+
+    /** The number of positions labeled in each sequence. */
+    public int length() {
+      return length;
+    }
+
+    /** The score of the i-th best sequence. */
+    public double score(int i) {
+      return scores[i];
+    }
+
+    /** The label of the i-th best sequence at the given position, which is not padded. */
+    public int label(int i, int position) {
+      return sequences[i * (length + leftWindow) + leftWindow + position];
+    }
+
+    /** Copies the labels of the i-th best sequence into {@code labels}, starting at 0. */
+    public void labels(int i, int[] labels) {
+      System.arraycopy(sequences, i * (length + leftWindow) + leftWindow, labels, 0, length);
+    }
+
+    /** The i-th best sequence, including the left window padding, as {@link #bestSequence} returns it. */
+    public int[] paddedSequence(int i) {
+      int padLength = length + leftWindow;
+      return Arrays.copyOfRange(sequences, i * padLength, (i + 1) * padLength);
+    }
+
+  } // end static class ScoredSequences
+
   /**
    * Runs the Viterbi algorithm on the sequence model
    * in order to find the best sequence.
@@ -22,7 +75,8 @@ public class KBestSequenceFinder implements BestSequenceFinder {
    */
   @Override
   public int[] bestSequence(SequenceModel ts) {
-    return Counters.argmax(kBestSequences(ts, 1));
+    ScoredSequences best = kBest(ts, 1);
+    return best.size() == 0 ? null : best.paddedSequence(0);
   }
 
   /**
@@ -34,8 +88,26 @@ public class KBestSequenceFinder implements BestSequenceFinder {
    * @param k The number of top-scoring assignments to find.
    * @return A Counter with k entries that map from a sequence assignment (int array) to a double score
    */
-  @SuppressWarnings("MethodMayBeStatic")
   public Counter<int[]> kBestSequences(SequenceModel ts, int k) {
+    ScoredSequences kBest = kBest(ts, k);
+    ClassicCounter<int[]> kBestWithScores = new ClassicCounter<>();
+    for (int i = 0; i < kBest.size(); i++) {
+      kBestWithScores.setCount(kBest.paddedSequence(i), kBest.score(i));
+    }
+    return kBestWithScores;
+  }
+
+  /**
+   * Finds the best k label sequence assignments as {@link #kBestSequences}, but returns them
+   * in primitive arrays, best first.  The trellis is also kept in one flat array per position,
+   * rather than an array per window and k-best entry.
+   *
+   * @param ts The SequenceModel to find the best k label sequence assignments of
+   * @param k The number of top-scoring assignments to find.
+   * @return Up to k sequences, with their scores
+   */
+  @SuppressWarnings("MethodMayBeStatic")
+  public ScoredSequences kBest(SequenceModel ts, int k) {
 
     // Set up tag options
     int length = ts.length();
@@ -100,36 +172,42 @@ public class KBestSequenceFinder implements BestSequenceFinder {
       }
     }
 
-    // Set up score and backtrace arrays
-    double[][][] score = new double[padLength][][];
-    int[][][][] trace = new int[padLength][][][];
-    int[][] numWaysToMake = new int[padLength][];
+    // Set up score and backtrace arrays.  The k-best list of each window product at a position
+    // is the run of score[pos] (ascending) from start[pos][product] to start[pos][product + 1],
+    // and trace[pos] gives the entry of score[pos - 1] that each entry extends.
+    int[][] start = new int[padLength][];
+    double[][] score = new double[padLength][];
+    int[][] trace = new int[padLength][];
     for (int pos = 0; pos < padLength; pos++) {
-
-      score[pos] = new double[productSizes[pos]][];
-      trace[pos] = new int[productSizes[pos]][][]; // the 2 is for backtrace, and which of the k best for that backtrace
-
-      numWaysToMake[pos] = new int[productSizes[pos]];
-      Arrays.fill(numWaysToMake[pos], 1);
-      for (int product = 0; product < productSizes[pos]; product++) {
-        if (pos > leftWindow) {
+      int[] numWaysToMake = new int[productSizes[pos] + 1];
+      Arrays.fill(numWaysToMake, 1);
+      if (pos > leftWindow) {
+        int[] prevStart = start[pos - 1];
+        int factor = productSizes[pos] / tagNum[pos];
+        for (int product = 0; product < productSizes[pos]; product++) {
           // loop over possible predecessor types
           int sharedProduct = product / tagNum[pos];
-          int factor = productSizes[pos] / tagNum[pos];
-
-          numWaysToMake[pos][product] = 0;
-          for (int newTagNum = 0; newTagNum < tagNum[pos - leftWindow - 1] && numWaysToMake[pos][product] < k; newTagNum++) {
+          int ways = 0;
+          for (int newTagNum = 0; newTagNum < tagNum[pos - leftWindow - 1] && ways < k; newTagNum++) {
             int predProduct = newTagNum * factor + sharedProduct;
-            numWaysToMake[pos][product] += numWaysToMake[pos-1][predProduct];
+            ways += prevStart[predProduct + 1] - prevStart[predProduct];
           }
-          if (numWaysToMake[pos][product] > k) { numWaysToMake[pos][product] = k; }
+          numWaysToMake[product] = Math.min(ways, k);
         }
-
-        score[pos][product] = new double[numWaysToMake[pos][product]];
-        Arrays.fill(score[pos][product], Double.NEGATIVE_INFINITY);
-        trace[pos][product] = new int[numWaysToMake[pos][product]][];
-        Arrays.fill(trace[pos][product], new int[]{-1,-1});
       }
+      start[pos] = numWaysToMake;
+      // turn the counts into offsets
+      int total = 0;
+      for (int product = 0; product < productSizes[pos]; product++) {
+        int ways = numWaysToMake[product];
+        numWaysToMake[product] = total;
+        total += ways;
+      }
+      numWaysToMake[productSizes[pos]] = total;
+      score[pos] = new double[total];
+      Arrays.fill(score[pos], Double.NEGATIVE_INFINITY);
+      trace[pos] = new int[total];
+      Arrays.fill(trace[pos], -1);
     }
 
     // Do forward Viterbi algorithm
@@ -137,34 +215,40 @@ public class KBestSequenceFinder implements BestSequenceFinder {
 
     // loop over the classification spot
     for (int pos = leftWindow, posMax = length + leftWindow; pos < posMax; pos++) {
+      double[] scorePos = score[pos];
+      int[] tracePos = trace[pos];
+      int[] startPos = start[pos];
       // loop over window product types
       for (int product = 0, productMax = productSizes[pos]; product < productMax; product++) {
+        int lo = startPos[product];
+        int hi = startPos[product + 1];
+        double window = windowScore[pos][product];
         // check for initial spot
-        double[] scorePos = score[pos][product];
-        int[][] tracePos = trace[pos][product];
         if (pos == leftWindow) {
           // no predecessor type
-          scorePos[0] = windowScore[pos][product];
+          scorePos[lo] = window;
         } else {
           // loop over possible predecessor types/k-best
-
+          double[] scorePosPrev = score[pos - 1];
+          int[] startPrev = start[pos - 1];
           int sharedProduct = product / tagNum[pos + rightWindow];
           int factor = productSizes[pos] / tagNum[pos + rightWindow];
           for (int newTagNum = 0, maxTagNum = tagNum[pos - leftWindow - 1]; newTagNum < maxTagNum; newTagNum++) {
             int predProduct = newTagNum * factor + sharedProduct;
-            double[] scorePosPrev = score[pos-1][predProduct];
-            for (int k1 = 0; k1 < scorePosPrev.length; k1++) {
-              double predScore = scorePosPrev[k1] + windowScore[pos][product];
-              if (predScore > scorePos[0]) { // new value higher then lowest value we should keep
-                int k2 = Arrays.binarySearch(scorePos, predScore);
-                k2 = k2 < 0 ? -k2 - 2 : k2 - 1;
-                // open a spot at k2 by shifting off the lowest value
-                System.arraycopy(scorePos, 1, scorePos, 0, k2);
-                System.arraycopy(tracePos, 1, tracePos, 0, k2);
-
-                scorePos[k2] = predScore;
-                tracePos[k2]= new int[] {predProduct, k1};
+            // the predecessor's k best are ascending, so go down them until one is too low to keep
+            for (int k1 = startPrev[predProduct + 1] - 1, k1Min = startPrev[predProduct]; k1 >= k1Min; k1--) {
+              double predScore = scorePosPrev[k1] + window;
+              if (predScore <= scorePos[lo]) {
+                break;
               }
+              int k2 = Arrays.binarySearch(scorePos, lo, hi, predScore);
+              k2 = k2 < 0 ? -k2 - 2 : k2 - 1;
+              // open a spot at k2 by shifting off the lowest value
+              System.arraycopy(scorePos, lo + 1, scorePos, lo, k2 - lo);
+              System.arraycopy(tracePos, lo + 1, tracePos, lo, k2 - lo);
+
+              scorePos[k2] = predScore;
+              tracePos[k2] = k1;
             }
           }
         }
@@ -172,49 +256,65 @@ public class KBestSequenceFinder implements BestSequenceFinder {
     }
 
     // Project the actual tag sequence
-    int[] whichDerivation = new int[k];
-    int[] bestCurrentProducts = new int[k];
+    int[] bestEntries = new int[k];
     double[] bestFinalScores = new double[k];
     Arrays.fill(bestFinalScores, Double.NEGATIVE_INFINITY);
 
     // just the last guy
-    for (int product = 0; product < productSizes[padLength - 1]; product++) {
-      double[] scorePos = score[padLength - 1][product];
-      for (int k1 = scorePos.length - 1;
-            k1 >= 0 && scorePos[k1] > bestFinalScores[0];
-            k1--) {
-        int k2 = Arrays.binarySearch(bestFinalScores, scorePos[k1]);
+    double[] scoreLast = score[padLength - 1];
+    for (int k1 = scoreLast.length - 1; k1 >= 0; k1--) {
+      if (scoreLast[k1] > bestFinalScores[0]) {
+        int k2 = Arrays.binarySearch(bestFinalScores, scoreLast[k1]);
         k2 = k2 < 0 ? -k2 - 2 : k2 - 1;
         // open a spot at k2 by shifting off the lowest value
         System.arraycopy(bestFinalScores, 1, bestFinalScores, 0, k2);
-        System.arraycopy(whichDerivation, 1, whichDerivation, 0, k2);
-        System.arraycopy(bestCurrentProducts, 1, bestCurrentProducts, 0, k2);
+        System.arraycopy(bestEntries, 1, bestEntries, 0, k2);
 
-        bestCurrentProducts[k2] = product;
-        whichDerivation[k2] = k1;
-        bestFinalScores[k2] = scorePos[k1];
+        bestEntries[k2] = k1;
+        bestFinalScores[k2] = scoreLast[k1];
       }
     }
-    ClassicCounter<int[]> kBestWithScores = new ClassicCounter<>();
-    for (int k1 = k - 1; k1 >= 0 && bestFinalScores[k1] > Double.NEGATIVE_INFINITY; k1--) {
-      int lastProduct = bestCurrentProducts[k1];
+
+    int size = 0;
+    while (size < k && bestFinalScores[k - 1 - size] > Double.NEGATIVE_INFINITY) {
+      size++;
+    }
+    int[] sequences = new int[size * padLength];
+    double[] scores = new double[size];
+    for (int i = 0; i < size; i++) {
+      int entry = bestEntries[k - 1 - i];
+      int lastProduct = productOf(start[padLength - 1], productSizes[padLength - 1], entry);
       for (int last = padLength - 1; last >= length - 1 && last >= 0; last--) {
         tempTags[last] = tags[last][lastProduct % tagNum[last]];
         lastProduct /= tagNum[last];
       }
 
       for (int pos = leftWindow + length - 2; pos >= leftWindow; pos--) {
-        int bestNextProduct = bestCurrentProducts[k1];
-        bestCurrentProducts[k1] = trace[pos + 1][bestNextProduct][whichDerivation[k1]][0];
-        whichDerivation[k1] = trace[pos + 1][bestNextProduct][whichDerivation[k1]][1];
-        tempTags[pos - leftWindow] =
-                 tags[pos - leftWindow][bestCurrentProducts[k1]
-                       / (productSizes[pos] / tagNum[pos - leftWindow])];
+        entry = trace[pos + 1][entry];
+        int product = productOf(start[pos], productSizes[pos], entry);
+        tempTags[pos - leftWindow] = tags[pos - leftWindow][product / (productSizes[pos] / tagNum[pos - leftWindow])];
       }
-      kBestWithScores.setCount(Arrays.copyOf(tempTags, tempTags.length), bestFinalScores[k1]);
+      System.arraycopy(tempTags, 0, sequences, i * padLength, padLength);
+      scores[i] = bestFinalScores[k - 1 - i];
     }
 
-    return kBestWithScores;
+    return new ScoredSequences(size, length, leftWindow, sequences, scores);
+  }
+
+  /** Returns the window product whose run of k-best entries, as laid out by {@code start}, holds {@code entry}. */
+  private static int productOf(int[] start, int numProducts, int entry) {
+    int lo = 0;
+    int hi = numProducts - 1;
+    // the last product whose run starts at or before entry (runs are never empty)
+    while (lo < hi) {
+      int mid = (lo + hi + 1) >>> 1;
+      if (start[mid] <= entry) {
+        lo = mid;
+      } else {
+        hi = mid - 1;
+      }
+    }
+    return lo;
   }
 
 }
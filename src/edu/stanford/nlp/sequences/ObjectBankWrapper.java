@@ -30,13 +30,25 @@ public class ObjectBankWrapper<IN extends CoreMap> extends ObjectBank<List<IN>>
   private final SeqClassifierFlags flags;
   private final ObjectBank<List<IN>> wrapped;
   private final Set<String> knownLCWords;
+  private final TokenFeatureCache cache;
+  private final String shapeTable;
 
 
   public ObjectBankWrapper(SeqClassifierFlags flags, ObjectBank<List<IN>> wrapped, Set<String> knownLCWords) {
+    this(flags, wrapped, knownLCWords, null);
+  }
+
+  /**
+   * @param cache If not null, word shapes which only depend on the word are looked up in and added to this cache
+   */
+  public ObjectBankWrapper(SeqClassifierFlags flags, ObjectBank<List<IN>> wrapped, Set<String> knownLCWords,
+                           TokenFeatureCache cache) {
     super(null, null);
     this.flags = flags;
     this.wrapped = wrapped;
     this.knownLCWords = knownLCWords;
+    this.cache = cache;
+    this.shapeTable = "shape-" + flags.wordShape;
   }
 
 
@@ -132,7 +144,14 @@ public class ObjectBankWrapper<IN extends CoreMap> extends ObjectBank<List<IN>>
           knownLCWords.add(intern(word));
         }
 
-        String s = intern(WordShapeClassifier.wordShape(word, flags.wordShape, knownLCWords));
+        String s;
+        if (WordShapeClassifier.usesKnownLCWords(flags.wordShape)) {
+          s = intern(WordShapeClassifier.wordShape(word, flags.wordShape, knownLCWords));
+        } else if (cache != null) {
+          s = intern(cache.get(shapeTable, word, w -> WordShapeClassifier.cachedWordShape(w, flags.wordShape)));
+        } else {
+          s = intern(WordShapeClassifier.cachedWordShape(word, flags.wordShape));
+        }
         fl.set(CoreAnnotations.ShapeAnnotation.class, s);
       }
 
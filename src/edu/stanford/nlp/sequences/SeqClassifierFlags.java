@@ -445,6 +445,12 @@ public class SeqClassifierFlags implements Serializable  {
   public transient String loadAuxClassifier = null;
   public transient String serializeTo = null;
   public transient String serializeToText = null;
+  public transient String serializeToMapped = null;
+  public transient int nerLoadThreads = 1;
+  /** At test time, have the feature factories look up feature ids directly rather than making feature Strings. */
+  public transient boolean featureIdInference = false;
+  /** If not null, a CRFClassifier packs its weights into this format (float, int16 or int8) when it is loaded. */
+  public transient String packedWeights = null;
   public transient int interimOutputFreq = 0;
   public transient String initialWeights = null;
   public transient List<String> gazettes = new ArrayList<>();
@@ -495,6 +501,9 @@ public class SeqClassifierFlags implements Serializable  {
   public double annealingRate = 0.0;
   public String annealingType = null;
   public String loadProcessedData = null;
+  /** If set, CRF training reads the featurized training data from a file in this directory keyed by the
+   *  flags and documents, or featurizes the data and writes it there; see edu.stanford.nlp.ie.crf.CRFFeatureCache. */
+  public String featureCacheDir = null;
 
   public boolean initViterbi = true;
 
@@ -978,6 +987,9 @@ public class SeqClassifierFlags implements Serializable  {
   public double dropoutScale = 1.0;
   // keenon: changed from = 1, nowadays it makes sense to default to parallelism
   public int multiThreadGrad = Runtime.getRuntime().availableProcessors();
+  /** If positive, the multiThreadGrad threads of CRF training steal shards of this many documents from a fork/join pool,
+   *  and keep counts only for the features they see, rather than each counting a fixed part into a full array. */
+  public int gradientShardSize = 0;
   public int maxQNItr = 0;
   public boolean dropoutApprox = false;
   public String unsupDropoutFile = null;
@@ -1585,6 +1597,8 @@ public class SeqClassifierFlags implements Serializable  {
         serializeTo = val;
       } else if (key.equalsIgnoreCase("serializeToText")) {
         serializeToText = val;
+      } else if (key.equalsIgnoreCase("serializeToMapped")) {
+        serializeToMapped = val;
       } else if (key.equalsIgnoreCase("serializeDatasetsDir")) {
         serializeDatasetsDir = val;
       } else if (key.equalsIgnoreCase("loadDatasetsDir")) {
@@ -1986,6 +2000,8 @@ public class SeqClassifierFlags implements Serializable  {
         inferenceType = val;
       } else if (key.equalsIgnoreCase("loadProcessedData")) {
         loadProcessedData = val;
+      } else if (key.equalsIgnoreCase("featureCacheDir")) {
+        featureCacheDir = val;
       } else if (key.equalsIgnoreCase("normalizationTable")) {
         normalizationTable = val;
       } else if (key.equalsIgnoreCase("dictionary")) {
@@ -2512,6 +2528,8 @@ public class SeqClassifierFlags implements Serializable  {
         dropoutScale = Double.parseDouble(val);
       } else if (key.equalsIgnoreCase("multiThreadGrad")){
         multiThreadGrad = Integer.parseInt(val);
+      } else if (key.equalsIgnoreCase("gradientShardSize")){
+        gradientShardSize = Integer.parseInt(val);
       } else if (key.equalsIgnoreCase("maxQNItr")){
         maxQNItr = Integer.parseInt(val);
       } else if (key.equalsIgnoreCase("dropoutApprox")){
@@ -2631,6 +2649,12 @@ public class SeqClassifierFlags implements Serializable  {
         applyNumericClassifiers = Boolean.parseBoolean(val);
       } else if (key.equalsIgnoreCase("ner.combinationMode")) {
         combinationMode = val;
+      } else if (key.equalsIgnoreCase("ner.loadThreads")) {
+        nerLoadThreads = Integer.parseInt(val);
+      } else if (key.equalsIgnoreCase("featureIdInference") || key.equalsIgnoreCase("ner.featureIdInference")) {
+        featureIdInference = Boolean.parseBoolean(val);
+      } else if (key.equalsIgnoreCase("packedWeights") || key.equalsIgnoreCase("ner.packedWeights")) {
+        packedWeights = val.trim().isEmpty() ? null : val.trim();
       } else if (key.equalsIgnoreCase("ner.model")) {
         nerModel = val;
       } else if (key.equalsIgnoreCase("sutime.language")) {
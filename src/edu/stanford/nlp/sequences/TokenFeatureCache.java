@@ -0,0 +1,49 @@
+package edu.stanford.nlp.sequences;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+
+/**
+ * Remembers values which sequence classifiers compute for each word, such as word shapes
+ * and distributional similarity classes, so that when several classifiers (for instance
+ * the models of a {@link edu.stanford.nlp.ie.ClassifierCombiner}) label the same sentences,
+ * or a word occurs many times in a batch of sentences, each value is only computed once.
+ * <p>
+ * Values are kept in tables named by a description of how they are computed, which
+ * should include every setting the value depends on.  Classifiers only share a value
+ * if they compute it from the same word in the same way.
+ * <p>
+ * A cache is meant to last for one batch of sentences, as it keeps every word it sees.
+ * It is threadsafe.
+ *
+ * @see edu.stanford.nlp.ie.AbstractSequenceClassifier#classifySentences(java.util.List, TokenFeatureCache)
+ */
+public class TokenFeatureCache {
+
+  private final Map<String, Map<String, String>> tables = new ConcurrentHashMap<>();
+
+  /**
+   * The value for a word in the named table, computing it if it is not there yet.
+   *
+   * @param table The name of the table, which describes how values are computed
+   * @param word The word
+   * @param compute How to compute the value for a word which is not in the table.
+   *     If it returns null, nothing is stored.
+   * @return The value for the word
+   */
+  public String get(String table, String word, Function<String, String> compute) {
+    return tables.computeIfAbsent(table, name -> new ConcurrentHashMap<>()).computeIfAbsent(word, compute);
+  }
+
+  /** The total number of values in all the tables. */
+  public int size() {
+    int size = 0;
+    for (Map<String, String> table : tables.values()) {
+      size += table.size();
+    }
+    return size;
+  }
+
+}
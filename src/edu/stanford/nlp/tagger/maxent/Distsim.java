@@ -4,11 +4,13 @@ import edu.stanford.nlp.objectbank.ObjectBank;
 import edu.stanford.nlp.util.Generics;
 import edu.stanford.nlp.util.Interner;
 import edu.stanford.nlp.util.Timing;
+import edu.stanford.nlp.util.concurrent.ConcurrentLookupCache;
 import edu.stanford.nlp.util.logging.Redwood;
 
 import java.io.File;
 import java.io.Serializable;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -26,7 +28,10 @@ public class Distsim implements Serializable {
 
   // Avoid loading the same lexicon twice but allow different lexicons
   // TODO: when loading a distsim, should we populate this map?
-  private static final Map<String,Distsim> lexiconMap = Generics.newHashMap();
+  private static final Map<String,Distsim> lexiconMap = new ConcurrentHashMap<>();
+
+  /** The number of word mappings each lexicon's cache keeps. */
+  private static final int CACHE_SIZE = 1 << 16;
 
   private final Map<String,String> lexicon;
 
@@ -35,6 +40,9 @@ public class Distsim implements Serializable {
   private boolean mapdigits; // = false
   private boolean casedDistSim; // = false;
 
+  /** Recent mappings, so that a word need not be lowercased and looked up again; made when first used. */
+  private transient volatile ConcurrentLookupCache<String,String> cache; // = null
+
   private static final Pattern digits = Pattern.compile("[0-9]");
 
   /**
@@ -76,16 +84,12 @@ public class Distsim implements Serializable {
   }
 
   public static Distsim initLexicon(String path) {
-    synchronized (lexiconMap) {
-      Distsim lex = lexiconMap.get(path);
-      if (lex == null) {
-        Timing timer = new Timing();
-        lex = new Distsim(path);
-        lexiconMap.put(path, lex);
-        timer.done(log, "Loading distsim lexicon from " + path);
-      }
+    return lexiconMap.computeIfAbsent(path, p -> {
+      Timing timer = new Timing();
+      Distsim lex = new Distsim(p);
+      timer.done(log, "Loading distsim lexicon from " + p);
       return lex;
-    }
+    });
   }
 
   /**
@@ -96,6 +100,24 @@ public class Distsim implements Serializable {
    * returned ("null" if no other unknown word was specified).
    */
   public String getMapping(String word) {
+    return cache().get(word);
+  }
+
+  /**
+   * The cache of this lexicon's mappings, which is shared by all the threads and
+   * extractors using the lexicon.  Its hit rate says how well it works.
+   */
+  public ConcurrentLookupCache<String,String> cache() {
+    ConcurrentLookupCache<String,String> c = cache;
+    if (c == null) {
+      // racing threads may each make one, which is harmless
+      c = new ConcurrentLookupCache<>(this::lookup, CACHE_SIZE);
+      cache = c;
+    }
+    return c;
+  }
+
+  private String lookup(String word) {
     if ( ! casedDistSim) {
       word = word.toLowerCase();
     }
@@ -167,6 +167,15 @@ public class Extractor implements Serializable  {
     return isTag;
   }
 
+  /**
+   * @return Returns true if the extracted value is a function only of the tags
+   * in the leftContext() and rightContext() window (or "NA" outside the sentence),
+   * so that taggers can look up its features by those tags alone.
+   */
+  boolean isTagsOnly() {
+    return isTag && getClass() == Extractor.class;
+  }
+
   /**
    * @return Returns true if extractor is not a function of POS tags, and only
    * depends on current word.
@@ -468,6 +468,7 @@ public class ExtractorFrames  {
 
     @Override public boolean isLocal() { return false; }
     @Override public boolean isDynamic() { return true; }
+    @Override boolean isTagsOnly() { return true; }
 
     @Override
     public String toString() {
@@ -558,6 +559,8 @@ public class ExtractorFrames  {
       return sb.toString();
     }
 
+    @Override boolean isTagsOnly() { return true; }
+
     @Override
     public String toString() {
       return "ExtractorContinuousTagConj(" + (position < 0 ? position + " ... -1": "1 ... " + position) + ')';
@@ -625,6 +628,7 @@ public class ExtractorFrames  {
 
     @Override public boolean isLocal() { return false; }
     @Override public boolean isDynamic() { return true; }
+    @Override boolean isTagsOnly() { return true; }
 
     @Override
     public String toString() {
@@ -699,25 +703,9 @@ class ExtractorWordShapeClassifier extends Extractor {
   private final int wordShaper;
   private final String name;
 
-  // This cache speeds things up a little bit.  I used
-  // -Xrunhprof:cpu=samples,interval=1 when using the "distsim" tagger
-  // on the training set to measure roughly how much time was spent in
-  // this method.  I concluded that with the cache, 1.24% of the time
-  // is spent here, and without the cache, 1.26% of the time is spent
-  // here.  This is a very small savings, which would be even smaller
-  // if we make the cache thread safe.  It turns out that, as written,
-  // the cache is not thread safe for various reasons.  In particular,
-  // it assumes only one wordshape classifier is ever used, which
-  // might not be true even with just one tagger, and has an even
-  // higher chance of not being true if there are multiple taggers.
-  // Furthermore, access to the cache should really be synchronized
-  // regardless.  The easiest solution is to comment out the cache and
-  // note that if you want to bring it back, make it a map from wsc to
-  // cache rather than just a single cache.  -- horatio
-  //private static final Map<String, String> shapes =
-  //  Generics.newHashMap();
-  // --- should be:
-  //private static final Map<String, Map<String, String>> ...
+  // Shapes come from WordShapeClassifier's cache for this shaper, which is
+  // threadsafe and shared by every tagger in the JVM.  (There used to be a
+  // single static cache here, which was neither threadsafe nor keyed by shaper.)
 
   ExtractorWordShapeClassifier(int position, String wsc) {
     super(position, false);
@@ -728,7 +716,7 @@ class ExtractorWordShapeClassifier extends Extractor {
   @Override
   String extract(History h, PairsHolder pH) {
     String s = super.extract(h, pH);
-    String shape = WordShapeClassifier.wordShape(s, wordShaper);
+    String shape = WordShapeClassifier.cachedWordShape(s, wordShaper);
     return shape;
   }
 
@@ -769,7 +757,7 @@ class ExtractorWordShapeConjunction extends Extractor {
     StringBuilder sb = new StringBuilder();
     for (int j = left; j <= right; j++) {
       String s = pH.getWord(h, j);
-      sb.append(WordShapeClassifier.wordShape(s, wordShaper));
+      sb.append(WordShapeClassifier.cachedWordShape(s, wordShaper));
       if (j < right) {
         sb.append('|');
       }
@@ -806,6 +794,8 @@ class ExtractorSpanishAuxiliaryTag extends Extractor {
     return tag.startsWith("va") ? "1" : "0";
   }
 
+  @Override boolean isTagsOnly() { return true; }
+
   @Override
   public String toString() {
     return "ExtractorSpanishAuxiliaryTag";
@@ -832,6 +822,8 @@ class ExtractorSpanishSemiauxiliaryTag extends Extractor {
     return tag.startsWith("vs") ? "1" : "0";
   }
 
+  @Override boolean isTagsOnly() { return true; }
+
   @Override
   public String toString() {
     return "ExtractorSpanishSemiauxiliaryTag";
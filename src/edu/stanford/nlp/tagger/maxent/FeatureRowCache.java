@@ -0,0 +1,110 @@
+package edu.stanford.nlp.tagger.maxent;
+
+import java.util.Arrays;
+
+/**
+ * An open addressing map from an (owner, key) pair to a row of {@link MaxentTagger#fAssociations}.
+ * TestSentence uses it to find the feature row of a dynamic extractor from the
+ * int tags in its context, without building the String value of the feature.
+ * The owner says which extractor (and possibly which sentence position) the key
+ * is for.  A row may be null, which records that the value is not a feature.
+ * <br>
+ * This class is not threadsafe; each thread keeps its own.
+ */
+class FeatureRowCache {
+
+  /** A slot is in use iff its stamp is the current generation, so clearing is just starting a new one. */
+  private int[] stamps;
+  private int generation = 1;
+  private int[] owners;
+  private long[] keys;
+  private int[][] rows;
+  private int size; // = 0
+  private int mask;
+
+  FeatureRowCache(int capacity) {
+    int n = Integer.highestOneBit(Math.max(capacity, 16) - 1) << 1;
+    stamps = new int[n];
+    owners = new int[n];
+    keys = new long[n];
+    rows = new int[n][];
+    mask = n - 1;
+  }
+
+  int size() {
+    return size;
+  }
+
+  private int slot(int owner, long key) {
+    long h = (key + owner * 0x9E3779B97F4A7C15L) * 0xC2B2AE3D27D4EB4FL;
+    int i = (int) (h ^ (h >>> 29)) & mask;
+    while (stamps[i] == generation && (owners[i] != owner || keys[i] != key)) {
+      i = (i + 1) & mask;
+    }
+    return i;
+  }
+
+  /** Returns the slot holding the row for this owner and key, or -1 if there is none. */
+  int find(int owner, long key) {
+    int i = slot(owner, key);
+    return stamps[i] == generation ? i : -1;
+  }
+
+  /** The row at a slot returned by {@link #find}. */
+  int[] row(int slot) {
+    return rows[slot];
+  }
+
+  void put(int owner, long key, int[] row) {
+    int i = slot(owner, key);
+    if (stamps[i] != generation) {
+      if (2 * (size + 1) > stamps.length) {
+        grow();
+        i = slot(owner, key);
+      }
+      size++;
+      stamps[i] = generation;
+      owners[i] = owner;
+      keys[i] = key;
+    }
+    rows[i] = row;
+  }
+
+  private void grow() {
+    int[] oldStamps = stamps;
+    int[] oldOwners = owners;
+    long[] oldKeys = keys;
+    int[][] oldRows = rows;
+    int oldGeneration = generation;
+    int n = oldOwners.length * 2;
+    stamps = new int[n];
+    generation = 1;
+    owners = new int[n];
+    keys = new long[n];
+    rows = new int[n][];
+    mask = n - 1;
+    for (int j = 0; j < oldOwners.length; j++) {
+      if (oldStamps[j] == oldGeneration) {
+        int i = slot(oldOwners[j], oldKeys[j]);
+        stamps[i] = generation;
+        owners[i] = oldOwners[j];
+        keys[i] = oldKeys[j];
+        rows[i] = oldRows[j];
+      }
+    }
+  }
+
+  /** Empties the cache in constant time (the rows are only released as their slots are reused). */
+  void clear() {
+    if (size > 0) {
+      size = 0;
+      generation++;
+      if (generation == Integer.MAX_VALUE) {
+        Arrays.fill(stamps, 0);
+        Arrays.fill(rows, null);
+        generation = 1;
+      }
+    }
+  }
+
+}
@@ -217,6 +217,7 @@ import java.text.DecimalFormat;
  * <tr><td>debugPrefix</td><td>String</td><td>N/A</td><td>All</td><td>File (path) prefix for where to write out the debugging information (relevant only if debug=true).</td></tr>
  * <tr><td>nthreads</td><td>int</td><td>1</td><td>Test,Text</td><td>Number of threads to use when processing text.</td></tr>
  * <tr><td>minWordsLockTags</td><td>int</td><td>1</td><td>All</td><td>If a word occurs at least this many times in the training data, the tagger will only propose known tags as candidates.</td></tr>
+ * <tr><td>localScoresCacheSize</td><td>int</td><td>1000</td><td>Test,Text</td><td>The number of words whose feature scores each tagging thread keeps from one sentence to the next.  Each takes a double per tag, for as long as the thread and tagger live.  0 keeps them only within a sentence.</td></tr>
  * </table>
  *
  *
@@ -386,6 +387,9 @@ public class MaxentTagger extends Tagger implements ListProcessor<List<? extends
   private double defaultScore;
   private double[] defaultScores; // = null;
 
+  /** Each thread's buffers for scoring sentences; recreated when the features change. */
+  private transient volatile ThreadLocal<TestSentence.ScoringBuffers> scoringBuffers; // = null;
+
   int leftContext;
   int rightContext;
 
@@ -568,6 +572,21 @@ public class MaxentTagger extends Tagger implements ListProcessor<List<? extends
     return defaultScores[nDefault];
   }
 
+  /** The buffers this thread uses to score sentences with the compiled dynamic features. */
+  TestSentence.ScoringBuffers scoringBuffers() {
+    ThreadLocal<TestSentence.ScoringBuffers> buffers = scoringBuffers;
+    if (buffers == null) {
+      synchronized (this) {
+        buffers = scoringBuffers;
+        if (buffers == null) {
+          buffers = ThreadLocal.withInitial(() -> new TestSentence.ScoringBuffers(this));
+          scoringBuffers = buffers;
+        }
+      }
+    }
+    return buffers.get();
+  }
+
   boolean hasApproximateScoring() {
     return defaultScore > 0.0;
   }
@@ -659,6 +678,7 @@ public class MaxentTagger extends Tagger implements ListProcessor<List<? extends
    *  the fAssociations' appropriate Map.
    */
   private void removeDeadRules() {
+    scoringBuffers = null;
     for (Map<String, int[]> fAssociation : fAssociations) {
       List<String> deadRules = Generics.newArrayList();
       for (Map.Entry<String, int[]> entry : fAssociation.entrySet()) {
@@ -696,6 +716,7 @@ public class MaxentTagger extends Tagger implements ListProcessor<List<? extends
    * later on at runtime.
    */
   private void simplifyLambda() {
+    scoringBuffers = null;
     double[] lambda = getLambdaSolve().lambda;
     int[] map = new int[lambda.length];
     int current = 0;
@@ -845,6 +866,7 @@ public class MaxentTagger extends Tagger implements ListProcessor<List<? extends
    *  @throws RuntimeIOException if I/O errors or serialization errors
    */
   protected void readModelAndInit(Properties config, DataInputStream rf, boolean printLoading) {
+    scoringBuffers = null;
     try {
       Timing t = new Timing();
       String source = null;
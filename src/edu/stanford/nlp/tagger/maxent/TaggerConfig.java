@@ -69,7 +69,8 @@ public class TaggerConfig extends Properties /* Inherits implementation of Seria
   OUTPUT_FORMAT = "slashTags",
   OUTPUT_FORMAT_OPTIONS = "",
   NTHREADS = "1",
-  MIN_WORDS_LOCK_TAGS = "1";
+  MIN_WORDS_LOCK_TAGS = "1",
+  LOCAL_SCORES_CACHE_SIZE = "1000";
 
   public static final String ENCODING_PROPERTY = "encoding",
   TAG_SEPARATOR_PROPERTY = "tagSeparator";
@@ -112,6 +113,7 @@ public class TaggerConfig extends Properties /* Inherits implementation of Seria
     defaultValues.put("outputFormatOptions", OUTPUT_FORMAT_OPTIONS);
     defaultValues.put("nthreads", NTHREADS);
     defaultValues.put("minWordsLockTags", MIN_WORDS_LOCK_TAGS);
+    defaultValues.put("localScoresCacheSize", LOCAL_SCORES_CACHE_SIZE);
   }
 
   /**
@@ -262,6 +264,7 @@ public class TaggerConfig extends Properties /* Inherits implementation of Seria
     this.setProperty("outputFormatOptions", props.getProperty("outputFormatOptions", this.getProperty("outputFormatOptions")).trim()); //this isn't something we save from time to time
     this.setProperty("nthreads", props.getProperty("nthreads", this.getProperty("nthreads", NTHREADS)).trim());
     this.setProperty("minWordsLockTags", props.getProperty("minWordsLockTags", this.getProperty("minWordsLockTags", MIN_WORDS_LOCK_TAGS)).trim());
+    this.setProperty("localScoresCacheSize", props.getProperty("localScoresCacheSize", this.getProperty("localScoresCacheSize", LOCAL_SCORES_CACHE_SIZE)).trim()); //this isn't something we save from time to time
     String sentenceDelimiter = props.getProperty("sentenceDelimiter", this.getProperty("sentenceDelimiter"));
     if (sentenceDelimiter != null) {
       // this isn't something we save from time to time.
@@ -381,6 +384,13 @@ public class TaggerConfig extends Properties /* Inherits implementation of Seria
 
   public int getMinWordsLockTags() { return Integer.parseInt(getProperty("minWordsLockTags")); }
 
+  /**
+   * The most words whose local feature scores each thread keeps from one sentence
+   * to the next, for each tagger.  Each takes a double for every tag.  If 0, the
+   * scores are only kept for the sentence being tagged.
+   */
+  public int getLocalScoresCacheSize() { return Integer.parseInt(getProperty("localScoresCacheSize", LOCAL_SCORES_CACHE_SIZE)); }
+
 
   /** Return a regex of XML elements to tag inside of.  This may return an
    *  empty String, but never null.
@@ -482,6 +492,7 @@ public class TaggerConfig extends Properties /* Inherits implementation of Seria
     pw.println("     outputFormatOptions = " + getProperty("outputFormatOptions"));
     pw.println("                nthreads = " + getProperty("nthreads"));
     pw.println("        minWordsLockTags = " + getProperty("minWordsLockTags"));
+    pw.println("    localScoresCacheSize = " + getProperty("localScoresCacheSize"));
     pw.flush();
   }
 
@@ -730,6 +741,11 @@ public class TaggerConfig extends Properties /* Inherits implementation of Seria
     out.println("# The tagger will only use tags it has seen for a particular word");
     out.println("# if the word occurred at least this many times in the training data.");
     out.println("# minWordsLockTags = " + MIN_WORDS_LOCK_TAGS);
+    out.println();
+
+    out.println("# Each thread keeps the scores of this many words from sentence to sentence");
+    out.println("# (0 keeps them only within a sentence).");
+    out.println("# localScoresCacheSize = " + LOCAL_SCORES_CACHE_SIZE);
   }
 
   public Mode getMode() {
@@ -87,6 +87,14 @@ public class TestSentence implements SequenceModel  {
   private volatile Map<String,double[]> localScores = Generics.newHashMap();
   private volatile double[][] localContextScores;
 
+  // While runTagInference scores the sentence without VERBOSE output, the
+  // possible tags at each (padded) position and this thread's scoring buffers
+  private int[][] possibleValues; // = null
+  private boolean[] rareWords; // = null
+  private ScoringBuffers buffers; // = null
+  // If false, windows are always scored by getScores, as in VERBOSE mode; tests compare the two
+  boolean compiledScoring = true;
+
   protected final MaxentTagger maxentTagger;
 
   public TestSentence(MaxentTagger maxentTagger) {
@@ -328,6 +336,9 @@ public class TestSentence implements SequenceModel  {
 
   private void runTagInference() {
     this.initializeScorer();
+    if ( ! VERBOSE && compiledScoring) {
+      compileScorer();
+    }
     if (Thread.interrupted()) {  // Allow interrupting
       throw new RuntimeInterruptedException();
     }
@@ -379,8 +390,118 @@ public class TestSentence implements SequenceModel  {
    */
   private void cleanUpScorer() {
     revert(0);
+    possibleValues = null;
+    rareWords = null;
+    buffers = null;
+  }
+
+  /**
+   * Sets up scoresOf to score windows from int tags and primitive arrays: the possible
+   * tags of each position are found once, and the features of the dynamic extractors are
+   * looked up by the tags in their context rather than by extracting their String values.
+   */
+  private void compileScorer() {
+    int padLength = size + leftWindow() + rightWindow();
+    int[][] values = new int[padLength][];
+    for (int pos = 0; pos < padLength; pos++) {
+      values[pos] = getPossibleValues(pos);
+    }
+    possibleValues = values;
+    rareWords = new boolean[size];
+    for (int i = 0; i < size; i++) {
+      rareWords[i] = maxentTagger.isRare(sent.get(i));
+    }
+    buffers = maxentTagger.scoringBuffers();
+    buffers.positionRows.clear();
+    // the local scores of a word only depend on the word unless its tag was given;
+    // a sentence longer than the limit keeps its scores to itself
+    if (originalTags == null && size <= buffers.maxLocalScores) {
+      if (buffers.localScores.size() + size > buffers.maxLocalScores) {
+        buffers.localScores.clear();
+      }
+      localScores = buffers.localScores;
+    }
   }
 
+  /**
+   * A thread's reusable buffers for scoring sentences with a tagger: its dynamic
+   * extractors in scoring order, the feature rows found for their tag contexts, and
+   * the score arrays which scoresOf returns.  The rows of the extractors which only
+   * look at tags are kept from sentence to sentence.
+   */
+  static class ScoringBuffers {
+
+    /** The dynamic extractors, those for all words before those for rare words. */
+    private final Extractor[] dynamic;
+    /** The index of each dynamic extractor in fAssociations. */
+    private final int[] featureNums;
+    private final int numCommon;
+    private final int[] left;
+    private final int[] right;
+    private final boolean[] tagsOnly;
+    /** Whether the row of an extractor can be looked up by the tags in its declared context. */
+    private final boolean[] cached;
+    private final int keyBase;
+    private final FeatureRowCache tagRows = new FeatureRowCache(1024);
+    private final FeatureRowCache positionRows = new FeatureRowCache(1024);
+    /**
+     * The scores of the local features of words, kept across sentences; it is emptied
+     * before a sentence which could take it past maxLocalScores words
+     * (see {@link TaggerConfig#getLocalScoresCacheSize()}).
+     */
+    private final Map<String,double[]> localScores = Generics.newHashMap();
+    private final int maxLocalScores;
+    private final double[] histories;
+    private final double[][] scores;
+
+    ScoringBuffers(MaxentTagger tagger) {
+      List<Pair<Integer,Extractor>> common = tagger.extractors.dynamic;
+      List<Pair<Integer,Extractor>> rare = tagger.extractorsRare.dynamic;
+      numCommon = common.size();
+      int n = numCommon + rare.size();
+      dynamic = new Extractor[n];
+      featureNums = new int[n];
+      left = new int[n];
+      right = new int[n];
+      tagsOnly = new boolean[n];
+      cached = new boolean[n];
+      // a key holds each tag index + 2, with 0 for outside the sentence
+      keyBase = tagger.ySize + 2;
+      int szCommon = tagger.extractors.size();
+      for (int e = 0; e < n; e++) {
+        Pair<Integer,Extractor> pair = e < numCommon ? common.get(e) : rare.get(e - numCommon);
+        dynamic[e] = pair.second();
+        featureNums[e] = e < numCommon ? pair.first() : szCommon + pair.first();
+        left[e] = dynamic[e].leftContext();
+        right[e] = dynamic[e].rightContext();
+        tagsOnly[e] = dynamic[e].isTagsOnly();
+        // an extractor which looks at tags without declaring its context is always run
+        int width = left[e] + right[e];
+        cached[e] = width > 0 && width * Math.log(keyBase) < 62 * Math.log(2);
+      }
+      histories = new double[tagger.ySize];
+      scores = new double[tagger.ySize + 1][];
+      maxLocalScores = tagger.config == null ? Integer.parseInt(TaggerConfig.LOCAL_SCORES_CACHE_SIZE) :
+          tagger.config.getLocalScoresCacheSize();
+    }
+
+    /** The number of words whose local scores are kept for the next sentence. */
+    int localScoresKept() {
+      return localScores.size();
+    }
+
+    /** A score array of the given length, which is reused by the next call. */
+    double[] scores(int length) {
+      double[] result = scores[length];
+      if (result == null) {
+        result = new double[length];
+        scores[length] = result;
+      }
+      return result;
+    }
+
+  } // end static class ScoringBuffers
+
   // This scores the current assignment in PairsHolder at
   // current position h.current (returns normalized scores)
   private double[] getScores(History h) {
@@ -478,6 +599,20 @@ public class TestSentence implements SequenceModel  {
       return totalS;
     } // end if (VERBOSE) case
 
+    double[] lcS = localContextScores[h.current];
+    if (lcS == null) {
+      lcS = localContextScores(tags, h, rare);
+    }
+    double[] totalS = getHistories(tags, h, ex.dynamic, rare ? exR.dynamic : null);
+    ArrayMath.pairwiseAddInPlace(totalS, lcS);
+    return totalS;
+  }
+
+  /** Computes and caches the summed scores of the local and local context features at h.current. */
+  private double[] localContextScores(String[] tags, History h, boolean rare) {
+    Extractors ex = maxentTagger.extractors;
+    Extractors exR = maxentTagger.extractorsRare;
+    String w = pairs.getWord(h.current);
     double[] lS = localScores.get(w);
     if (lS == null) {
       lS = getHistories(tags, h, ex.local, rare ? exR.local : null);
@@ -493,15 +628,10 @@ public class TestSentence implements SequenceModel  {
         localScores.put(w, lS);
       }
     }
-    double[] lcS = localContextScores[h.current];
-    if (lcS == null) {
-      lcS = getHistories(tags, h, ex.localContext, rare ? exR.localContext : null);
-      localContextScores[h.current] = lcS;
-      ArrayMath.pairwiseAddInPlace(lcS, lS);
-    }
-    double[] totalS = getHistories(tags, h, ex.dynamic, rare ? exR.dynamic : null);
-    ArrayMath.pairwiseAddInPlace(totalS, lcS);
-    return totalS;
+    double[] lcS = getHistories(tags, h, ex.localContext, rare ? exR.localContext : null);
+    localContextScores[h.current] = lcS;
+    ArrayMath.pairwiseAddInPlace(lcS, lS);
+    return lcS;
   }
 
   private double[] getHistories(String[] tags, History h, List<Pair<Integer,Extractor>> extractors, List<Pair<Integer,Extractor>> extractorsRare) {
@@ -722,6 +852,9 @@ public class TestSentence implements SequenceModel  {
 
   @Override
   public int[] getPossibleValues(int pos) {
+    if (possibleValues != null) {
+      return possibleValues[pos];
+    }
     String[] arr1 = stringTagsAt(pos);
     int[] arr = new int[arr1.length];
     for (int i = 0; i < arr.length; i++) {
@@ -750,6 +883,12 @@ public class TestSentence implements SequenceModel  {
     throw new UnsupportedOperationException();
   }
 
+  /**
+   * {@inheritDoc}
+   * While a sentence is tagged outside VERBOSE mode, the returned array is a buffer
+   * of this thread's, which the next call overwrites: callers must be done with it
+   * before they score another window, and must not keep it.
+   */
   @Override
   public double[] scoresOf(int[] tags, int pos) {
     if (DBG) {
@@ -757,10 +896,106 @@ public class TestSentence implements SequenceModel  {
       log.info("  History h = new History(" + (endSizePairs - size) + ", " + (endSizePairs - 1) + ", " + (endSizePairs - size + pos - leftWindow()) + ')');
     }
     history.init(endSizePairs - size, endSizePairs - 1, endSizePairs - size + pos - leftWindow());
+    if (buffers != null) {
+      return compiledScoresOf(tags, pos);
+    }
     setHistory(pos, history, tags);
     return getScores(history);
   }
 
+  /**
+   * Computes the same scores as getScores, but finds the features of the dynamic
+   * extractors in the buffers by the int tags of their context, so only a context
+   * seen for the first time sets the History and extracts a String value.  The
+   * returned array is reused by the next call.
+   */
+  private double[] compiledScoresOf(int[] tags, int pos) {
+    final ScoringBuffers b = buffers;
+    final int current = pos - leftWindow();
+    final int[] possible = possibleValues[pos];
+    final boolean rare = rareWords[current];
+    final boolean approximate = maxentTagger.hasApproximateScoring();
+
+    double[] lcS = localContextScores[history.current];
+    if (lcS == null) {
+      setHistory(pos, history, tags);
+      lcS = localContextScores(stringTagsAt(pos), history, rare);
+    }
+
+    double[] totalS = approximate ? b.scores(possible.length) : b.histories;
+    Arrays.fill(totalS, 0.0);
+    double[] lambda = maxentTagger.getLambdaSolve().lambda;
+    int numDynamic = rare ? b.dynamic.length : b.numCommon;
+    boolean historySet = false;
+    for (int e = 0; e < numDynamic; e++) {
+      int[] fAssociations;
+      int slot = -1;
+      FeatureRowCache cache = null;
+      int owner = 0;
+      long key = 0;
+      if (b.cached[e]) {
+        for (int p = pos - b.left[e], end = pos + b.right[e]; p <= end; p++) {
+          if (p == pos) {
+            continue;
+          }
+          int i = p - leftWindow();
+          key = key * b.keyBase + (i < 0 || i >= size ? 0 : tags[p] + 2);
+        }
+        cache = b.tagsOnly[e] ? b.tagRows : b.positionRows;
+        owner = b.tagsOnly[e] ? e : e + b.dynamic.length * current;
+        slot = cache.find(owner, key);
+      }
+      if (slot >= 0) {
+        fAssociations = cache.row(slot);
+      } else {
+        if ( ! historySet) {
+          setHistory(pos, history, tags);
+          historySet = true;
+        }
+        fAssociations = maxentTagger.fAssociations.get(b.featureNums[e]).get(b.dynamic[e].extract(history));
+        if (cache != null) {
+          cache.put(owner, key, fAssociations);
+        }
+      }
+      if (fAssociations == null) {
+        continue;
+      }
+      if (approximate) {
+        for (int j = 0; j < possible.length; j++) {
+          int fNum = fAssociations[possible[j]];
+          if (fNum >= 0) {
+            totalS[j] += lambda[fNum];
+          }
+        }
+      } else {
+        for (int j = 0; j < totalS.length; j++) {
+          int fNum = fAssociations[j];
+          if (fNum >= 0) {
+            totalS[j] += lambda[fNum];
+          }
+        }
+      }
+    }
+    ArrayMath.pairwiseAddInPlace(totalS, lcS);
+
+    if (approximate) {
+      // as in getApproximateScores
+      int nDefault = maxentTagger.ySize - possible.length;
+      double logScore = ArrayMath.logSum(totalS);
+      double logScoreInactiveTags = maxentTagger.getInactiveTagDefaultScore(nDefault);
+      double logTotal = SloppyMath.logAdd(logScore, logScoreInactiveTags);
+      ArrayMath.addInPlace(totalS, -logTotal);
+      return totalS;
+    }
+    // as in getExactScores
+    ArrayMath.logNormalize(totalS);
+    double[] scores = b.scores(possible.length);
+    for (int j = 0; j < possible.length; j++) {
+      scores[j] = totalS[possible[j]];
+    }
+    return scores;
+  }
+
   // todo [cdm 2013]: Tagging could be sped up quite a bit here if we cached int
   // arrays of tags by index, not Strings
   protected String[] stringTagsAt(int pos) {
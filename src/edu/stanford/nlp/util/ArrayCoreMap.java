@@ -74,9 +74,21 @@ public class ArrayCoreMap implements CoreMap /*, Serializable */ {
    * @param other The ArrayCoreMap to copy. It may not be null.
    */
   public ArrayCoreMap(ArrayCoreMap other) {
-    size = other.size;
-    keys = Arrays.copyOf(other.keys, size);
-    values = Arrays.copyOf(other.values, size);
+    if (other.isArrayBacked()) {
+      size = other.size;
+      keys = Arrays.copyOf(other.keys, size);
+      values = Arrays.copyOf(other.values, size);
+    } else {
+      Set<Class<?>> otherKeys = other.keySet();
+      keys = ErasureUtils.uncheckedCast(new Class<?>[otherKeys.size()]);
+      values = new Object[otherKeys.size()];
+      for (Class<?> key : otherKeys) {
+        Class<? extends Key<Object>> typedKey = ErasureUtils.uncheckedCast(key);
+        this.keys[size] = typedKey;
+        this.values[size] = other.get(typedKey);
+        size++;
+      }
+    }
   }
 
   /**
@@ -246,6 +258,16 @@ public class ArrayCoreMap implements CoreMap /*, Serializable */ {
   }
 
 
+  /**
+   * True if all of the values of this map are in its own key and value arrays.
+   * Subclasses which keep some values elsewhere (and so override {@link #get(Class)},
+   * {@link #keySet()} and friends) return false, so that copying and equality
+   * go through the {@link CoreMap} interface rather than the arrays.
+   */
+  protected boolean isArrayBacked() {
+    return true;
+  }
+
   /**
    * Reduces memory consumption to the minimum for representing the values
    * currently stored stored in this object.
@@ -480,7 +502,7 @@ public class ArrayCoreMap implements CoreMap /*, Serializable */ {
       return obj.equals(this);
     }
 
-    if (obj instanceof ArrayCoreMap) {
+    if (obj instanceof ArrayCoreMap && isArrayBacked() && ((ArrayCoreMap) obj).isArrayBacked()) {
       // specialized equals for ArrayCoreMap
       return equals((ArrayCoreMap)obj);
     }
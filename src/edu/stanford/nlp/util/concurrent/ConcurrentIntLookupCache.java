@@ -0,0 +1,55 @@
+package edu.stanford.nlp.util.concurrent;
+
+import java.util.function.IntFunction;
+
+/**
+ * A {@link ConcurrentLookupCache} whose keys are ints, so that looking up a
+ * key boxes nothing.  The slots, their sets of four kept in order of use, and
+ * the lack of locking are all the same as there, and so is what is asked of
+ * the function: it must always return the same (or an equal) value for the
+ * same key, and it must not return null.
+ *
+ * @param <V> The type of the values
+ */
+public class ConcurrentIntLookupCache<V> extends SetAssociativeCache<ConcurrentIntLookupCache.Entry<V>> {
+
+  static class Entry<V> {
+    final int key;
+    final V value;
+
+    Entry(int key, V value) {
+      this.key = key;
+      this.value = value;
+    }
+  }
+
+  private final IntFunction<? extends V> function;
+
+  /**
+   * Makes a cache of the function's values.
+   *
+   * @param function The function whose values are cached
+   * @param capacity The most values kept; rounded up to a power of two, and at least 4
+   */
+  public ConcurrentIntLookupCache(IntFunction<? extends V> function, int capacity) {
+    super(capacity);
+    this.function = function;
+  }
+
+  /** The value of the function for this key, from the cache if it is there. */
+  public V get(int key) {
+    int first = firstSlot(key);
+    int way = 0;
+    for (; way < WAYS; way++) {
+      Entry<V> e = slots.get(first + way);
+      if (e == null) {
+        break;
+      }
+      if (e.key == key) {
+        return found(first, way, e).value;
+      }
+    }
+    return missed(first, way, new Entry<>(key, function.apply(key))).value;
+  }
+
+}
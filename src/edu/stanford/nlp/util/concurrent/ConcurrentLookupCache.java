@@ -0,0 +1,68 @@
+package edu.stanford.nlp.util.concurrent;
+
+import java.util.function.Function;
+
+/**
+ * A bounded, lock-free cache of the values of a function which is expensive enough
+ * to be worth remembering, but cheap enough to recompute now and then, such as the
+ * shape or distributional similarity class of a word.
+ * <p>
+ * The cache is a fixed array of slots, each holding one key and its value.  A key
+ * can only live in the set of four slots its hash picks, which are kept in order of
+ * use: a new key goes into the first slot of its set, moving the others along and
+ * dropping the last, and a key found further along is moved back to the first.  So
+ * of all the keys sharing a set the four most recently used are kept.  Nothing is
+ * ever locked: threads which miss on the same key at once each compute the value
+ * and the last one stays, and threads racing on the same set can at worst leave a
+ * key in two of its slots or drop one early.  Because of that the function
+ * must always return the same (or an equal) value for the same key, and it must
+ * not return null.
+ * <p>
+ * The number of hits and misses is counted, so callers can see whether a cache is
+ * big enough.
+ *
+ * @param <K> The type of the keys
+ * @param <V> The type of the values
+ */
+public class ConcurrentLookupCache<K,V> extends SetAssociativeCache<ConcurrentLookupCache.Entry<K,V>> {
+
+  static class Entry<K,V> {
+    final K key;
+    final V value;
+
+    Entry(K key, V value) {
+      this.key = key;
+      this.value = value;
+    }
+  }
+
+  private final Function<? super K, ? extends V> function;
+
+  /**
+   * Makes a cache of the function's values.
+   *
+   * @param function The function whose values are cached
+   * @param capacity The most values kept; rounded up to a power of two, and at least 4
+   */
+  public ConcurrentLookupCache(Function<? super K, ? extends V> function, int capacity) {
+    super(capacity);
+    this.function = function;
+  }
+
+  /** The value of the function for this key, from the cache if it is there. */
+  public V get(K key) {
+    int first = firstSlot(key.hashCode());
+    int way = 0;
+    for (; way < WAYS; way++) {
+      Entry<K,V> e = slots.get(first + way);
+      if (e == null) {
+        break;
+      }
+      if (e.key.equals(key)) {
+        return found(first, way, e).value;
+      }
+    }
+    return missed(first, way, new Entry<>(key, function.apply(key))).value;
+  }
+
+}
@@ -0,0 +1,109 @@
+package edu.stanford.nlp.util.concurrent;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The slots and counts of {@link ConcurrentLookupCache} and {@link ConcurrentIntLookupCache},
+ * which differ only in how they compare keys.  An entry can only live in the set of
+ * {@link #WAYS} slots which starts at {@link #firstSlot} of its key's hash, which are kept
+ * in order of use; see ConcurrentLookupCache for how, and for what that asks of callers.
+ * A subclass looks for its key in the set itself, and then reports what it found with
+ * {@link #found} or {@link #missed}.
+ *
+ * @param <E> The type of the entries, each holding a key and its value
+ */
+abstract class SetAssociativeCache<E> {
+
+  /** The number of slots a key can be in. */
+  static final int WAYS = 4;
+
+  final AtomicReferenceArray<E> slots;
+  private final int mask;
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+
+  /**
+   * @param capacity The most entries kept; rounded up to a power of two, and at least 4
+   */
+  SetAssociativeCache(int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Cache capacity must be positive, not " + capacity);
+    }
+    int n = capacity <= WAYS ? WAYS : Integer.highestOneBit(capacity - 1) << 1;
+    this.slots = new AtomicReferenceArray<>(n);
+    this.mask = n - 1;
+  }
+
+  /** The first of the set of slots of a key with this hash; the others follow it. */
+  final int firstSlot(int hash) {
+    int h = hash * 0x9E3779B9;
+    return (h ^ (h >>> 16)) & mask & -WAYS;
+  }
+
+  /** Counts a hit on the entry in this way of the set, and moves it first. */
+  final E found(int first, int way, E entry) {
+    hits.increment();
+    if (way > 0) {
+      moveFirst(first, way, entry);
+    }
+    return entry;
+  }
+
+  /**
+   * Counts a miss, and puts the new entry first in the set, dropping the last entry
+   * if the set is full.
+   *
+   * @param way The first empty way of the set, or WAYS if there is none
+   */
+  final E missed(int first, int way, E entry) {
+    misses.increment();
+    moveFirst(first, Math.min(way, WAYS - 1), entry);
+    return entry;
+  }
+
+  /** Moves the entries before this way along, and puts the entry first. */
+  private void moveFirst(int first, int way, E entry) {
+    for (int i = first + way; i > first; i--) {
+      slots.lazySet(i, slots.get(i - 1));
+    }
+    slots.lazySet(first, entry);
+  }
+
+  /** The number of values which can be kept. */
+  public int capacity() {
+    return slots.length();
+  }
+
+  /** The number of lookups which found their value in the cache. */
+  public long hits() {
+    return hits.sum();
+  }
+
+  /** The number of lookups which had to compute their value. */
+  public long misses() {
+    return misses.sum();
+  }
+
+  /** The fraction of lookups which found their value in the cache, or 0 if there were none. */
+  public double hitRate() {
+    long h = hits.sum();
+    long total = h + misses.sum();
+    return total == 0 ? 0.0 : ((double) h) / total;
+  }
+
+  /** Empties the cache, leaving the counts alone. */
+  public void clear() {
+    for (int i = 0; i < slots.length(); i++) {
+      slots.set(i, null);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s[capacity=%d, hits=%d, misses=%d, hitRate=%.3f]",
+        getClass().getSimpleName(), capacity(), hits(), misses(), hitRate());
+  }
+
+}
@@ -0,0 +1,262 @@
+package edu.stanford.nlp.util.concurrent;
+
+import edu.stanford.nlp.util.RuntimeInterruptedException;
+import edu.stanford.nlp.util.logging.Redwood;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * A process-wide, work-stealing thread pool which can be shared by many
+ * users at once, for example by all of the sentence-level annotators of all
+ * the pipelines in a server.  Unlike {@link MulticoreWrapper}, which starts
+ * and stops a fixed thread pool for each batch of work, the threads here are
+ * created once and live for the whole process.
+ *
+ * Work is submitted in {@link Batch}es.  A batch has its own limit on how many
+ * of its items may run at once; items over that limit wait in the batch rather
+ * than in the pool, so one request with a very long document cannot occupy
+ * every thread while other requests wait.  The pool's parallelism is the global
+ * limit on the number of items running at once.
+ *
+ * The size of the {@link #global()} scheduler can be set with the system property
+ * {@value #THREADS_PROPERTY}; it defaults to the number of available processors.
+ */
+public class SharedWorkScheduler {
+
+  /** A logger for this class */
+  private static final Redwood.RedwoodChannels log = Redwood.channels(SharedWorkScheduler.class);
+
+  /** The system property giving the number of threads of the global scheduler. */
+  public static final String THREADS_PROPERTY = "edu.stanford.nlp.scheduler.threads";
+
+  private static volatile SharedWorkScheduler global; // = null
+
+  private final ForkJoinPool pool;
+
+  private final AtomicLong itemsRun = new AtomicLong();
+
+  /**
+   * The scheduler shared by everything in this JVM.  It is created on first use.
+   */
+  public static SharedWorkScheduler global() {
+    SharedWorkScheduler scheduler = global;
+    if (scheduler == null) {
+      synchronized (SharedWorkScheduler.class) {
+        scheduler = global;
+        if (scheduler == null) {
+          int threads = Integer.getInteger(THREADS_PROPERTY, Runtime.getRuntime().availableProcessors());
+          scheduler = new SharedWorkScheduler(threads);
+          global = scheduler;
+        }
+      }
+    }
+    return scheduler;
+  }
+
+  /**
+   * Create a new scheduler.  Most code should use {@link #global()} instead.
+   *
+   * @param parallelism The number of worker threads.  If less than or equal to 0,
+   *                    the number of available processors is used.
+   */
+  public SharedWorkScheduler(int parallelism) {
+    if (parallelism <= 0) {
+      parallelism = Runtime.getRuntime().availableProcessors();
+    }
+    AtomicInteger threadCount = new AtomicInteger();
+    ForkJoinPool.ForkJoinWorkerThreadFactory factory = p -> {
+      ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+      thread.setName("SharedWorkScheduler-" + threadCount.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+    // asyncMode = true: plain submitted tasks are run in FIFO order
+    this.pool = new ForkJoinPool(parallelism, factory, null, true);
+  }
+
+  /** The maximum number of items which run at once across all batches. */
+  public int parallelism() {
+    return pool.getParallelism();
+  }
+
+  /** The number of items which have been run by this scheduler. */
+  public long itemsRun() {
+    return itemsRun.get();
+  }
+
+  /**
+   * Start a new batch of work.
+   *
+   * @param maxParallelism The maximum number of items of this batch to run at once.
+   *                       If less than or equal to 0, the parallelism of the scheduler is used.
+   * @param work What to do with each item.  This must be threadsafe.
+   *             Exceptions thrown by it are logged and otherwise ignored.
+   */
+  public <I> Batch<I> newBatch(int maxParallelism, Consumer<I> work) {
+    return new Batch<>(maxParallelism <= 0 ? parallelism() : maxParallelism, work);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("SharedWorkScheduler[parallelism: %d  active: %d  queued: %d  run: %d]",
+        pool.getParallelism(), pool.getActiveThreadCount(), pool.getQueuedSubmissionCount(), itemsRun.get());
+  }
+
+
+  /**
+   * A group of items submitted together, such as the sentences of one document.
+   * {@link #submit(Object)} does not block; {@link #await(long)} waits for all
+   * submitted items to finish.
+   */
+  public class Batch<I> {
+
+    private final int maxParallelism;
+    private final Consumer<I> work;
+
+    private final ArrayDeque<I> waiting = new ArrayDeque<>();
+    private final Set<Item> running = Collections.newSetFromMap(new IdentityHashMap<>());
+    private long lastProgress = System.currentTimeMillis();
+    private boolean cancelled; // = false
+
+    private Batch(int maxParallelism, Consumer<I> work) {
+      this.maxParallelism = maxParallelism;
+      this.work = work;
+    }
+
+    /**
+     * Add an item to the batch.  If this is called from one of the scheduler's own
+     * threads, the item is run right away on the calling thread, since waiting for
+     * it in {@link #await(long)} could otherwise tie up every worker.
+     *
+     * @throws RejectedExecutionException If the batch was cancelled by a timeout
+     */
+    public void submit(I item) {
+      Thread current = Thread.currentThread();
+      if (current instanceof ForkJoinWorkerThread && ((ForkJoinWorkerThread) current).getPool() == pool) {
+        runItem(item);
+        return;
+      }
+      synchronized (this) {
+        if (cancelled) {
+          throw new RejectedExecutionException("Batch was cancelled; couldn't submit " + item);
+        }
+        if (running.size() < maxParallelism) {
+          start(item);
+        } else {
+          waiting.add(item);
+        }
+      }
+    }
+
+    // must hold the lock
+    private void start(I item) {
+      Item job = new Item(item);
+      running.add(job);
+      pool.execute(job);
+    }
+
+    private void runItem(I item) {
+      try {
+        work.accept(item);
+      } catch (Exception | Error e) {
+        log.warn(e);
+      } finally {
+        itemsRun.incrementAndGet();
+      }
+    }
+
+    private synchronized void finished(Item job) {
+      running.remove(job);
+      lastProgress = System.currentTimeMillis();
+      if ( ! cancelled && ! waiting.isEmpty()) {
+        start(waiting.poll());
+      }
+      notifyAll();
+    }
+
+    /**
+     * Wait for every item of this batch to finish.
+     *
+     * @param timeout If positive, give up once no item has finished for this many
+     *                milliseconds.  The items which had not started yet are then
+     *                dropped, and the running ones are interrupted; this only helps if
+     *                the work checks {@link Thread#interrupted()}.  The interrupted items
+     *                are still waited for.
+     * @return The items which were never run because of a timeout; empty if there was none.
+     */
+    public synchronized List<I> await(long timeout) {
+      try {
+        while ( ! running.isEmpty() || ! waiting.isEmpty()) {
+          if (timeout <= 0 || cancelled) {
+            wait();
+            continue;
+          }
+          long remaining = lastProgress + timeout - System.currentTimeMillis();
+          if (remaining > 0) {
+            wait(remaining);
+            continue;
+          }
+          cancelled = true;
+          List<I> leftover = new ArrayList<>(waiting);
+          waiting.clear();
+          for (Item job : running) {
+            job.interrupt();
+          }
+          while ( ! running.isEmpty()) {
+            wait();
+          }
+          return leftover;
+        }
+      } catch (InterruptedException e) {
+        throw new RuntimeInterruptedException(e);
+      }
+      return new ArrayList<>();
+    }
+
+    /** One submitted item, which knows the thread running it so that it can be interrupted. */
+    private class Item implements Runnable {
+      private final I item;
+      private Thread runner; // = null; guarded by this
+
+      Item(I item) {
+        this.item = item;
+      }
+
+      @Override
+      public void run() {
+        synchronized (this) {
+          runner = Thread.currentThread();
+        }
+        try {
+          runItem(item);
+        } finally {
+          synchronized (this) {
+            runner = null;
+          }
+          // don't leave a timeout's interrupt behind for the next item on this thread
+          Thread.interrupted();
+          finished(this);
+        }
+      }
+
+      synchronized void interrupt() {
+        if (runner != null) {
+          runner.interrupt();
+        }
+      }
+    }
+
+  } // end class Batch
+
+}
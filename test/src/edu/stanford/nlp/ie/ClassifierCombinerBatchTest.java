@@ -0,0 +1,149 @@
+package edu.stanford.nlp.ie;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.stanford.nlp.ie.crf.CRFClassifier;
+import edu.stanford.nlp.ie.crf.CRFTestData;
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.pipeline.Annotation;
+import edu.stanford.nlp.sequences.TokenFeatureCache;
+import edu.stanford.nlp.util.ArrayCoreMap;
+import edu.stanford.nlp.util.CoreMap;
+import edu.stanford.nlp.util.PropertiesUtils;
+
+/**
+ * Checks that classifying a batch of sentences gives the same labels as classifying them one at a time.
+ */
+public class ClassifierCombinerBatchTest {
+
+  private static final String[][] TEST = {
+      { "Mary", "lives", "in", "London", "." },
+      { "John", "moved", "to", "Google", "in", "Paris" },
+      { "unseen", "words", "in", "Berlin" },
+      { "Mary", "works", "at", "Google", "." },
+  };
+
+  /** Trains a CRF which only knows the given class, and O. */
+  private static CRFClassifier<CoreLabel> train(String keep, Properties props) {
+    List<List<CoreLabel>> docs = new ArrayList<>();
+    for (String[] sentence : CRFTestData.SENTENCES) {
+      String[] words = new String[sentence.length / 2];
+      String[] answers = new String[sentence.length / 2];
+      for (int i = 0; i < words.length; i++) {
+        words[i] = sentence[2 * i];
+        answers[i] = sentence[2 * i + 1].equals(keep) ? keep : "O";
+      }
+      docs.add(CRFTestData.document(words, answers));
+    }
+    CRFClassifier<CoreLabel> crf = new CRFClassifier<>(props);
+    crf.train(docs);
+    return crf;
+  }
+
+  private static List<String> answers(List<CoreLabel> tokens) {
+    List<String> answers = new ArrayList<>();
+    for (CoreLabel token : tokens) {
+      answers.add(token.get(CoreAnnotations.AnswerAnnotation.class));
+    }
+    return answers;
+  }
+
+  @Test
+  public void testBatchMatchesSentences() throws IOException {
+    File lexicon = File.createTempFile("distsim", ".txt");
+    lexicon.deleteOnExit();
+    try (PrintWriter pw = new PrintWriter(lexicon, "utf-8")) {
+      pw.println("john 1");
+      pw.println("mary 1");
+      pw.println("paris 2");
+      pw.println("london 2");
+      pw.println("berlin 2");
+      pw.println("google 3");
+    }
+    Properties props = PropertiesUtils.asProperties(
+        "useWord", "true", "usePrev", "true", "useNext", "true", "useClassFeature", "true",
+        "useSequences", "true", "usePrevSequences", "true", "maxLeft", "1", "useTypeSeqs", "true",
+        "wordShape", "dan2", "useDistSim", "true", "distSimLexicon", lexicon.getPath(),
+        "unknownWordDistSimClass", "0", "maxIterations", "20");
+    CRFClassifier<CoreLabel> location = train("LOCATION", props);
+    @SuppressWarnings("unchecked")
+    ClassifierCombiner<CoreLabel> combiner = new ClassifierCombiner<>(
+        train("PERSON", props), location, train("ORGANIZATION", props));
+
+    List<List<CoreLabel>> sentences = new ArrayList<>();
+    List<List<String>> expected = new ArrayList<>();
+    for (String[] words : TEST) {
+      sentences.add(CRFTestData.document(words, null));
+      expected.add(answers(combiner.classifySentence(CRFTestData.document(words, null))));
+    }
+
+    TokenFeatureCache cache = new TokenFeatureCache();
+    List<List<CoreLabel>> outputs = combiner.classifySentences(sentences, cache);
+    Assert.assertEquals(TEST.length, outputs.size());
+    for (int i = 0; i < TEST.length; i++) {
+      Assert.assertEquals(expected.get(i), answers(outputs.get(i)));
+    }
+    // a shape and a distsim class for each of the 15 different words, shared by the three models
+    Assert.assertEquals(30, cache.size());
+
+    List<CoreLabel> tagged = location.classifySentences(sentences, cache).get(2);
+    Assert.assertEquals("0", tagged.get(0).get(CoreAnnotations.DistSimAnnotation.class));
+    Assert.assertEquals("2", tagged.get(3).get(CoreAnnotations.DistSimAnnotation.class));
+    Assert.assertEquals(30, cache.size());
+  }
+
+  /** The NER tag and normalized value of each token. */
+  private static List<String> entities(List<CoreLabel> tokens) {
+    List<String> entities = new ArrayList<>();
+    for (CoreLabel token : tokens) {
+      entities.add(token.ner() + ' ' + token.get(CoreAnnotations.NormalizedNamedEntityTagAnnotation.class));
+    }
+    return entities;
+  }
+
+  /**
+   * The numeric classifiers run once for each sentence of a batch, and with the document's date.
+   * Without the date, SUTime labels "this morning" a DATE, and a second run could not change that.
+   */
+  @Test
+  public void testNumericClassifiersUseDocDate() throws IOException {
+    File model = File.createTempFile("person", ".ser.gz");
+    model.deleteOnExit();
+    train("PERSON", PropertiesUtils.asProperties("useWord", "true", "maxIterations", "20"))
+        .serializeClassifier(model.getPath());
+    // the SUTime rules in the source tree, without the holidays, which need their own data
+    Properties nscProps = PropertiesUtils.asProperties(
+        "sutime.rules", "edu/stanford/nlp/time/rules/defs.sutime.txt,edu/stanford/nlp/time/rules/english.sutime.txt",
+        "sutime.binders", "0");
+    NERClassifierCombiner ner = new NERClassifierCombiner(true, NERClassifierCombiner.Language.ENGLISH, true, nscProps, model.getPath());
+
+    Annotation document = new Annotation("");
+    document.set(CoreAnnotations.DocDateAnnotation.class, "2010-05-03");
+    String[][] words = { { "John", "left", "this", "morning", "." }, { "Mary", "comes", "tomorrow" } };
+    List<CoreMap> sentences = new ArrayList<>();
+    List<List<String>> expected = new ArrayList<>();
+    for (String[] sentenceWords : words) {
+      CoreMap sentence = new ArrayCoreMap();
+      sentence.set(CoreAnnotations.TokensAnnotation.class, CRFTestData.document(sentenceWords, null));
+      sentences.add(sentence);
+      expected.add(entities(ner.classifySentenceWithGlobalInformation(CRFTestData.document(sentenceWords, null), document, sentence)));
+    }
+    Assert.assertEquals("TIME 2010-05-03TMO", expected.get(0).get(3));
+    Assert.assertEquals("DATE 2010-05-04", expected.get(1).get(2));
+
+    List<List<CoreLabel>> outputs = ner.classifySentencesWithGlobalInformation(sentences, document, new TokenFeatureCache());
+    for (int i = 0; i < words.length; i++) {
+      Assert.assertEquals(expected.get(i), entities(outputs.get(i)));
+    }
+  }
+
+}
@@ -0,0 +1,73 @@
+package edu.stanford.nlp.ie.crf;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.util.HashIndex;
+import edu.stanford.nlp.util.Index;
+import edu.stanford.nlp.util.PropertiesUtils;
+
+/**
+ * Checks that {@code featureIdInference} finds the same features as looking up feature Strings.
+ */
+public class CRFClassifierFeatureIdsTest {
+
+  /** Checks that looking up feature ids gives the same features as looking up their Strings. */
+  private static void assertSameFeatures(CRFClassifier<CoreLabel> crf, List<CoreLabel> test) {
+    crf.flags.featureIdInference = false;
+    int[][][] expected = crf.documentToDataAndLabels(test).first();
+    Assert.assertTrue(expected[0][0].length > 0);
+    crf.flags.featureIdInference = true;
+    int[][][] actual = crf.documentToDataAndLabels(test).first();
+    Assert.assertEquals(expected.length, actual.length);
+    for (int j = 0; j < expected.length; j++) {
+      Assert.assertEquals(expected[j].length, actual[j].length);
+      for (int k = 0; k < expected[j].length; k++) {
+        int[] e = expected[j][k].clone();
+        int[] a = actual[j][k].clone();
+        Arrays.sort(e);
+        Arrays.sort(a);
+        Assert.assertArrayEquals(e, a);
+      }
+    }
+  }
+
+  @Test
+  public void testSameFeatures() {
+    CRFClassifier<CoreLabel> crf = CRFTestData.train(CRFTestData.properties("maxLeft", "2", "maxIterations", "20"));
+
+    List<CoreLabel> test = CRFTestData.document(new String[] { "Mary", "O", "lives", "O", "in", "O", "London", "O", "unseen", "O" });
+    crf.flags.featureIdInference = false;
+    List<String> expectedLabels = new ArrayList<>();
+    crf.classify(test).forEach(token -> expectedLabels.add(token.get(CoreAnnotations.AnswerAnnotation.class)));
+
+    assertSameFeatures(crf, test);
+    List<String> actualLabels = new ArrayList<>();
+    crf.classify(test).forEach(token -> actualLabels.add(token.get(CoreAnnotations.AnswerAnnotation.class)));
+    Assert.assertEquals(expectedLabels, actualLabels);
+  }
+
+  /** A feature index replaced by another of the same size is not looked up through the old one's table. */
+  @Test
+  public void testReplacedFeatureIndex() {
+    CRFClassifier<CoreLabel> crf = CRFTestData.train(PropertiesUtils.asProperties(
+        "useWord", "true", "usePrev", "true", "useNext", "true", "useClassFeature", "true", "maxIterations", "10"));
+    List<CoreLabel> test = CRFTestData.document(new String[] { "Mary", "O", "lives", "O", "in", "O", "London", "O" });
+    assertSameFeatures(crf, test);
+
+    // the same features, numbered the other way round
+    Index<String> reversed = new HashIndex<>();
+    for (int i = crf.featureIndex.size() - 1; i >= 0; i--) {
+      reversed.add(crf.featureIndex.get(i));
+    }
+    crf.featureIndex = reversed;
+    assertSameFeatures(crf, test);
+  }
+
+}
@@ -0,0 +1,52 @@
+package edu.stanford.nlp.ie.crf;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.stanford.nlp.util.HashIndex;
+import edu.stanford.nlp.util.Index;
+
+/**
+ * Checks the flat marginals of a clique tree against summing its factor tables directly.
+ */
+public class CRFCliqueTreeMarginalsTest {
+
+  @Test
+  public void testMarginals() {
+    Index<String> classIndex = new HashIndex<>(Arrays.asList("O", "PERSON", "LOCATION"));
+    int numClasses = classIndex.size();
+    Random random = new Random(17);
+    FactorTable[] tables = new FactorTable[4];
+    for (int i = 0; i < tables.length; i++) {
+      tables[i] = new FactorTable(numClasses, 2);
+      for (int j = 0; j < tables[i].size(); j++) {
+        tables[i].setValue(j, random.nextGaussian());
+      }
+    }
+    CRFCliqueTree<String> cliqueTree = new CRFCliqueTree<>(tables, classIndex, "O");
+
+    double[] marginals = cliqueTree.marginals();
+    Assert.assertEquals(tables.length * numClasses, marginals.length);
+    double[] logMarginals = new double[marginals.length + 1];
+    logMarginals[marginals.length] = 42.0;
+    cliqueTree.marginals(logMarginals, true);
+    Assert.assertEquals(42.0, logMarginals[marginals.length], 0.0);
+
+    for (int i = 0; i < tables.length; i++) {
+      for (int label = 0; label < numClasses; label++) {
+        double mass = 0.0;
+        for (int prev = 0; prev < numClasses; prev++) {
+          mass += Math.exp(tables[i].getValue(prev * numClasses + label));
+        }
+        double expected = Math.log(mass) - cliqueTree.totalMass();
+        Assert.assertEquals(expected, logMarginals[i * numClasses + label], 1e-12);
+        Assert.assertEquals(Math.exp(expected), marginals[i * numClasses + label], 1e-12);
+        Assert.assertEquals(cliqueTree.prob(i, label), marginals[i * numClasses + label], 0.0);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,96 @@
+package edu.stanford.nlp.ie.crf;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.sequences.SeqClassifierFlags;
+import edu.stanford.nlp.util.PropertiesUtils;
+
+/**
+ * Checks that training from the feature cache gives the classifier trained from the documents.
+ */
+public class CRFFeatureCacheTest {
+
+  private static CRFClassifier<CoreLabel> train(String sigma, String cacheDir) {
+    Properties props = CRFTestData.properties("maxIterations", "20", "multiThreadGrad", "1", "sigma", sigma);
+    if (cacheDir != null) {
+      props.setProperty("featureCacheDir", cacheDir);
+    }
+    return CRFTestData.train(props);
+  }
+
+  private static void assertSameClassifier(CRFClassifier<CoreLabel> expected, CRFClassifier<CoreLabel> actual) {
+    Assert.assertEquals(expected.classIndex.objectsList(), actual.classIndex.objectsList());
+    Assert.assertEquals(expected.featureIndex.objectsList(), actual.featureIndex.objectsList());
+    Assert.assertArrayEquals(expected.map, actual.map);
+    Assert.assertEquals(expected.labelIndices, actual.labelIndices);
+    Assert.assertEquals(expected.nodeFeatureIndicesMap.objectsList(), actual.nodeFeatureIndicesMap.objectsList());
+    Assert.assertEquals(expected.edgeFeatureIndicesMap.objectsList(), actual.edgeFeatureIndicesMap.objectsList());
+    Assert.assertArrayEquals(expected.weights, actual.weights);
+  }
+
+  @Test
+  public void testCache() throws IOException {
+    File dir = Files.createTempDirectory("crf-features").toFile();
+    try {
+      CRFClassifier<CoreLabel> first = train("1.0", dir.getPath());
+      assertSameClassifier(train("1.0", null), first);
+      File[] files = dir.listFiles();
+      Assert.assertNotNull(files);
+      Assert.assertEquals(1, files.length);
+      long modified = files[0].lastModified();
+
+      // another sigma reads the same file
+      assertSameClassifier(train("0.5", null), train("0.5", dir.getPath()));
+      files = dir.listFiles();
+      Assert.assertEquals(1, files.length);
+      Assert.assertEquals(modified, files[0].lastModified());
+
+      // but other features make another file
+      Properties props = PropertiesUtils.asProperties("useWord", "true", "featureCacheDir", dir.getPath(),
+          "maxIterations", "5", "multiThreadGrad", "1");
+      new CRFClassifier<CoreLabel>(props).train(CRFTestData.documents());
+      Assert.assertEquals(2, dir.listFiles().length);
+    } finally {
+      for (File file : dir.listFiles()) {
+        Assert.assertTrue(file.delete());
+      }
+      Assert.assertTrue(dir.delete());
+    }
+  }
+
+  @Test
+  public void testKeyFollowsResources() throws IOException {
+    File gazette = File.createTempFile("gazette", ".txt");
+    File lexicon = File.createTempFile("distsim", ".txt");
+    try {
+      Files.write(gazette.toPath(), Arrays.asList("LOCATION Paris", "LOCATION London"), StandardCharsets.UTF_8);
+      Files.write(lexicon.toPath(), Arrays.asList("Paris 1", "London 1"), StandardCharsets.UTF_8);
+      SeqClassifierFlags flags = new SeqClassifierFlags(PropertiesUtils.asProperties(
+          "useWord", "true", "gazette", gazette.getPath(), "useDistSim", "true", "distSimLexicon", lexicon.getPath()));
+      List<List<CoreLabel>> docs = CRFTestData.documents();
+      String key = CRFFeatureCache.key(flags, docs);
+      Assert.assertEquals(key, CRFFeatureCache.key(flags, docs));
+
+      Files.write(gazette.toPath(), Arrays.asList("LOCATION Paris", "LOCATION London", "LOCATION Berlin"), StandardCharsets.UTF_8);
+      String gazetteKey = CRFFeatureCache.key(flags, docs);
+      Assert.assertNotEquals(key, gazetteKey);
+
+      Files.write(lexicon.toPath(), Arrays.asList("Paris 1", "London 2", "Berlin 2"), StandardCharsets.UTF_8);
+      Assert.assertNotEquals(gazetteKey, CRFFeatureCache.key(flags, docs));
+    } finally {
+      Assert.assertTrue(gazette.delete());
+      Assert.assertTrue(lexicon.delete());
+    }
+  }
+
+}
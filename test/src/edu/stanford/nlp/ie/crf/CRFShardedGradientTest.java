@@ -0,0 +1,76 @@
+package edu.stanford.nlp.ie.crf;
+
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.optimization.Evaluator;
+
+/**
+ * Checks that the gradient computed in fork/join shards is the gradient computed serially.
+ */
+public class CRFShardedGradientTest {
+
+  /** Compares the gradients of the featurized training data rather than training. */
+  private static class GradientChecker extends CRFClassifier<CoreLabel> {
+
+    private boolean checked; // = false
+
+    GradientChecker(Properties props) {
+      super(props);
+    }
+
+    private CRFLogConditionalObjectiveFunction function(int[][][][] data, int[][] labels, int threads, int shardSize) {
+      flags.multiThreadGrad = threads;
+      CRFLogConditionalObjectiveFunction func = getObjectiveFunction(data, labels);
+      func.setGradientShardSize(shardSize);
+      return func;
+    }
+
+    @Override
+    protected double[] trainWeights(int[][][][] data, int[][] labels, Evaluator[] evaluators, int pruneFeatureItr, double[][][][] featureVals) {
+      CRFLogConditionalObjectiveFunction serial = function(data, labels, 1, 0);
+      double[] x = serial.initial();
+      double[] expected = serial.derivativeAt(x).clone();
+      double expectedValue = serial.valueAt(x);
+      for (int shardSize : new int[] { 1, 2, 100 }) {
+        CRFLogConditionalObjectiveFunction sharded = function(data, labels, 3, shardSize);
+        Assert.assertArrayEquals(expected, sharded.derivativeAt(x), 1e-10);
+        Assert.assertEquals(expectedValue, sharded.valueAt(x), 1e-10);
+        // again, to check that the counts of the first gradient are not left behind
+        sharded.calculate(x);
+        Assert.assertArrayEquals(expected, sharded.getDerivative(), 1e-10);
+        // and after the pool is shut down, a new one takes over
+        sharded.shutdownGradientPool();
+        sharded.calculate(x);
+        Assert.assertArrayEquals(expected, sharded.getDerivative(), 1e-10);
+        sharded.shutdownGradientPool();
+      }
+
+      // the empirical counts of a stochastic batch are also summed
+      int[] batch = { 4, 1, 3 };
+      serial = function(data, labels, 1, 0);
+      serial.calculateStochasticGradient(x, batch);
+      CRFLogConditionalObjectiveFunction sharded = function(data, labels, 3, 1);
+      sharded.calculateStochasticGradient(x, batch);
+      Assert.assertArrayEquals(serial.getDerivative(), sharded.getDerivative(), 1e-10);
+      sharded.shutdownGradientPool();
+      checked = true;
+      return x;
+    }
+  }
+
+  @Test
+  public void testShardedGradient() {
+    List<List<CoreLabel>> docs = CRFTestData.documents();
+    docs.add(CRFTestData.document(new String[] {
+        "Mary", "PERSON", "met", "O", "John", "PERSON", "in", "O", "Berlin", "LOCATION" }));
+    GradientChecker checker = new GradientChecker(CRFTestData.properties());
+    checker.train(docs);
+    Assert.assertTrue(checker.checked);
+  }
+
+}
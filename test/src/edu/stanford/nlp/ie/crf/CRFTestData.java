@@ -0,0 +1,87 @@
+package edu.stanford.nlp.ie.crf;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.util.PropertiesUtils;
+
+/**
+ * A few made up NER sentences, and CRFs trained on them, for the tests of
+ * {@link CRFClassifier} and of the classifiers built on it.
+ */
+public class CRFTestData {
+
+  /** Each sentence as its words, each followed by its answer. */
+  public static final String[][] SENTENCES = {
+      { "John", "PERSON", "lives", "O", "in", "O", "Paris", "LOCATION", ".", "O" },
+      { "Mary", "PERSON", "works", "O", "at", "O", "Google", "ORGANIZATION", "in", "O", "London", "LOCATION" },
+      { "Google", "ORGANIZATION", "hired", "O", "John", "PERSON", "." , "O" },
+      { "She", "O", "moved", "O", "to", "O", "London", "LOCATION", "from", "O", "Paris", "LOCATION" },
+  };
+
+  private CRFTestData() { } // static methods only
+
+  /**
+   * A document of these words, with these answers as both answer and gold answer.
+   *
+   * @param answers The answers, or null for a document which has none
+   */
+  public static List<CoreLabel> document(String[] words, String[] answers) {
+    List<CoreLabel> document = new ArrayList<>();
+    for (int i = 0; i < words.length; i++) {
+      CoreLabel token = new CoreLabel();
+      token.setWord(words[i]);
+      token.setValue(words[i]);
+      if (answers != null) {
+        token.set(CoreAnnotations.AnswerAnnotation.class, answers[i]);
+        token.set(CoreAnnotations.GoldAnswerAnnotation.class, answers[i]);
+      }
+      document.add(token);
+    }
+    return document;
+  }
+
+  /** A document of words each followed by its answer, as in {@link #SENTENCES}. */
+  public static List<CoreLabel> document(String[] wordsAndAnswers) {
+    String[] words = new String[wordsAndAnswers.length / 2];
+    String[] answers = new String[words.length];
+    for (int i = 0; i < words.length; i++) {
+      words[i] = wordsAndAnswers[2 * i];
+      answers[i] = wordsAndAnswers[2 * i + 1];
+    }
+    return document(words, answers);
+  }
+
+  /** The {@link #SENTENCES}, each as a document. */
+  public static List<List<CoreLabel>> documents() {
+    List<List<CoreLabel>> docs = new ArrayList<>();
+    for (String[] sentence : SENTENCES) {
+      docs.add(document(sentence));
+    }
+    return docs;
+  }
+
+  /**
+   * Word, n-gram, shape and label sequence features, with any of them overridden or
+   * more added by the given keys and values.
+   */
+  public static Properties properties(String... keysAndValues) {
+    Properties props = PropertiesUtils.asProperties(
+        "useWord", "true", "useNGrams", "true", "maxNGramLeng", "4", "usePrev", "true", "useNext", "true",
+        "useClassFeature", "true", "useSequences", "true", "usePrevSequences", "true", "maxLeft", "1",
+        "useTypeSeqs", "true", "wordShape", "chris2useLC");
+    props.putAll(PropertiesUtils.asProperties(keysAndValues));
+    return props;
+  }
+
+  /** A CRF with these properties, trained on the {@link #SENTENCES}. */
+  public static CRFClassifier<CoreLabel> train(Properties props) {
+    CRFClassifier<CoreLabel> crf = new CRFClassifier<>(props);
+    crf.train(documents());
+    return crf;
+  }
+
+}
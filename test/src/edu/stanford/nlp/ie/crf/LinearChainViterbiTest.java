@@ -0,0 +1,78 @@
+package edu.stanford.nlp.ie.crf;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.stanford.nlp.sequences.ExactBestSequenceFinder;
+import edu.stanford.nlp.util.HashIndex;
+import edu.stanford.nlp.util.Index;
+
+/**
+ * Checks that {@link LinearChainViterbi} finds the same sequences as {@link ExactBestSequenceFinder}.
+ */
+public class LinearChainViterbiTest {
+
+  private static CRFCliqueTree<String> randomCliqueTree(Random random, int length, int numClasses, int window) {
+    Index<String> classIndex = new HashIndex<>();
+    for (int i = 0; i < numClasses; i++) {
+      classIndex.add("L" + i);
+    }
+    FactorTable[] factorTables = new FactorTable[length];
+    for (int pos = 0; pos < length; pos++) {
+      factorTables[pos] = new FactorTable(numClasses, window);
+      for (int i = 0; i < factorTables[pos].size(); i++) {
+        factorTables[pos].setValue(i, random.nextGaussian() * 3);
+      }
+    }
+    return new CRFCliqueTree<>(factorTables, classIndex, "L0");
+  }
+
+  @Test
+  public void testSameAsExactBestSequenceFinder() {
+    Random random = new Random(42);
+    for (int window = 1; window <= 3; window++) {
+      for (int trial = 0; trial < 20; trial++) {
+        CRFCliqueTree<String> cliqueTree = randomCliqueTree(random, 1 + random.nextInt(30), 2 + random.nextInt(8), window);
+        TestSequenceModel model = new TestSequenceModel(cliqueTree);
+        int[] expected = new ExactBestSequenceFinder().bestSequence(model);
+        Assert.assertArrayEquals(expected, model.bestSequence());
+      }
+    }
+  }
+
+  @Test
+  public void testAllowedLabels() {
+    Random random = new Random(7);
+    CRFCliqueTree<String> cliqueTree = randomCliqueTree(random, 10, 5, 2);
+    int[][] allowed = new int[10][];
+    allowed[3] = new int[] { 4 };
+    allowed[4] = new int[] { 1, 2 };
+    int[] best = LinearChainViterbi.bestSequence(cliqueTree.getFactorTables(), 0, allowed);
+    Assert.assertEquals(11, best.length);
+    Assert.assertEquals(4, best[3 + 1]);
+    Assert.assertTrue(best[4 + 1] == 1 || best[4 + 1] == 2);
+  }
+
+  @Test
+  public void testMultiplyIn() {
+    FactorTable big = new FactorTable(3, 3);
+    FactorTable small = new FactorTable(3, 1);
+    for (int i = 0; i < big.size(); i++) {
+      big.setValue(i, i);
+    }
+    for (int i = 0; i < small.size(); i++) {
+      small.setValue(i, 100 * (i + 1));
+    }
+    FactorTable front = new FactorTable(big);
+    front.multiplyInFront(small);
+    FactorTable end = new FactorTable(big);
+    end.multiplyInEnd(small);
+    for (int i = 0; i < big.size(); i++) {
+      Assert.assertEquals(i + small.getValue(i / 9), front.getValue(i), 0.0);
+      Assert.assertEquals(i + small.getValue(i % 3), end.getValue(i), 0.0);
+    }
+  }
+
+}
@@ -0,0 +1,185 @@
+package edu.stanford.nlp.ie.crf;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.util.PropertiesUtils;
+
+/**
+ * Checks that packed CRF weights keep the weights to the precision of their format,
+ * and that a classifier with packed weights labels as before.
+ */
+public class PackedCRFWeightsTest {
+
+  private static CRFClassifier<CoreLabel> train() {
+    return CRFTestData.train(CRFTestData.properties("maxIterations", "30"));
+  }
+
+  private static List<String> labels(CRFClassifier<CoreLabel> crf) {
+    List<String> labels = new ArrayList<>();
+    for (List<CoreLabel> document : CRFTestData.documents()) {
+      for (CoreLabel token : crf.classify(document)) {
+        labels.add(token.get(CoreAnnotations.AnswerAnnotation.class));
+      }
+    }
+    return labels;
+  }
+
+  @Test
+  public void testPrecision() {
+    Random random = new Random(1234);
+    float[][] weights = new float[100][];
+    for (int i = 0; i < weights.length; i++) {
+      weights[i] = new float[i % 2 == 0 ? 4 : 16];
+      for (int j = 0; j < weights[i].length; j++) {
+        weights[i][j] = (float) (random.nextGaussian() * (i + 1));
+      }
+    }
+    weights[8] = new float[4];  // all zero
+
+    for (PackedCRFWeights.Format format : PackedCRFWeights.Format.values()) {
+      PackedCRFWeights packed = PackedCRFWeights.pack(weights, format);
+      Assert.assertEquals(format, packed.format());
+      Assert.assertEquals(weights.length, packed.numFeatures());
+      Assert.assertEquals(50 * 4 + 50 * 16, packed.numWeights());
+      Assert.assertTrue(packed.sizeInBytes() < PackedCRFWeights.sizeInBytes(weights));
+      float[][] unpacked = packed.unpack();
+      for (int i = 0; i < weights.length; i++) {
+        float max = 0.0f;
+        for (float w : weights[i]) {
+          max = Math.max(max, Math.abs(w));
+        }
+        double step = format == PackedCRFWeights.Format.INT8 ? max / 127.0 :
+            format == PackedCRFWeights.Format.INT16 ? max / 32767.0 : 0.0;
+        Assert.assertEquals(weights[i].length, unpacked[i].length);
+        for (int j = 0; j < weights[i].length; j++) {
+          Assert.assertEquals(weights[i][j], packed.get(i, j), step / 2 + 1e-6 * max);
+          Assert.assertEquals(packed.get(i, j), unpacked[i][j], 0.0);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testClassifier() throws IOException, ClassNotFoundException {
+    CRFClassifier<CoreLabel> crf = train();
+    List<String> expected = labels(crf);
+    int numWeights = crf.getNumWeights();
+
+    crf.packWeights(PackedCRFWeights.Format.FLOAT);
+    Assert.assertNull(crf.weights);
+    Assert.assertEquals(numWeights, crf.getNumWeights());
+    Assert.assertEquals(expected, labels(crf));
+
+    crf.packWeights(PackedCRFWeights.Format.INT8);
+    Assert.assertEquals(PackedCRFWeights.Format.INT8, crf.packedWeights.format());
+    Assert.assertEquals(expected, labels(crf));
+
+    // packed weights are serialized packed
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream oos = new ObjectOutputStream(bytes)) {
+      crf.serializeClassifier(oos);
+    }
+    CRFClassifier<CoreLabel> loaded = new CRFClassifier<>(new Properties());
+    try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+      loaded.loadClassifier(ois, null);
+    }
+    Assert.assertNull(loaded.weights);
+    Assert.assertEquals(PackedCRFWeights.Format.INT8, loaded.packedWeights.format());
+    Assert.assertEquals(expected, labels(loaded));
+
+    // and changing the weights unpacks them
+    loaded.scaleWeights(1.0);
+    Assert.assertNull(loaded.packedWeights);
+    Assert.assertEquals(numWeights, loaded.getNumWeights());
+    Assert.assertEquals(expected, labels(loaded));
+  }
+
+  /** The string form of the weights, as printed and as saved in the text format. */
+  private static String printWeights(CRFClassifier<CoreLabel> crf) throws Exception {
+    ByteArrayOutputStream printed = new ByteArrayOutputStream();
+    try (PrintStream ps = new PrintStream(printed, true, "utf-8")) {
+      crf.writeWeights(ps);
+    }
+    StringWriter text = new StringWriter();
+    try (PrintWriter pw = new PrintWriter(text)) {
+      crf.serializeTextClassifier(pw);
+    }
+    return printed.toString("utf-8") + text + crf.topWeights();
+  }
+
+  /** Printing or saving packed weights reads a copy of them, and leaves them packed for classifying. */
+  @Test
+  public void testReadingLeavesWeightsPacked() throws Exception {
+    CRFClassifier<CoreLabel> crf = train();
+    crf.packWeights(PackedCRFWeights.Format.INT8);
+    PackedCRFWeights packed = crf.packedWeights;
+    List<String> expected = labels(crf);
+
+    String printed = printWeights(crf);
+    crf.printLabelValue(CRFTestData.documents().get(0));
+    Assert.assertSame(packed, crf.packedWeights);
+    Assert.assertNull(crf.weights);
+    Assert.assertEquals(expected, labels(crf));
+
+    // the copy holds the same weights as unpacking them
+    crf.scaleWeights(1.0);
+    Assert.assertNull(crf.packedWeights);
+    Assert.assertEquals(printed, printWeights(crf));
+  }
+
+  @Test
+  public void testMappedWeightsAreReadInPlace() throws IOException, ClassNotFoundException {
+    CRFClassifier<CoreLabel> crf = train();
+    List<String> expected = labels(crf);
+    float[][] weights = crf.weights;
+    File file = File.createTempFile("crf", ".mapped");
+    file.deleteOnExit();
+    crf.serializeClassifierMapped(file.getPath());
+    // writing it packs only what is written
+    Assert.assertSame(weights, crf.weights);
+    Assert.assertNull(crf.packedWeights);
+
+    CRFClassifier<CoreLabel> loaded = new CRFClassifier<>(new Properties());
+    loaded.loadClassifier(file.getPath(), null);
+    Assert.assertNull(loaded.weights);
+    Assert.assertEquals(PackedCRFWeights.Format.FLOAT, loaded.packedWeights.format());
+    Assert.assertTrue(((PackedCRFWeights.Floats) loaded.packedWeights).isMapped());
+    Assert.assertTrue(Arrays.deepEquals(weights, loaded.packedWeights.unpack()));
+    Assert.assertEquals(expected, labels(loaded));
+  }
+
+  @Test
+  public void testPackWhenLoading() throws IOException, ClassNotFoundException {
+    CRFClassifier<CoreLabel> crf = train();
+    List<String> expected = labels(crf);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream oos = new ObjectOutputStream(bytes)) {
+      crf.serializeClassifier(oos);
+    }
+    CRFClassifier<CoreLabel> loaded = new CRFClassifier<>(new Properties());
+    try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+      loaded.loadClassifier(ois, PropertiesUtils.asProperties("ner.packedWeights", "int16"));
+    }
+    Assert.assertEquals(PackedCRFWeights.Format.INT16, loaded.packedWeights.format());
+    Assert.assertEquals(expected, labels(loaded));
+  }
+
+}
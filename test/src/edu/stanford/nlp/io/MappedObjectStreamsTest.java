@@ -0,0 +1,105 @@
+package edu.stanford.nlp.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Round trips objects with large and small arrays through {@link MappedObjectStreams}.
+ */
+public class MappedObjectStreamsTest {
+
+  @Test
+  public void testRoundTrip() throws IOException, ClassNotFoundException {
+    File file = File.createTempFile("mapped", ".model");
+    file.deleteOnExit();
+
+    float[][] weights = new float[500][];
+    for (int i = 0; i < weights.length; ++i) {
+      weights[i] = new float[i % 7 + 1];
+      for (int j = 0; j < weights[i].length; ++j) {
+        weights[i][j] = i * 0.5f - j;
+      }
+    }
+    double[] big = new double[3000];
+    for (int i = 0; i < big.length; ++i) {
+      big[i] = Math.sqrt(i);
+    }
+    int[] small = { 1, 2, 3 };
+    List<Object> model = new ArrayList<>(Arrays.asList("header", weights, small, big, weights));
+
+    MappedObjectStreams.write(file, oos -> {
+      oos.writeObject(model);
+      oos.writeInt(17);
+      oos.writeObject(big);
+    });
+    Assert.assertTrue(MappedObjectStreams.isMappedFile(file));
+    Assert.assertTrue(file.length() > 3000 * Double.BYTES);
+
+    try (ObjectInputStream ois = MappedObjectStreams.open(file)) {
+      List<?> read = (List<?>) ois.readObject();
+      Assert.assertEquals("header", read.get(0));
+      Assert.assertTrue(Arrays.deepEquals(weights, (float[][]) read.get(1)));
+      Assert.assertArrayEquals(small, (int[]) read.get(2));
+      Assert.assertArrayEquals(big, (double[]) read.get(3), 0.0);
+      // the same array written twice is still the same array
+      Assert.assertSame(read.get(1), read.get(4));
+      Assert.assertEquals(17, ois.readInt());
+      Assert.assertSame(read.get(3), ois.readObject());
+    }
+  }
+
+  @Test
+  public void testFloatArrayIsReadInPlace() throws IOException, ClassNotFoundException {
+    File file = File.createTempFile("mapped", ".model");
+    file.deleteOnExit();
+    float[] values = { 1.5f, -2.0f, 3.25f };
+    MappedObjectStreams.FloatArray array = new MappedObjectStreams.FloatArray(values);
+    Assert.assertFalse(array.isMapped());
+    MappedObjectStreams.writeObject(Arrays.asList(array, "after", array), file);
+
+    List<?> read = MappedObjectStreams.readObject(file);
+    MappedObjectStreams.FloatArray mapped = (MappedObjectStreams.FloatArray) read.get(0);
+    // even a short one is mapped
+    Assert.assertTrue(mapped.isMapped());
+    Assert.assertEquals(values.length, mapped.length());
+    Assert.assertArrayEquals(values, mapped.toArray(), 0.0f);
+    Assert.assertEquals(3.25f, mapped.get(2), 0.0f);
+    Assert.assertEquals("after", read.get(1));
+    Assert.assertSame(mapped, read.get(2));
+
+    // anywhere else it is just an array
+    File plain = File.createTempFile("plain", ".ser");
+    plain.deleteOnExit();
+    IOUtils.writeObjectToFile(array, plain);
+    MappedObjectStreams.FloatArray copy = IOUtils.readObjectFromFile(plain);
+    Assert.assertFalse(copy.isMapped());
+    Assert.assertArrayEquals(values, copy.toArray(), 0.0f);
+  }
+
+  @Test
+  public void testReadThroughIOUtils() throws IOException, ClassNotFoundException {
+    File file = File.createTempFile("mapped", ".model");
+    file.deleteOnExit();
+    int[][] table = new int[40][40];
+    table[3][5] = 8;
+    MappedObjectStreams.writeObject(table, file);
+
+    int[][] read = IOUtils.readObjectFromURLOrClasspathOrFileSystem(file.getPath());
+    Assert.assertTrue(Arrays.deepEquals(table, read));
+
+    // ordinary serialized files are not mistaken for mapped ones
+    File plain = File.createTempFile("plain", ".ser");
+    plain.deleteOnExit();
+    IOUtils.writeObjectToFile(table, plain);
+    Assert.assertFalse(MappedObjectStreams.isMappedFile(plain));
+    Assert.assertTrue(Arrays.deepEquals(table, IOUtils.readObjectFromFile(plain)));
+  }
+
+}
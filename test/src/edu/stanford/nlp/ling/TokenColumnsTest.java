@@ -0,0 +1,98 @@
+package edu.stanford.nlp.ling;
+
+import java.io.*;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.stanford.nlp.pipeline.Annotation;
+import edu.stanford.nlp.pipeline.StanfordCoreNLP;
+import edu.stanford.nlp.util.CoreMap;
+import edu.stanford.nlp.util.PropertiesUtils;
+
+/**
+ * Checks that {@link ColumnarCoreLabel}s behave like the CoreLabels they replace.
+ */
+public class TokenColumnsTest {
+
+  private static CoreLabel token(String word, int begin) {
+    CoreLabel token = new CoreLabel();
+    token.setWord(word);
+    token.setValue(word);
+    token.setBeginPosition(begin);
+    token.setEndPosition(begin + word.length());
+    token.setIndex(1);
+    token.set(CoreAnnotations.IsNewlineAnnotation.class, false);
+    token.set(CoreAnnotations.ShapeAnnotation.class, "Xx");
+    return token;
+  }
+
+  @Test
+  public void testViewMatchesCoreLabel() {
+    CoreLabel token = token("Stanford", 5);
+    CoreLabel view = TokenColumns.columnize(Collections.singletonList(token)).get(0);
+    Assert.assertTrue(view instanceof ColumnarCoreLabel);
+    Assert.assertEquals("Stanford", view.word());
+    Assert.assertEquals(5, view.beginPosition());
+    Assert.assertEquals(13, view.endPosition());
+    Assert.assertEquals("Xx", view.get(CoreAnnotations.ShapeAnnotation.class));
+    Assert.assertEquals(false, view.get(CoreAnnotations.IsNewlineAnnotation.class));
+    Assert.assertEquals(token.keySet(), view.keySet());
+    Assert.assertEquals(token.size(), view.size());
+    Assert.assertEquals(token, view);
+    Assert.assertEquals(view, token);
+    Assert.assertEquals(token.hashCode(), view.hashCode());
+    Assert.assertEquals(token, new CoreLabel(view));
+
+    // set, overwrite and remove both column and ordinary annotations
+    Assert.assertNull(view.set(CoreAnnotations.PartOfSpeechAnnotation.class, "NNP"));
+    Assert.assertEquals("NNP", view.set(CoreAnnotations.PartOfSpeechAnnotation.class, "NN"));
+    Assert.assertEquals("NN", view.tag());
+    Assert.assertEquals("NN", view.remove(CoreAnnotations.PartOfSpeechAnnotation.class));
+    Assert.assertFalse(view.containsKey(CoreAnnotations.PartOfSpeechAnnotation.class));
+    view.setNER(null);
+    Assert.assertTrue(view.containsKey(CoreAnnotations.NamedEntityTagAnnotation.class));
+    Assert.assertNull(view.ner());
+    view.setNER("ORGANIZATION");
+    Assert.assertEquals("ORGANIZATION", view.ner());
+    Assert.assertEquals(token.size() + 1, view.size());
+  }
+
+  @Test
+  public void testSerialization() throws IOException, ClassNotFoundException {
+    CoreLabel token = token("word", 0);
+    CoreLabel view = TokenColumns.columnize(Collections.singletonList(token)).get(0);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+      out.writeObject(view);
+    }
+    try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+      Object read = in.readObject();
+      Assert.assertEquals(CoreLabel.class, read.getClass());
+      Assert.assertEquals(token, read);
+    }
+  }
+
+  @Test
+  public void testColumnarTokenizer() {
+    String text = "Joe Smith lives in California. He is a teacher.";
+    Annotation plain = new StanfordCoreNLP(PropertiesUtils.asProperties("annotators", "tokenize,ssplit")).process(text);
+    Annotation columnar = new StanfordCoreNLP(PropertiesUtils.asProperties("annotators", "tokenize,ssplit", "tokenize.columnar", "true")).process(text);
+
+    List<CoreLabel> plainTokens = plain.get(CoreAnnotations.TokensAnnotation.class);
+    List<CoreLabel> columnarTokens = columnar.get(CoreAnnotations.TokensAnnotation.class);
+    Assert.assertEquals(plainTokens, columnarTokens);
+    for (CoreLabel token : columnarTokens) {
+      Assert.assertTrue(token instanceof ColumnarCoreLabel);
+    }
+    // the sentences share the document's tokens
+    CoreMap second = columnar.get(CoreAnnotations.SentencesAnnotation.class).get(1);
+    CoreLabel he = second.get(CoreAnnotations.TokensAnnotation.class).get(0);
+    Assert.assertSame(columnarTokens.get(6), he);
+    Assert.assertEquals(1, he.index());
+    Assert.assertEquals(1, (int) he.get(CoreAnnotations.SentenceIndexAnnotation.class));
+  }
+
+}
@@ -0,0 +1,103 @@
+package edu.stanford.nlp.parser.lexparser;
+
+import edu.stanford.nlp.trees.PennTreebankLanguagePack;
+import edu.stanford.nlp.util.HashIndex;
+import edu.stanford.nlp.util.Index;
+import junit.framework.TestCase;
+
+public class CoarseGrammarProjectionTest extends TestCase {
+
+  private Index<String> stateIndex;
+  private CoarseGrammarProjection projection;
+
+  private int state(String label) {
+    return stateIndex.indexOf(label);
+  }
+
+  private int coarse(String label) {
+    return projection.targetStateIndex().indexOf(label);
+  }
+
+  @Override
+  public void setUp() {
+    stateIndex = new HashIndex<>();
+    for (String label : new String[] { "ROOT", "S^ROOT", "NP^S", "NP^VP", "VP^S", "@VP|^S|<VBD>", "VBD", "DT^NP", "NN^NP" }) {
+      stateIndex.addToIndex(label);
+    }
+    BinaryGrammar bg = new BinaryGrammar(stateIndex);
+    bg.addRule(new BinaryRule(state("S^ROOT"), state("NP^S"), state("VP^S"), -1.0));
+    bg.addRule(new BinaryRule(state("NP^S"), state("DT^NP"), state("NN^NP"), -2.0));
+    bg.addRule(new BinaryRule(state("NP^VP"), state("DT^NP"), state("NN^NP"), -0.5));
+    bg.addRule(new BinaryRule(state("VP^S"), state("VBD"), state("NP^VP"), -1.5));
+    bg.addRule(new BinaryRule(state("@VP|^S|<VBD>"), state("VBD"), state("NP^VP"), -3.0));
+    bg.splitRules();
+    UnaryGrammar ug = new UnaryGrammar(stateIndex);
+    ug.addRule(new UnaryRule(state("ROOT"), state("S^ROOT"), 0.0));
+    ug.addRule(new UnaryRule(state("NP^S"), state("NP^VP"), -4.0));
+    ug.purgeRules();
+    Index<String> tagIndex = new HashIndex<>();
+    for (String tag : new String[] { "VBD", "DT^NP", "NN^NP" }) {
+      tagIndex.addToIndex(tag);
+    }
+    projection = new CoarseGrammarProjection(bg, ug, stateIndex, tagIndex, new PennTreebankLanguagePack());
+  }
+
+  public void testProjectsToBasicCategories() {
+    assertEquals(8, projection.targetStateIndex().size());
+    assertEquals(coarse("NP"), projection.project(state("NP^S")));
+    assertEquals(coarse("NP"), projection.project(state("NP^VP")));
+    assertEquals(coarse("@VP"), projection.project(state("@VP|^S|<VBD>")));
+    assertEquals(coarse("ROOT"), projection.project(state("ROOT")));
+    assertEquals(coarse("VBD"), projection.project(state("VBD")));
+  }
+
+  public void testRulesAreWeightedByExpectedCounts() {
+    BinaryGrammar bg = projection.targetBG();
+    assertEquals(4, bg.numRules());
+    // NP^S is expected once in each tree, as S^ROOT has no other rule, and NP^VP
+    // once for VP^S and once for each use of the unary rule from NP^S
+    double npS = 1.0;
+    double npVP = 1.0 + npS * Math.exp(-4.0) / (Math.exp(-2.0) + Math.exp(-4.0));
+    double np = Math.log((npS * Math.exp(-2.0) + npVP * Math.exp(-0.5)) / (npS + npVP));
+    assertEquals(np, bg.scoreRule(new BinaryRule(coarse("NP"), coarse("DT"), coarse("NN"))), 1e-5);
+    assertEquals(-1.5, bg.scoreRule(new BinaryRule(coarse("VP"), coarse("VBD"), coarse("NP"))), 1e-5);
+    // a state no tree uses still keeps its rules
+    assertEquals(-3.0, bg.scoreRule(new BinaryRule(coarse("@VP"), coarse("VBD"), coarse("NP"))), 1e-5);
+
+    UnaryGrammar ug = projection.targetUG();
+    assertEquals(0.0, ug.scoreRule(new UnaryRule(coarse("ROOT"), coarse("S"))), 1e-6);
+    // NP^S -> NP^VP projects to NP -> NP, which is left out
+    assertEquals(Double.NEGATIVE_INFINITY, ug.scoreRule(new UnaryRule(coarse("NP"), coarse("NP"))));
+  }
+
+  public void testCompactedStatesTakeCategoryOfParent() {
+    Index<String> index = new HashIndex<>();
+    for (String label : new String[] { "ROOT", "S^ROOT", "NP^S", "VP^S", "@NodeSet-1", "@NodeSet-2", "@NodeSet-3", "NN^NP" }) {
+      index.addToIndex(label);
+    }
+    BinaryGrammar bg = new BinaryGrammar(index);
+    bg.addRule(new BinaryRule(index.indexOf("@NodeSet-1"), index.indexOf("NP^S"), index.indexOf("@NodeSet-2"), -1.0));
+    bg.addRule(new BinaryRule(index.indexOf("@NodeSet-2"), index.indexOf("VP^S"), index.indexOf("NN^NP"), -1.0));
+    bg.addRule(new BinaryRule(index.indexOf("@NodeSet-3"), index.indexOf("NN^NP"), index.indexOf("NN^NP"), -1.0));
+    bg.splitRules();
+    UnaryGrammar ug = new UnaryGrammar(index);
+    ug.addRule(new UnaryRule(index.indexOf("ROOT"), index.indexOf("S^ROOT"), 0.0));
+    ug.addRule(new UnaryRule(index.indexOf("S^ROOT"), index.indexOf("@NodeSet-1"), 0.0));
+    ug.purgeRules();
+    Index<String> tagIndex = new HashIndex<>();
+    tagIndex.addToIndex("NN^NP");
+    CoarseGrammarProjection compacted = new CoarseGrammarProjection(bg, ug, index, tagIndex, new PennTreebankLanguagePack());
+    Index<String> coarseIndex = compacted.targetStateIndex();
+    assertEquals("@S", coarseIndex.get(compacted.project(index.indexOf("@NodeSet-1"))));
+    assertEquals("@S", coarseIndex.get(compacted.project(index.indexOf("@NodeSet-2"))));
+    // no rule says what this one is a part of
+    assertEquals("@NodeSet-3", coarseIndex.get(compacted.project(index.indexOf("@NodeSet-3"))));
+  }
+
+  public void testTagWeights() {
+    assertEquals(0.0f, projection.tagLogWeight(state("NN^NP")), 1e-6f);
+    assertEquals(0.0f, projection.tagLogWeight(state("VBD")), 1e-6f);
+    assertEquals(Float.NEGATIVE_INFINITY, projection.tagLogWeight(state("NP^S")));
+  }
+
+}
@@ -0,0 +1,184 @@
+package edu.stanford.nlp.parser.lexparser;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import edu.stanford.nlp.ling.SentenceUtils;
+import edu.stanford.nlp.ling.Word;
+import edu.stanford.nlp.trees.MemoryTreebank;
+import edu.stanford.nlp.trees.Tree;
+import junit.framework.TestCase;
+
+/**
+ * Trains a PCFG on a small made up treebank, and checks that the parser
+ * gives the same parses with the sparse chart as with the dense one.
+ */
+public class SparseChartParsingTest extends TestCase {
+
+  private static final String[][] WORDS = {
+      { "the", "a", "every" },  // DT
+      { "big", "old", "new" },  // JJ
+      { "man", "book", "dog", "report" },  // NN
+      { "sees", "reads", "writes" },  // VBZ
+      { "in", "on", "near" },  // IN
+  };
+  private static final String[] TAGS = { "DT", "JJ", "NN", "VBZ", "IN" };
+
+  private static LexicalizedParser parser;
+
+  private static String preterminal(Random random, int tag) {
+    String[] words = WORDS[tag];
+    return "(" + TAGS[tag] + ' ' + words[random.nextInt(words.length)] + ')';
+  }
+
+  private static String nounPhrase(Random random) {
+    String np = "(NP " + preterminal(random, 0) + (random.nextBoolean() ? ' ' + preterminal(random, 1) : "") +
+        ' ' + preterminal(random, 2) + ')';
+    if (random.nextInt(3) == 0) {
+      np = "(NP " + np + " (PP " + preterminal(random, 4) + ' ' + nounPhrase(random) + "))";
+    }
+    return np;
+  }
+
+  private static Tree tree(Random random) {
+    String vp = "(VP " + preterminal(random, 3) + ' ' + nounPhrase(random) + ')';
+    if (random.nextBoolean()) {
+      vp = "(VP " + vp + " (PP " + preterminal(random, 4) + ' ' + nounPhrase(random) + "))";
+    }
+    return Tree.valueOf("(ROOT (S " + nounPhrase(random) + ' ' + vp + " (. .)))");
+  }
+
+  private static synchronized LexicalizedParser parser() {
+    if (parser == null) {
+      MemoryTreebank treebank = new MemoryTreebank();
+      Random random = new Random(42);
+      for (int i = 0; i < 300; i++) {
+        treebank.add(tree(random));
+      }
+      Options op = new Options();
+      op.setOptions("-PCFG");
+      parser = LexicalizedParser.trainFromTreebank(treebank, op);
+    }
+    return parser;
+  }
+
+  /**
+   * The parse of each sentence, by one query with these test options.
+   * If chartSizes is not null, the number of states in the sparse chart
+   * of each sentence is added to it.
+   */
+  private static synchronized List<Tree> parse(List<List<Word>> sentences, List<Integer> chartSizes, String... flags) {
+    LexicalizedParser lp = parser();
+    lp.getOp().testOptions = new TestOptions();
+    lp.setOptionFlags(flags);
+    LexicalizedParserQuery pq = lp.lexicalizedParserQuery();
+    List<Tree> parses = new ArrayList<>();
+    for (List<Word> sentence : sentences) {
+      assertTrue(pq.parse(sentence));
+      parses.add(pq.getBestParse());
+      if (chartSizes != null) {
+        chartSizes.add(((ExhaustivePCFGParser) pq.getPCFGParser()).sparseChart.size());
+      }
+    }
+    return parses;
+  }
+
+  private static List<Tree> parse(List<List<Word>> sentences, String... flags) {
+    return parse(sentences, null, flags);
+  }
+
+  private static List<List<Word>> sentences(String... sentences) {
+    List<List<Word>> words = new ArrayList<>();
+    for (String sentence : sentences) {
+      words.add(SentenceUtils.toUntaggedList(sentence.split(" ")));
+    }
+    return words;
+  }
+
+  /** A query whose first sparse sentence comes after a dense one one word shorter. */
+  public void testSparseSentenceAfterDenseOne() {
+    List<List<Word>> sentences = sentences(
+        "the man sees a dog near the book .",
+        "the old man reads every report on a dog .",
+        "a dog writes the new book in the old report .",
+        "the man sees a dog .",
+        "every big dog reads a report on the man near the book .");
+    List<Tree> dense = parse(sentences);
+    List<Tree> sparse = parse(sentences, "-sparseChartLength", "10", "-sparseChartBeam", "1000",
+                              "-sparseChartCellStates", "100000");
+    assertEquals(dense, sparse);
+  }
+
+  /** With a threshold this large the coarse parse prunes nothing which could be in the best parse. */
+  public void testCoarseToFineMatchesDense() {
+    List<List<Word>> sentences = sentences(
+        "the man sees a dog .",
+        "the old man reads every report on a dog .",
+        "a dog writes the new book in the old report .",
+        "every big dog reads a report on the man near the book .");
+    assertEquals(parse(sentences), parse(sentences, "-coarseToFineThreshold", "1000"));
+  }
+
+  /** The coarse parse keeps only some of the states, and the best parse is still found. */
+  public void testCoarseToFinePrunes() {
+    List<List<Word>> sentences = sentences(
+        "the old man reads every report on a dog .",
+        "every big dog reads a report on the man near the book .",
+        "the man sees a dog near the book on the old report in a new book .");
+    List<Integer> unpruned = new ArrayList<>();
+    List<Tree> expected = parse(sentences, unpruned, "-sparseChartLength", "1", "-sparseChartBeam", "1000",
+                                "-sparseChartCellStates", "100000");
+    assertEquals(parse(sentences), expected);
+    List<Integer> pruned = new ArrayList<>();
+    assertEquals(expected, parse(sentences, pruned, "-coarseToFineThreshold", "1"));
+    int totalPruned = 0;
+    int totalUnpruned = 0;
+    for (int i = 0; i < sentences.size(); i++) {
+      assertTrue(pruned + " states kept of " + unpruned, pruned.get(i) <= unpruned.get(i));
+      totalPruned += pruned.get(i);
+      totalUnpruned += unpruned.get(i);
+    }
+    assertTrue(pruned + " states kept of " + unpruned, totalPruned < totalUnpruned);
+  }
+
+  /** A beam of zero, set without Options, is widened to no beam rather than retried forever. */
+  public void testZeroBeamStillParses() {
+    List<List<Word>> sentences = sentences("every big dog reads a report on the man near the book .");
+    synchronized (SparseChartParsingTest.class) {
+      LexicalizedParser lp = parser();
+      lp.getOp().testOptions = new TestOptions();
+      lp.getOp().testOptions.sparseChartLength = 10;
+      lp.getOp().testOptions.sparseChartBeam = 0.0f;
+      LexicalizedParserQuery pq = lp.lexicalizedParserQuery();
+      assertTrue(pq.parse(sentences.get(0)));
+      assertEquals(parse(sentences).get(0), pq.getBestParse());
+    }
+  }
+
+  public void testNonPositiveBeamIsRejected() {
+    for (String beam : new String[] { "0", "-1", "NaN" }) {
+      try {
+        new Options().setOptions("-sparseChartBeam", beam);
+        fail("accepted a beam of " + beam);
+      } catch (IllegalArgumentException e) {
+        // expected
+      }
+    }
+    try {
+      new Options().setOptions("-sparseChartCellStates", "0");
+      fail("accepted no states per cell");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    for (String threshold : new String[] { "0", "-3" }) {
+      try {
+        new Options().setOptions("-coarseToFineThreshold", threshold);
+        fail("accepted a coarse-to-fine threshold of " + threshold);
+      } catch (IllegalArgumentException e) {
+        // expected
+      }
+    }
+  }
+
+}
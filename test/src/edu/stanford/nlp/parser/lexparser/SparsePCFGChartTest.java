@@ -0,0 +1,87 @@
+package edu.stanford.nlp.parser.lexparser;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+public class SparsePCFGChartTest extends TestCase {
+
+  private static final float NEG = Float.NEGATIVE_INFINITY;
+
+  private static float[] cell(float... scores) {
+    return scores;
+  }
+
+  public void testUnprunedCellKeepsLiveStates() {
+    SparsePCFGChart chart = new SparsePCFGChart(5);
+    chart.reset(3);
+    boolean pruned = chart.addCell(0, 1, cell(-1.0f, NEG, -30.0f, NEG, -2.0f), Float.POSITIVE_INFINITY, Integer.MAX_VALUE);
+    assertFalse(pruned);
+    assertEquals(3, chart.size());
+    assertEquals(3, chart.end(0, 1) - chart.begin(0, 1));
+    assertEquals(-1.0f, chart.score(0, 1, 0));
+    assertEquals(NEG, chart.score(0, 1, 1));
+    assertEquals(-30.0f, chart.score(0, 1, 2));
+    assertEquals(-2.0f, chart.score(0, 1, 4));
+    // states of a cell come in order
+    for (int i = chart.begin(0, 1) + 1; i < chart.end(0, 1); i++) {
+      assertTrue(chart.state(i - 1) < chart.state(i));
+    }
+    // a cell never added is empty
+    assertEquals(NEG, chart.score(1, 2, 0));
+  }
+
+  public void testBeam() {
+    SparsePCFGChart chart = new SparsePCFGChart(5);
+    chart.reset(3);
+    assertTrue(chart.addCell(0, 2, cell(-1.0f, -5.0f, -30.0f, NEG, -12.0f), 10.0f, Integer.MAX_VALUE));
+    assertEquals(2, chart.size());
+    assertEquals(-5.0f, chart.score(0, 2, 1));
+    assertEquals(NEG, chart.score(0, 2, 2));
+    assertEquals(NEG, chart.score(0, 2, 4));
+  }
+
+  public void testMaxStatesKeepsTies() {
+    SparsePCFGChart chart = new SparsePCFGChart(6);
+    chart.reset(3);
+    assertTrue(chart.addCell(1, 3, cell(-4.0f, -1.0f, -2.0f, -2.0f, -3.0f, NEG), 100.0f, 2));
+    // -1 and the two states tied at -2 are kept
+    assertEquals(3, chart.size());
+    assertEquals(-1.0f, chart.score(1, 3, 1));
+    assertEquals(-2.0f, chart.score(1, 3, 2));
+    assertEquals(-2.0f, chart.score(1, 3, 3));
+    assertEquals(NEG, chart.score(1, 3, 4));
+  }
+
+  public void testCellFromListedStates() {
+    SparsePCFGChart chart = new SparsePCFGChart(6);
+    chart.reset(3);
+    float[] scores = cell(NEG, -1.0f, NEG, -20.0f, -3.0f, NEG);
+    // only the listed states are looked at
+    scores[5] = -2.0f;
+    assertTrue(chart.addCell(0, 2, scores, new int[] { 1, 3, 4 }, 3, 10.0f, Integer.MAX_VALUE));
+    assertEquals(2, chart.size());
+    assertEquals(-1.0f, chart.score(0, 2, 1));
+    assertEquals(NEG, chart.score(0, 2, 3));
+    assertEquals(-3.0f, chart.score(0, 2, 4));
+    assertEquals(NEG, chart.score(0, 2, 5));
+  }
+
+  public void testResetEmptiesChart() {
+    SparsePCFGChart chart = new SparsePCFGChart(4);
+    float[] scores = new float[4];
+    for (int round = 0; round < 3; round++) {
+      int length = 10 - round * 3;
+      chart.reset(length);
+      assertEquals(0, chart.size());
+      for (int start = 0; start < length; start++) {
+        Arrays.fill(scores, -start);
+        chart.addCell(start, start + 1, scores, Float.POSITIVE_INFINITY, Integer.MAX_VALUE);
+      }
+      assertEquals(4 * length, chart.size());
+      assertEquals(-2.0f, chart.score(2, 3, 3));
+      assertEquals(NEG, chart.score(0, 2, 0));
+    }
+  }
+
+}
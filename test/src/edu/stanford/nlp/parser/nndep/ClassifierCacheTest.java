@@ -0,0 +1,154 @@
+package edu.stanford.nlp.parser.nndep;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.stanford.nlp.util.PropertiesUtils;
+
+/**
+ * Checks that the hidden layer activations shared through the cache of a
+ * {@link Classifier} give the same scores whatever the size of the cache,
+ * including when maxCacheMB limits it, and when scoring in batches, and
+ * that precomputed activations are found quickly however many there are.
+ */
+public class ClassifierCacheTest {
+
+  private static final int NUM_WORDS = 300;
+  private static final int NUM_LABELS = 5;
+  private static final int EMBEDDING_SIZE = 8;
+  private static final int HIDDEN_SIZE = 200;
+
+  private static double[][] matrix(Random random, int rows, int columns) {
+    double[][] matrix = new double[rows][columns];
+    for (double[] row : matrix) {
+      for (int j = 0; j < columns; j++) {
+        row[j] = random.nextGaussian() * 0.1;
+      }
+    }
+    return matrix;
+  }
+
+  /** A classifier with the same random weights every time, and the given configuration. */
+  private static Classifier classifier(String... properties) {
+    Random random = new Random(1234);
+    double[][] E = matrix(random, NUM_WORDS, EMBEDDING_SIZE);
+    double[][] W1 = matrix(random, HIDDEN_SIZE, EMBEDDING_SIZE * Config.numTokens);
+    double[] b1 = matrix(random, 1, HIDDEN_SIZE)[0];
+    double[][] W2 = matrix(random, NUM_LABELS, HIDDEN_SIZE);
+    List<Integer> preComputed = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      preComputed.add(random.nextInt(NUM_WORDS) * Config.numTokens + random.nextInt(Config.numTokens));
+    }
+    List<String> props = new ArrayList<>();
+    props.add("embeddingSize");
+    props.add(Integer.toString(EMBEDDING_SIZE));
+    props.add("hiddenSize");
+    props.add(Integer.toString(HIDDEN_SIZE));
+    for (String property : properties) {
+      props.add(property);
+    }
+    Config config = new Config(PropertiesUtils.asProperties(props.toArray(new String[0])));
+    Classifier classifier = new Classifier(config, E, W1, b1, W2, preComputed);
+    classifier.preCompute();
+    return classifier;
+  }
+
+  private static int[][] features() {
+    Random random = new Random(99);
+    int[][] features = new int[300][Config.numTokens];
+    for (int[] feature : features) {
+      for (int j = 0; j < feature.length; j++) {
+        // mostly a few common words, so that the cache has hits as well as misses
+        feature[j] = random.nextInt(4) == 0 ? random.nextInt(NUM_WORDS) : random.nextInt(10);
+      }
+    }
+    return features;
+  }
+
+  @Test
+  public void testCacheSizeDoesNotChangeScores() {
+    int[][] features = features();
+    Classifier unlimited = classifier("numCached", "100000");
+    double[][] expected = new double[features.length][];
+    for (int i = 0; i < features.length; i++) {
+      expected[i] = unlimited.computeScores(features[i]);
+    }
+
+    // 1MB holds 1213 rows of 200 floats, rounded down to 1024
+    Classifier limited = classifier("numCached", "100000", "maxCacheMB", "1");
+    Assert.assertTrue(limited.cacheStatistics(), limited.cacheStatistics().contains("capacity=1024"));
+    Classifier tiny = classifier("numCached", "4");
+    for (Classifier classifier : new Classifier[] { unlimited, limited, tiny }) {
+      // twice, so that the second time finds some rows in the cache and some evicted
+      for (int pass = 0; pass < 2; pass++) {
+        for (int i = 0; i < features.length; i++) {
+          Assert.assertArrayEquals(expected[i], classifier.computeScores(features[i]), 0.0);
+        }
+      }
+      Assert.assertTrue(classifier.cacheStatistics(), classifier.cacheStatistics().contains("misses="));
+    }
+    Assert.assertTrue(tiny.cacheStatistics().contains("capacity=4,"));
+
+    for (int batchSize : new int[] { 1, 16, 300 }) {
+      for (int start = 0; start < features.length; start += batchSize) {
+        int size = Math.min(batchSize, features.length - start);
+        int[][] batch = new int[size][];
+        System.arraycopy(features, start, batch, 0, size);
+        double[][] scores = tiny.computeScores(batch, size);
+        for (int b = 0; b < size; b++) {
+          Assert.assertArrayEquals(expected[start + b], scores[b], 0.0);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testNoCacheScoresInBatches() {
+    int[][] features = features();
+    Classifier classifier = classifier("numCached", "0");
+    Assert.assertEquals("no cache", classifier.cacheStatistics());
+    double[][] scores = classifier.computeScores(features, features.length);
+    for (int i = 0; i < features.length; i++) {
+      Assert.assertArrayEquals(classifier.computeScores(features[i]), scores[i], 0.0);
+    }
+  }
+
+  /** More than 65536 precomputed feature IDs, whose table is bigger than the old hash could reach. */
+  @Test
+  public void testManyPreComputedFeatures() {
+    int numWords = 2500;
+    int hiddenSize = 4;
+    Random random = new Random(5678);
+    double[][] E = matrix(random, numWords, EMBEDDING_SIZE);
+    double[][] W1 = matrix(random, hiddenSize, EMBEDDING_SIZE * Config.numTokens);
+    double[] b1 = matrix(random, 1, hiddenSize)[0];
+    double[][] W2 = matrix(random, NUM_LABELS, hiddenSize);
+    List<Integer> preComputed = new ArrayList<>();
+    for (int i = 0; i < 100000; i++) {
+      preComputed.add(i);
+    }
+    Classifier classifier = new Classifier(new Config(PropertiesUtils.asProperties(
+        "embeddingSize", Integer.toString(EMBEDDING_SIZE), "hiddenSize", Integer.toString(hiddenSize),
+        "numPreComputed", "100000", "numCached", "0")), E, W1, b1, W2, preComputed);
+    classifier.preCompute();
+    // with the table half full, linear probing rarely needs to look far
+    Assert.assertTrue(Integer.toString(classifier.maxPreComputedProbes()), classifier.maxPreComputedProbes() < 100);
+
+    Classifier plain = new Classifier(new Config(PropertiesUtils.asProperties(
+        "embeddingSize", Integer.toString(EMBEDDING_SIZE), "hiddenSize", Integer.toString(hiddenSize),
+        "numPreComputed", "0", "numCached", "0")), E, W1, b1, W2, preComputed);
+    // features both precomputed (word index below 2084) and not
+    for (int i = 0; i < 200; i++) {
+      int[] feature = new int[Config.numTokens];
+      for (int j = 0; j < feature.length; j++) {
+        feature[j] = random.nextInt(numWords);
+      }
+      Assert.assertArrayEquals(plain.computeScores(feature), classifier.computeScores(feature), 1e-12);
+    }
+  }
+
+}
@@ -0,0 +1,214 @@
+package edu.stanford.nlp.parser.nndep;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import edu.stanford.nlp.io.IOUtils;
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.trees.GrammaticalStructure;
+import edu.stanford.nlp.util.ArrayCoreMap;
+import edu.stanford.nlp.util.CoreMap;
+import edu.stanford.nlp.util.PropertiesUtils;
+
+/**
+ * Trains a small parser on a made up treebank, and checks that parsing
+ * sentences in batches gives the same parses as parsing them one at a time.
+ */
+public class DependencyParserBatchTest {
+
+  private static final String[][] WORDS = {
+      { "the", "a", "every" },  // DT
+      { "big", "old", "new" },  // JJ
+      { "man", "book", "dog", "report" },  // NN
+      { "sees", "reads", "writes" },  // VBZ
+      { "in", "on", "near" },  // IN
+  };
+  private static final String[] TAGS = { "DT", "JJ", "NN", "VBZ", "IN" };
+
+  private static File dir;
+  private static String model;
+
+  /** A token of a sentence being made up: its word, tag, head and relation. */
+  private static class Token {
+    final String word;
+    final String tag;
+    int head;
+    final String relation;
+
+    Token(Random random, int tag, int head, String relation) {
+      String[] words = WORDS[tag];
+      this.word = words[random.nextInt(words.length)];
+      this.tag = TAGS[tag];
+      this.head = head;
+      this.relation = relation;
+    }
+  }
+
+  /** Adds a noun phrase headed by the token at head + 1 or later, whose own head is given. */
+  private static int nounPhrase(Random random, List<Token> tokens, int head, String relation) {
+    int start = tokens.size();
+    boolean adjective = random.nextBoolean();
+    int noun = start + (adjective ? 3 : 2);
+    tokens.add(new Token(random, 0, noun, "det"));
+    if (adjective) {
+      tokens.add(new Token(random, 1, noun, "amod"));
+    }
+    tokens.add(new Token(random, 2, head, relation));
+    return noun;
+  }
+
+  /** A sentence as tokens numbered from 1, with heads numbered the same way and 0 for the root. */
+  private static List<Token> sentence(Random random) {
+    List<Token> tokens = new ArrayList<>();
+    // the verb's position is not known yet, so the subject points at -1 for now
+    nounPhrase(random, tokens, -1, "nsubj");
+    int verb = tokens.size() + 1;
+    for (Token token : tokens) {
+      if (token.head == -1) {
+        token.head = verb;
+      }
+    }
+    tokens.add(new Token(random, 3, 0, "root"));
+    int object = nounPhrase(random, tokens, verb, "obj");
+    if (random.nextBoolean()) {
+      Token preposition = new Token(random, 4, -1, "case");
+      tokens.add(preposition);
+      preposition.head = nounPhrase(random, tokens, object, "nmod");
+    }
+    return tokens;
+  }
+
+  private static CoreMap toCoreMap(List<Token> tokens) {
+    List<CoreLabel> labels = new ArrayList<>();
+    for (Token token : tokens) {
+      CoreLabel label = new CoreLabel();
+      label.setWord(token.word);
+      label.setValue(token.word);
+      label.setTag(token.tag);
+      label.setIndex(labels.size() + 1);
+      labels.add(label);
+    }
+    CoreMap sentence = new ArrayCoreMap();
+    sentence.set(CoreAnnotations.TokensAnnotation.class, labels);
+    return sentence;
+  }
+
+  @BeforeClass
+  public static void trainParser() throws Exception {
+    dir = Files.createTempDirectory("nndep-batch").toFile();
+    File train = new File(dir, "train.conll");
+    Random random = new Random(42);
+    try (PrintWriter out = IOUtils.getPrintWriter(train)) {
+      for (int i = 0; i < 200; i++) {
+        List<Token> tokens = sentence(random);
+        for (int t = 0; t < tokens.size(); t++) {
+          Token token = tokens.get(t);
+          out.println((t + 1) + "\t" + token.word + "\t_\t" + token.tag + "\t" + token.tag + "\t_\t" +
+                      token.head + "\t" + token.relation + "\t_\t_");
+        }
+        out.println();
+      }
+    }
+    model = new File(dir, "model.txt.gz").getPath();
+    DependencyParser parser = new DependencyParser(PropertiesUtils.asProperties(
+        "maxIter", "50", "embeddingSize", "10", "hiddenSize", "20", "trainingThreads", "1", "numPreComputed", "30"));
+    parser.train(train.getPath(), model);
+  }
+
+  @AfterClass
+  public static void deleteParser() {
+    IOUtils.deleteRecursively(dir);
+  }
+
+  /** Sentences to parse, with some empty ones, which are done before any transition. */
+  private static List<CoreMap> testSentences() {
+    List<CoreMap> sentences = new ArrayList<>();
+    Random random = new Random(7);
+    for (int i = 0; i < 40; i++) {
+      if (i % 9 == 0) {
+        sentences.add(toCoreMap(new ArrayList<>()));
+      }
+      sentences.add(toCoreMap(sentence(random)));
+    }
+    sentences.add(toCoreMap(new ArrayList<>()));
+    return sentences;
+  }
+
+  private static DependencyParser loadParser(String... extraProperties) {
+    return DependencyParser.loadFromModelFile(model, PropertiesUtils.asProperties(extraProperties));
+  }
+
+  private static List<String> parse(DependencyParser parser, List<CoreMap> sentences) {
+    List<String> parses = new ArrayList<>();
+    for (CoreMap sentence : sentences) {
+      parses.add(parser.predict(sentence).typedDependencies().toString());
+    }
+    return parses;
+  }
+
+  @Test
+  public void testBatchesMatchSingleSentences() {
+    List<CoreMap> sentences = testSentences();
+    // with and without the cache, and with few precomputed tokens so that both are used
+    String[][] settings = { {}, { "numCached", "0" }, { "numPreComputed", "5" }, { "numPreComputed", "5", "numCached", "0" } };
+    for (String[] setting : settings) {
+      DependencyParser parser = loadParser(setting);
+      List<String> expected = parse(parser, sentences);
+      // batches of 1 and 3 are refilled as sentences finish; 64 takes every sentence at once
+      for (int batchSize : new int[] { 1, 3, 7, 64 }) {
+        List<String> batched = new ArrayList<>();
+        for (GrammaticalStructure gs : parser.predict(sentences, batchSize)) {
+          batched.add(gs.typedDependencies().toString());
+        }
+        Assert.assertEquals("batch size " + batchSize, expected, batched);
+      }
+    }
+  }
+
+  @Test
+  public void testCacheSizeDoesNotChangeParses() {
+    List<CoreMap> sentences = testSentences();
+    // few precomputed tokens, so that most of them go through the cache
+    List<String> expected = parse(loadParser("numPreComputed", "5", "numCached", "100000"), sentences);
+    String[][] settings = { { "numCached", "4" }, { "numCached", "100000", "maxCacheMB", "1" } };
+    for (String[] setting : settings) {
+      List<String> props = new ArrayList<>(Arrays.asList(setting));
+      props.add("numPreComputed");
+      props.add("5");
+      DependencyParser parser = loadParser(props.toArray(new String[0]));
+      Assert.assertEquals(expected, parse(parser, sentences));
+      List<String> batched = new ArrayList<>();
+      for (GrammaticalStructure gs : parser.predict(sentences, 8)) {
+        batched.add(gs.typedDependencies().toString());
+      }
+      Assert.assertEquals(expected, batched);
+    }
+  }
+
+  @Test
+  public void testCacheStatistics() {
+    DependencyParser parser = loadParser("numPreComputed", "5", "numCached", "1000");
+    Assert.assertTrue(parser.cacheStatistics(), parser.cacheStatistics().contains("hits=0, misses=0,"));
+    parse(parser, testSentences());
+    String statistics = parser.cacheStatistics();
+    Assert.assertTrue(statistics, statistics.contains("capacity=1024,"));
+    Assert.assertFalse(statistics, statistics.contains("hits=0,"));
+    Assert.assertFalse(statistics, statistics.contains("misses=0,"));
+
+    Assert.assertEquals("no cache", loadParser("numCached", "0").cacheStatistics());
+    Assert.assertEquals("no model", new DependencyParser(new Properties()).cacheStatistics());
+  }
+
+}
@@ -0,0 +1,94 @@
+package edu.stanford.nlp.parser.shiftreduce;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import edu.stanford.nlp.util.Generics;
+
+public class FeatureWeightTableTest extends TestCase {
+
+  private static final int NUM_TRANSITIONS = 12;
+
+  public void testScoresMatchWeights() {
+    Random random = new Random(1234);
+    Map<String, Weight> featureWeights = Generics.newHashMap();
+    for (int feature = 0; feature < 500; ++feature) {
+      Weight weight = new Weight();
+      int numScores = random.nextInt(4);
+      for (int i = 0; i < numScores; ++i) {
+        weight.updateWeight(random.nextInt(NUM_TRANSITIONS), random.nextFloat() - 0.5f);
+      }
+      featureWeights.put("F" + feature, weight);
+    }
+    FeatureWeightTable table = new FeatureWeightTable(featureWeights);
+
+    for (int trial = 0; trial < 50; ++trial) {
+      float[] expected = new float[NUM_TRANSITIONS];
+      float[] scores = new float[NUM_TRANSITIONS];
+      for (int i = 0; i < 20; ++i) {
+        // some of these features are not in the model
+        String feature = "F" + random.nextInt(600);
+        Weight weight = featureWeights.get(feature);
+        if (weight != null) {
+          weight.score(expected);
+        }
+        table.score(feature, scores);
+      }
+      assertTrue(Arrays.equals(expected, scores));
+    }
+  }
+
+  public void testFeatureWeightsFromTable() {
+    Random random = new Random(4321);
+    Map<String, Weight> featureWeights = Generics.newHashMap();
+    for (int feature = 0; feature < 300; ++feature) {
+      Weight weight = new Weight();
+      int numScores = random.nextInt(4) + 1;
+      for (int i = 0; i < numScores; ++i) {
+        weight.updateWeight(random.nextInt(NUM_TRANSITIONS), random.nextFloat() - 0.5f);
+      }
+      featureWeights.put("F" + feature, weight);
+    }
+    Map<String, Weight> copy = new FeatureWeightTable(featureWeights).toFeatureWeights();
+    assertEquals(featureWeights.keySet(), copy.keySet());
+    for (Map.Entry<String, Weight> entry : featureWeights.entrySet()) {
+      Weight weight = entry.getValue();
+      Weight other = copy.get(entry.getKey());
+      assertEquals(weight.size(), other.size());
+      for (int i = 0; i < weight.size(); ++i) {
+        assertEquals(weight.indexAt(i), other.indexAt(i));
+        assertEquals(weight.scoreAt(i), other.scoreAt(i));
+      }
+    }
+  }
+
+  public void testEmptyWeightsAreLeftOut() {
+    Map<String, Weight> featureWeights = Generics.newHashMap();
+    Weight weight = new Weight();
+    weight.updateWeight(3, 1.5f);
+    featureWeights.put("S0T-NN", weight);
+    featureWeights.put("S0T-VB", new Weight());
+    FeatureWeightTable table = new FeatureWeightTable(featureWeights);
+    assertEquals(1, table.size());
+
+    float[] scores = new float[5];
+    table.score("S0T-VB", scores);
+    table.score("S0T-JJ", scores);
+    assertTrue(Arrays.equals(new float[5], scores));
+    table.score("S0T-NN", scores);
+    table.score("S0T-NN", scores);
+    assertEquals(3.0f, scores[3]);
+  }
+
+  public void testEmptyTable() {
+    FeatureWeightTable table = new FeatureWeightTable(Generics.newHashMap());
+    assertEquals(0, table.size());
+    float[] scores = new float[2];
+    table.score("S0T-NN", scores);
+    assertTrue(Arrays.equals(new float[2], scores));
+  }
+
+}
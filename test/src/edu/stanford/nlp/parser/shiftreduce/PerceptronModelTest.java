@@ -0,0 +1,217 @@
+package edu.stanford.nlp.parser.shiftreduce;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import edu.stanford.nlp.ling.TaggedWord;
+import edu.stanford.nlp.trees.Tree;
+import edu.stanford.nlp.trees.Treebank;
+import edu.stanford.nlp.util.HashIndex;
+import edu.stanford.nlp.util.Index;
+import edu.stanford.nlp.util.ScoredComparator;
+import edu.stanford.nlp.util.ScoredObject;
+
+/**
+ * Trains a small model on a made up treebank, and checks that parsing with it
+ * gives the same parses as the plain beam search, and that reading or saving
+ * the model while it parses leaves it parsing from the same weight table.
+ */
+public class PerceptronModelTest extends TestCase {
+
+  private static final String[][] WORDS = {
+      { "the", "a", "every" },  // DT
+      { "big", "old", "new" },  // JJ
+      { "man", "book", "dog", "report" },  // NN
+      { "sees", "reads", "writes" },  // VBZ
+      { "in", "on", "near" },  // IN
+  };
+  private static final String[] TAGS = { "DT", "JJ", "NN", "VBZ", "IN" };
+
+  private static ShiftReduceParser parser;
+
+  private static String preterminal(Random random, int tag) {
+    String[] words = WORDS[tag];
+    return "(" + TAGS[tag] + ' ' + words[random.nextInt(words.length)] + ')';
+  }
+
+  private static String nounPhrase(Random random) {
+    String np = "(NP " + preterminal(random, 0) + (random.nextBoolean() ? ' ' + preterminal(random, 1) : "") +
+        ' ' + preterminal(random, 2) + ')';
+    if (random.nextInt(3) == 0) {
+      np = "(NP " + np + " (PP " + preterminal(random, 4) + ' ' + nounPhrase(random) + "))";
+    }
+    return np;
+  }
+
+  private static Tree tree(Random random) {
+    String vp = "(VP " + preterminal(random, 3) + ' ' + nounPhrase(random) + ')';
+    if (random.nextBoolean()) {
+      vp = "(VP " + vp + " (PP " + preterminal(random, 4) + ' ' + nounPhrase(random) + "))";
+    }
+    return Tree.valueOf("(ROOT (S " + nounPhrase(random) + ' ' + vp + " (. .)))");
+  }
+
+  private static synchronized ShiftReduceParser parser() {
+    if (parser == null) {
+      ShiftReduceOptions op = ShiftReduceParser.buildTrainingOptions(null, new String[] {
+          "-trainingIterations", "5", "-randomSeed", "42", "-trainingThreads", "1", "-averagedModels", "0" });
+      Treebank treebank = op.tlpParams.memoryTreebank();
+      Random random = new Random(42);
+      for (int i = 0; i < 200; i++) {
+        treebank.add(tree(random));
+      }
+      List<Tree> binarized = ShiftReduceParser.binarizeTreebank(treebank, op);
+      Set<String> rootStates = Collections.singleton("ROOT");
+      List<List<Transition>> transitionLists =
+          CreateTransitionSequence.createTransitionSequences(binarized, op.compoundUnaries, rootStates, rootStates);
+      Index<Transition> transitionIndex = new HashIndex<>();
+      for (List<Transition> transitions : transitionLists) {
+        transitionIndex.addAll(transitions);
+      }
+      PerceptronModel model = new PerceptronModel(op, transitionIndex, ShiftReduceParser.findKnownStates(binarized),
+                                                  rootStates, rootStates);
+      model.trainModel(null, null, new Random(42), binarized, transitionLists, null, 1);
+      parser = new ShiftReduceParser(op, model);
+    }
+    return parser;
+  }
+
+  private static List<List<TaggedWord>> sentences() {
+    List<List<TaggedWord>> sentences = new ArrayList<>();
+    Random random = new Random(7);
+    for (int i = 0; i < 30; i++) {
+      sentences.add(tree(random).taggedYield());
+    }
+    return sentences;
+  }
+
+  /**
+   * The best state of a beam search which applies every transition it
+   * considers, as the parser did before it ranked transitions first.
+   */
+  private static State parseApplyingEveryTransition(ShiftReduceParser parser, List<TaggedWord> sentence) {
+    int maxBeamSize = Math.max(parser.op.testOptions().beamSize, 1);
+    PriorityQueue<State> beam = new PriorityQueue<>(maxBeamSize + 1, ScoredComparator.ASCENDING_COMPARATOR);
+    beam.add(ShiftReduceParser.initialStateFromTaggedSentence(sentence));
+    while (true) {
+      PriorityQueue<State> oldBeam = beam;
+      beam = new PriorityQueue<>(maxBeamSize + 1, ScoredComparator.ASCENDING_COMPARATOR);
+      State bestState = null;
+      for (State state : oldBeam) {
+        for (ScoredObject<Integer> predicted : parser.model.findHighestScoringTransitions(state, true, maxBeamSize, null)) {
+          State newState = parser.model.transitionIndex.get(predicted.object()).apply(state, predicted.score());
+          if (bestState == null || bestState.score() < newState.score()) {
+            bestState = newState;
+          }
+          beam.add(newState);
+          if (beam.size() > maxBeamSize) {
+            beam.poll();
+          }
+        }
+      }
+      assertFalse(beam.isEmpty());
+      if (bestState == null || bestState.isFinished()) {
+        break;
+      }
+    }
+    List<State> states = new ArrayList<>(beam);
+    Collections.sort(states, beam.comparator());
+    Collections.reverse(states);
+    return states.get(0);
+  }
+
+  /** The best binarized parse and score of each sentence. */
+  private static List<String> parse(ShiftReduceParser parser, List<List<TaggedWord>> sentences) {
+    List<String> parses = new ArrayList<>();
+    ShiftReduceParserQuery pq = (ShiftReduceParserQuery) parser.parserQuery();
+    for (List<TaggedWord> sentence : sentences) {
+      assertTrue(pq.parse(sentence));
+      parses.add(pq.getBestBinarizedParse() + " " + pq.getPCFGScore());
+    }
+    return parses;
+  }
+
+  public void testBeamMatchesApplyingEveryTransition() {
+    ShiftReduceParser parser = parser();
+    List<List<TaggedWord>> sentences = sentences();
+    synchronized (PerceptronModelTest.class) {
+      int beamSize = parser.op.testOptions().beamSize;
+      try {
+        for (int size : new int[] { 1, 4, 8 }) {
+          parser.op.testOptions().beamSize = size;
+          List<String> expected = new ArrayList<>();
+          for (List<TaggedWord> sentence : sentences) {
+            State state = parseApplyingEveryTransition(parser, sentence);
+            expected.add(state.stack.peek() + " " + state.score);
+          }
+          assertEquals("beam size " + size, expected, parse(parser, sentences));
+        }
+      } finally {
+        parser.op.testOptions().beamSize = beamSize;
+      }
+    }
+  }
+
+  /** Reading or copying the weights of a model which is parsing leaves it parsing from the same table. */
+  public void testReadingWeightsKeepsTable() throws IOException {
+    ShiftReduceParser parser = parser();
+    List<List<TaggedWord>> sentences = sentences();
+    List<String> expected = parse(parser, sentences);
+    PerceptronModel model = (PerceptronModel) parser.model;
+    FeatureWeightTable table = model.weightTable();
+
+    assertTrue(model.tagSet().contains("NN"));
+    model.outputStats();
+    PerceptronModel copy = new PerceptronModel(model);
+    try (ObjectOutputStream out = new ObjectOutputStream(new ByteArrayOutputStream())) {
+      out.writeObject(parser);
+    }
+    assertSame(table, model.weightTable());
+    assertEquals(expected, parse(parser, sentences));
+    assertEquals(expected, parse(new ShiftReduceParser(parser.op, copy), sentences));
+  }
+
+  public void testSerializeAfterParsing() throws IOException, ClassNotFoundException {
+    ShiftReduceParser parser = parser();
+    List<List<TaggedWord>> sentences = sentences();
+    List<String> expected = parse(parser, sentences);
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+      out.writeObject(parser);
+    }
+    ShiftReduceParser loaded;
+    try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+      loaded = (ShiftReduceParser) in.readObject();
+    }
+    assertEquals(expected, parse(loaded, sentences));
+
+    Map<String, Weight> weights = ((PerceptronModel) parser.model).readFeatureWeights();
+    Map<String, Weight> loadedWeights = ((PerceptronModel) loaded.model).readFeatureWeights();
+    assertEquals(weights.keySet(), loadedWeights.keySet());
+    for (Map.Entry<String, Weight> entry : weights.entrySet()) {
+      Weight weight = entry.getValue();
+      Weight other = loadedWeights.get(entry.getKey());
+      assertEquals(weight.size(), other.size());
+      for (int i = 0; i < weight.size(); ++i) {
+        assertEquals(weight.indexAt(i), other.indexAt(i));
+        assertEquals(weight.scoreAt(i), other.scoreAt(i));
+      }
+    }
+    // the loaded weights can still be trained
+    ((PerceptronModel) loaded.model).featureWeights().put("S0T-XX", new Weight());
+  }
+
+}
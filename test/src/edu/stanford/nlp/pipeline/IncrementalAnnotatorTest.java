@@ -0,0 +1,201 @@
+package edu.stanford.nlp.pipeline;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.stanford.nlp.ling.CoreAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.util.CoreMap;
+
+/**
+ * Checks that updating an annotation for an edit gives the annotation of the new text,
+ * and only redoes the sentences around the edit.
+ */
+public class IncrementalAnnotatorTest {
+
+  private static final String TEXT =
+      "John met Mary in Paris.  They went to London on Monday.\n" +
+      "Later Bob called Alice from Berlin.  Nobody answered.  Then Carol wrote to Dave in Rome.";
+
+  /** Tags capitalized words after the first word of a sentence as PERSON, and counts the sentences it tags. */
+  private static class CapitalizedTagger extends SentenceAnnotator {
+    int sentences; // = 0
+
+    @Override
+    protected int nThreads() {
+      return 1;
+    }
+
+    @Override
+    protected long maxTime() {
+      return 0;
+    }
+
+    @Override
+    protected void doOneSentence(Annotation annotation, CoreMap sentence) {
+      sentences++;
+      for (CoreLabel token : sentence.get(CoreAnnotations.TokensAnnotation.class)) {
+        boolean name = token.index() > 1 && Character.isUpperCase(token.word().charAt(0));
+        token.setNER(name ? "PERSON" : "O");
+      }
+    }
+
+    @Override
+    protected void doOneFailedSentence(Annotation annotation, CoreMap sentence) { }
+
+    @Override
+    public Set<Class<? extends CoreAnnotation>> requirementsSatisfied() {
+      return Collections.singleton(CoreAnnotations.NamedEntityTagAnnotation.class);
+    }
+
+    @Override
+    public Set<Class<? extends CoreAnnotation>> requires() {
+      return Collections.emptySet();
+    }
+  }
+
+  /** A document-level annotator, which records how many tokens the document had. */
+  private static class TokenCounter implements Annotator {
+    int calls; // = 0
+    int tokens; // = 0
+
+    @Override
+    public void annotate(Annotation annotation) {
+      calls++;
+      tokens = annotation.get(CoreAnnotations.TokensAnnotation.class).size();
+    }
+
+    @Override
+    public Set<Class<? extends CoreAnnotation>> requirementsSatisfied() {
+      return Collections.emptySet();
+    }
+
+    @Override
+    public Set<Class<? extends CoreAnnotation>> requires() {
+      return Collections.emptySet();
+    }
+  }
+
+  private CapitalizedTagger tagger;
+  private TokenCounter counter;
+  private AnnotationPipeline pipeline;
+
+  @Before
+  public void setUp() {
+    tagger = new CapitalizedTagger();
+    counter = new TokenCounter();
+    pipeline = new AnnotationPipeline();
+    pipeline.addAnnotator(new TokenizerAnnotator(false, "en"));
+    pipeline.addAnnotator(new WordsToSentencesAnnotator(false));
+    pipeline.addAnnotator(tagger);
+    pipeline.addAnnotator(new EntityMentionsAnnotator());
+    pipeline.addAnnotator(counter);
+  }
+
+  private Annotation annotate(String text) {
+    Annotation annotation = new Annotation(text);
+    pipeline.annotate(annotation);
+    return annotation;
+  }
+
+  private static final List<Class<? extends CoreAnnotation<?>>> KEYS = new ArrayList<>();
+  static {
+    KEYS.add(CoreAnnotations.TextAnnotation.class);
+    KEYS.add(CoreAnnotations.CharacterOffsetBeginAnnotation.class);
+    KEYS.add(CoreAnnotations.CharacterOffsetEndAnnotation.class);
+    KEYS.add(CoreAnnotations.BeforeAnnotation.class);
+    KEYS.add(CoreAnnotations.AfterAnnotation.class);
+    KEYS.add(CoreAnnotations.TokenBeginAnnotation.class);
+    KEYS.add(CoreAnnotations.TokenEndAnnotation.class);
+    KEYS.add(CoreAnnotations.IndexAnnotation.class);
+    KEYS.add(CoreAnnotations.SentenceIndexAnnotation.class);
+    KEYS.add(CoreAnnotations.NamedEntityTagAnnotation.class);
+    KEYS.add(CoreAnnotations.EntityMentionIndexAnnotation.class);
+    KEYS.add(CoreAnnotations.CanonicalEntityMentionIndexAnnotation.class);
+  }
+
+  private static void assertSameMaps(String what, List<? extends CoreMap> expected, List<? extends CoreMap> actual) {
+    Assert.assertEquals(what, expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      for (Class<? extends CoreAnnotation<?>> key : KEYS) {
+        @SuppressWarnings("unchecked")
+        Class<? extends CoreAnnotation<Object>> k = (Class<? extends CoreAnnotation<Object>>) key;
+        Assert.assertEquals(what + ' ' + i + ' ' + key.getSimpleName(), expected.get(i).get(k), actual.get(i).get(k));
+      }
+    }
+  }
+
+  private static void assertSameAnnotation(Annotation expected, Annotation actual) {
+    Assert.assertEquals(expected.get(CoreAnnotations.TextAnnotation.class), actual.get(CoreAnnotations.TextAnnotation.class));
+    assertSameMaps("token", expected.get(CoreAnnotations.TokensAnnotation.class), actual.get(CoreAnnotations.TokensAnnotation.class));
+    List<CoreMap> expectedSentences = expected.get(CoreAnnotations.SentencesAnnotation.class);
+    List<CoreMap> actualSentences = actual.get(CoreAnnotations.SentencesAnnotation.class);
+    assertSameMaps("sentence", expectedSentences, actualSentences);
+    for (int i = 0; i < expectedSentences.size(); i++) {
+      assertSameMaps("sentence " + i + " token", expectedSentences.get(i).get(CoreAnnotations.TokensAnnotation.class),
+          actualSentences.get(i).get(CoreAnnotations.TokensAnnotation.class));
+      assertSameMaps("sentence " + i + " mention", expectedSentences.get(i).get(CoreAnnotations.MentionsAnnotation.class),
+          actualSentences.get(i).get(CoreAnnotations.MentionsAnnotation.class));
+    }
+    assertSameMaps("mention", expected.get(CoreAnnotations.MentionsAnnotation.class), actual.get(CoreAnnotations.MentionsAnnotation.class));
+  }
+
+  /** Applies the edit incrementally and checks it against annotating the new text, returning how many sentences were tagged. */
+  private int checkEdit(int begin, int end, String replacement) {
+    Annotation annotation = annotate(TEXT);
+    String newText = TEXT.substring(0, begin) + replacement + TEXT.substring(end);
+    Annotation expected = annotate(newText);
+    tagger.sentences = 0;
+    counter.calls = 0;
+    new IncrementalAnnotator(pipeline).update(annotation, begin, end, replacement);
+    assertSameAnnotation(expected, annotation);
+    Assert.assertEquals(1, counter.calls);
+    Assert.assertEquals(expected.get(CoreAnnotations.TokensAnnotation.class).size(), counter.tokens);
+    return tagger.sentences;
+  }
+
+  @Test
+  public void testReplaceWord() {
+    int at = TEXT.indexOf("Alice");
+    Assert.assertEquals(3, checkEdit(at, at + "Alice".length(), "Eve Smith"));
+  }
+
+  @Test
+  public void testAddAndRemoveSentences() {
+    int at = TEXT.indexOf("Nobody");
+    Assert.assertEquals(4, checkEdit(at, at, "Frank hung up.  "));
+    // merging the first two sentences
+    at = TEXT.indexOf(".  They");
+    Assert.assertEquals(2, checkEdit(at, at + 3, ", and they"));
+    // removing a sentence
+    at = TEXT.indexOf("Nobody");
+    Assert.assertEquals(2, checkEdit(at, at + "Nobody answered.  ".length(), ""));
+  }
+
+  @Test
+  public void testEditsAtTheEnds() {
+    Assert.assertEquals(2, checkEdit(0, 4, "Zoe"));
+    Assert.assertEquals(3, checkEdit(TEXT.length() - 5, TEXT.length(), "Milan.  Done."));  // and the new sentence
+    Assert.assertEquals(2, checkEdit(TEXT.length(), TEXT.length(), "  "));
+  }
+
+  @Test
+  public void testUpdateToText() {
+    Annotation annotation = annotate(TEXT);
+    String newText = TEXT.replace("Monday", "Tuesday");
+    tagger.sentences = 0;
+    List<CoreMap> redone = new IncrementalAnnotator(pipeline, 0).update(annotation, newText);
+    Assert.assertEquals(1, redone.size());
+    Assert.assertEquals(1, tagger.sentences);
+    assertSameAnnotation(annotate(newText), annotation);
+    Assert.assertTrue(new IncrementalAnnotator(pipeline).update(annotation, newText).isEmpty());
+  }
+
+}
@@ -6,6 +6,7 @@ import edu.stanford.nlp.util.StringUtils;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.function.Consumer;
@@ -189,4 +190,24 @@ public class JSONOutputterTest {
     Assert.assertEquals(expected, actual);
   }
 
+  @Test
+  public void testChunkedDocument() throws IOException {
+    Annotation ann = new Annotation("JSON is neat. Better than XML. Chunks too.");
+    StanfordCoreNLP pipeline = new StanfordCoreNLP(PropertiesUtils.asProperties("annotators", "tokenize, ssplit"));
+    pipeline.annotate(ann);
+
+    // Count the flushes that reach the underlying stream
+    int[] flushes = new int[1];
+    ByteArrayOutputStream os = new ByteArrayOutputStream() {
+      @Override
+      public void flush() {
+        flushes[0] += 1;
+      }
+    };
+    new JSONOutputter().print(ann, os, AnnotationOutputter.getOptions(PropertiesUtils.asProperties("output.chunked", "true")));
+    Assert.assertEquals(new JSONOutputter().print(ann), new String(os.toByteArray(), "UTF-8"));
+    // one per sentence, plus the final one
+    Assert.assertEquals(4, flushes[0]);
+  }
+
 }
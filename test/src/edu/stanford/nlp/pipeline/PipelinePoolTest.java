@@ -0,0 +1,52 @@
+package edu.stanford.nlp.pipeline;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.stanford.nlp.util.PropertiesUtils;
+
+import java.util.Properties;
+
+/**
+ * Test the LRU behavior and statistics of {@link PipelinePool}.
+ */
+public class PipelinePoolTest {
+
+  private static Properties props(String outputFormat) {
+    return PropertiesUtils.asProperties("annotators", "tokenize", "outputFormat", outputFormat, "date", "2020-01-01");
+  }
+
+  @Test
+  public void testHitsAndEvictions() {
+    PipelinePool pool = new PipelinePool(2);
+    Assert.assertTrue(pool.isEmpty());
+    StanfordCoreNLP json = pool.get(props("json"));
+    StanfordCoreNLP text = pool.get(props("text"));
+    Assert.assertEquals(2, pool.misses());
+
+    // the date is not part of the key
+    Properties otherDate = props("json");
+    otherDate.setProperty("date", "2021-01-01");
+    Assert.assertSame(json, pool.get(otherDate));
+    Assert.assertEquals(1, pool.hits());
+
+    // json was used more recently than text, so text goes
+    pool.get(props("xml"));
+    Assert.assertEquals(1, pool.evictions());
+    Assert.assertEquals(2, pool.size());
+    Assert.assertSame(json, pool.get(props("json")));
+    Assert.assertNotSame(text, pool.get(props("text")));
+    Assert.assertEquals(4, pool.misses());
+  }
+
+  @Test
+  public void testWarmup() {
+    PipelinePool pool = new PipelinePool(0);
+    pool.warmup(props("json"), 2);
+    Assert.assertEquals(1, pool.size());
+    pool.get(props("json"));
+    Assert.assertEquals(1, pool.hits());
+    Assert.assertEquals(1, pool.misses());
+  }
+
+}
@@ -0,0 +1,140 @@
+package edu.stanford.nlp.pipeline;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.util.PropertiesUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Write and read back a corpus with {@link ProtobufCorpus}, with and without its index and projections.
+ */
+public class ProtobufCorpusTest {
+
+  private static CoreNLPProtos.Document document(int i) {
+    CoreNLPProtos.Sentence sentence = CoreNLPProtos.Sentence.newBuilder()
+        .addToken(CoreNLPProtos.Token.newBuilder().setWord("Doc").setNer("O"))
+        .addToken(CoreNLPProtos.Token.newBuilder().setWord("number" + i).setNer("NUMBER"))
+        .setTokenOffsetBegin(0).setTokenOffsetEnd(2)
+        .setParseTree(CoreNLPProtos.ParseTree.newBuilder().setValue("ROOT"))
+        .setBasicDependencies(CoreNLPProtos.DependencyGraph.newBuilder()
+            .addNode(CoreNLPProtos.DependencyGraph.Node.newBuilder().setSentenceIndex(0).setIndex(1))
+            .addRoot(1))
+        .build();
+    return CoreNLPProtos.Document.newBuilder()
+        .setText("Doc number" + i)
+        .setDocID("doc" + i)
+        .addSentence(sentence)
+        .build();
+  }
+
+  private static File writeCorpus(int numDocuments, boolean writeIndex) throws IOException {
+    File file = File.createTempFile("corpus", ".pb");
+    file.deleteOnExit();
+    new File(file.getPath() + ProtobufCorpus.INDEX_SUFFIX).deleteOnExit();
+    try (ProtobufCorpus.Writer writer = new ProtobufCorpus.Writer(file.getPath(), writeIndex)) {
+      for (int i = 0; i < numDocuments; ++i) {
+        writer.write(document(i));
+      }
+      Assert.assertEquals(numDocuments, writer.size());
+    }
+    return file;
+  }
+
+  @Test
+  public void testIterate() throws IOException {
+    File file = writeCorpus(5, false);
+    ProtobufCorpus.Reader reader = new ProtobufCorpus.Reader(file.getPath());
+    Assert.assertFalse(reader.hasIndex());
+    // the reader can be iterated over more than once
+    for (int pass = 0; pass < 2; ++pass) {
+      List<CoreNLPProtos.Document> read = new ArrayList<>();
+      reader.forEach(read::add);
+      Assert.assertEquals(5, read.size());
+      for (int i = 0; i < 5; ++i) {
+        Assert.assertEquals(document(i), read.get(i));
+      }
+    }
+  }
+
+  @Test
+  public void testIndex() throws IOException {
+    File file = writeCorpus(10, true);
+    try (ProtobufCorpus.Reader reader = new ProtobufCorpus.Reader(file.getPath())) {
+      Assert.assertTrue(reader.hasIndex());
+      Assert.assertEquals(10, reader.size());
+      Assert.assertEquals(document(7), reader.get(7));
+      Assert.assertEquals(document(2), reader.get(2));
+      Assert.assertEquals(document(9), reader.get(9));
+    }
+  }
+
+  @Test
+  public void testProjection() throws IOException {
+    File file = writeCorpus(3, true);
+    try (ProtobufCorpus.Reader reader = new ProtobufCorpus.Reader(file.getPath(), ProtobufCorpus.Projection.TOKENS_AND_NER)) {
+      int i = 0;
+      for (CoreNLPProtos.Document doc : reader) {
+        CoreNLPProtos.Sentence sentence = doc.getSentence(0);
+        Assert.assertEquals("doc" + i, doc.getDocID());
+        Assert.assertEquals("number" + i, sentence.getToken(1).getWord());
+        Assert.assertEquals("NUMBER", sentence.getToken(1).getNer());
+        Assert.assertFalse(sentence.hasParseTree());
+        Assert.assertFalse(sentence.hasBasicDependencies());
+        i += 1;
+      }
+      Assert.assertEquals(3, i);
+      Assert.assertFalse(reader.get(1).getSentence(0).hasParseTree());
+    }
+
+    ProtobufCorpus.Projection noTokens = ProtobufCorpus.Projection.ALL.dropSentenceFields("token");
+    try (ProtobufCorpus.Reader reader = new ProtobufCorpus.Reader(file.getPath(), noTokens)) {
+      CoreNLPProtos.Document doc = reader.iterator().next();
+      Assert.assertEquals(0, doc.getSentence(0).getTokenCount());
+      Assert.assertTrue(doc.getSentence(0).hasParseTree());
+      Assert.assertEquals(document(0).getSentence(0).getParseTree(), doc.getSentence(0).getParseTree());
+    }
+  }
+
+  @Test
+  public void testStopEarly() throws IOException {
+    File file = writeCorpus(3, false);
+    ProtobufCorpus.Reader reader = new ProtobufCorpus.Reader(file.getPath());
+    try (ProtobufCorpus.Reader.DocumentIterator iterator = reader.iterator()) {
+      Assert.assertEquals(document(0), iterator.next());
+    }
+    // closing the reader closes the iterators its caller has abandoned
+    ProtobufCorpus.Reader.DocumentIterator abandoned = reader.iterator();
+    Assert.assertEquals(document(0), abandoned.next());
+    reader.close();
+    Assert.assertFalse(abandoned.hasNext());
+  }
+
+  @Test
+  public void testAnnotations() throws IOException {
+    StanfordCoreNLP pipeline = new StanfordCoreNLP(PropertiesUtils.asProperties("annotators", "tokenize,ssplit"));
+    File file = File.createTempFile("corpus", ".pb.gz");
+    file.deleteOnExit();
+    try (ProtobufCorpus.Writer writer = new ProtobufCorpus.Writer(file.getPath(), false)) {
+      writer.write(pipeline.process("One sentence. Two sentences."));
+      writer.write(pipeline.process("Three sentences."));
+    }
+    ProtobufCorpus.Reader reader = new ProtobufCorpus.Reader(file.getPath(), ProtobufCorpus.Projection.TOKENS_AND_NER);
+    List<Annotation> read = new ArrayList<>();
+    reader.annotations(new ProtobufAnnotationSerializer()).forEach(read::add);
+    Assert.assertEquals(2, read.size());
+    Assert.assertEquals(2, read.get(0).get(CoreAnnotations.SentencesAnnotation.class).size());
+    Assert.assertEquals("Three", read.get(1).get(CoreAnnotations.TokensAnnotation.class).get(0).word());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testCannotDropRequiredField() {
+    ProtobufCorpus.Projection.ALL.dropSentenceFields("tokenOffsetBegin");
+  }
+
+}
@@ -0,0 +1,186 @@
+package edu.stanford.nlp.pipeline;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.stanford.nlp.ling.CoreAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations;
+
+/**
+ * Checks that the staged executor runs every annotator on every document, in order,
+ * and reports exceptions through the callback and the returned futures.
+ */
+public class StagedAnnotationExecutorTest {
+
+  /** Appends its name to the DocID of the annotation, so we can see the order annotators ran in. */
+  private static class AppendingAnnotator implements Annotator {
+    private final String name;
+    private final Set<Class<? extends CoreAnnotation>> satisfied;
+
+    AppendingAnnotator(String name, boolean participates) {
+      this.name = name;
+      this.satisfied = participates ? Collections.singleton(CoreAnnotations.DocIDAnnotation.class) : Collections.emptySet();
+    }
+
+    @Override
+    public void annotate(Annotation annotation) {
+      if (annotation.get(CoreAnnotations.TextAnnotation.class).equals("fail-" + name)) {
+        throw new IllegalStateException("failed in " + name);
+      }
+      String soFar = annotation.get(CoreAnnotations.DocIDAnnotation.class);
+      annotation.set(CoreAnnotations.DocIDAnnotation.class, soFar == null ? name : soFar + name);
+    }
+
+    @Override
+    public Set<Class<? extends CoreAnnotation>> requirementsSatisfied() {
+      return satisfied;
+    }
+
+    @Override
+    public Set<Class<? extends CoreAnnotation>> requires() {
+      return Collections.emptySet();
+    }
+  }
+
+  @Test
+  public void testStageBoundaries() {
+    List<Annotator> annotators = Arrays.asList(
+        new AppendingAnnotator("a", true),
+        new AppendingAnnotator("b", false),
+        new AppendingAnnotator("c", true),
+        new AppendingAnnotator("d", true));
+    Assert.assertArrayEquals(new int[] {0, 2, 3, 4}, StagedAnnotationExecutor.stageBoundaries(annotators));
+    Assert.assertArrayEquals(new int[] {0, 0}, StagedAnnotationExecutor.stageBoundaries(Collections.emptyList()));
+  }
+
+  @Test
+  public void testAnnotatePipelined() {
+    AnnotationPipeline pipeline = new AnnotationPipeline();
+    pipeline.addAnnotator(new AppendingAnnotator("a", true));
+    pipeline.addAnnotator(new AppendingAnnotator("b", false));
+    pipeline.addAnnotator(new AppendingAnnotator("c", true));
+
+    List<Annotation> docs = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      docs.add(new Annotation(i == 50 ? "fail-c" : "doc" + i));
+    }
+    List<Annotation> finished = new ArrayList<>();
+    pipeline.annotatePipelined(docs, 2, finished::add);
+
+    Assert.assertEquals(docs.size(), finished.size());
+    for (int i = 0; i < docs.size(); i++) {
+      Assert.assertSame(docs.get(i), finished.get(i));
+      if (i == 50) {
+        Assert.assertEquals("ab", finished.get(i).get(CoreAnnotations.DocIDAnnotation.class));
+        Assert.assertTrue(finished.get(i).get(CoreAnnotations.ExceptionAnnotation.class) instanceof IllegalStateException);
+      } else {
+        Assert.assertEquals("abc", finished.get(i).get(CoreAnnotations.DocIDAnnotation.class));
+        Assert.assertNull(finished.get(i).get(CoreAnnotations.ExceptionAnnotation.class));
+      }
+    }
+  }
+
+  @Test
+  public void testCallbackExceptionFailsItsFuture() throws InterruptedException {
+    AnnotationPipeline pipeline = new AnnotationPipeline();
+    pipeline.addAnnotator(new AppendingAnnotator("a", true));
+    List<CompletableFuture<Annotation>> futures = new ArrayList<>();
+    try (StagedAnnotationExecutor executor = new StagedAnnotationExecutor(pipeline, 2)) {
+      for (int i = 0; i < 5; i++) {
+        futures.add(executor.submit(new Annotation("doc" + i), done -> {
+          if (done.get(CoreAnnotations.TextAnnotation.class).equals("doc2")) {
+            throw new IllegalStateException("callback failed");
+          }
+        }));
+      }
+    }
+    for (int i = 0; i < futures.size(); i++) {
+      try {
+        Assert.assertEquals("a", futures.get(i).get().get(CoreAnnotations.DocIDAnnotation.class));
+        Assert.assertNotEquals(2, i);
+      } catch (ExecutionException e) {
+        Assert.assertEquals(2, i);
+        Assert.assertEquals("callback failed", e.getCause().getMessage());
+      }
+    }
+  }
+
+  /** An Error in a callback fails its future, and the documents after it still finish. */
+  @Test
+  public void testCallbackErrorFailsItsFuture() throws InterruptedException {
+    AnnotationPipeline pipeline = new AnnotationPipeline();
+    pipeline.addAnnotator(new AppendingAnnotator("a", true));
+    List<CompletableFuture<Annotation>> futures = new ArrayList<>();
+    try (StagedAnnotationExecutor executor = new StagedAnnotationExecutor(pipeline, 1)) {
+      for (int i = 0; i < 6; i++) {
+        futures.add(executor.submit(new Annotation("doc" + i), done -> {
+          if (done.get(CoreAnnotations.TextAnnotation.class).equals("doc1")) {
+            throw new AssertionError("callback failed");
+          }
+        }));
+      }
+    }
+    for (int i = 0; i < futures.size(); i++) {
+      try {
+        Assert.assertEquals("a", futures.get(i).get().get(CoreAnnotations.DocIDAnnotation.class));
+        Assert.assertNotEquals(1, i);
+      } catch (ExecutionException e) {
+        Assert.assertEquals(1, i);
+        Assert.assertTrue(e.getCause() instanceof AssertionError);
+      }
+    }
+  }
+
+  @Test
+  public void testAnnotatePipelinedRethrowsCallbackError() {
+    AnnotationPipeline pipeline = new AnnotationPipeline();
+    pipeline.addAnnotator(new AppendingAnnotator("a", true));
+    List<Annotation> docs = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      docs.add(new Annotation("doc" + i));
+    }
+    try {
+      pipeline.annotatePipelined(docs, 1, done -> {
+        if (done.get(CoreAnnotations.TextAnnotation.class).equals("doc3")) {
+          throw new StackOverflowError("callback failed");
+        }
+      });
+      Assert.fail("the callback's error should have been rethrown");
+    } catch (StackOverflowError e) {
+      Assert.assertEquals("callback failed", e.getMessage());
+    }
+  }
+
+  @Test
+  public void testAnnotatePipelinedRethrowsCallbackException() {
+    AnnotationPipeline pipeline = new AnnotationPipeline();
+    pipeline.addAnnotator(new AppendingAnnotator("a", true));
+    List<Annotation> docs = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      docs.add(new Annotation("doc" + i));
+    }
+    List<Annotation> finished = new ArrayList<>();
+    try {
+      pipeline.annotatePipelined(docs, 1, done -> {
+        if (done.get(CoreAnnotations.TextAnnotation.class).equals("doc3")) {
+          throw new IllegalStateException("callback failed");
+        }
+        finished.add(done);
+      });
+      Assert.fail("the callback's exception should have been rethrown");
+    } catch (IllegalStateException e) {
+      Assert.assertEquals("callback failed", e.getMessage());
+    }
+    // documents are no longer submitted once a callback has failed
+    Assert.assertTrue(finished.size() < docs.size() - 1);
+  }
+
+}
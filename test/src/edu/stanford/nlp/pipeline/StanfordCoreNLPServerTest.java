@@ -0,0 +1,403 @@
+package edu.stanford.nlp.pipeline;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonReader;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.stanford.nlp.io.IOUtils;
+import edu.stanford.nlp.ling.CoreAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.util.ArgumentParser;
+import edu.stanford.nlp.util.CoreMap;
+
+/**
+ * Runs a server with a small annotation pool, and checks how it answers single and
+ * batch requests, including when that pool is busy.  Only tokenize and ssplit are
+ * used, so no models are needed.
+ */
+public class StanfordCoreNLPServerTest {
+
+  /** Holds up annotation of any document whose text starts with "block" until released. */
+  public static class BlockingAnnotator implements Annotator {
+    static volatile CountDownLatch started = new CountDownLatch(1);
+    static volatile CountDownLatch release = new CountDownLatch(0);
+
+    public BlockingAnnotator(String name, Properties props) { }
+
+    @Override
+    public void annotate(Annotation annotation) {
+      if (annotation.toString().startsWith("block")) {
+        started.countDown();
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    }
+
+    @Override
+    public Set<Class<? extends CoreAnnotation>> requirementsSatisfied() {
+      return Collections.emptySet();
+    }
+
+    @Override
+    public Set<Class<? extends CoreAnnotation>> requires() {
+      return Collections.emptySet();
+    }
+  }
+
+  /** Holds up annotation of any sentence whose text starts with "block" until released. */
+  public static class BlockingSentenceAnnotator extends SentenceAnnotator {
+
+    public BlockingSentenceAnnotator(String name, Properties props) { }
+
+    @Override
+    protected int nThreads() {
+      return 1;
+    }
+
+    @Override
+    protected long maxTime() {
+      return -1;
+    }
+
+    @Override
+    protected void doOneSentence(Annotation annotation, CoreMap sentence) {
+      if (sentence.get(CoreAnnotations.TextAnnotation.class).startsWith("block")) {
+        BlockingAnnotator.started.countDown();
+        try {
+          BlockingAnnotator.release.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    }
+
+    @Override
+    protected void doOneFailedSentence(Annotation annotation, CoreMap sentence) { }
+
+    @Override
+    public Set<Class<? extends CoreAnnotation>> requirementsSatisfied() {
+      return Collections.emptySet();
+    }
+
+    @Override
+    public Set<Class<? extends CoreAnnotation>> requires() {
+      return Collections.emptySet();
+    }
+  }
+
+  /** A response: its status, Retry-After header and body. */
+  static class Response {
+    final int status;
+    final String retryAfter;
+    final byte[] body;
+
+    Response(int status, String retryAfter, byte[] body) {
+      this.status = status;
+      this.retryAfter = retryAfter;
+      this.body = body;
+    }
+
+    String text() {
+      return new String(body, StandardCharsets.UTF_8);
+    }
+  }
+
+  static final String BLOCKING_PROPERTIES = "{\"annotators\":\"tokenize,ssplit,block\"," +
+      "\"customAnnotatorClass.block\":\"" + BlockingAnnotator.class.getName() + "\",\"outputFormat\":\"json\"}";
+
+  private int oldThreads;
+  private int oldComputeThreads;
+  private int oldMaxQueuedRequests;
+  private int oldRetryAfterSeconds;
+
+  private StanfordCoreNLPServer server;
+  private int port;
+  private final ExecutorService clients = Executors.newCachedThreadPool();
+
+  @Before
+  public void saveOptions() {
+    oldThreads = ArgumentParser.threads;
+    oldComputeThreads = StanfordCoreNLPServer.computeThreads;
+    oldMaxQueuedRequests = StanfordCoreNLPServer.maxQueuedRequests;
+    oldRetryAfterSeconds = StanfordCoreNLPServer.retryAfterSeconds;
+    BlockingAnnotator.started = new CountDownLatch(1);
+    BlockingAnnotator.release = new CountDownLatch(1);
+  }
+
+  @After
+  public void stopServer() {
+    BlockingAnnotator.release.countDown();
+    if (server != null) {
+      server.getServer().ifPresent(s -> s.stop(0));
+    }
+    clients.shutdownNow();
+    ArgumentParser.threads = oldThreads;
+    StanfordCoreNLPServer.computeThreads = oldComputeThreads;
+    StanfordCoreNLPServer.maxQueuedRequests = oldMaxQueuedRequests;
+    StanfordCoreNLPServer.retryAfterSeconds = oldRetryAfterSeconds;
+  }
+
+  /** Start a server on a free port, with the given size of annotation pool and queue. */
+  void startServer(int computeThreads, int maxQueuedRequests, int timeoutMilliseconds) throws IOException {
+    // enough HTTP threads that requests waiting on annotation don't hold up the others
+    ArgumentParser.threads = 8;
+    StanfordCoreNLPServer.computeThreads = computeThreads;
+    StanfordCoreNLPServer.maxQueuedRequests = maxQueuedRequests;
+    StanfordCoreNLPServer.retryAfterSeconds = 7;
+    server = new StanfordCoreNLPServer(new Properties(), 0, timeoutMilliseconds, false);
+    server.quiet = true;
+    server.run();
+    port = server.getServer().get().getAddress().getPort();
+  }
+
+  Response post(String path, String properties, byte[] body, String contentType) throws IOException {
+    URL url = new URL("http://localhost:" + port + path + "?properties=" + URLEncoder.encode(properties, "utf-8"));
+    HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+    connection.setRequestMethod("POST");
+    connection.setDoOutput(true);
+    connection.setRequestProperty("Content-type", contentType);
+    try (OutputStream os = connection.getOutputStream()) {
+      os.write(body);
+    }
+    int status = connection.getResponseCode();
+    InputStream is = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    if (is != null) {
+      IOUtils.writeStreamToStream(is, bytes);
+      is.close();
+    }
+    return new Response(status, connection.getHeaderField("Retry-After"), bytes.toByteArray());
+  }
+
+  Future<Response> postLater(String path, String properties, String text) {
+    return clients.submit(() -> post(path, properties, text.getBytes(StandardCharsets.UTF_8), "text/plain; charset=utf-8"));
+  }
+
+  /**
+   * Take the only annotation thread of the server with one request, and fill its queue
+   * of one with another.  Of the two requests sent after the first, one is queued and
+   * the other refused; the refused one is returned.
+   */
+  Response fillQueue(Future<Response> running, List<Future<Response>> waiting) throws Exception {
+    Assert.assertTrue(BlockingAnnotator.started.await(10, TimeUnit.SECONDS));
+    waiting.add(postLater("/", BLOCKING_PROPERTIES, "first waiting"));
+    waiting.add(postLater("/", BLOCKING_PROPERTIES, "second waiting"));
+    long deadline = System.currentTimeMillis() + 10000;
+    while (System.currentTimeMillis() < deadline) {
+      for (Future<Response> future : waiting) {
+        if (future.isDone()) {
+          return future.get();
+        }
+      }
+      Thread.sleep(10);
+    }
+    Assert.fail("no request was refused");
+    return null;
+  }
+
+  @Test
+  public void testOverloadedServerAnswers503WithRetryAfter() throws Exception {
+    startServer(1, 1, 15000);
+    Future<Response> running = postLater("/", BLOCKING_PROPERTIES, "block this thread");
+    List<Future<Response>> waiting = new ArrayList<>();
+    Response refused = fillQueue(running, waiting);
+    Assert.assertEquals(HttpURLConnection.HTTP_UNAVAILABLE, refused.status);
+    Assert.assertEquals("7", refused.retryAfter);
+
+    BlockingAnnotator.release.countDown();
+    Assert.assertEquals(HttpURLConnection.HTTP_OK, running.get(10, TimeUnit.SECONDS).status);
+    int accepted = 0;
+    for (Future<Response> future : waiting) {
+      if (future.get(10, TimeUnit.SECONDS).status == HttpURLConnection.HTTP_OK) {
+        accepted++;
+      }
+    }
+    Assert.assertEquals(1, accepted);
+  }
+
+  @Test
+  public void testChunkedOutputMatchesBuffered() throws Exception {
+    startServer(2, -1, 15000);
+    byte[] text = "One sentence. And another one.".getBytes(StandardCharsets.UTF_8);
+    Response buffered = post("/", BATCH_PROPERTIES, text, "text/plain; charset=utf-8");
+    Response chunked = post("/", BATCH_PROPERTIES.replace("}", ",\"output.chunked\":\"true\"}"), text, "text/plain; charset=utf-8");
+    Assert.assertEquals(HttpURLConnection.HTTP_OK, buffered.status);
+    Assert.assertEquals(HttpURLConnection.HTTP_OK, chunked.status);
+    Assert.assertEquals(buffered.text(), chunked.text());
+  }
+
+  /**
+   * With only a sentence annotator after ssplit, each sentence is annotated and written by itself,
+   * so the first one arrives while the second is held up.
+   */
+  @Test
+  public void testChunkedOutputStreamsSentences() throws Exception {
+    startServer(2, -1, 15000);
+    String properties = "{\"annotators\":\"tokenize,ssplit,block\",\"customAnnotatorClass.block\":\"" +
+        BlockingSentenceAnnotator.class.getName() + "\",\"outputFormat\":\"json\"}";
+    byte[] text = "First one. block this one.".getBytes(StandardCharsets.UTF_8);
+
+    URL url = new URL("http://localhost:" + port + "/?properties=" +
+        URLEncoder.encode(properties.replace("}", ",\"output.chunked\":\"true\"}"), "utf-8"));
+    HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+    connection.setRequestMethod("POST");
+    connection.setDoOutput(true);
+    connection.setReadTimeout(10000);
+    connection.setRequestProperty("Content-type", "text/plain; charset=utf-8");
+    try (OutputStream os = connection.getOutputStream()) {
+      os.write(text);
+    }
+    Assert.assertEquals(HttpURLConnection.HTTP_OK, connection.getResponseCode());
+    Assert.assertTrue(BlockingAnnotator.started.await(10, TimeUnit.SECONDS));
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (InputStream is = connection.getInputStream()) {
+      // the end of the first sentence, written while the second is still being annotated
+      while ( ! new String(bytes.toByteArray(), StandardCharsets.UTF_8).contains("\"characterOffsetEnd\": 10")) {
+        int b = is.read();
+        Assert.assertNotEquals(-1, b);
+        bytes.write(b);
+      }
+      Assert.assertEquals(1, BlockingAnnotator.release.getCount());
+      BlockingAnnotator.release.countDown();
+      IOUtils.writeStreamToStream(is, bytes);
+    }
+
+    Response buffered = post("/", properties, text, "text/plain; charset=utf-8");
+    Assert.assertEquals(HttpURLConnection.HTTP_OK, buffered.status);
+    Assert.assertEquals(buffered.text(), new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+  }
+
+  static final String BATCH_PROPERTIES = "{\"annotators\":\"tokenize,ssplit\",\"outputFormat\":\"json\"}";
+
+  static JsonArray readArray(Response response) {
+    try (JsonReader reader = Json.createReader(new StringReader(response.text()))) {
+      return reader.readArray();
+    }
+  }
+
+  static byte[] jsonTexts(String... texts) {
+    JsonArrayBuilder array = Json.createArrayBuilder();
+    for (String text : texts) {
+      array.add(text);
+    }
+    return array.build().toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  @Test
+  public void testBatch() throws Exception {
+    startServer(2, -1, 15000);
+    Response response = post("/batch", BATCH_PROPERTIES, jsonTexts("One sentence.", "Two. Sentences.", "Three. More. Ones."), "application/json");
+    Assert.assertEquals(HttpURLConnection.HTTP_OK, response.status);
+    JsonArray docs = readArray(response);
+    Assert.assertEquals(3, docs.size());
+    for (int i = 0; i < docs.size(); i++) {
+      Assert.assertEquals(i + 1, docs.getJsonObject(i).getJsonArray("sentences").size());
+    }
+
+    response = post("/batch", BATCH_PROPERTIES, jsonTexts(), "application/json");
+    Assert.assertEquals(HttpURLConnection.HTTP_OK, response.status);
+    Assert.assertEquals(0, readArray(response).size());
+  }
+
+  @Test
+  public void testBatchReadsJsonStrings() throws Exception {
+    startServer(2, -1, 15000);
+    // escapes, and whitespace between the strings, are read as by any JSON reader
+    byte[] body = "[ \"He said \\\"hi\\\".\" ,\n\"Caf\\u00e9 one.\\nCaf\u00e9 two.\" ]".getBytes(StandardCharsets.UTF_8);
+    Response response = post("/batch", BATCH_PROPERTIES, body, "application/json");
+    Assert.assertEquals(HttpURLConnection.HTTP_OK, response.status);
+    JsonArray docs = readArray(response);
+    Assert.assertEquals(2, docs.size());
+    Assert.assertEquals("\"", docs.getJsonObject(0).getJsonArray("sentences").getJsonObject(0)
+        .getJsonArray("tokens").getJsonObject(2).getString("originalText"));
+    Assert.assertEquals(2, docs.getJsonObject(1).getJsonArray("sentences").size());
+    Assert.assertEquals("Caf\u00e9", docs.getJsonObject(1).getJsonArray("sentences").getJsonObject(1)
+        .getJsonArray("tokens").getJsonObject(0).getString("word"));
+
+    for (String bad : new String[] { "{\"text\": \"Not an array.\"}", "[3]", "[\"Unfinished.\"", "" }) {
+      response = post("/batch", BATCH_PROPERTIES, bad.getBytes(StandardCharsets.UTF_8), "application/json");
+      Assert.assertEquals(bad, HttpURLConnection.HTTP_BAD_REQUEST, response.status);
+    }
+  }
+
+  @Test
+  public void testSerializedBatchGetsDate() throws Exception {
+    startServer(2, -1, 15000);
+    ProtobufAnnotationSerializer serializer = new ProtobufAnnotationSerializer(false);
+    ByteArrayOutputStream input = new ByteArrayOutputStream();
+    serializer.toProto(new Annotation("First document.")).writeDelimitedTo(input);
+    serializer.toProto(new Annotation("Second. Document.")).writeDelimitedTo(input);
+    String properties = "{\"annotators\":\"tokenize,ssplit\",\"inputFormat\":\"serialized\",\"outputFormat\":\"serialized\"," +
+        "\"outputSerializer\":\"" + ProtobufAnnotationSerializer.class.getName() + "\",\"date\":\"2020-02-20\"}";
+    Response response = post("/batch", properties, input.toByteArray(), "application/x-protobuf");
+    Assert.assertEquals(HttpURLConnection.HTTP_OK, response.status);
+    InputStream is = new ByteArrayInputStream(response.body);
+    for (int sentences = 1; sentences <= 2; sentences++) {
+      CoreNLPProtos.Document doc = CoreNLPProtos.Document.parseDelimitedFrom(is);
+      Assert.assertEquals(sentences, doc.getSentenceCount());
+      Assert.assertEquals("2020-02-20", doc.getDocDate());
+    }
+    Assert.assertNull(CoreNLPProtos.Document.parseDelimitedFrom(is));
+  }
+
+  @Test
+  public void testBatchTimeout() throws Exception {
+    startServer(2, -1, 15000);
+    String properties = BLOCKING_PROPERTIES.replace("}", ",\"timeout\":\"500\"}");
+    Response response = post("/batch", properties, jsonTexts("Fine.", "block this one", "Also fine."), "application/json");
+    Assert.assertEquals(HttpURLConnection.HTTP_OK, response.status);
+    JsonArray docs = readArray(response);
+    Assert.assertEquals(3, docs.size());
+    Assert.assertEquals(1, docs.getJsonObject(0).getJsonArray("sentences").size());
+    Assert.assertTrue(docs.getJsonObject(1).getString("error").contains("TimeoutException"));
+    Assert.assertEquals(1, docs.getJsonObject(2).getJsonArray("sentences").size());
+  }
+
+  @Test
+  public void testOverloadedServerRefusesBatch() throws Exception {
+    startServer(1, 1, 15000);
+    Future<Response> running = postLater("/", BLOCKING_PROPERTIES, "block this thread");
+    List<Future<Response>> waiting = new ArrayList<>();
+    Assert.assertEquals(HttpURLConnection.HTTP_UNAVAILABLE, fillQueue(running, waiting).status);
+    Response refused = post("/batch", BATCH_PROPERTIES, jsonTexts("Refused."), "application/json");
+    Assert.assertEquals(HttpURLConnection.HTTP_UNAVAILABLE, refused.status);
+    Assert.assertEquals("7", refused.retryAfter);
+
+    BlockingAnnotator.release.countDown();
+    Assert.assertEquals(HttpURLConnection.HTTP_OK, running.get(10, TimeUnit.SECONDS).status);
+    Response accepted = post("/batch", BATCH_PROPERTIES, jsonTexts("Accepted."), "application/json");
+    Assert.assertEquals(HttpURLConnection.HTTP_OK, accepted.status);
+    Assert.assertEquals(1, readArray(accepted).size());
+  }
+
+}
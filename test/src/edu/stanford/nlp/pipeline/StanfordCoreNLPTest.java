@@ -2,6 +2,9 @@ package edu.stanford.nlp.pipeline;
 
 import org.junit.Test;
 
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.util.PropertiesUtils;
+
 import java.util.Properties;
 
 import static org.junit.Assert.*;
@@ -73,4 +76,40 @@ public class StanfordCoreNLPTest {
     assertEquals("__empty__", props.getProperty("coref.md.type", "__empty__"));
   }
 
+
+  @Test
+  public void testParallelLoad() {
+    StanfordCoreNLP pipeline = new StanfordCoreNLP(PropertiesUtils.asProperties(
+        "annotators", "tokenize,cleanxml,ssplit", "loadThreads", "3"));
+    Annotation ann = new Annotation("<p>Hello there.</p> <p>General Kenobi.</p>");
+    pipeline.annotate(ann);
+    assertEquals(2, ann.get(CoreAnnotations.SentencesAnnotation.class).size());
+  }
+
+  @Test
+  public void testLazyLoad() {
+    // ssplit without tokenize is only found out when the annotators are loaded
+    Properties props = PropertiesUtils.asProperties("annotators", "ssplit", "enforceRequirements", "true");
+    try {
+      new StanfordCoreNLP(props);
+      fail("Expected the requirements check to fail");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    props.setProperty("lazyLoad", "true");
+    StanfordCoreNLP pipeline = new StanfordCoreNLP(props);
+    try {
+      pipeline.annotate(new Annotation("Hello there."));
+      fail("Expected the requirements check to fail");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+
+    props.setProperty("annotators", "tokenize,ssplit");
+    pipeline = new StanfordCoreNLP(props);
+    Annotation ann = new Annotation("Hello there. General Kenobi.");
+    pipeline.annotate(ann);
+    assertEquals(2, ann.get(CoreAnnotations.SentencesAnnotation.class).size());
+  }
+
 }
@@ -183,4 +183,19 @@ public class WordShapeClassifierTest extends TestCase {
     genericCheck(WordShapeClassifier.WORDSHAPEDIGITS, inputs, digitsOutputs, null);
   }
 
+  public void testCachedWordShape() {
+    int[] shapers = { WordShapeClassifier.WORDSHAPECHRIS1, WordShapeClassifier.WORDSHAPECHRIS2,
+            WordShapeClassifier.WORDSHAPECHRIS4, WordShapeClassifier.WORDSHAPEDIGITS };
+    for (int shaper : shapers) {
+      for (int round = 0; round < 2; round++) {
+        for (String input : inputs) {
+          assertEquals(WordShapeClassifier.wordShape(input, shaper),
+                  WordShapeClassifier.cachedWordShape(input, shaper));
+        }
+      }
+      assertTrue(WordShapeClassifier.shapeCache(shaper).hits() > 0);
+    }
+    assertEquals("fabulous", WordShapeClassifier.cachedWordShape("fabulous", WordShapeClassifier.NOWORDSHAPE));
+  }
+
 }
@@ -5,8 +5,10 @@ import edu.stanford.nlp.stats.Counters;
 import junit.framework.TestCase;
 
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 
 /**
  * @author Christopher Manning
@@ -70,6 +72,68 @@ public class KBestSequenceFinderTest extends TestCase {
     BestSequenceFinderTest.runPossibleValuesChecker(tsm2nr, bsf);
   }
 
+  public void testScoredSequences() {
+    KBestSequenceFinder bsf = new KBestSequenceFinder();
+    BestSequenceFinderTest.TestSequenceModel tsm2nr = new BestSequenceFinderTest.TestSequenceModel2nr();
+    KBestSequenceFinder.ScoredSequences kBest = bsf.kBest(tsm2nr, K2NR);
+    assertEquals(K2NR, kBest.size());
+    assertEquals(tsm2nr.length(), kBest.length());
+    Counter<int[]> bestLabelsCounter = bsf.kBestSequences(tsm2nr, K2NR);
+    int[] labels = new int[kBest.length()];
+    for (int i = 0; i < K2NR; i++) {
+      assertEquals(test2nrScores[i], kBest.score(i), 1e-8);
+      int[] sequence = kBest.paddedSequence(i);
+      assertEquals(kBest.score(i), tsm2nr.scoreOf(sequence), 1e-8);
+      kBest.labels(i, labels);
+      for (int pos = 0; pos < labels.length; pos++) {
+        assertEquals(sequence[tsm2nr.leftWindow() + pos], labels[pos]);
+        assertEquals(labels[pos], kBest.label(i, pos));
+      }
+      boolean found = false;
+      for (int[] other : bestLabelsCounter.keySet()) {
+        found |= Arrays.equals(sequence, other);
+      }
+      assertTrue(found);
+    }
+    assertTrue(Arrays.equals(bsf.bestSequence(tsm2nr), kBest.paddedSequence(0)));
+
+    // asking for more sequences than there are gives all of them, best first
+    SequenceModel binary = new SequenceModel() {
+      @Override public int length() { return 3; }
+      @Override public int leftWindow() { return 1; }
+      @Override public int rightWindow() { return 0; }
+      @Override public int[] getPossibleValues(int position) { return position == 0 ? new int[] { 0 } : new int[] { 0, 1 }; }
+      @Override public double scoreOf(int[] sequence, int position) {
+        return sequence[position] * (position - 1.7) + 0.3 * sequence[position] * sequence[position - 1];
+      }
+      @Override public double[] scoresOf(int[] sequence, int position) {
+        int[] copy = sequence.clone();
+        double[] scores = new double[2];
+        for (int tag = 0; tag < 2; tag++) {
+          copy[position] = tag;
+          scores[tag] = scoreOf(copy, position);
+        }
+        return scores;
+      }
+      @Override public double scoreOf(int[] sequence) {
+        double score = 0.0;
+        for (int position = 1; position < sequence.length; position++) {
+          score += scoreOf(sequence, position);
+        }
+        return score;
+      }
+    };
+    kBest = bsf.kBest(binary, 12);
+    assertEquals(8, kBest.size());
+    Set<String> distinct = new HashSet<>();
+    for (int i = 0; i < kBest.size(); i++) {
+      assertEquals(binary.scoreOf(kBest.paddedSequence(i)), kBest.score(i), 1e-8);
+      assertTrue(i == 0 || kBest.score(i) <= kBest.score(i - 1));
+      distinct.add(Arrays.toString(kBest.paddedSequence(i)));
+    }
+    assertEquals(8, distinct.size());
+  }
+
   public static void runSequencesFinder(BestSequenceFinderTest.TestSequenceModel tsm,
                                        KBestSequenceFinder sf) {
     Counter<int[]>  bestLabelsCounter = sf.kBestSequences(tsm, K2NR);
@@ -0,0 +1,50 @@
+package edu.stanford.nlp.tagger.maxent;
+
+import junit.framework.TestCase;
+
+public class FeatureRowCacheTest extends TestCase {
+
+  public void testPutAndFind() {
+    FeatureRowCache cache = new FeatureRowCache(16);
+    int[] row = { 3, -1, 7 };
+    assertEquals(-1, cache.find(0, 42L));
+    cache.put(0, 42L, row);
+    cache.put(1, 42L, null);
+    assertEquals(2, cache.size());
+    int slot = cache.find(0, 42L);
+    assertTrue(slot >= 0);
+    assertSame(row, cache.row(slot));
+    slot = cache.find(1, 42L);
+    assertTrue(slot >= 0);
+    assertNull(cache.row(slot));
+    assertEquals(-1, cache.find(0, 43L));
+  }
+
+  public void testGrowKeepsEntries() {
+    FeatureRowCache cache = new FeatureRowCache(16);
+    for (int i = 0; i < 1000; i++) {
+      cache.put(i % 7, i, new int[] { i });
+    }
+    assertEquals(1000, cache.size());
+    for (int i = 0; i < 1000; i++) {
+      int slot = cache.find(i % 7, i);
+      assertTrue(slot >= 0);
+      assertEquals(i, cache.row(slot)[0]);
+    }
+  }
+
+  public void testClear() {
+    FeatureRowCache cache = new FeatureRowCache(16);
+    for (int round = 0; round < 100; round++) {
+      for (int i = 0; i < 5; i++) {
+        assertEquals(-1, cache.find(round % 2, i));
+        cache.put(round % 2, i, new int[] { round });
+      }
+      assertEquals(5, cache.size());
+      assertEquals(round, cache.row(cache.find(round % 2, 4))[0]);
+      cache.clear();
+      assertEquals(0, cache.size());
+    }
+  }
+
+}
@@ -0,0 +1,181 @@
+package edu.stanford.nlp.tagger.maxent;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import edu.stanford.nlp.io.IOUtils;
+import edu.stanford.nlp.ling.HasWord;
+import edu.stanford.nlp.ling.SentenceUtils;
+import edu.stanford.nlp.ling.TaggedWord;
+import edu.stanford.nlp.util.PropertiesUtils;
+
+/**
+ * Trains two small taggers on a made up corpus, and checks that scoring windows through
+ * the compiled buffers of TestSentence gives the same scores and tags as getScores,
+ * both with exact and with approximate scoring.
+ */
+public class TestSentenceScoringTest {
+
+  private static final String[][] WORDS = {
+      { "the", "a", "every", "that" },  // DT
+      { "big", "old", "new", "long" },  // JJ
+      { "man", "book", "saw", "fish", "report", "light" },  // NN
+      { "men", "books", "saws", "runs", "lights" },  // NNS
+      { "runs", "saws", "fishes", "lights", "reports" },  // VBZ
+      { "saw", "ran", "reported", "lit" },  // VBD
+      { "in", "on", "with", "near" },  // IN
+      { "John", "London", "Smith" },  // NNP
+  };
+  private static final String[] TAGS = { "DT", "JJ", "NN", "NNS", "VBZ", "VBD", "IN", "NNP" };
+
+  private static File dir;
+  private static MaxentTagger[] taggers;
+  private static String[] models;
+
+  private static String word(Random random, int tag) {
+    String[] words = WORDS[tag];
+    return words[random.nextInt(words.length)] + '_' + TAGS[tag];
+  }
+
+  /** A noun phrase: a name, or a determiner, maybe an adjective, and a noun. */
+  private static void nounPhrase(Random random, List<String> sentence) {
+    if (random.nextInt(4) == 0) {
+      sentence.add(word(random, 7));
+      return;
+    }
+    sentence.add(word(random, 0));
+    if (random.nextBoolean()) {
+      sentence.add(word(random, 1));
+    }
+    sentence.add(word(random, random.nextInt(3) == 0 ? 3 : 2));
+  }
+
+  private static String sentence(Random random) {
+    List<String> sentence = new ArrayList<>();
+    nounPhrase(random, sentence);
+    sentence.add(word(random, random.nextBoolean() ? 4 : 5));
+    nounPhrase(random, sentence);
+    if (random.nextBoolean()) {
+      sentence.add(word(random, 6));
+      nounPhrase(random, sentence);
+    }
+    sentence.add("._.");
+    return String.join(" ", sentence);
+  }
+
+  @BeforeClass
+  public static void trainTaggers() throws Exception {
+    dir = Files.createTempDirectory("tagger-scoring").toFile();
+    File train = new File(dir, "train.txt");
+    Random random = new Random(42);
+    try (PrintWriter out = IOUtils.getPrintWriter(train)) {
+      for (int i = 0; i < 300; i++) {
+        out.println(sentence(random));
+      }
+    }
+    String[] archs = { "left3words,naacl2003unknowns", "bidirectional5words,naacl2003unknowns,allwordshapes(-1,1)" };
+    taggers = new MaxentTagger[archs.length * 2];
+    models = new String[archs.length];
+    for (int a = 0; a < archs.length; a++) {
+      String model = new File(dir, "tagger" + a).getPath();
+      models[a] = model;
+      MaxentTagger.main(new String[] { "-model", model, "-trainFile", train.getPath(), "-arch", archs[a],
+          "-search", "qn", "-iterations", "30", "-tagSeparator", "_" });
+      taggers[2 * a] = new MaxentTagger(model, PropertiesUtils.asProperties("approximate", "false"), false);
+      taggers[2 * a + 1] = new MaxentTagger(model, PropertiesUtils.asProperties("approximate", "true"), false);
+    }
+  }
+
+  @AfterClass
+  public static void deleteTaggers() {
+    IOUtils.deleteRecursively(dir);
+  }
+
+  /** Records a copy of every array scoresOf returns. */
+  private static class RecordingSentence extends TestSentence {
+    final List<double[]> scores = new ArrayList<>();
+
+    RecordingSentence(MaxentTagger tagger, boolean compiled) {
+      super(tagger);
+      compiledScoring = compiled;
+    }
+
+    @Override
+    public double[] scoresOf(int[] tags, int pos) {
+      double[] result = super.scoresOf(tags, pos);
+      scores.add(result.clone());
+      return result;
+    }
+  }
+
+  private static List<List<HasWord>> testSentences() {
+    List<List<HasWord>> sentences = new ArrayList<>();
+    sentences.add(SentenceUtils.toWordList("the", "old", "man", "saw", "a", "saw", "."));
+    sentences.add(SentenceUtils.toWordList("John", "runs", "."));
+    // unknown words, so that the rare word extractors are used
+    sentences.add(SentenceUtils.toWordList("Mary", "reads", "every", "shiny", "paper", "near", "Paris", "."));
+    sentences.add(SentenceUtils.toWordList("the", "lights", "lights", "the", "lights", "with", "the", "fishes", "."));
+    Random random = new Random(7);
+    for (int i = 0; i < 20; i++) {
+      List<HasWord> sentence = new ArrayList<>();
+      for (String token : sentence(random).split(" ")) {
+        sentence.add(new TaggedWord(token.substring(0, token.lastIndexOf('_'))));
+      }
+      sentences.add(sentence);
+    }
+    return sentences;
+  }
+
+  @Test
+  public void testCompiledScoresMatchGetScores() {
+    Assert.assertFalse(taggers[0].hasApproximateScoring());
+    Assert.assertTrue(taggers[1].hasApproximateScoring());
+    List<List<HasWord>> sentences = testSentences();
+    for (MaxentTagger tagger : taggers) {
+      // twice, so that the rows kept from earlier sentences are used too
+      for (int pass = 0; pass < 2; pass++) {
+        for (List<HasWord> sentence : sentences) {
+          RecordingSentence expected = new RecordingSentence(tagger, false);
+          List<TaggedWord> expectedTags = expected.tagSentence(sentence, false);
+          RecordingSentence compiled = new RecordingSentence(tagger, true);
+          List<TaggedWord> compiledTags = compiled.tagSentence(sentence, false);
+          Assert.assertEquals(expectedTags, compiledTags);
+          Assert.assertEquals(expected.scores.size(), compiled.scores.size());
+          for (int i = 0; i < expected.scores.size(); i++) {
+            Assert.assertArrayEquals(expected.scores.get(i), compiled.scores.get(i), 1e-12);
+          }
+        }
+      }
+    }
+  }
+
+  /** Each thread keeps the scores of at most localScoresCacheSize words, and none with 0, without changing any tag. */
+  @Test
+  public void testLocalScoresCacheSize() {
+    List<List<HasWord>> sentences = testSentences();
+    List<List<TaggedWord>> expected = new ArrayList<>();
+    for (List<HasWord> sentence : sentences) {
+      expected.add(taggers[1].tagSentence(sentence));
+    }
+    Assert.assertTrue(taggers[1].scoringBuffers().localScoresKept() > 5);
+    for (int size : new int[] { 0, 5 }) {
+      MaxentTagger tagger = new MaxentTagger(models[0], PropertiesUtils.asProperties(
+          "approximate", "true", "localScoresCacheSize", Integer.toString(size)), false);
+      for (int i = 0; i < sentences.size(); i++) {
+        Assert.assertEquals(expected.get(i), tagger.tagSentence(sentences.get(i)));
+        Assert.assertTrue(tagger.scoringBuffers().localScoresKept() <= size);
+      }
+    }
+  }
+
+}
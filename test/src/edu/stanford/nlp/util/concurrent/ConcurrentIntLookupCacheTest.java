@@ -0,0 +1,95 @@
+package edu.stanford.nlp.util.concurrent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test of ConcurrentIntLookupCache.
+ */
+public class ConcurrentIntLookupCacheTest {
+
+  @Test
+  public void testCachesValues() {
+    AtomicInteger calls = new AtomicInteger();
+    ConcurrentIntLookupCache<String> cache = new ConcurrentIntLookupCache<>(i -> {
+      calls.incrementAndGet();
+      return Integer.toString(i);
+    }, 100);
+    Assert.assertEquals(128, cache.capacity());
+    Assert.assertEquals("7", cache.get(7));
+    Assert.assertEquals("7", cache.get(7));
+    Assert.assertEquals("-3", cache.get(-3));
+    Assert.assertEquals(2, calls.get());
+    Assert.assertEquals(1, cache.hits());
+    Assert.assertEquals(2, cache.misses());
+
+    cache.clear();
+    Assert.assertEquals("7", cache.get(7));
+    Assert.assertEquals(3, calls.get());
+  }
+
+  @Test
+  public void testBounded() {
+    ConcurrentIntLookupCache<Integer> cache = new ConcurrentIntLookupCache<>(i -> i * 2, 16);
+    for (int pass = 0; pass < 2; pass++) {
+      // values are right even after their slots have been taken over
+      for (int i = 0; i < 1000; i++) {
+        Assert.assertEquals(i * 2, (int) cache.get(i));
+      }
+    }
+    Assert.assertEquals(2000, cache.hits() + cache.misses());
+    Assert.assertTrue(cache.misses() >= 1000);
+  }
+
+  @Test
+  public void testKeepsMostRecentlyUsed() {
+    AtomicInteger calls = new AtomicInteger();
+    // four slots, so all keys share one set
+    ConcurrentIntLookupCache<Integer> cache = new ConcurrentIntLookupCache<>(i -> {
+      calls.incrementAndGet();
+      return -i;
+    }, 1);
+    for (int i = 0; i < 4; i++) {
+      cache.get(i);
+    }
+    cache.get(0);
+    // 1 is now the least recently used, and makes room for 4
+    Assert.assertEquals(-4, (int) cache.get(4));
+    for (int i : new int[] { 0, 2, 3, 4 }) {
+      Assert.assertEquals(-i, (int) cache.get(i));
+    }
+    Assert.assertEquals(5, calls.get());
+    Assert.assertEquals(-1, (int) cache.get(1));
+    Assert.assertEquals(6, calls.get());
+  }
+
+  @Test
+  public void testManyThreads() throws InterruptedException {
+    ConcurrentIntLookupCache<String> cache = new ConcurrentIntLookupCache<>(Integer::toString, 64);
+    AtomicInteger wrong = new AtomicInteger();
+    List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < 4; t++) {
+      final int seed = t;
+      Thread thread = new Thread(() -> {
+        for (int i = 0; i < 20000; i++) {
+          int key = (i * 31 + seed) % 200;
+          if ( ! cache.get(key).equals(Integer.toString(key))) {
+            wrong.incrementAndGet();
+          }
+        }
+      });
+      threads.add(thread);
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    Assert.assertEquals(0, wrong.get());
+    Assert.assertEquals(80000, cache.hits() + cache.misses());
+  }
+
+}
@@ -0,0 +1,70 @@
+package edu.stanford.nlp.util.concurrent;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test of SharedWorkScheduler.
+ */
+public class SharedWorkSchedulerTest {
+
+  @Test
+  public void testRunsEverything() {
+    SharedWorkScheduler scheduler = new SharedWorkScheduler(4);
+    AtomicInteger sum = new AtomicInteger();
+    for (int round = 0; round < 3; ++round) {
+      SharedWorkScheduler.Batch<Integer> batch = scheduler.newBatch(2, sum::addAndGet);
+      for (int i = 1; i <= 100; ++i) {
+        batch.submit(i);
+      }
+      Assert.assertTrue(batch.await(0).isEmpty());
+    }
+    Assert.assertEquals(3 * 5050, sum.get());
+    Assert.assertEquals(300, scheduler.itemsRun());
+  }
+
+  @Test
+  public void testBatchParallelism() {
+    SharedWorkScheduler scheduler = new SharedWorkScheduler(8);
+    AtomicInteger running = new AtomicInteger();
+    AtomicInteger maxRunning = new AtomicInteger();
+    SharedWorkScheduler.Batch<Integer> batch = scheduler.newBatch(3, i -> {
+      int now = running.incrementAndGet();
+      maxRunning.accumulateAndGet(now, Math::max);
+      try {
+        Thread.sleep(2);
+      } catch (InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+      running.decrementAndGet();
+    });
+    for (int i = 0; i < 50; ++i) {
+      batch.submit(i);
+    }
+    batch.await(0);
+    Assert.assertTrue("Ran " + maxRunning.get() + " at once", maxRunning.get() <= 3);
+  }
+
+  @Test
+  public void testTimeout() {
+    SharedWorkScheduler scheduler = new SharedWorkScheduler(2);
+    AtomicInteger interrupted = new AtomicInteger();
+    SharedWorkScheduler.Batch<Integer> batch = scheduler.newBatch(1, i -> {
+      try {
+        Thread.sleep(10000);
+      } catch (InterruptedException e) {
+        interrupted.incrementAndGet();
+      }
+    });
+    for (int i = 0; i < 5; ++i) {
+      batch.submit(i);
+    }
+    List<Integer> leftover = batch.await(50);
+    Assert.assertEquals(4, leftover.size());
+    Assert.assertEquals(1, interrupted.get());
+  }
+
+}